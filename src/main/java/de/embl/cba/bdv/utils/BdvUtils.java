@@ -51,6 +51,9 @@ import net.imglib2.*;
 import net.imglib2.Point;
 import net.imglib2.RandomAccess;
 import net.imglib2.converter.Converter;
+import net.imglib2.interpolation.InterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.roi.*;
 import net.imglib2.roi.geom.GeomMasks;
@@ -836,6 +839,10 @@ public abstract class BdvUtils
 			return getRealTypeNonVolatileRandomAccessibleInterval(
 					( ( ImagePlusFileSource ) source ).getWrappedSource(), t, level );
 
+		if ( source instanceof VolatileModifiableRandomAccessibleIntervalSource4D )
+			return getRealTypeNonVolatileRandomAccessibleInterval(
+					( ( VolatileModifiableRandomAccessibleIntervalSource4D ) source ).getWrappedSource(), t, level );
+
 		if ( source instanceof LazySpimSource )
 		{
 			return ( ( LazySpimSource ) source ).getNonVolatileSource( t, level );
@@ -846,7 +853,7 @@ public abstract class BdvUtils
 		}
 		else
 		{
-			return source.getSource( t, 0 );
+			return source.getSource( t, level );
 		}
 	}
 
@@ -894,8 +901,21 @@ public abstract class BdvUtils
 			return getInterpolatedRealTypeNonVolatileRealRandomAccess(
 					( ( ARGBConvertedRealSource ) source ).getWrappedSource(), t, level, interpolation );
 
+		if ( source instanceof ImagePlusFileSource )
+			return getInterpolatedRealTypeNonVolatileRealRandomAccess(
+					( ( ImagePlusFileSource ) source ).getWrappedSource(), t, level, interpolation );
+
+		if ( source instanceof VolatileModifiableRandomAccessibleIntervalSource4D )
+			return getInterpolatedRealTypeNonVolatileRealRandomAccess(
+					( ( VolatileModifiableRandomAccessibleIntervalSource4D ) source ).getWrappedSource(), t, level, interpolation );
+
 		if ( source instanceof ModifiableRandomAccessibleIntervalSource4D )
-			return null; // TODO
+		{
+			final RandomAccessibleInterval raw = ( ( ModifiableRandomAccessibleIntervalSource4D ) source ).getRawSource( t, level );
+			final InterpolatorFactory interpolatorFactory = interpolation.equals( Interpolation.NEARESTNEIGHBOR ) ?
+					new NearestNeighborInterpolatorFactory() : new NLinearInterpolatorFactory();
+			return Views.interpolate( Views.extendZero( raw ), interpolatorFactory ).realRandomAccess();
+		}
 
 		if ( source instanceof LazySpimSource )
 		{
@@ -0,0 +1,411 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.bdv.utils.capture;
+
+import bdv.export.ProgressWriter;
+import bdv.export.ProgressWriterConsole;
+import bdv.tools.bookmarks.Bookmarks;
+import bdv.util.BdvHandle;
+import bdv.viewer.SourceAndConverter;
+import de.embl.cba.bdv.utils.BdvUtils;
+import de.embl.cba.bdv.utils.io.TiledTiffWriter;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Captures a series of views (keyframes), e.g. for movies or figure panels,
+ * and writes them either into one multi-page TIFF or as an image sequence.
+ *
+ * The visible sources are resolved once. While one frame is captured,
+ * the data needed for the next frame is prefetched in the background.
+ * All frames have the same size; a frame covers the BDV window at
+ * its keyframe's viewer transform.
+ */
+public class BatchViewCapture
+{
+	/**
+	 * Distance of the positions that are sampled for prefetching, in capture pixels.
+	 */
+	public static final int PREFETCH_STRIDE = 8;
+
+	public enum OutputFormat
+	{
+		MultiPageTiff,
+		ImageSequence
+	}
+
+	public static class Keyframe
+	{
+		public final AffineTransform3D viewerTransform;
+		public final int timepoint;
+
+		public Keyframe( AffineTransform3D viewerTransform, int timepoint )
+		{
+			this.viewerTransform = viewerTransform.copy();
+			this.timepoint = timepoint;
+		}
+	}
+
+	private final BdvHandle bdv;
+	private final List< Keyframe > keyframes;
+	private final long captureWidth;
+	private final long captureHeight;
+	private ProgressWriter progressWriter = new ProgressWriterConsole();
+	private boolean captureRawData = false;
+	private volatile boolean isCancelled = false;
+
+	/**
+	 * @param bdv
+	 * @param keyframes
+	 * @param pixelSpacing
+	 * 			pixel spacing of the frames, in the zoom of the first keyframe
+	 */
+	public BatchViewCapture( BdvHandle bdv, List< Keyframe > keyframes, double pixelSpacing )
+	{
+		if ( keyframes.isEmpty() )
+			throw new IllegalArgumentException( "No keyframes given." );
+
+		this.bdv = bdv;
+		this.keyframes = keyframes;
+
+		final double dxy = pixelSpacing / TiledViewCapture.getViewerVoxelSpacing( keyframes.get( 0 ).viewerTransform );
+		captureWidth = ( long ) Math.ceil( BdvUtils.getBdvWindowWidth( bdv ) / dxy );
+		captureHeight = ( long ) Math.ceil( BdvUtils.getBdvWindowHeight( bdv ) / dxy );
+	}
+
+	/**
+	 * @return keyframes of the current view, for all time points from first to last
+	 */
+	public static List< Keyframe > timepoints( BdvHandle bdv, int first, int last )
+	{
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		bdv.getViewerPanel().state().getViewerTransform( viewerTransform );
+
+		final ArrayList< Keyframe > keyframes = new ArrayList<>();
+		for ( int t = first; t <= last; t++ )
+			keyframes.add( new Keyframe( viewerTransform, t ) );
+		return keyframes;
+	}
+
+	/**
+	 * @return keyframes of the given bookmarked views, at time point t
+	 */
+	public static List< Keyframe > bookmarks( BdvHandle bdv, Bookmarks bookmarks, List< String > keys, int t )
+	{
+		// bookmarks are stored relative to the window centre
+		final double cX = 0.5 * BdvUtils.getBdvWindowWidth( bdv );
+		final double cY = 0.5 * BdvUtils.getBdvWindowHeight( bdv );
+
+		final ArrayList< Keyframe > keyframes = new ArrayList<>();
+		for ( String key : keys )
+		{
+			final AffineTransform3D bookmark = bookmarks.get( key );
+			if ( bookmark == null )
+				throw new IllegalArgumentException( "No bookmark: " + key );
+
+			final AffineTransform3D viewerTransform = bookmark.copy();
+			viewerTransform.set( viewerTransform.get( 0, 3 ) + cX, 0, 3 );
+			viewerTransform.set( viewerTransform.get( 1, 3 ) + cY, 1, 3 );
+			keyframes.add( new Keyframe( viewerTransform, t ) );
+		}
+		return keyframes;
+	}
+
+	public void setProgressWriter( ProgressWriter progressWriter )
+	{
+		this.progressWriter = progressWriter;
+	}
+
+	/**
+	 * @param captureRawData
+	 * 			whether to also write the raw data of all sources,
+	 * 			next to the RGB frames, in the pixel type of each source
+	 */
+	public void setCaptureRawData( boolean captureRawData )
+	{
+		this.captureRawData = captureRawData;
+	}
+
+	/**
+	 * Stops the capture as soon as possible; may be called from any thread.
+	 */
+	public void cancel()
+	{
+		isCancelled = true;
+	}
+
+	public boolean isCancelled()
+	{
+		return isCancelled;
+	}
+
+	/**
+	 * If the capture is cancelled or fails, the multi-page TIFF keeps the frames
+	 * that have been captured completely; in an image sequence, the files of the
+	 * incomplete frame are deleted.
+	 *
+	 * @param output
+	 * 			the TIFF file for {@link OutputFormat#MultiPageTiff};
+	 * 			the path prefix of the files for {@link OutputFormat#ImageSequence}
+	 * @param format
+	 * @return false if the capture was cancelled
+	 * @throws IOException
+	 */
+	public boolean capture( File output, OutputFormat format ) throws IOException
+	{
+		isCancelled = false;
+
+		final List< SourceAndConverter< ? > > sources = new ArrayList<>( BdvUtils.getVisibleSources( bdv ) );
+
+		final ExecutorService prefetcher = Executors.newSingleThreadExecutor( runnable -> {
+			final Thread thread = new Thread( runnable, "view capture prefetcher" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+
+		final String prefix = output.getPath().replaceFirst( "\\.tiff?$", "" );
+		final int numFrames = keyframes.size();
+
+		TiledTiffWriter rgbWriter = null;
+		TiledTiffWriter rawWriter = null;
+		int numRawPagesPerFrame = 0;
+		int numCapturedFrames = 0;
+		Throwable failure = null;
+		Future< TiledViewCapture > nextFrame = prefetcher.submit( () -> createFrame( sources, 0 ) );
+
+		try
+		{
+			for ( int frame = 0; frame < numFrames; frame++ )
+			{
+				final TiledViewCapture viewCapture = getFrame( nextFrame );
+
+				if ( frame + 1 < numFrames )
+				{
+					final int next = frame + 1;
+					nextFrame = prefetcher.submit( () -> createFrame( sources, next ) );
+				}
+
+				if ( format.equals( OutputFormat.MultiPageTiff ) )
+				{
+					if ( rgbWriter == null )
+					{
+						numRawPagesPerFrame = viewCapture.getRawTypes().size();
+						rgbWriter = createWriter( new File( prefix + ".tif" ), repeat( new ARGBType(), numFrames ) );
+						if ( captureRawData )
+							rawWriter = createWriter( new File( prefix + "-raw.tif" ), repeat( viewCapture.getRawTypes(), numFrames ) );
+					}
+					captureFrame( viewCapture, rgbWriter, frame, rawWriter, frame * numRawPagesPerFrame );
+				}
+				else
+				{
+					captureFrame( viewCapture, String.format( "%s-%05d", prefix, frame ) );
+				}
+
+				numCapturedFrames++;
+				progressWriter.setProgress( 1.0 * ( frame + 1 ) / numFrames );
+			}
+
+			progressWriter.out().println( "Captured " + numFrames + " frames." );
+			return true;
+		}
+		catch ( CancellationException e )
+		{
+			progressWriter.out().println( "View capture cancelled." );
+			return false;
+		}
+		catch ( Throwable e )
+		{
+			failure = e;
+			throw e;
+		}
+		finally
+		{
+			nextFrame.cancel( true );
+			prefetcher.shutdownNow();
+			closeAll( failure,
+					new TiledTiffWriter[]{ rgbWriter, rawWriter },
+					new int[]{ numCapturedFrames, numCapturedFrames * numRawPagesPerFrame } );
+		}
+	}
+
+	private TiledViewCapture createFrame( List< SourceAndConverter< ? > > sources, int frame )
+	{
+		final Keyframe keyframe = keyframes.get( frame );
+		final TiledViewCapture viewCapture = new TiledViewCapture(
+				bdv, sources, keyframe.viewerTransform, keyframe.timepoint, captureWidth, captureHeight );
+		viewCapture.prefetch( PREFETCH_STRIDE );
+		return viewCapture;
+	}
+
+	private TiledViewCapture getFrame( Future< TiledViewCapture > frame ) throws IOException
+	{
+		try
+		{
+			return frame.get();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new CancellationException( "Interrupted" );
+		}
+		catch ( ExecutionException e )
+		{
+			if ( e.getCause() instanceof RuntimeException )
+				throw ( RuntimeException ) e.getCause();
+			throw new IOException( e.getCause() );
+		}
+	}
+
+	private void captureFrame(
+			TiledViewCapture viewCapture,
+			TiledTiffWriter rgbWriter,
+			int rgbPage,
+			TiledTiffWriter rawWriter,
+			int firstRawPage ) throws IOException
+	{
+		viewCapture.capture( ( tile, argbTile, rawTiles ) ->
+		{
+			if ( isCancelled ) throw new CancellationException();
+
+			rgbWriter.writeTile( rgbPage, tile, argbTile );
+
+			if ( rawWriter != null )
+				for ( int c = 0; c < rawTiles.size(); c++ )
+					rawWriter.writeTile( firstRawPage + c, tile, rawTiles.get( c ) );
+		} );
+	}
+
+	/**
+	 * Captures one frame of an image sequence into its own files.
+	 */
+	private void captureFrame( TiledViewCapture viewCapture, String frameName ) throws IOException
+	{
+		TiledTiffWriter rgbWriter = null;
+		TiledTiffWriter rawWriter = null;
+		boolean isCaptured = false;
+		Throwable failure = null;
+
+		try
+		{
+			rgbWriter = createWriter( new File( frameName + ".tif" ), repeat( new ARGBType(), 1 ) );
+			if ( captureRawData )
+				rawWriter = createWriter( new File( frameName + "-raw.tif" ), viewCapture.getRawTypes() );
+
+			captureFrame( viewCapture, rgbWriter, 0, rawWriter, 0 );
+			isCaptured = true;
+		}
+		catch ( Throwable e )
+		{
+			failure = e;
+			throw e;
+		}
+		finally
+		{
+			closeAll( failure,
+					new TiledTiffWriter[]{ rgbWriter, rawWriter },
+					new int[]{ isCaptured ? 1 : 0, isCaptured ? viewCapture.getRawTypes().size() : 0 } );
+		}
+	}
+
+	private TiledTiffWriter createWriter( File file, List< ? extends Type< ? > > pageTypes ) throws IOException
+	{
+		return new TiledTiffWriter(
+				file,
+				captureWidth,
+				captureHeight,
+				TiledViewCapture.DEFAULT_TILE_SIZE,
+				TiledViewCapture.DEFAULT_TILE_SIZE,
+				pageTypes );
+	}
+
+	private static List< Type< ? > > repeat( Type< ? > type, int n )
+	{
+		final ArrayList< Type< ? > > types = new ArrayList<>();
+		for ( int i = 0; i < n; i++ )
+			types.add( type );
+		return types;
+	}
+
+	private static List< Type< ? > > repeat( List< RealType< ? > > frameTypes, int n )
+	{
+		final ArrayList< Type< ? > > types = new ArrayList<>();
+		for ( int i = 0; i < n; i++ )
+			types.addAll( frameTypes );
+		return types;
+	}
+
+	/**
+	 * Closes each writer, even if closing another one fails, keeping its first numPages[ i ] pages;
+	 * writers without any page to keep are aborted, which deletes their file.
+	 *
+	 * Exceptions are added as suppressed to the failure that ended the capture, if any,
+	 * such that they do not mask it, and are thrown otherwise.
+	 */
+	private static void closeAll( Throwable failure, TiledTiffWriter[] writers, int[] numPages ) throws IOException
+	{
+		IOException exception = null;
+
+		for ( int i = 0; i < writers.length; i++ )
+		{
+			if ( writers[ i ] == null ) continue;
+
+			try
+			{
+				if ( numPages[ i ] > 0 )
+					writers[ i ].close( numPages[ i ] );
+				else
+					writers[ i ].abort();
+			}
+			catch ( IOException | RuntimeException e )
+			{
+				if ( failure != null )
+					failure.addSuppressed( e );
+				else if ( exception == null )
+					exception = e instanceof IOException ? ( IOException ) e : new IOException( e );
+				else
+					exception.addSuppressed( e );
+			}
+		}
+
+		if ( exception != null )
+			throw exception;
+	}
+}
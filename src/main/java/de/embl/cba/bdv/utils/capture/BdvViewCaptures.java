@@ -46,18 +46,12 @@ import ij.ImagePlus;
 import ij.plugin.Duplicator;
 import ij.process.LUT;
 import net.imglib2.*;
-import net.imglib2.Cursor;
-import net.imglib2.algorithm.util.Grids;
-import net.imglib2.converter.Converter;
-import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.display.imagej.ImageJFunctions;
 import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.ui.RenderTarget;
-import net.imglib2.util.Intervals;
-import net.imglib2.view.IntervalView;
 import net.imglib2.view.Views;
 
 import javax.imageio.ImageIO;
@@ -66,8 +60,6 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
 
 import static de.embl.cba.bdv.utils.BdvUtils.*;
 
@@ -82,6 +74,9 @@ public abstract class BdvViewCaptures < R extends RealType< R > >
 {
 
 	/**
+	 * Captures the current view into memory.
+	 * See {@link TiledViewCapture} for streaming large captures to disk.
+	 *
 	 * @param bdv
 	 * @param pixelSpacing
 	 * @param voxelUnit
@@ -89,160 +84,26 @@ public abstract class BdvViewCaptures < R extends RealType< R > >
 	 *
 	 * TODO: Replace this with bdv-playground!!
 	 */
-	public static synchronized < R extends RealType< R > > ViewCaptureResult captureView(
+	public static < R extends RealType< R > > ViewCaptureResult captureView(
 			BdvHandle bdv,
 			double pixelSpacing,
 			String voxelUnit,
 			boolean checkSourceIntersectionWithViewerPlaneOnlyIn2D )
 	{
-		final AffineTransform3D viewerTransform = new AffineTransform3D();
-		bdv.getViewerPanel().state().getViewerTransform( viewerTransform );
-
-		final double viewerVoxelSpacing = getViewerVoxelSpacing( bdv );
-		double dxy = pixelSpacing / viewerVoxelSpacing;
-
-		final int w = getBdvWindowWidth( bdv );
-		final int h = getBdvWindowHeight( bdv );
-
-		final long captureWidth = ( long ) Math.ceil( w / dxy );
-		final long captureHeight = ( long ) Math.ceil( h / dxy );
-
-		final ArrayList< RandomAccessibleInterval< UnsignedShortType > > captures = new ArrayList<>();
-		final ArrayList< ARGBType > colors = new ArrayList<>();
-		final ArrayList< Boolean > isSegmentations = new ArrayList<>();
-		final ArrayList< double[] > displayRanges = new ArrayList<>();
+		final TiledViewCapture viewCapture =
+				new TiledViewCapture( bdv, pixelSpacing, checkSourceIntersectionWithViewerPlaneOnlyIn2D );
 
-		final Set< SourceAndConverter< ? > > visibleSources = getVisibleSources( bdv );
-
-		final int t = bdv.getViewerPanel().state().getCurrentTimepoint();
-
-		final RandomAccessibleInterval< ARGBType > argbCapture
-				= ArrayImgs.argbs( captureWidth, captureHeight );
-
-		for ( SourceAndConverter< ? > sourceAndConverter : visibleSources )
+		try
 		{
-			final Source< ? > source = sourceAndConverter.getSpimSource();
-			if ( checkSourceIntersectionWithViewerPlaneOnlyIn2D )
-				if ( ! BdvUtils.isSourceIntersectingCurrentViewIn2D( bdv, source ) ) continue;
-			else
-				if ( ! BdvUtils.isSourceIntersectingCurrentView( bdv, source ) ) continue;
-
-			final RandomAccessibleInterval< UnsignedShortType > realCapture
-					= ArrayImgs.unsignedShorts( captureWidth, captureHeight );
-
-			final Converter converter = sourceAndConverter.getConverter();
-
-			final int level = getLevel( source, pixelSpacing );
-			final AffineTransform3D sourceTransform =
-					BdvUtils.getSourceTransform( source, t, level );
-
-			AffineTransform3D viewerToSourceTransform = new AffineTransform3D();
-			viewerToSourceTransform.preConcatenate( viewerTransform.inverse() );
-			viewerToSourceTransform.preConcatenate( sourceTransform.inverse() );
-
-			final boolean interpolate = isInterpolate( source );
-			isSegmentations.add( ! interpolate );
-
-			Grids.collectAllContainedIntervals(
-					Intervals.dimensionsAsLongArray( argbCapture ),
-					new int[]{100, 100}).parallelStream().forEach( interval ->
-			{
-				RealRandomAccess< ? extends RealType< ? > > sourceRealTypeAccess =
-						getInterpolatedRealRandomAccess( t, source, level, interpolate );
-
-				RealRandomAccess< ? > sourceAccess = null;
-				if ( interpolate )
-					sourceAccess = source.getInterpolatedSource( t, level, Interpolation.NLINEAR ).realRandomAccess();
-				else
-					sourceAccess = source.getInterpolatedSource( t, level, Interpolation.NEARESTNEIGHBOR ).realRandomAccess();
-
-				// to collect raw data
-				final IntervalView< UnsignedShortType > realCrop = Views.interval( realCapture, interval );
-				final Cursor< UnsignedShortType > realCaptureCursor = Views.iterable( realCrop ).localizingCursor();
-				final RandomAccess< UnsignedShortType > realCaptureAccess = realCrop.randomAccess();
-
-				// to collect coloured data
-				final IntervalView< ARGBType > argbCrop = Views.interval( argbCapture, interval );
-				final RandomAccess< ARGBType > argbCaptureAccess = argbCrop.randomAccess();
-
-				final double[] canvasPosition = new double[ 3 ];
-				final double[] sourceRealPosition = new double[ 3 ];
-
-				final ARGBType argbType = new ARGBType();
-
-
-				while ( realCaptureCursor.hasNext() )
-				{
-					realCaptureCursor.fwd();
-					realCaptureCursor.localize( canvasPosition );
-					realCaptureAccess.setPosition( realCaptureCursor );
-
-					argbCaptureAccess.setPosition( realCaptureCursor );
-
-					// canvasPosition is the position on the canvas, in calibrated units
-					// dxy is the step size that is needed to get the desired resolution in the
-					// output image
-					canvasPosition[ 0 ] *= dxy;
-					canvasPosition[ 1 ] *= dxy;
-
-					viewerToSourceTransform.apply( canvasPosition, sourceRealPosition );
-					sourceRealTypeAccess.setPosition( sourceRealPosition );
-					final RealType< ? > realType = sourceRealTypeAccess.get();
-					realCaptureAccess.get().setReal( realType.getRealDouble() );
-
-
-					sourceAccess.setPosition( sourceRealPosition );
-					final Object pixel = sourceAccess.get();
-					if ( pixel instanceof ARGBType )
-						argbType.set( ( ARGBType ) pixel );
-					else
-						converter.convert( pixel, argbType );
-
-					final int sourceARGBIndex = argbType.get();
-					final int captureARGBIndex = argbCaptureAccess.get().get();
-					int a = ARGBType.alpha( sourceARGBIndex ) + ARGBType.alpha( captureARGBIndex );
-					int r = ARGBType.red( sourceARGBIndex ) + ARGBType.red( captureARGBIndex );
-					int g = ARGBType.green( sourceARGBIndex )+ ARGBType.green( captureARGBIndex );
-					int b = ARGBType.blue( sourceARGBIndex )+ ARGBType.blue( captureARGBIndex );
-
-					if ( a > 255 )
-						a = 255;
-					if ( r > 255 )
-						r = 255;
-					if ( g > 255 )
-						g = 255;
-					if ( b > 255 )
-						b = 255;
-
-					argbCaptureAccess.get().set( ARGBType.rgba( r, g, b, a ) );
-				}
-			});
-
-			captures.add( realCapture );
-			// colors.add( getSourceColor( bdv, sourceIndex ) ); Not used, show GrayScale
-			displayRanges.add( BdvUtils.getDisplayRange( bdv, sourceAndConverter ) );
+			return viewCapture.captureInMemory( voxelUnit );
 		}
-
-		final double[] voxelSpacing = new double[ 3 ];
-		for ( int d = 0; d < 2; d++ )
-			voxelSpacing[ d ] = pixelSpacing;
-
-		voxelSpacing[ 2 ] = viewerVoxelSpacing; // TODO: ???
-
-		if ( captures.size() > 0 )
+		catch ( IOException e )
 		{
-			final ViewCaptureResult compositeAndRGBImage = new ViewCaptureResult();
-			compositeAndRGBImage.rgbImage = createRgbImage(
-					voxelUnit, argbCapture, voxelSpacing );
-			compositeAndRGBImage.rawImagesStack = createCompositeImage(
-					voxelSpacing, voxelUnit, captures, colors, displayRanges, isSegmentations );
-			return compositeAndRGBImage;
+			throw new RuntimeException( e );
 		}
-		else
-			return null;
 	}
 
-	private static ImagePlus createRgbImage( String voxelUnit, RandomAccessibleInterval< ARGBType > argbCapture, double[] voxelSpacing )
+	static ImagePlus createRgbImage( String voxelUnit, RandomAccessibleInterval< ARGBType > argbCapture, double[] voxelSpacing )
 	{
 		final ImagePlus rgbImage = ImageJFunctions.wrap( argbCapture, "View Capture RGB" );
 
@@ -286,15 +147,15 @@ public abstract class BdvViewCaptures < R extends RealType< R > >
 		return interpolate;
 	}
 
-	public static CompositeImage createCompositeImage(
+	public static < T extends RealType< T > & NativeType< T > > CompositeImage createCompositeImage(
 			double[] voxelSpacing,
 			String voxelUnit,
-			ArrayList< RandomAccessibleInterval< UnsignedShortType > > rais,
+			ArrayList< RandomAccessibleInterval< T > > rais,
 			ArrayList< ARGBType > colors,
 			ArrayList< double[] > displayRanges,
 			ArrayList< Boolean > isSegmentations )
 	{
-		final RandomAccessibleInterval< UnsignedShortType > stack = Views.stack( rais );
+		final RandomAccessibleInterval< T > stack = Views.stack( rais );
 
 		final ImagePlus imp = ImageJFunctions.wrap( stack, "View Capture Raw" );
 
@@ -0,0 +1,740 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.bdv.utils.capture;
+
+import bdv.tools.transformation.TransformedSource;
+import bdv.util.BdvHandle;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import de.embl.cba.bdv.utils.BdvUtils;
+import de.embl.cba.bdv.utils.io.BdvRaiXYZCTExporter;
+import de.embl.cba.bdv.utils.io.TiledTiffWriter;
+import de.embl.cba.bdv.utils.sources.ARGBConvertedRealSource;
+import de.embl.cba.bdv.utils.sources.LazySpimSource;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.algorithm.util.Grids;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.LinAlgHelpers;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Captures the current BDV view at a given pixel spacing,
+ * both as an RGB image (as displayed) and as raw data, one channel per visible source.
+ *
+ * The viewer state is read once, on construction, such that
+ * several captures can run at the same time.
+ * The capture is computed tile by tile on a shared thread pool; for each tile all
+ * sources are sampled and the finished tile is passed on to a {@link TileConsumer}.
+ * Thus, the capture can be streamed to disk without holding it in memory.
+ *
+ * Raw data keeps the pixel type of each source.
+ */
+public class TiledViewCapture
+{
+	public static final int DEFAULT_TILE_SIZE = 512;
+
+	private static ExecutorService sharedPool;
+
+	private final AffineTransform3D viewerTransform;
+	private final int t;
+	private final double dxy;
+	private final double viewerVoxelSpacing;
+	private final double pixelSpacing;
+	private final long captureWidth;
+	private final long captureHeight;
+	private final ArrayList< CapturedSource > capturedSources;
+	private int tileSize = DEFAULT_TILE_SIZE;
+
+	/**
+	 * Consumes the captured tiles; is called concurrently from several threads.
+	 */
+	public interface TileConsumer
+	{
+		/**
+		 * @param tile
+		 * 			position of the tile in the capture
+		 * @param argbTile
+		 * 			zero-min RGB data of the tile
+		 * @param rawTiles
+		 * 			zero-min raw data of the tile, one per raw channel
+		 */
+		void accept(
+				Interval tile,
+				RandomAccessibleInterval< ARGBType > argbTile,
+				List< RandomAccessibleInterval< ? extends RealType< ? > > > rawTiles ) throws IOException;
+	}
+
+	public TiledViewCapture(
+			BdvHandle bdv,
+			double pixelSpacing,
+			boolean checkSourceIntersectionWithViewerPlaneOnlyIn2D )
+	{
+		this.pixelSpacing = pixelSpacing;
+
+		viewerTransform = new AffineTransform3D();
+		bdv.getViewerPanel().state().getViewerTransform( viewerTransform );
+
+		viewerVoxelSpacing = BdvUtils.getViewerVoxelSpacing( bdv );
+		dxy = pixelSpacing / viewerVoxelSpacing;
+
+		captureWidth = ( long ) Math.ceil( BdvUtils.getBdvWindowWidth( bdv ) / dxy );
+		captureHeight = ( long ) Math.ceil( BdvUtils.getBdvWindowHeight( bdv ) / dxy );
+
+		t = bdv.getViewerPanel().state().getCurrentTimepoint();
+
+		capturedSources = new ArrayList<>();
+		for ( SourceAndConverter< ? > sourceAndConverter : BdvUtils.getVisibleSources( bdv ) )
+		{
+			final Source< ? > source = sourceAndConverter.getSpimSource();
+
+			if ( checkSourceIntersectionWithViewerPlaneOnlyIn2D )
+			{
+				if ( ! BdvUtils.isSourceIntersectingCurrentViewIn2D( bdv, source ) ) continue;
+			}
+			else
+			{
+				if ( ! BdvUtils.isSourceIntersectingCurrentView( bdv, source ) ) continue;
+			}
+
+			capturedSources.add( new CapturedSource( sourceAndConverter, BdvUtils.getDisplayRange( bdv, sourceAndConverter ) ) );
+		}
+	}
+
+	/**
+	 * Captures the given sources at the given viewer transform and time point,
+	 * e.g. for batch capturing several views.
+	 * The capture covers the BDV window, sampled with captureWidth x captureHeight pixels.
+	 *
+	 * @param bdv
+	 * 			only used for the window size and the display ranges
+	 * @param sources
+	 * @param viewerTransform
+	 * @param t
+	 * @param captureWidth
+	 * @param captureHeight
+	 */
+	public TiledViewCapture(
+			BdvHandle bdv,
+			List< ? extends SourceAndConverter< ? > > sources,
+			AffineTransform3D viewerTransform,
+			int t,
+			long captureWidth,
+			long captureHeight )
+	{
+		this.viewerTransform = viewerTransform.copy();
+		this.t = t;
+		this.captureWidth = captureWidth;
+		this.captureHeight = captureHeight;
+
+		viewerVoxelSpacing = getViewerVoxelSpacing( viewerTransform );
+		dxy = ( double ) BdvUtils.getBdvWindowWidth( bdv ) / captureWidth;
+		pixelSpacing = dxy * viewerVoxelSpacing;
+
+		capturedSources = new ArrayList<>();
+		for ( SourceAndConverter< ? > sourceAndConverter : sources )
+			capturedSources.add( new CapturedSource( sourceAndConverter, BdvUtils.getDisplayRange( bdv, sourceAndConverter ) ) );
+	}
+
+	/**
+	 * @return the physical size of one screen pixel
+	 */
+	static double getViewerVoxelSpacing( AffineTransform3D viewerTransform )
+	{
+		final double[] a = new double[ 3 ];
+		final double[] b = new double[ 3 ];
+		viewerTransform.applyInverse( a, new double[]{ 0, 0, 0 } );
+		viewerTransform.applyInverse( b, new double[]{ 1, 0, 0 } );
+		return LinAlgHelpers.distance( a, b );
+	}
+
+	/**
+	 * @param tileSize
+	 * 			must be a positive multiple of 16, as required for TIFF tiles
+	 */
+	public void setTileSize( int tileSize )
+	{
+		if ( tileSize <= 0 || tileSize % 16 != 0 )
+			throw new IllegalArgumentException( "Tile size must be a positive multiple of 16: " + tileSize );
+
+		this.tileSize = tileSize;
+	}
+
+	public long getCaptureWidth()
+	{
+		return captureWidth;
+	}
+
+	public long getCaptureHeight()
+	{
+		return captureHeight;
+	}
+
+	public int getNumSources()
+	{
+		return capturedSources.size();
+	}
+
+	/**
+	 * @return the raw pixel type of each source that has real valued raw data
+	 */
+	public List< RealType< ? > > getRawTypes()
+	{
+		final ArrayList< RealType< ? > > types = new ArrayList<>();
+		for ( CapturedSource capturedSource : capturedSources )
+			if ( capturedSource.rawType != null )
+				types.add( capturedSource.rawType );
+		return types;
+	}
+
+	public List< double[] > getRawDisplayRanges()
+	{
+		final ArrayList< double[] > displayRanges = new ArrayList<>();
+		for ( CapturedSource capturedSource : capturedSources )
+			if ( capturedSource.rawType != null )
+				displayRanges.add( capturedSource.displayRange );
+		return displayRanges;
+	}
+
+	public List< Boolean > getRawIsSegmentations()
+	{
+		final ArrayList< Boolean > isSegmentations = new ArrayList<>();
+		for ( CapturedSource capturedSource : capturedSources )
+			if ( capturedSource.rawType != null )
+				isSegmentations.add( ! capturedSource.interpolate );
+		return isSegmentations;
+	}
+
+	/**
+	 * @return pixel spacing of the capture in x, y and z
+	 */
+	public double[] getVoxelSpacing()
+	{
+		return new double[]{ pixelSpacing, pixelSpacing, viewerVoxelSpacing };
+	}
+
+	public static synchronized ExecutorService getSharedPool()
+	{
+		if ( sharedPool == null )
+			sharedPool = Executors.newFixedThreadPool(
+					Runtime.getRuntime().availableProcessors(),
+					runnable -> {
+						final Thread thread = new Thread( runnable, "view capture" );
+						thread.setDaemon( true );
+						return thread;
+					} );
+		return sharedPool;
+	}
+
+	public void capture( TileConsumer consumer ) throws IOException
+	{
+		capture( consumer, getSharedPool() );
+	}
+
+	/**
+	 * Captures all tiles on the given pool and waits until all of them are consumed.
+	 */
+	public void capture( TileConsumer consumer, ExecutorService executorService ) throws IOException
+	{
+		final List< Interval > tiles = Grids.collectAllContainedIntervals(
+				new long[]{ captureWidth, captureHeight },
+				new int[]{ tileSize, tileSize } );
+
+		final AtomicBoolean isStopped = new AtomicBoolean();
+		final ArrayList< Future< ? > > futures = new ArrayList<>();
+		for ( Interval tile : tiles )
+			futures.add( executorService.submit( () -> {
+				if ( ! isStopped.get() )
+					captureTile( tile, consumer );
+				return null;
+			} ) );
+
+		try
+		{
+			for ( Future< ? > future : futures )
+				future.get();
+		}
+		catch ( InterruptedException e )
+		{
+			stop( futures, isStopped );
+			Thread.currentThread().interrupt();
+			throw new IOException( "View capture was interrupted.", e );
+		}
+		catch ( ExecutionException e )
+		{
+			stop( futures, isStopped );
+			if ( e.getCause() instanceof IOException )
+				throw ( IOException ) e.getCause();
+			if ( e.getCause() instanceof RuntimeException )
+				throw ( RuntimeException ) e.getCause();
+			throw new RuntimeException( e.getCause() );
+		}
+	}
+
+	/**
+	 * Skips the tiles that have not started yet and waits for the others.
+	 * They are not interrupted, because an interrupt closes the file channel
+	 * that a consumer may be writing to; like this, the consumer's files
+	 * can still be closed properly once capture returns.
+	 */
+	private static void stop( List< Future< ? > > futures, AtomicBoolean isStopped )
+	{
+		isStopped.set( true );
+
+		boolean isInterrupted = false;
+		for ( Future< ? > future : futures )
+		{
+			while ( true )
+			{
+				try
+				{
+					future.get();
+					break;
+				}
+				catch ( InterruptedException e )
+				{
+					isInterrupted = true;
+				}
+				catch ( ExecutionException | CancellationException e )
+				{
+					break;
+				}
+			}
+		}
+
+		if ( isInterrupted )
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Samples all sources on a sparse grid of the capture,
+	 * such that the data cells that the capture will need are loaded into their caches.
+	 *
+	 * @param stride
+	 * 			distance of the sampled positions, in capture pixels
+	 */
+	public void prefetch( int stride )
+	{
+		final double[] canvasPosition = new double[ 3 ];
+		final double[] sourcePosition = new double[ 3 ];
+
+		for ( CapturedSource capturedSource : capturedSources )
+		{
+			if ( ! capturedSource.isPresent ) continue;
+
+			final RealRandomAccess< ? extends RealType< ? > > rawAccess = capturedSource.createRawAccess();
+			final RealRandomAccess< ? > displayAccess = capturedSource.createDisplayAccess();
+
+			for ( long y = 0; y < captureHeight; y += stride )
+			{
+				if ( Thread.currentThread().isInterrupted() ) return;
+
+				for ( long x = 0; x < captureWidth; x += stride )
+				{
+					canvasPosition[ 0 ] = x * dxy;
+					canvasPosition[ 1 ] = y * dxy;
+					capturedSource.viewerToSourceTransform.apply( canvasPosition, sourcePosition );
+
+					if ( rawAccess != null )
+					{
+						rawAccess.setPosition( sourcePosition );
+						rawAccess.get();
+					}
+
+					displayAccess.setPosition( sourcePosition );
+					displayAccess.get();
+				}
+			}
+		}
+	}
+
+	private void captureTile( Interval tile, TileConsumer consumer ) throws IOException
+	{
+		final int width = ( int ) tile.dimension( 0 );
+		final int height = ( int ) tile.dimension( 1 );
+
+		final int[] argb = new int[ width * height ];
+		final List< RandomAccessibleInterval< ? extends RealType< ? > > > rawTiles = new ArrayList<>();
+
+		final double[] canvasPosition = new double[ 3 ];
+		final double[] sourcePosition = new double[ 3 ];
+		final ARGBType argbType = new ARGBType();
+
+		for ( CapturedSource capturedSource : capturedSources )
+		{
+			if ( ! capturedSource.isPresent )
+			{
+				// a zero raw tile, such that the raw channels stay the same for all time points
+				if ( capturedSource.rawType != null )
+					rawTiles.add( capturedSource.createRawImg( width, height ) );
+				continue;
+			}
+
+			final RealRandomAccess< ? extends RealType< ? > > rawAccess = capturedSource.createRawAccess();
+			final RealRandomAccess< ? > displayAccess = capturedSource.createDisplayAccess();
+
+			Cursor< ? extends RealType< ? > > rawCursor = null;
+			if ( rawAccess != null )
+			{
+				final Img< ? extends RealType< ? > > rawTile = capturedSource.createRawImg( width, height );
+				rawTiles.add( rawTile );
+				rawCursor = rawTile.cursor(); // flat iteration order, as for array images
+			}
+
+			int i = 0;
+			for ( int y = 0; y < height; y++ )
+			{
+				for ( int x = 0; x < width; x++, i++ )
+				{
+					// position on the canvas, in calibrated units
+					canvasPosition[ 0 ] = ( tile.min( 0 ) + x ) * dxy;
+					canvasPosition[ 1 ] = ( tile.min( 1 ) + y ) * dxy;
+					capturedSource.viewerToSourceTransform.apply( canvasPosition, sourcePosition );
+
+					if ( rawCursor != null )
+					{
+						rawAccess.setPosition( sourcePosition );
+						copyValue( rawAccess.get(), rawCursor.next() );
+					}
+
+					displayAccess.setPosition( sourcePosition );
+					final Object pixel = displayAccess.get();
+					if ( pixel instanceof ARGBType )
+						argbType.set( ( ARGBType ) pixel );
+					else
+						capturedSource.converter.convert( pixel, argbType );
+
+					argb[ i ] = add( argb[ i ], argbType.get() );
+				}
+			}
+		}
+
+		consumer.accept( tile, ArrayImgs.argbs( argb, width, height ), rawTiles );
+	}
+
+	private static int add( int argb0, int argb1 )
+	{
+		final int a = Math.min( 255, ( argb0 >>> 24 ) + ( argb1 >>> 24 ) );
+		final int r = Math.min( 255, ( ( argb0 >> 16 ) & 0xff ) + ( ( argb1 >> 16 ) & 0xff ) );
+		final int g = Math.min( 255, ( ( argb0 >> 8 ) & 0xff ) + ( ( argb1 >> 8 ) & 0xff ) );
+		final int b = Math.min( 255, ( argb0 & 0xff ) + ( argb1 & 0xff ) );
+		return ( a << 24 ) | ( r << 16 ) | ( g << 8 ) | b;
+	}
+
+	/**
+	 * Captures into memory. ImageJ requires one pixel type for all channels,
+	 * thus the raw data keeps the pixel type if all sources share it and is
+	 * converted to float otherwise.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public ViewCaptureResult captureInMemory( String voxelUnit ) throws IOException
+	{
+		if ( capturedSources.isEmpty() ) return null;
+
+		final RealType commonType = getCommonRawType();
+
+		final Img< ARGBType > argbCapture = ArrayImgs.argbs( captureWidth, captureHeight );
+		final ArrayList< RandomAccessibleInterval > rawCaptures = new ArrayList<>();
+		for ( int c = 0; c < getRawTypes().size(); c++ )
+			rawCaptures.add( new ArrayImgFactory( ( NativeType ) commonType ).create( captureWidth, captureHeight ) );
+
+		capture( ( tile, argbTile, rawTiles ) -> {
+			copy( argbTile, Views.interval( argbCapture, tile ) );
+			for ( int c = 0; c < rawTiles.size(); c++ )
+				copyReal( rawTiles.get( c ), Views.interval( rawCaptures.get( c ), tile ) );
+		} );
+
+		final double[] voxelSpacing = getVoxelSpacing();
+		final ViewCaptureResult result = new ViewCaptureResult();
+		result.rgbImage = BdvViewCaptures.createRgbImage( voxelUnit, argbCapture, voxelSpacing );
+		if ( ! rawCaptures.isEmpty() )
+			result.rawImagesStack = BdvViewCaptures.createCompositeImage(
+					voxelSpacing, voxelUnit, rawCaptures, new ArrayList<>(), new ArrayList<>( getRawDisplayRanges() ), new ArrayList<>( getRawIsSegmentations() ) );
+		return result;
+	}
+
+	/**
+	 * Streams the capture into tiled TIFF files, without holding it in memory.
+	 * The raw data file has one page per source, each in the pixel type of the source.
+	 * The files can be opened in Fiji with Bio-Formats, but not with File &gt; Open,
+	 * see {@link TiledTiffWriter}.
+	 *
+	 * @param rgbFile
+	 * @param rawFile
+	 * 			may be null, for only writing the RGB image
+	 */
+	public void captureToTiff( File rgbFile, File rawFile ) throws IOException
+	{
+		final ArrayList< Type< ? > > rgbTypes = new ArrayList<>();
+		rgbTypes.add( new ARGBType() );
+
+		try ( TiledTiffWriter rgbWriter = new TiledTiffWriter( rgbFile, captureWidth, captureHeight, tileSize, tileSize, rgbTypes );
+			  TiledTiffWriter rawWriter = rawFile == null ? null : new TiledTiffWriter( rawFile, captureWidth, captureHeight, tileSize, tileSize, getRawTypes() ) )
+		{
+			capture( ( tile, argbTile, rawTiles ) -> {
+				rgbWriter.writeTile( 0, tile, argbTile );
+				if ( rawWriter != null )
+					for ( int c = 0; c < rawTiles.size(); c++ )
+						rawWriter.writeTile( c, tile, rawTiles.get( c ) );
+			} );
+		}
+	}
+
+	/**
+	 * Writes the raw data as BDV HDF5. The data is rendered lazily,
+	 * block-wise, while the writer reads it.
+	 * Channels are converted to float if the sources have different pixel types.
+	 *
+	 * @param filePathWithoutExtension
+	 * @param voxelUnit
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public void captureRawToBdvHdf5( String filePathWithoutExtension, String voxelUnit )
+	{
+		final List< RandomAccessibleInterval< ? extends RealType< ? > > > channels = getLazyRawCaptures();
+		if ( channels.isEmpty() ) return;
+
+		final RealType commonType = getCommonRawType();
+		final ArrayList< RandomAccessibleInterval > xyzChannels = new ArrayList<>();
+		for ( RandomAccessibleInterval channel : channels )
+		{
+			RandomAccessibleInterval converted = channel;
+			if ( ! Util.getTypeFromInterval( channel ).getClass().equals( commonType.getClass() ) )
+				converted = Converters.convert( channel, ( i, o ) -> copyValue( ( RealType< ? > ) i, ( RealType< ? > ) o ), ( RealType ) commonType.createVariable() );
+			xyzChannels.add( Views.addDimension( converted, 0, 0 ) );
+		}
+
+		final RandomAccessibleInterval xyzct = Views.addDimension( Views.stack( xyzChannels ), 0, 0 );
+
+		new BdvRaiXYZCTExporter().export(
+				xyzct,
+				"capture",
+				filePathWithoutExtension,
+				getVoxelSpacing(),
+				voxelUnit,
+				new double[ 3 ] );
+	}
+
+	/**
+	 * @return one lazily rendered, cached image per raw channel
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public List< RandomAccessibleInterval< ? extends RealType< ? > > > getLazyRawCaptures()
+	{
+		final ArrayList< RandomAccessibleInterval< ? extends RealType< ? > > > captures = new ArrayList<>();
+
+		for ( CapturedSource capturedSource : capturedSources )
+		{
+			if ( capturedSource.rawType == null ) continue;
+
+			final CellLoader loader = cell -> {
+				// cells of absent time points stay zero
+				if ( ! capturedSource.isPresent ) return;
+
+				final RealRandomAccess< ? extends RealType< ? > > access = capturedSource.createRawAccess();
+				final double[] canvasPosition = new double[ 3 ];
+				final double[] sourcePosition = new double[ 3 ];
+				final Cursor< ? extends RealType< ? > > cursor = Views.flatIterable( ( RandomAccessibleInterval< ? extends RealType< ? > > ) cell ).localizingCursor();
+				while ( cursor.hasNext() )
+				{
+					final RealType< ? > value = cursor.next();
+					canvasPosition[ 0 ] = cursor.getLongPosition( 0 ) * dxy;
+					canvasPosition[ 1 ] = cursor.getLongPosition( 1 ) * dxy;
+					capturedSource.viewerToSourceTransform.apply( canvasPosition, sourcePosition );
+					access.setPosition( sourcePosition );
+					copyValue( access.get(), value );
+				}
+			};
+
+			captures.add( new ReadOnlyCachedCellImgFactory(
+					ReadOnlyCachedCellImgOptions.options().cellDimensions( tileSize, tileSize ) )
+					.create( new long[]{ captureWidth, captureHeight }, ( NativeType ) capturedSource.rawType, loader ) );
+		}
+
+		return captures;
+	}
+
+	private RealType< ? > getCommonRawType()
+	{
+		final List< RealType< ? > > types = getRawTypes();
+		if ( types.isEmpty() ) return new FloatType();
+
+		for ( RealType< ? > type : types )
+			if ( ! type.getClass().equals( types.get( 0 ).getClass() ) )
+				return new FloatType();
+
+		return types.get( 0 );
+	}
+
+	private static void copy( RandomAccessibleInterval< ARGBType > source, RandomAccessibleInterval< ARGBType > target )
+	{
+		final Cursor< ARGBType > sourceCursor = Views.flatIterable( source ).cursor();
+		final Cursor< ARGBType > targetCursor = Views.flatIterable( target ).cursor();
+		while ( sourceCursor.hasNext() )
+			targetCursor.next().set( sourceCursor.next() );
+	}
+
+	private static void copyReal( RandomAccessibleInterval< ? extends RealType< ? > > source, RandomAccessibleInterval< ? extends RealType< ? > > target )
+	{
+		final Cursor< ? extends RealType< ? > > sourceCursor = Views.flatIterable( source ).cursor();
+		final Cursor< ? extends RealType< ? > > targetCursor = Views.flatIterable( target ).cursor();
+		while ( sourceCursor.hasNext() )
+			copyValue( sourceCursor.next(), targetCursor.next() );
+	}
+
+	/**
+	 * Lazy sources are not present until they are open,
+	 * which must not be captured as empty channels.
+	 */
+	private static void waitUntilOpen( Source< ? > source )
+	{
+		while ( source instanceof TransformedSource || source instanceof ARGBConvertedRealSource )
+		{
+			if ( source instanceof TransformedSource )
+				source = ( ( TransformedSource< ? > ) source ).getWrappedSource();
+			else
+				source = ( ( ARGBConvertedRealSource ) source ).getWrappedSource();
+		}
+
+		if ( source instanceof LazySpimSource )
+			( ( LazySpimSource< ? > ) source ).waitUntilOpen();
+	}
+
+	/**
+	 * Copies integer values exactly, e.g. 64 bit labels above 2^53,
+	 * which would be rounded when copied via double.
+	 */
+	private static void copyValue( RealType< ? > input, RealType< ? > output )
+	{
+		if ( input instanceof IntegerType && output instanceof IntegerType )
+			( ( IntegerType< ? > ) output ).setInteger( ( ( IntegerType< ? > ) input ).getIntegerLong() );
+		else
+			output.setReal( input.getRealDouble() );
+	}
+
+	/**
+	 * Everything that is needed to sample one source, read from the viewer state once.
+	 */
+	private class CapturedSource
+	{
+		final Source< ? > source;
+		final Converter converter;
+		final int level;
+		final AffineTransform3D viewerToSourceTransform;
+		final boolean interpolate;
+		final double[] displayRange;
+		final boolean isPresent;
+
+		/**
+		 * Null if the source does not provide real valued raw data.
+		 */
+		final RealType< ? > rawType;
+
+		CapturedSource( SourceAndConverter< ? > sourceAndConverter, double[] displayRange )
+		{
+			this.source = sourceAndConverter.getSpimSource();
+			this.converter = sourceAndConverter.getConverter();
+			this.displayRange = displayRange;
+			this.level = BdvUtils.getLevel( source, pixelSpacing );
+			this.interpolate = BdvViewCaptures.isInterpolate( source );
+			waitUntilOpen( source );
+			this.isPresent = source.isPresent( t );
+
+			final AffineTransform3D sourceTransform = BdvUtils.getSourceTransform( source, t, level );
+			viewerToSourceTransform = new AffineTransform3D();
+			viewerToSourceTransform.preConcatenate( viewerTransform.inverse() );
+			viewerToSourceTransform.preConcatenate( sourceTransform.inverse() );
+
+			rawType = getRawType();
+		}
+
+		private RealType< ? > getRawType()
+		{
+			try
+			{
+				final RandomAccessibleInterval< ? > raw = BdvUtils.getRealTypeNonVolatileRandomAccessibleInterval( source, t, level );
+				final Object type = Util.getTypeFromInterval( raw );
+				if ( ! ( type instanceof RealType ) ) return null;
+				if ( type instanceof NativeType ) return ( RealType< ? > ) ( ( RealType< ? > ) type ).createVariable();
+				return new FloatType();
+			}
+			catch ( RuntimeException e )
+			{
+				// e.g. volatile only sources
+				return null;
+			}
+		}
+
+		RealRandomAccess< ? extends RealType< ? > > createRawAccess()
+		{
+			if ( rawType == null ) return null;
+			return BdvViewCaptures.getInterpolatedRealRandomAccess( t, source, level, interpolate );
+		}
+
+		RealRandomAccess< ? > createDisplayAccess()
+		{
+			return source.getInterpolatedSource( t, level, interpolate ? Interpolation.NLINEAR : Interpolation.NEARESTNEIGHBOR ).realRandomAccess();
+		}
+
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		Img< ? extends RealType< ? > > createRawImg( int width, int height )
+		{
+			return new ArrayImgFactory( ( NativeType ) rawType ).create( width, height );
+		}
+	}
+}
@@ -46,6 +46,7 @@ package de.embl.cba.bdv.utils.converters;
 
 import bdv.viewer.TimePointListener;
 import de.embl.cba.bdv.utils.selection.Segment;
+import de.embl.cba.bdv.utils.selection.TimePointAndLabelSet;
 import de.embl.cba.tables.color.LazyLabelsARGBConverter;
 import net.imglib2.Volatile;
 import net.imglib2.converter.Converter;
@@ -53,7 +54,6 @@ import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.volatiles.VolatileARGBType;
 
-import java.util.HashSet;
 import java.util.Set;
 
 public class SelectableVolatileARGBConverter
@@ -66,9 +66,14 @@ public class SelectableVolatileARGBConverter
 	private Converter< RealType, VolatileARGBType > wrappedConverter;
 	private double brightnessNotSelected;
 	private SelectionMode selectionMode;
-	private ARGBType selectionColor;
-	private int currentTimePoint;
-	private Set< ? extends Segment > selected;
+	private volatile ARGBType selectionColor;
+	private volatile int currentTimePoint;
+	private volatile TimePointAndLabelSet selected;
+
+	/**
+	 * Color channel value (0-255) to dimmed value; or null for not dimming.
+	 */
+	private volatile int[] dimmedChannelValues;
 
 	public enum SelectionMode
 	{
@@ -88,7 +93,7 @@ public class SelectableVolatileARGBConverter
 	{
 		wrappedConverter = realARGBConverter;
 		currentTimePoint = 0;
-		selected = new HashSet<>( );
+		selected = TimePointAndLabelSet.EMPTY;
 		setSelectionMode( SelectionMode.DimNotSelected );
 	}
 
@@ -112,8 +117,9 @@ public class SelectableVolatileARGBConverter
 	private void setOutputColor( final RealType input,
 								 final VolatileARGBType output )
 	{
+		final double label = input.getRealDouble();
 
-		if ( input.getRealDouble() == BACKGROUND )
+		if ( label == BACKGROUND )
 		{
 			output.set( 0 );
 			return;
@@ -121,45 +127,72 @@ public class SelectableVolatileARGBConverter
 
 		wrappedConverter.convert( input, output );
 
-		final boolean selected = isSelected( input );
-
-		if ( ! selected )
+		if ( isSelected( label ) )
 		{
-			output.get().mul( brightnessNotSelected );
+			final ARGBType selectionColor = this.selectionColor;
+			if ( selectionColor != null )
+				output.set( selectionColor.get() );
 		}
-		else if ( selected && selectionColor != null )
+		else
 		{
-			output.set( selectionColor.get() );
+			final int[] dimmed = dimmedChannelValues;
+			if ( dimmed != null )
+			{
+				final int value = output.get().get();
+				output.set(
+						( dimmed[ value >>> 24 ] << 24 )
+						| ( dimmed[ ( value >> 16 ) & 0xff ] << 16 )
+						| ( dimmed[ ( value >> 8 ) & 0xff ] << 8 )
+						| dimmed[ value & 0xff ] );
+			}
 		}
-
 	}
 
-	private boolean isSelected( final RealType input )
+	private boolean isSelected( final double label )
 	{
-		final double label = input.getRealDouble();
+		final TimePointAndLabelSet selected = this.selected;
 
 		if ( selected.size() == 0 ) return true; // TODO: Does this make sense?
 
-		for ( Segment segment : selected )
-		{
-			if ( segment.timePoint() == currentTimePoint
-					&& segment.label() == label )
-			{
-				return true;
-			}
-		}
-
-		return false;
+		return selected.contains( currentTimePoint, label );
 	}
 
 	public void setSelected( Set< ? extends Segment > selected )
+	{
+		setSelected( TimePointAndLabelSet.of( selected ) );
+	}
+
+	/**
+	 * Replaces the selection, atomically for concurrent rendering threads.
+	 */
+	public void setSelected( TimePointAndLabelSet selected )
 	{
 		this.selected = selected;
 	}
 
+	public TimePointAndLabelSet getSelected()
+	{
+		return selected;
+	}
+
 	public void setBrightnessNotSelectedValues( final double brightnessNotSelected )
 	{
 		this.brightnessNotSelected = brightnessNotSelected;
+		updateDimmedChannelValues();
+	}
+
+	private void updateDimmedChannelValues()
+	{
+		if ( brightnessNotSelected == 1.0 )
+		{
+			dimmedChannelValues = null;
+			return;
+		}
+
+		final int[] dimmed = new int[ 256 ];
+		for ( int i = 0; i < 256; i++ )
+			dimmed[ i ] = Math.min( 255, ( int ) ( i * brightnessNotSelected ) );
+		dimmedChannelValues = dimmed;
 	}
 
 	public void setWrappedConverter( Converter< RealType, VolatileARGBType > converter )
@@ -201,6 +234,7 @@ public class SelectableVolatileARGBConverter
 				break;
 		}
 
+		updateDimmedChannelValues();
 	}
 
 	@Override
@@ -68,11 +68,38 @@ public class BdvRaiXYZCTExporter< T extends RealType< T >  & NativeType< T > >
 
 	private ProgressWriter progressWriter = new ProgressWriterBdv();
 
+	private int numThreads = PluginHelper.numThreads();
+
+	private boolean alwaysLoopBack = false;
+
 	public void setProgressWriter( ProgressWriter progressWriter )
 	{
 		this.progressWriter = progressWriter;
 	}
 
+	/**
+	 * The total number of threads: one of them writes the blocks into the file,
+	 * the others compute them (at least one, also if numThreads is 1).
+	 */
+	public void setNumThreads( int numThreads )
+	{
+		if ( numThreads < 1 )
+			throw new IllegalArgumentException( "Number of threads must be positive: " + numThreads );
+
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Whether the lower resolution levels are always computed from the
+	 * already written previous level rather than from the image.
+	 * Use this for lazily computed images, e.g. a resampled view,
+	 * which otherwise would be computed again for the first lower level.
+	 */
+	public void setAlwaysLoopBack( boolean alwaysLoopBack )
+	{
+		this.alwaysLoopBack = alwaysLoopBack;
+	}
+
 	public void export(
 			RandomAccessibleInterval< T > raiXYZCT,
 			String name,
@@ -136,7 +163,7 @@ public class BdvRaiXYZCTExporter< T extends RealType< T >  & NativeType< T > >
 		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
 			perSetupExportMipmapInfo.put( setup.getId(), mipmapInfo );
 
-		final int numCellCreatorThreads = Math.max( 1, PluginHelper.numThreads() - 1 );
+		final int numCellCreatorThreads = Math.max( 1, numThreads - 1 );
 		ExportScalePyramid.LoopbackHeuristic loopbackHeuristic =
 				( originalImg,
 				  factorsToOriginalImg,
@@ -147,6 +174,9 @@ public class BdvRaiXYZCTExporter< T extends RealType< T >  & NativeType< T > >
 			if ( previousLevel < 0 )
 				return false;
 
+			if ( alwaysLoopBack )
+				return true;
+
 			if ( Intervals.numElements( factorsToOriginalImg ) / Intervals.numElements( factorsToPreviousLevel ) >= 8 )
 				return true;
 
@@ -33,8 +33,13 @@ import bdv.viewer.Interpolation;
 import de.embl.cba.bdv.utils.BdvUtils;
 import de.embl.cba.bdv.utils.Logger;
 import ij.ImagePlus;
+import ij.VirtualStack;
 import ij.io.FileSaver;
 import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
 import de.embl.cba.util.CopyUtils;
 import itc.utilities.IntervalUtils;
 import itc.utilities.VectorUtils;
@@ -49,11 +54,19 @@ import net.imglib2.realtransform.RealViews;
 import net.imglib2.realtransform.Scale3D;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType< T > >
 {
@@ -66,6 +79,8 @@ public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType<
 	private Interval transformedSourceInterval;
 	private AffineTransform3D sourceTransform;
 	private Scale3D scaleToVoxelGrid;
+	private boolean isStreaming = false;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
 
 	public enum FileFormat
 	{
@@ -90,6 +105,23 @@ public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType<
 		imageTitle = "image";
 	}
 
+	/**
+	 * In streaming mode the resampled image is not held in memory, but
+	 * computed block by block (Bdv) or plane by plane (Tiff) while it is
+	 * written, such that images larger than the memory can be converted.
+	 *
+	 * @param isStreaming
+	 */
+	public void setStreaming( boolean isStreaming )
+	{
+		this.isStreaming = isStreaming;
+	}
+
+	public void setNumThreads( int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
 	public void run( FileFormat fileFormat, String pathWithoutExtension )
 	{
 		Logger.log( "Target voxel spacing [" + voxelUnit + "]: " + VectorUtils.toString( targetVoxelSpacing ) );
@@ -97,11 +129,18 @@ public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType<
 		Logger.log( "Source voxel spacing [" + voxelUnit + "]: " + VectorUtils.toString( sourceVoxelSpacing ) );
 		Logger.log( "Transformed source interval [voxel]: " + IntervalUtils.toString( transformedSourceInterval ) );
 
-		Logger.log( "Creating image..." );
 		final RandomAccessibleInterval< T > transformedRai =
-				createTransformedRai( interpolatedSource, sourceTransform, transformedSourceInterval );
+				createTransformedView( interpolatedSource, sourceTransform, transformedSourceInterval );
 
-		save( transformedRai, fileFormat, pathWithoutExtension );
+		if ( isStreaming )
+		{
+			save( transformedRai, fileFormat, pathWithoutExtension );
+		}
+		else
+		{
+			Logger.log( "Creating image..." );
+			save( CopyUtils.copyVolumeRaiMultiThreaded( transformedRai, numThreads ), fileFormat, pathWithoutExtension );
+		}
 	}
 
 	private void save( RandomAccessibleInterval< T > transformedRai, FileFormat fileFormat, String pathWithoutExtension )
@@ -109,11 +148,14 @@ public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType<
 		switch ( fileFormat ){
 			case Tiff:
 				Logger.log( "Saving as Tiff..." );
-				saveAsTiff( transformedRai, imageTitle, targetVoxelSpacing, voxelUnit, pathWithoutExtension );
+				if ( isStreaming )
+					saveAsTiffPlaneWise( transformedRai, imageTitle, targetVoxelSpacing, voxelUnit, pathWithoutExtension, numThreads );
+				else
+					saveAsTiff( transformedRai, imageTitle, targetVoxelSpacing, voxelUnit, pathWithoutExtension );
 				break;
 			case Bdv:
 				Logger.log( "Saving as Bdv..." );
-				saveAsBdv( transformedRai, imageTitle, targetVoxelSpacing, voxelUnit, pathWithoutExtension );
+				saveAsBdv( transformedRai, imageTitle, targetVoxelSpacing, voxelUnit, pathWithoutExtension, numThreads, isStreaming );
 				break;
 			default:
 		}
@@ -192,14 +234,21 @@ public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType<
 			String imageTitle,
 			double[] voxelSpacing,
 			String voxelUnit,
-			String pathWithoutExtension )
+			String pathWithoutExtension,
+			int numThreads,
+			boolean isLazy )
 	{
 		final RandomAccessibleInterval< T > raiXYZCT =
 				Views.addDimension(
 						Views.addDimension( rai, 0, 0 ),
 						0, 0 );
 
-		new BdvRaiXYZCTExporter< T >().export(
+		// the exporter reads the image block by block, so a lazy rai is never held in memory;
+		// the lower resolution levels are computed from the written data, such that it is only resampled once
+		final BdvRaiXYZCTExporter< T > exporter = new BdvRaiXYZCTExporter<>();
+		exporter.setNumThreads( numThreads );
+		exporter.setAlwaysLoopBack( isLazy );
+		exporter.export(
 				raiXYZCT,
 				imageTitle,
 				pathWithoutExtension,
@@ -219,8 +268,33 @@ public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType<
 		new FileSaver( imagePlus ).saveAsTiff( pathWithoutExtension + ".tif" );
 	}
 
+	/**
+	 * Writes the rai as an ImageJ Tiff stack, computing one plane at a time
+	 * with numThreads threads.
+	 */
 	private static < T extends RealType< T > & NativeType< T > >
-	RandomAccessibleInterval< T > createTransformedRai(
+	void saveAsTiffPlaneWise( RandomAccessibleInterval< T > rai,
+							  String imageTitle,
+							  double[] voxelSpacing,
+							  String voxelUnit,
+							  String pathWithoutExtension,
+							  int numThreads )
+	{
+		final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
+		try
+		{
+			final ImagePlus imagePlus = new ImagePlus( imageTitle, new PlaneWiseVirtualStack<>( rai, numThreads, executorService ) );
+			imagePlus.setCalibration( createCalibration( voxelUnit, voxelSpacing ) );
+			new FileSaver( imagePlus ).saveAsTiffStack( pathWithoutExtension + ".tif" );
+		}
+		finally
+		{
+			executorService.shutdown();
+		}
+	}
+
+	private static < T extends RealType< T > & NativeType< T > >
+	RandomAccessibleInterval< T > createTransformedView(
 			RealRandomAccessible< T > source,
 			AffineTransform3D transform,
 			Interval interval )
@@ -230,10 +304,109 @@ public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType<
 
 		final RandomAccessible< T > transformedRastered = Views.raster( transformed );
 
-		final RandomAccessibleInterval< T > transformedRasteredInterval =
-				Views.interval( transformedRastered, interval );
+		return Views.interval( transformedRastered, interval );
+	}
 
-		return CopyUtils.copyVolumeRaiMultiThreaded( transformedRasteredInterval, 4 );
+	/**
+	 * The z planes of a 3D rai, computed when ImageJ requests them,
+	 * e.g. one after the other while saving.
+	 * Integer types up to 16 bit are kept, other types are converted to float.
+	 */
+	private static class PlaneWiseVirtualStack< T extends RealType< T > & NativeType< T > > extends VirtualStack
+	{
+		private final RandomAccessibleInterval< T > rai;
+		private final int numThreads;
+		private final ExecutorService executorService;
+		private final int width;
+		private final int height;
+		private final int bitDepth;
+
+		PlaneWiseVirtualStack( RandomAccessibleInterval< T > rai, int numThreads, ExecutorService executorService )
+		{
+			super( ( int ) rai.dimension( 0 ), ( int ) rai.dimension( 1 ), null, null );
+			this.rai = Views.zeroMin( rai );
+			this.numThreads = numThreads;
+			this.executorService = executorService;
+			this.width = ( int ) rai.dimension( 0 );
+			this.height = ( int ) rai.dimension( 1 );
+
+			final T type = Util.getTypeFromInterval( rai );
+			if ( type instanceof UnsignedByteType )
+				bitDepth = 8;
+			else if ( type instanceof UnsignedShortType )
+				bitDepth = 16;
+			else
+				bitDepth = 32;
+		}
+
+		@Override
+		public int getSize()
+		{
+			return ( int ) rai.dimension( 2 );
+		}
+
+		@Override
+		public String getSliceLabel( int n )
+		{
+			return null;
+		}
+
+		@Override
+		public ImageProcessor getProcessor( int n )
+		{
+			final ImageProcessor processor;
+			switch ( bitDepth )
+			{
+				case 8: processor = new ByteProcessor( width, height ); break;
+				case 16: processor = new ShortProcessor( width, height ); break;
+				default: processor = new FloatProcessor( width, height );
+			}
+
+			final int z = n - 1;
+			final int rowsPerTask = ( height + numThreads - 1 ) / numThreads;
+			final ArrayList< Callable< Void > > tasks = new ArrayList<>();
+			for ( int minY = 0; minY < height; minY += rowsPerTask )
+			{
+				final int startY = minY;
+				final int endY = Math.min( height, minY + rowsPerTask );
+				tasks.add( () -> {
+					final RandomAccess< T > access = rai.randomAccess();
+					for ( int y = startY; y < endY; y++ )
+					{
+						access.setPosition( new long[]{ 0, y, z } );
+						for ( int x = 0; x < width; x++ )
+						{
+							processor.setf( x, y, access.get().getRealFloat() );
+							access.fwd( 0 );
+						}
+					}
+					return null;
+				} );
+			}
+
+			try
+			{
+				for ( Future< Void > future : executorService.invokeAll( tasks ) )
+					future.get();
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException( e );
+			}
+			catch ( ExecutionException e )
+			{
+				throw new RuntimeException( e.getCause() );
+			}
+
+			return processor;
+		}
+
+		@Override
+		public int getBitDepth()
+		{
+			return bitDepth;
+		}
 	}
 
 	public static ImagePlus asImagePlus( RandomAccessibleInterval raiXYZ,
@@ -246,15 +419,19 @@ public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType<
 						Views.addDimension( raiXYZ, 0, 0 ),
 						2, 3 ), title );
 
+		imp.setCalibration( createCalibration( voxelUnit, voxelSpacing ) );
+
+		return imp;
+	}
+
+	private static Calibration createCalibration( String voxelUnit, double[] voxelSpacing )
+	{
 		final Calibration calibration = new Calibration();
 		calibration.pixelWidth = voxelSpacing[ 0 ];
 		calibration.pixelHeight = voxelSpacing[ 1 ];
 		calibration.pixelDepth = voxelSpacing[ 2 ];
 		calibration.setUnit( voxelUnit );
-
-		imp.setCalibration( calibration );
-
-		return imp;
+		return calibration;
 	}
 
 	private void setTargetVoxelSpacing( SpimData medData, int setupId )
@@ -306,6 +483,9 @@ public class BdvToVoxelGridImageConverter< T extends RealType< T > & NativeType<
 		final BdvToVoxelGridImageConverter< T > converter
 				= new BdvToVoxelGridImageConverter< T >( args[ 0 ], args[ 1 ], InterpolationType.valueOf( args[ 2 ] ) );
 
+		if ( args.length > 5 )
+			converter.setStreaming( Boolean.parseBoolean( args[ 5 ] ) );
+
 		converter.run( FileFormat.valueOf( args[ 3 ] ), args[ 4 ]);
 	}
 
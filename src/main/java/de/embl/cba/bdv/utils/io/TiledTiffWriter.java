@@ -0,0 +1,547 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.bdv.utils.io;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes 2D images tile by tile into an uncompressed, tiled TIFF file,
+ * such that images larger than the available memory can be written.
+ *
+ * Each page of the file can have its own pixel type.
+ * Tiles can be written concurrently and in any order;
+ * the image file directories are written on {@link #close()}.
+ * If writing is stopped early, {@link #close(int)} keeps only the first pages
+ * and {@link #abort()} deletes the file.
+ * BigTIFF is used if the file could exceed 4 GB.
+ *
+ * Note that ImageJ's own TIFF reader (File &gt; Open) cannot read tiled TIFF files;
+ * open them with Bio-Formats (File &gt; Import &gt; Bio-Formats) instead.
+ * Bio-Formats does not support 64-bit integer pages.
+ */
+public class TiledTiffWriter implements Closeable
+{
+	private static final int UNSIGNED = 1;
+	private static final int SIGNED = 2;
+	private static final int FLOAT = 3;
+
+	private static final short TYPE_SHORT = 3;
+	private static final short TYPE_LONG = 4;
+	private static final short TYPE_LONG8 = 16;
+
+	private final File file;
+	private final FileChannel channel;
+	private final long width;
+	private final long height;
+	private final int tileWidth;
+	private final int tileHeight;
+	private final int numTilesX;
+	private final int numTilesY;
+	private final boolean isBigTiff;
+
+	private final Page[] pages;
+
+	private final AtomicLong endOfFile;
+
+	/**
+	 * @param file
+	 * @param width
+	 * @param height
+	 * @param tileWidth
+	 * 			must be a multiple of 16
+	 * @param tileHeight
+	 * 			must be a multiple of 16
+	 * @param pageTypes
+	 * 			the pixel type of each page; {@link ARGBType} pages are written as 8-bit RGB,
+	 * 			the signed and unsigned 8, 16, 32 and 64-bit integer types and {@link DoubleType}
+	 * 			keep their type, and all other real types are written as 32-bit float.
+	 * @throws IOException
+	 */
+	public TiledTiffWriter(
+			File file,
+			long width,
+			long height,
+			int tileWidth,
+			int tileHeight,
+			List< ? extends Type< ? > > pageTypes ) throws IOException
+	{
+		if ( tileWidth % 16 != 0 || tileHeight % 16 != 0 )
+			throw new IllegalArgumentException( "Tile dimensions must be multiples of 16: " + tileWidth + ", " + tileHeight );
+
+		this.file = file;
+		this.width = width;
+		this.height = height;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.numTilesX = ( int ) ( ( width + tileWidth - 1 ) / tileWidth );
+		this.numTilesY = ( int ) ( ( height + tileHeight - 1 ) / tileHeight );
+
+		pages = new Page[ pageTypes.size() ];
+		long numBytes = 0;
+		for ( int i = 0; i < pages.length; i++ )
+		{
+			pages[ i ] = new Page( pageTypes.get( i ), numTilesX * numTilesY );
+			numBytes += ( long ) numTilesX * numTilesY * pages[ i ].tileNumBytes( tileWidth, tileHeight );
+		}
+
+		// leave some room for the image file directories
+		isBigTiff = numBytes > 0xFFFFFFFFL - 100_000_000L;
+
+		channel = FileChannel.open( file.toPath(),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING );
+
+		endOfFile = new AtomicLong( isBigTiff ? 16 : 8 );
+	}
+
+	public boolean isBigTiff()
+	{
+		return isBigTiff;
+	}
+
+	/**
+	 * Writes one tile. The tile must be aligned to the tile grid;
+	 * tiles at the right and bottom border may be smaller than the tile size.
+	 *
+	 * This method is thread safe.
+	 *
+	 * @param page
+	 * @param tile
+	 * 			position of the tile in the image
+	 * @param data
+	 * 			the data of the tile; only its dimensions are used, not its position
+	 */
+	public void writeTile( int page, Interval tile, RandomAccessibleInterval< ? > data ) throws IOException
+	{
+		if ( tile.min( 0 ) % tileWidth != 0 || tile.min( 1 ) % tileHeight != 0 )
+			throw new IllegalArgumentException( "Tile is not aligned to the tile grid." );
+
+		final Page p = pages[ page ];
+		final int tileIndex = ( int ) ( tile.min( 1 ) / tileHeight * numTilesX + tile.min( 0 ) / tileWidth );
+		final ByteBuffer buffer = p.encode( data, tileWidth, tileHeight );
+
+		final long numBytes = buffer.remaining();
+		final long offset = endOfFile.getAndAdd( numBytes );
+		long position = offset;
+		while ( buffer.hasRemaining() )
+			position += channel.write( buffer, position );
+
+		synchronized ( p )
+		{
+			p.tileOffsets[ tileIndex ] = offset;
+			p.tileByteCounts[ tileIndex ] = numBytes;
+		}
+	}
+
+	/**
+	 * Writes the image file directories and closes the file.
+	 * Tiles that have not been written are written as zeros.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		close( pages.length );
+	}
+
+	/**
+	 * Writes the image file directories of the first pages and closes the file.
+	 * The other pages are dropped and the file is truncated after the last tile
+	 * of the kept pages. Tiles of the kept pages that have not been written are
+	 * written as zeros.
+	 *
+	 * Must not be called while tiles are written.
+	 *
+	 * @param numPages
+	 * 			the number of pages to keep, at least one
+	 */
+	public void close( int numPages ) throws IOException
+	{
+		if ( numPages < 1 || numPages > pages.length )
+			throw new IllegalArgumentException( "Number of pages must be between 1 and " + pages.length + ": " + numPages );
+
+		try
+		{
+			if ( numPages < pages.length )
+				truncate( numPages );
+
+			for ( int p = 0; p < numPages; p++ )
+				writeMissingTiles( pages[ p ] );
+
+			long nextIFDPointerPosition = isBigTiff ? 8 : 4;
+			for ( int p = 0; p < numPages; p++ )
+			{
+				final Page page = pages[ p ];
+				final long ifdOffset = writeIFD( page );
+				writeOffset( nextIFDPointerPosition, ifdOffset );
+				nextIFDPointerPosition = ifdOffset + ( isBigTiff ? 8 + 20 * page.numEntries() : 2 + 12 * page.numEntries() );
+			}
+			writeOffset( nextIFDPointerPosition, 0 );
+
+			writeHeader();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Closes and deletes the file, e.g. if writing has been cancelled before any page is complete.
+	 */
+	public void abort() throws IOException
+	{
+		try
+		{
+			channel.close();
+		}
+		finally
+		{
+			Files.deleteIfExists( file.toPath() );
+		}
+	}
+
+	private void truncate( int numPages ) throws IOException
+	{
+		long end = isBigTiff ? 16 : 8;
+		for ( int p = 0; p < numPages; p++ )
+			for ( int i = 0; i < pages[ p ].tileOffsets.length; i++ )
+				if ( pages[ p ].tileByteCounts[ i ] != 0 )
+					end = Math.max( end, pages[ p ].tileOffsets[ i ] + pages[ p ].tileByteCounts[ i ] );
+
+		channel.truncate( end );
+		endOfFile.set( end );
+	}
+
+	private void writeMissingTiles( Page page ) throws IOException
+	{
+		final int numBytes = page.tileNumBytes( tileWidth, tileHeight );
+		for ( int i = 0; i < page.tileOffsets.length; i++ )
+		{
+			if ( page.tileByteCounts[ i ] != 0 ) continue;
+
+			final ByteBuffer zeros = ByteBuffer.allocate( numBytes );
+			final long offset = endOfFile.getAndAdd( numBytes );
+			long position = offset;
+			while ( zeros.hasRemaining() )
+				position += channel.write( zeros, position );
+
+			page.tileOffsets[ i ] = offset;
+			page.tileByteCounts[ i ] = numBytes;
+		}
+	}
+
+	private void writeHeader() throws IOException
+	{
+		final ByteBuffer header = newBuffer( isBigTiff ? 8 : 4 );
+		header.put( ( byte ) 'I' ).put( ( byte ) 'I' );
+		if ( isBigTiff )
+			header.putShort( ( short ) 43 ).putShort( ( short ) 8 ).putShort( ( short ) 0 );
+		else
+			header.putShort( ( short ) 42 );
+		header.flip();
+		channel.write( header, 0 );
+	}
+
+	private void writeOffset( long position, long offset ) throws IOException
+	{
+		final ByteBuffer buffer = newBuffer( isBigTiff ? 8 : 4 );
+		if ( isBigTiff )
+			buffer.putLong( offset );
+		else
+			buffer.putInt( ( int ) offset );
+		buffer.flip();
+		channel.write( buffer, position );
+	}
+
+	/**
+	 * Writes the out-of-line values, followed by the image file directory,
+	 * without the pointer to the next directory.
+	 *
+	 * @return the offset of the image file directory
+	 */
+	private long writeIFD( Page page ) throws IOException
+	{
+		final int numTiles = page.tileOffsets.length;
+		final short offsetType = isBigTiff ? TYPE_LONG8 : TYPE_LONG;
+		final int offsetSize = isBigTiff ? 8 : 4;
+
+		// out-of-line values
+		final long tileOffsetsPosition = endOfFile.get();
+		final long tileByteCountsPosition = tileOffsetsPosition + ( long ) numTiles * offsetSize;
+		final long bitsPerSamplePosition = tileByteCountsPosition + ( long ) numTiles * 4;
+		final long sampleFormatPosition = bitsPerSamplePosition + 2L * page.samplesPerPixel;
+		final long ifdPosition = sampleFormatPosition + 2L * page.samplesPerPixel;
+
+		final ByteBuffer values = newBuffer( ( int ) ( ifdPosition - tileOffsetsPosition ) );
+		for ( int i = 0; i < numTiles; i++ )
+			if ( isBigTiff )
+				values.putLong( page.tileOffsets[ i ] );
+			else
+				values.putInt( ( int ) page.tileOffsets[ i ] );
+		for ( int i = 0; i < numTiles; i++ )
+			values.putInt( ( int ) page.tileByteCounts[ i ] );
+		for ( int i = 0; i < page.samplesPerPixel; i++ )
+			values.putShort( ( short ) page.bitsPerSample );
+		for ( int i = 0; i < page.samplesPerPixel; i++ )
+			values.putShort( ( short ) page.sampleFormat );
+		values.flip();
+		channel.write( values, tileOffsetsPosition );
+
+		// image file directory, entries sorted by tag
+		final ByteBuffer ifd = newBuffer( isBigTiff ? 8 + 20 * page.numEntries() : 2 + 12 * page.numEntries() );
+		if ( isBigTiff )
+			ifd.putLong( page.numEntries() );
+		else
+			ifd.putShort( ( short ) page.numEntries() );
+
+		putEntry( ifd, 256, TYPE_LONG, 1, width );
+		putEntry( ifd, 257, TYPE_LONG, 1, height );
+		putShortsEntry( ifd, 258, page.samplesPerPixel, page.bitsPerSample, bitsPerSamplePosition );
+		putEntry( ifd, 259, TYPE_SHORT, 1, 1 ); // no compression
+		putEntry( ifd, 262, TYPE_SHORT, 1, page.samplesPerPixel == 3 ? 2 : 1 ); // RGB or black is zero
+		putEntry( ifd, 277, TYPE_SHORT, 1, page.samplesPerPixel );
+		putEntry( ifd, 284, TYPE_SHORT, 1, 1 ); // chunky
+		putEntry( ifd, 322, TYPE_LONG, 1, tileWidth );
+		putEntry( ifd, 323, TYPE_LONG, 1, tileHeight );
+		putArrayEntry( ifd, 324, offsetType, numTiles, offsetSize, tileOffsetsPosition, page.tileOffsets );
+		putArrayEntry( ifd, 325, TYPE_LONG, numTiles, 4, tileByteCountsPosition, page.tileByteCounts );
+		putShortsEntry( ifd, 339, page.samplesPerPixel, page.sampleFormat, sampleFormatPosition );
+		ifd.flip();
+		channel.write( ifd, ifdPosition );
+
+		endOfFile.set( ifdPosition + ifd.limit() + offsetSize );
+
+		return ifdPosition;
+	}
+
+	private void putEntry( ByteBuffer ifd, int tag, short type, long count, long value )
+	{
+		ifd.putShort( ( short ) tag ).putShort( type );
+		if ( isBigTiff )
+		{
+			ifd.putLong( count );
+			putValue( ifd, type, value );
+			ifd.position( ifd.position() + 8 - size( type ) );
+		}
+		else
+		{
+			ifd.putInt( ( int ) count );
+			putValue( ifd, type, value );
+			ifd.position( ifd.position() + 4 - size( type ) );
+		}
+	}
+
+	private void putShortsEntry( ByteBuffer ifd, int tag, int count, int value, long outOfLinePosition )
+	{
+		if ( 2 * count <= ( isBigTiff ? 8 : 4 ) )
+		{
+			ifd.putShort( ( short ) tag ).putShort( TYPE_SHORT );
+			if ( isBigTiff ) ifd.putLong( count ); else ifd.putInt( count );
+			final int start = ifd.position();
+			for ( int i = 0; i < count; i++ )
+				ifd.putShort( ( short ) value );
+			ifd.position( start + ( isBigTiff ? 8 : 4 ) );
+		}
+		else
+		{
+			putOffsetEntry( ifd, tag, TYPE_SHORT, count, outOfLinePosition );
+		}
+	}
+
+	private void putArrayEntry( ByteBuffer ifd, int tag, short type, int count, int valueSize, long outOfLinePosition, long[] values )
+	{
+		if ( count * valueSize <= ( isBigTiff ? 8 : 4 ) )
+		{
+			ifd.putShort( ( short ) tag ).putShort( type );
+			if ( isBigTiff ) ifd.putLong( count ); else ifd.putInt( count );
+			final int start = ifd.position();
+			for ( int i = 0; i < count; i++ )
+				putValue( ifd, type, values[ i ] );
+			ifd.position( start + ( isBigTiff ? 8 : 4 ) );
+		}
+		else
+		{
+			putOffsetEntry( ifd, tag, type, count, outOfLinePosition );
+		}
+	}
+
+	private void putOffsetEntry( ByteBuffer ifd, int tag, short type, long count, long offset )
+	{
+		ifd.putShort( ( short ) tag ).putShort( type );
+		if ( isBigTiff )
+			ifd.putLong( count ).putLong( offset );
+		else
+			ifd.putInt( ( int ) count ).putInt( ( int ) offset );
+	}
+
+	private static void putValue( ByteBuffer buffer, short type, long value )
+	{
+		if ( type == TYPE_SHORT )
+			buffer.putShort( ( short ) value );
+		else if ( type == TYPE_LONG )
+			buffer.putInt( ( int ) value );
+		else
+			buffer.putLong( value );
+	}
+
+	private static int size( short type )
+	{
+		return type == TYPE_SHORT ? 2 : type == TYPE_LONG ? 4 : 8;
+	}
+
+	private static ByteBuffer newBuffer( int numBytes )
+	{
+		return ByteBuffer.allocate( numBytes ).order( ByteOrder.LITTLE_ENDIAN );
+	}
+
+	private static class Page
+	{
+		final int samplesPerPixel;
+		final int bitsPerSample;
+		final int sampleFormat;
+		final long[] tileOffsets;
+		final long[] tileByteCounts;
+
+		Page( Type< ? > type, int numTiles )
+		{
+			tileOffsets = new long[ numTiles ];
+			tileByteCounts = new long[ numTiles ];
+
+			if ( type instanceof ARGBType )
+			{
+				samplesPerPixel = 3;
+				bitsPerSample = 8;
+				sampleFormat = UNSIGNED;
+			}
+			else
+			{
+				samplesPerPixel = 1;
+				if ( type instanceof UnsignedByteType ) { bitsPerSample = 8; sampleFormat = UNSIGNED; }
+				else if ( type instanceof ByteType ) { bitsPerSample = 8; sampleFormat = SIGNED; }
+				else if ( type instanceof UnsignedShortType ) { bitsPerSample = 16; sampleFormat = UNSIGNED; }
+				else if ( type instanceof ShortType ) { bitsPerSample = 16; sampleFormat = SIGNED; }
+				else if ( type instanceof UnsignedIntType ) { bitsPerSample = 32; sampleFormat = UNSIGNED; }
+				else if ( type instanceof IntType ) { bitsPerSample = 32; sampleFormat = SIGNED; }
+				else if ( type instanceof UnsignedLongType ) { bitsPerSample = 64; sampleFormat = UNSIGNED; }
+				else if ( type instanceof LongType ) { bitsPerSample = 64; sampleFormat = SIGNED; }
+				else if ( type instanceof DoubleType ) { bitsPerSample = 64; sampleFormat = FLOAT; }
+				else { bitsPerSample = 32; sampleFormat = FLOAT; }
+			}
+		}
+
+		int numEntries()
+		{
+			return 12;
+		}
+
+		int tileNumBytes( int tileWidth, int tileHeight )
+		{
+			return tileWidth * tileHeight * samplesPerPixel * bitsPerSample / 8;
+		}
+
+		/**
+		 * Tiles at the image border are padded with zeros to the full tile size.
+		 */
+		ByteBuffer encode( RandomAccessibleInterval< ? > data, int tileWidth, int tileHeight )
+		{
+			final ByteBuffer buffer = newBuffer( tileNumBytes( tileWidth, tileHeight ) );
+			final int dataWidth = ( int ) data.dimension( 0 );
+			final int bytesPerPixel = samplesPerPixel * bitsPerSample / 8;
+
+			final Cursor< ? > cursor = Views.flatIterable( data ).cursor();
+			int x = 0;
+			int y = 0;
+			while ( cursor.hasNext() )
+			{
+				final Object value = cursor.next();
+				buffer.position( ( y * tileWidth + x ) * bytesPerPixel );
+
+				if ( samplesPerPixel == 3 )
+				{
+					final int argb = ( ( ARGBType ) value ).get();
+					buffer.put( ( byte ) ARGBType.red( argb ) )
+							.put( ( byte ) ARGBType.green( argb ) )
+							.put( ( byte ) ARGBType.blue( argb ) );
+				}
+				else if ( sampleFormat == FLOAT )
+				{
+					final double real = ( ( RealType< ? > ) value ).getRealDouble();
+					if ( bitsPerSample == 64 ) buffer.putDouble( real );
+					else buffer.putFloat( ( float ) real );
+				}
+				else
+				{
+					// not via double, which cannot hold all 64-bit values
+					final long integer = ( ( IntegerType< ? > ) value ).getIntegerLong();
+					if ( bitsPerSample == 8 ) buffer.put( ( byte ) integer );
+					else if ( bitsPerSample == 16 ) buffer.putShort( ( short ) integer );
+					else if ( bitsPerSample == 32 ) buffer.putInt( ( int ) integer );
+					else buffer.putLong( integer );
+				}
+
+				if ( ++x == dataWidth )
+				{
+					x = 0;
+					y++;
+				}
+			}
+
+			buffer.rewind();
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,449 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.bdv.utils.loaders;
+
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A {@link LoaderCache} that strongly holds its values up to a fixed number
+ * of bytes and evicts approximately least recently used values beyond that.
+ *
+ * Unlike the soft reference caches, values are released as soon as the
+ * budget is exceeded, independent of the memory pressure of the JVM.
+ * Concurrent requests for the same key are loaded only once.
+ *
+ * Accesses only write an access stamp, without locking, such that
+ * reading from the cache does not contend on a global lock.
+ * The lock is only taken for inserting, where values are evicted in
+ * CLOCK order: the longest resident value is evicted, unless it was
+ * accessed since it was queued, in which case it is queued again.
+ */
+public class BoundedLruLoaderCache< K, V > implements LoaderCache< K, V >
+{
+	public interface Weigher< K, V >
+	{
+		/**
+		 * @return the number of bytes occupied by value
+		 */
+		long weigh( K key, V value );
+	}
+
+	/**
+	 * A value that holds its own access stamp, such that a cache in front of
+	 * this one can record accesses without looking up the key,
+	 * see {@link #recordAccess(AccessStamped)}.
+	 */
+	public interface AccessStamped
+	{
+		long getAccessStamp();
+
+		void setAccessStamp( long stamp );
+	}
+
+	private class Entry
+	{
+		final K key;
+
+		volatile V value;
+
+		volatile long accessStamp;
+
+		/**
+		 * Guarded by the lock of the queue.
+		 */
+		long weight;
+
+		long queueStamp;
+
+		boolean isQueued;
+
+		Entry( final K key )
+		{
+			this.key = key;
+		}
+
+		long lastAccess()
+		{
+			final V value = this.value;
+			if ( value instanceof AccessStamped )
+				return Math.max( accessStamp, ( ( AccessStamped ) value ).getAccessStamp() );
+			return accessStamp;
+		}
+	}
+
+	private final long maxBytes;
+
+	private final Weigher< ? super K, ? super V > weigher;
+
+	private final ConcurrentHashMap< K, Entry > map = new ConcurrentHashMap<>();
+
+	/**
+	 * Resident entries in the order they were (re-)queued, guarded by itself.
+	 * Invalidated entries are removed lazily, when they reach the head.
+	 */
+	private final ArrayDeque< Entry > queue = new ArrayDeque<>();
+
+	/**
+	 * Advanced on each insert, such that accesses after an insert
+	 * are more recent than the inserted value.
+	 */
+	private volatile long clock;
+
+	private long bytesResident;
+
+	private int numResident;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	public BoundedLruLoaderCache( final long maxBytes, final Weigher< ? super K, ? super V > weigher )
+	{
+		if ( maxBytes <= 0 )
+			throw new IllegalArgumentException( "maxBytes must be positive, but is " + maxBytes );
+
+		this.maxBytes = maxBytes;
+		this.weigher = weigher;
+	}
+
+	@Override
+	public V getIfPresent( final K key )
+	{
+		final Entry entry = map.get( key );
+		final V value = entry == null ? null : entry.value;
+		if ( value == null )
+			return null;
+
+		hits.increment();
+		stamp( entry );
+		return value;
+	}
+
+	@Override
+	public V get( final K key, final CacheLoader< ? super K, ? extends V > loader ) throws ExecutionException
+	{
+		Entry entry = map.get( key );
+		if ( entry != null )
+		{
+			final V value = entry.value;
+			if ( value != null )
+			{
+				hits.increment();
+				stamp( entry );
+				return value;
+			}
+		}
+		else
+		{
+			final Entry created = new Entry( key );
+			entry = map.putIfAbsent( key, created );
+			if ( entry == null )
+				entry = created;
+		}
+
+		synchronized ( entry )
+		{
+			if ( entry.value != null )
+			{
+				hits.increment();
+				stamp( entry );
+				return entry.value;
+			}
+
+			misses.increment();
+			final V value;
+			try
+			{
+				value = loader.get( key );
+			}
+			catch ( final InterruptedException e )
+			{
+				map.remove( key, entry );
+				Thread.currentThread().interrupt();
+				throw new ExecutionException( e );
+			}
+			catch ( final Exception e )
+			{
+				map.remove( key, entry );
+				throw new ExecutionException( e );
+			}
+
+			insert( entry, value );
+			return value;
+		}
+	}
+
+	public void invalidate( final K key )
+	{
+		final Entry entry = map.remove( key );
+		if ( entry != null )
+			synchronized ( queue )
+			{
+				dequeue( entry );
+			}
+	}
+
+	public void invalidateIf( final long parallelismThreshold, final Predicate< K > condition )
+	{
+		invalidateIf( condition );
+	}
+
+	public void invalidateIf( final Predicate< K > condition )
+	{
+		for ( final K key : new ArrayList<>( map.keySet() ) )
+			if ( condition.test( key ) )
+				invalidate( key );
+	}
+
+	public void invalidateAll( final long parallelismThreshold )
+	{
+		invalidateAll();
+	}
+
+	@Override
+	public void invalidateAll()
+	{
+		synchronized ( queue )
+		{
+			map.clear();
+			for ( final Entry entry : queue )
+				entry.isQueued = false;
+			queue.clear();
+			bytesResident = 0;
+			numResident = 0;
+		}
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	public Statistics getStatistics()
+	{
+		synchronized ( queue )
+		{
+			return new Statistics( hits.sum(), misses.sum(), evictions.sum(), bytesResident, numResident, maxBytes );
+		}
+	}
+
+	/**
+	 * Marks a resident value as recently used, without counting a hit.
+	 * For caches in front of this one, which serve most requests
+	 * without consulting this cache, but must still record the accesses,
+	 * such that the eviction order is approximately least recently used.
+	 * If the values are {@link AccessStamped}, prefer
+	 * {@link #recordAccess(AccessStamped)}, which does not look up the key.
+	 *
+	 * @param key
+	 * @return whether a value is resident for the key
+	 */
+	public boolean touch( final K key )
+	{
+		final Entry entry = map.get( key );
+		if ( entry == null || entry.value == null )
+			return false;
+
+		stamp( entry );
+		return true;
+	}
+
+	/**
+	 * Marks a value as recently used, without counting a hit, locking or allocating.
+	 * Values that are not resident (anymore) are not affected.
+	 *
+	 * @param value
+	 */
+	public void recordAccess( final AccessStamped value )
+	{
+		final long now = clock;
+		if ( value.getAccessStamp() != now )
+			value.setAccessStamp( now );
+	}
+
+	private void stamp( final Entry entry )
+	{
+		final long now = clock;
+		if ( entry.accessStamp != now )
+			entry.accessStamp = now;
+	}
+
+	private void insert( final Entry entry, final V value )
+	{
+		final long weight = weigher.weigh( entry.key, value );
+
+		synchronized ( queue )
+		{
+			entry.value = value;
+
+			// the entry may have been invalidated while loading
+			if ( map.get( entry.key ) != entry )
+				return;
+
+			entry.weight = weight;
+			entry.accessStamp = clock;
+			enqueue( entry );
+			bytesResident += weight;
+			numResident++;
+
+			evict();
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock of the queue.
+	 */
+	private void evict()
+	{
+		int numRequeued = 0;
+		while ( bytesResident > maxBytes && ! queue.isEmpty() )
+		{
+			final Entry eldest = queue.pollFirst();
+			if ( ! eldest.isQueued )
+				continue;
+
+			// second chance, unless all entries were accessed recently
+			if ( eldest.lastAccess() > eldest.queueStamp && numRequeued++ < numResident )
+			{
+				eldest.queueStamp = clock++;
+				queue.addLast( eldest );
+				continue;
+			}
+
+			eldest.isQueued = false;
+			map.remove( eldest.key, eldest );
+			bytesResident -= eldest.weight;
+			numResident--;
+			evictions.increment();
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock of the queue.
+	 */
+	private void enqueue( final Entry entry )
+	{
+		// accesses after the insert are more recent than the queue stamp
+		entry.queueStamp = clock++;
+		clock++;
+		entry.isQueued = true;
+		queue.addLast( entry );
+	}
+
+	/**
+	 * Must be called while holding the lock of the queue.
+	 */
+	private void dequeue( final Entry entry )
+	{
+		if ( ! entry.isQueued )
+			return;
+
+		// removed from the queue when it reaches the head; release the value already
+		entry.isQueued = false;
+		entry.value = null;
+		bytesResident -= entry.weight;
+		numResident--;
+	}
+
+	/**
+	 * A snapshot of the cache counters.
+	 */
+	public static class Statistics
+	{
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final long bytesResident;
+		private final int numResident;
+		private final long maxBytes;
+
+		public Statistics( long hits, long misses, long evictions, long bytesResident, int numResident, long maxBytes )
+		{
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.bytesResident = bytesResident;
+			this.numResident = numResident;
+			this.maxBytes = maxBytes;
+		}
+
+		public long getHits()
+		{
+			return hits;
+		}
+
+		public long getMisses()
+		{
+			return misses;
+		}
+
+		public long getEvictions()
+		{
+			return evictions;
+		}
+
+		public long getBytesResident()
+		{
+			return bytesResident;
+		}
+
+		public int getNumResident()
+		{
+			return numResident;
+		}
+
+		public long getMaxBytes()
+		{
+			return maxBytes;
+		}
+
+		public double getHitRate()
+		{
+			final long requests = hits + misses;
+			return requests == 0 ? 0.0 : ( double ) hits / requests;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "hits: %d, misses: %d, evictions: %d, resident: %d cells, %.1f / %.1f MB",
+					hits, misses, evictions, numResident, bytesResident / 1e6, maxBytes / 1e6 );
+		}
+	}
+}
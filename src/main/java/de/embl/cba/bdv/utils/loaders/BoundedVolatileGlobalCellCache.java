@@ -0,0 +1,226 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.bdv.utils.loaders;
+
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.CreateInvalidVolatileCell;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.img.cache.VolatileGlobalCellCache;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.cache.util.KeyBimap;
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import net.imglib2.cache.ref.WeakRefVolatileCache;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.UncheckedVolatileCache;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.NativeType;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link VolatileGlobalCellCache} whose cells, across all timepoints,
+ * setups and levels, share one {@link BoundedLruLoaderCache} with a fixed
+ * budget in bytes, instead of being held by soft references.
+ *
+ * The weak reference volatile cache in front of it serves valid cells
+ * without consulting the backing cache; therefore every access of a
+ * loaded cell is recorded in an access stamp of the cell itself, which
+ * keeps the eviction order approximately least recently used, and counted
+ * as a hit. Recording does neither lock nor allocate, as it is done
+ * for every cell access of the renderer.
+ */
+public class BoundedVolatileGlobalCellCache extends VolatileGlobalCellCache
+{
+	private final BlockingFetchQueues< Callable< ? > > queue;
+
+	private final BoundedLruLoaderCache< CellKey, Cell< ? > > backingCache;
+
+	private final LongAdder hits = new LongAdder();
+
+	public BoundedVolatileGlobalCellCache( final BlockingFetchQueues< Callable< ? > > queue, final long maxCacheSizeInBytes )
+	{
+		super( queue );
+		this.queue = queue;
+		this.backingCache = new BoundedLruLoaderCache<>( maxCacheSizeInBytes, BoundedVolatileGlobalCellCache::sizeInBytes );
+	}
+
+	private static long sizeInBytes( final CellKey key, final Cell< ? > cell )
+	{
+		if ( cell.getData() instanceof VolatilePaletteLongArray )
+			return ( ( VolatilePaletteLongArray ) cell.getData() ).getSizeInBytes();
+		else
+			return cell.size() * key.bytesPerElement;
+	}
+
+	/**
+	 * @return statistics of the cell accesses of the images;
+	 * 			hits are the accesses of loaded cells, misses are the cells that had to be loaded
+	 */
+	public BoundedLruLoaderCache.Statistics getStatistics()
+	{
+		final BoundedLruLoaderCache.Statistics statistics = backingCache.getStatistics();
+		return new BoundedLruLoaderCache.Statistics(
+				hits.sum(),
+				statistics.getMisses(),
+				statistics.getEvictions(),
+				statistics.getBytesResident(),
+				statistics.getNumResident(),
+				statistics.getMaxBytes() );
+	}
+
+	@Override
+	public void clearCache()
+	{
+		super.clearCache();
+		backingCache.invalidateAll();
+	}
+
+	@Override
+	public < T extends NativeType< T >, A extends VolatileAccess > VolatileCachedCellImg< T, A > createImg(
+			final CellGrid grid,
+			final int timepoint,
+			final int setup,
+			final int level,
+			final CacheHints cacheHints,
+			final CacheArrayLoader< A > cacheArrayLoader,
+			final T type )
+	{
+		final int bytesPerElement = cacheArrayLoader.getBytesPerElement();
+
+		final CacheLoader< Long, Cell< A > > loader = index -> {
+			final int n = grid.numDimensions();
+			final long[] cellMin = new long[ n ];
+			final int[] cellDims = new int[ n ];
+			grid.getCellDimensions( index, cellMin, cellDims );
+			return new StampedCell<>( cellDims, cellMin, cacheArrayLoader.loadArray( timepoint, setup, level, cellDims, cellMin ) );
+		};
+
+		final KeyBimap< Long, CellKey > bimap = KeyBimap.build(
+				index -> new CellKey( timepoint, setup, level, index, bytesPerElement ),
+				key -> ( key.timepoint == timepoint && key.setup == setup && key.level == level ) ? key.index : null );
+
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		final LoaderCache< Long, Cell< A > > cellCache = ( LoaderCache ) backingCache.mapKeys( bimap );
+
+		final UncheckedVolatileCache< Long, Cell< A > > cache = new WeakRefVolatileCache<>(
+				cellCache,
+				queue,
+				CreateInvalidVolatileCell.get( grid, type, false ) )
+				.withLoader( loader )
+				.unchecked();
+
+		final VolatileCachedCellImg.Get< Cell< A > > get = ( index, hints ) -> {
+			final Cell< A > cell = cache.get( index, hints );
+			// cells that are not loaded yet are invalid placeholders
+			if ( cell instanceof StampedCell )
+			{
+				hits.increment();
+				backingCache.recordAccess( ( StampedCell< A > ) cell );
+			}
+			return cell;
+		};
+
+		return new VolatileCachedCellImg<>( grid, type, cacheHints, get );
+	}
+
+	/**
+	 * A loaded cell, which records when it was last accessed.
+	 */
+	static class StampedCell< A > extends Cell< A > implements BoundedLruLoaderCache.AccessStamped
+	{
+		private volatile long accessStamp;
+
+		StampedCell( final int[] dimensions, final long[] min, final A data )
+		{
+			super( dimensions, min, data );
+		}
+
+		@Override
+		public long getAccessStamp()
+		{
+			return accessStamp;
+		}
+
+		@Override
+		public void setAccessStamp( final long stamp )
+		{
+			accessStamp = stamp;
+		}
+	}
+
+	static class CellKey
+	{
+		final int timepoint;
+
+		final int setup;
+
+		final int level;
+
+		final long index;
+
+		/**
+		 * Only used for weighing the cell, not part of the identity.
+		 */
+		final int bytesPerElement;
+
+		CellKey( final int timepoint, final int setup, final int level, final long index, final int bytesPerElement )
+		{
+			this.timepoint = timepoint;
+			this.setup = setup;
+			this.level = level;
+			this.index = index;
+			this.bytesPerElement = bytesPerElement;
+		}
+
+		@Override
+		public boolean equals( final Object other )
+		{
+			if ( this == other )
+				return true;
+			if ( !( other instanceof CellKey ) )
+				return false;
+			final CellKey that = ( CellKey ) other;
+			return timepoint == that.timepoint && setup == that.setup && level == that.level && index == that.index;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int result = Long.hashCode( index );
+			result = 31 * result + level;
+			result = 31 * result + setup;
+			result = 31 * result + timepoint;
+			return result;
+		}
+	}
+}
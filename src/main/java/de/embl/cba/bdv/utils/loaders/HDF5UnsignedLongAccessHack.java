@@ -51,26 +51,32 @@ public class HDF5UnsignedLongAccessHack implements IHDF5UnsignedLongAccess
 
 	private final int numericConversionXferPropertyListID;
 
-	private final long[] reorderedDimensions = new long[ 3 ];
-
-	private final long[] reorderedMin = new long[ 3 ];
-
 	private static final int MAX_OPEN_DATASETS = 48;
 
+	/**
+	 * An open dataset doubles as the lock for reading from it, because
+	 * selecting a hyperslab modifies its file space. Reads from different
+	 * datasets therefore do not block each other in this class.
+	 */
 	private class OpenDataSet
 	{
 		final int dataSetId;
 
 		final int fileSpaceId;
 
+		boolean isClosed;
+
 		public OpenDataSet( final String cellsPath )
 		{
 			dataSetId = H5Dopen( fileId, cellsPath, H5P_DEFAULT );
 			fileSpaceId = H5Dget_space( dataSetId );
 		}
 
-		public void close()
+		public synchronized void close()
 		{
+			if ( isClosed )
+				return;
+			isClosed = true;
 			H5Sclose( fileSpaceId );
 			H5Dclose( dataSetId );
 		}
@@ -97,7 +103,7 @@ public class HDF5UnsignedLongAccessHack implements IHDF5UnsignedLongAccess
 				return false;
 		}
 
-		public OpenDataSet getDataSet( final ViewLevelId id )
+		public synchronized OpenDataSet getDataSet( final ViewLevelId id )
 		{
 			OpenDataSet openDataSet = super.get( id );
 			if ( openDataSet == null )
@@ -107,6 +113,13 @@ public class HDF5UnsignedLongAccessHack implements IHDF5UnsignedLongAccess
 			}
 			return openDataSet;
 		}
+
+		public synchronized void closeAll()
+		{
+			for ( final OpenDataSet dataset : values() )
+				dataset.close();
+			clear();
+		}
 	}
 
 	private final OpenDataSetCache openDataSetCache;
@@ -138,18 +151,26 @@ public class HDF5UnsignedLongAccessHack implements IHDF5UnsignedLongAccess
 	}
 
 	@Override
-	public synchronized DimsAndExistence getDimsAndExistence( final ViewLevelId id )
+	public DimsAndExistence getDimsAndExistence( final ViewLevelId id )
 	{
 		final long[] realDimensions = new long[ 3 ];
 		boolean exists = false;
 		try
 		{
-			final OpenDataSet dataset = openDataSetCache.getDataSet( id );
-			final long[] dimensions = new long[ H5S_MAX_RANK ];
-			final long[] maxDimensions = new long[ H5S_MAX_RANK ];
-			final int rank = H5Sget_simple_extent_dims( dataset.fileSpaceId, dimensions, maxDimensions );
-			System.arraycopy( dimensions, 0, realDimensions, 0, rank );
-			exists = true;
+			while ( ! exists )
+			{
+				final OpenDataSet dataset = openDataSetCache.getDataSet( id );
+				synchronized ( dataset )
+				{
+					if ( dataset.isClosed )
+						continue;
+					final long[] dimensions = new long[ H5S_MAX_RANK ];
+					final long[] maxDimensions = new long[ H5S_MAX_RANK ];
+					final int rank = H5Sget_simple_extent_dims( dataset.fileSpaceId, dimensions, maxDimensions );
+					System.arraycopy( dimensions, 0, realDimensions, 0, rank );
+					exists = true;
+				}
+			}
 		}
 		catch ( final Exception e )
 		{}
@@ -160,7 +181,7 @@ public class HDF5UnsignedLongAccessHack implements IHDF5UnsignedLongAccess
 	}
 
 	@Override
-	public synchronized long[] readLongMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	public long[] readLongMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
 		final long[] dataBlock = new long[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
 		readLongMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
@@ -168,20 +189,31 @@ public class HDF5UnsignedLongAccessHack implements IHDF5UnsignedLongAccess
 	}
 
 	@Override
-	public synchronized long[] readLongMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final long[] dataBlock ) throws InterruptedException
+	public long[] readLongMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final long[] dataBlock ) throws InterruptedException
 	{
 		if ( Thread.interrupted() )
 			throw new InterruptedException();
+		final long[] reorderedDimensions = new long[ 3 ];
+		final long[] reorderedMin = new long[ 3 ];
 		reorder( dimensions, reorderedDimensions );
 		reorder( min, reorderedMin );
 
-		final OpenDataSet dataset = openDataSetCache.getDataSet( new ViewLevelId( timepoint, setup, level ) );
-		final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
-		H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
-		H5Dread( dataset.dataSetId, H5T_NATIVE_ULONG, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
-		H5Sclose( memorySpaceId );
-
-		return dataBlock;
+		final ViewLevelId id = new ViewLevelId( timepoint, setup, level );
+		while ( true )
+		{
+			final OpenDataSet dataset = openDataSetCache.getDataSet( id );
+			synchronized ( dataset )
+			{
+				// evicted from the cache in the meantime
+				if ( dataset.isClosed )
+					continue;
+				final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
+				H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
+				H5Dread( dataset.dataSetId, H5T_NATIVE_ULONG, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
+				H5Sclose( memorySpaceId );
+				return dataBlock;
+			}
+		}
 	}
 
 	@Override
@@ -197,14 +229,26 @@ public class HDF5UnsignedLongAccessHack implements IHDF5UnsignedLongAccess
 	{
 		if ( Thread.interrupted() )
 			throw new InterruptedException();
+		final long[] reorderedDimensions = new long[ 3 ];
+		final long[] reorderedMin = new long[ 3 ];
 		reorder( dimensions, reorderedDimensions );
 		reorder( min, reorderedMin );
 
-		final OpenDataSet dataset = openDataSetCache.getDataSet( new ViewLevelId( timepoint, setup, level ) );
-		final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
-		H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
-		H5Dread( dataset.dataSetId, H5T_NATIVE_FLOAT, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
-		H5Sclose( memorySpaceId );
+		final ViewLevelId id = new ViewLevelId( timepoint, setup, level );
+		while ( true )
+		{
+			final OpenDataSet dataset = openDataSetCache.getDataSet( id );
+			synchronized ( dataset )
+			{
+				if ( dataset.isClosed )
+					continue;
+				final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
+				H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
+				H5Dread( dataset.dataSetId, H5T_NATIVE_FLOAT, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
+				H5Sclose( memorySpaceId );
+				break;
+			}
+		}
 
 		HDF5UnsignedLongAccessHack.unsignedLong( dataBlock );
 
@@ -214,9 +258,7 @@ public class HDF5UnsignedLongAccessHack implements IHDF5UnsignedLongAccess
 	@Override
 	public void closeAllDataSets()
 	{
-		for ( final OpenDataSet dataset : openDataSetCache.values() )
-			dataset.close();
-		openDataSetCache.clear();
+		openDataSetCache.closeAll();
 	}
 
 	@Override
@@ -97,6 +97,26 @@ public class Hdf5UnsignedLongImageLoader implements ViewerImgLoader, MultiResolu
 
 	protected FetcherThreads fetchers;
 
+	/**
+	 * The HDF5 library serializes native calls, but with a few fetcher
+	 * threads block allocation and cache insertion overlap with reading.
+	 */
+	public static final int DEFAULT_NUM_FETCHER_THREADS = Math.max( 1, Math.min( 4, Runtime.getRuntime().availableProcessors() - 1 ) );
+
+	protected int numFetcherThreads = DEFAULT_NUM_FETCHER_THREADS;
+
+	/**
+	 * If positive, cells are held in a least recently used cache of this
+	 * many bytes, shared by all setups and levels, instead of by soft
+	 * references.
+	 */
+	protected long maxCacheSizeInBytes = 0;
+
+	/**
+	 * Whether cached blocks are kept as {@link VolatilePaletteLongArray}.
+	 */
+	protected boolean compressBlocks = false;
+
 	protected Hdf5VolatileUnsignedLongArrayLoader longLoader;
 
 	/**
@@ -141,8 +161,22 @@ public class Hdf5UnsignedLongImageLoader implements ViewerImgLoader, MultiResolu
 		this( hdf5File, null, hdf5Partitions, sequenceDescription, doOpen );
 	}
 
+	public Hdf5UnsignedLongImageLoader( final File hdf5File, final ArrayList< Partition > hdf5Partitions, final AbstractSequenceDescription< ?, ?, ? > sequenceDescription, final int numFetcherThreads )
+	{
+		this( hdf5File, null, hdf5Partitions, sequenceDescription, numFetcherThreads, true );
+	}
+
 	protected Hdf5UnsignedLongImageLoader( final File hdf5File, final IHDF5Reader existingHdf5Reader, final ArrayList< Partition > hdf5Partitions, final AbstractSequenceDescription< ?, ?, ? > sequenceDescription, final boolean doOpen )
 	{
+		this( hdf5File, existingHdf5Reader, hdf5Partitions, sequenceDescription, DEFAULT_NUM_FETCHER_THREADS, doOpen );
+	}
+
+	protected Hdf5UnsignedLongImageLoader( final File hdf5File, final IHDF5Reader existingHdf5Reader, final ArrayList< Partition > hdf5Partitions, final AbstractSequenceDescription< ?, ?, ? > sequenceDescription, final int numFetcherThreads, final boolean doOpen )
+	{
+		if ( numFetcherThreads < 1 )
+			throw new IllegalArgumentException( "numFetcherThreads must be at least 1, but is " + numFetcherThreads );
+
+		this.numFetcherThreads = numFetcherThreads;
 		this.existingHdf5Reader = existingHdf5Reader;
 		this.hdf5File = hdf5File;
 		setupImgLoaders = new HashMap<>();
@@ -202,11 +236,14 @@ public class Hdf5UnsignedLongImageLoader implements ViewerImgLoader, MultiResolu
 				}
 
 
-				longLoader = new Hdf5VolatileUnsignedLongArrayLoader( hdf5Access );
+				longLoader = new Hdf5VolatileUnsignedLongArrayLoader( hdf5Access, compressBlocks );
 
-				final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues( maxNumLevels, 1 );
-				fetchers = new FetcherThreads( queue, 1 );
-				cache = new VolatileGlobalCellCache( queue );
+				final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues<>( maxNumLevels, numFetcherThreads );
+				fetchers = new FetcherThreads( queue, numFetcherThreads );
+				if ( maxCacheSizeInBytes > 0 )
+					cache = new BoundedVolatileGlobalCellCache( queue, maxCacheSizeInBytes );
+				else
+					cache = new VolatileGlobalCellCache( queue );
 			}
 		}
 	}
@@ -227,6 +264,7 @@ public class Hdf5UnsignedLongImageLoader implements ViewerImgLoader, MultiResolu
 					return;
 				isOpen = false;
 
+				fetchers.shutdown();
 				cache.clearCache();
 				hdf5Access.closeAllDataSets();
 
@@ -278,6 +316,66 @@ public class Hdf5UnsignedLongImageLoader implements ViewerImgLoader, MultiResolu
 		return partitions;
 	}
 
+	public int getNumFetcherThreads()
+	{
+		return numFetcherThreads;
+	}
+
+	public long getMaxCacheSizeInBytes()
+	{
+		return maxCacheSizeInBytes;
+	}
+
+	/**
+	 * Limits the cache to the given number of bytes, or, if 0, lets the
+	 * garbage collector decide by holding cells softly.
+	 * Takes effect when the loader is (re-)opened, i.e. must be called
+	 * before any image is requested or after {@link #close()}.
+	 */
+	public synchronized void setMaxCacheSizeInBytes( final long maxCacheSizeInBytes )
+	{
+		if ( maxCacheSizeInBytes < 0 )
+			throw new IllegalArgumentException( "maxCacheSizeInBytes must not be negative, but is " + maxCacheSizeInBytes );
+		if ( isOpen )
+			throw new IllegalStateException( "Cannot change the cache size of an open loader." );
+
+		this.maxCacheSizeInBytes = maxCacheSizeInBytes;
+	}
+
+	public boolean isCompressBlocks()
+	{
+		return compressBlocks;
+	}
+
+	/**
+	 * Keeps cached blocks palette compressed, which for label images
+	 * typically needs 4 to 16 times less memory, at the cost of decoding
+	 * every access.
+	 * Takes effect when the loader is (re-)opened, i.e. must be called
+	 * before any image is requested or after {@link #close()}.
+	 */
+	public synchronized void setCompressBlocks( final boolean compressBlocks )
+	{
+		if ( isOpen )
+			throw new IllegalStateException( "Cannot change the block compression of an open loader." );
+
+		this.compressBlocks = compressBlocks;
+	}
+
+	/**
+	 * @return hits, misses, evictions and resident bytes of the cache, or
+	 * null if the cache is not limited in size
+	 * (see {@link #setMaxCacheSizeInBytes(long)}).
+	 */
+	public BoundedLruLoaderCache.Statistics getCacheStatistics()
+	{
+		open();
+		if ( cache instanceof BoundedVolatileGlobalCellCache )
+			return ( ( BoundedVolatileGlobalCellCache ) cache ).getStatistics();
+		else
+			return null;
+	}
+
 	@Override
 	public VolatileGlobalCellCache getCacheControl()
 	{
@@ -29,28 +29,48 @@
 package de.embl.cba.bdv.utils.loaders;
 
 import bdv.img.cache.CacheArrayLoader;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileLongAccess;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
 
-public class Hdf5VolatileUnsignedLongArrayLoader implements CacheArrayLoader< VolatileLongArray >
+public class Hdf5VolatileUnsignedLongArrayLoader implements CacheArrayLoader< VolatileLongAccess >
 {
 	private final IHDF5UnsignedLongAccess hdf5Access;
 
+	private final boolean compress;
+
 	public Hdf5VolatileUnsignedLongArrayLoader( final IHDF5UnsignedLongAccess hdf5Access )
+	{
+		this( hdf5Access, false );
+	}
+
+	/**
+	 * @param compress
+	 *            whether to keep the blocks as {@link VolatilePaletteLongArray}
+	 */
+	public Hdf5VolatileUnsignedLongArrayLoader( final IHDF5UnsignedLongAccess hdf5Access, final boolean compress )
 	{
 		this.hdf5Access = hdf5Access;
+		this.compress = compress;
 	}
 
 	@Override
-	public VolatileLongArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	public VolatileLongAccess loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
 		final long[] array = hdf5Access.readLongMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min );
-		return new VolatileLongArray( array, true );
+		if ( compress )
+			return VolatilePaletteLongArray.compress( array );
+		else
+			return new VolatileLongArray( array, true );
 	}
 
+	/**
+	 * For compressed blocks this is an upper bound,
+	 * see {@link VolatilePaletteLongArray#getSizeInBytes()}.
+	 */
 	@Override
 	public int getBytesPerElement()
 	{
-		return 2;
+		return 8;
 	}
 
 
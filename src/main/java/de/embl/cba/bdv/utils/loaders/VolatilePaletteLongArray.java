@@ -0,0 +1,250 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.bdv.utils.loaders;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileLongAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
+
+import java.util.Arrays;
+
+/**
+ * A read-only {@link VolatileLongAccess} for label blocks, which usually
+ * contain only a few distinct labels: the distinct values are kept in a
+ * palette and every element stores its palette index in 1, 2, 4, 8 or 16
+ * bits. A block with a single label stores no indices at all.
+ *
+ * Use {@link #compress(long[])}, which falls back to a plain
+ * {@link VolatileLongArray} for blocks with more than 65536 labels.
+ */
+public class VolatilePaletteLongArray implements VolatileLongAccess
+{
+	public static final int MAX_PALETTE_SIZE = 1 << 16;
+
+	private final long[] palette;
+
+	private final long[] indices;
+
+	// log2 of the bits per index, or -1 for a constant block
+	private final int log2Bits;
+
+	// log2 of the indices per long
+	private final int log2IndicesPerWord;
+
+	private final int indexMask;
+
+	private final int length;
+
+	private VolatilePaletteLongArray( final long[] palette, final long[] indices, final int log2Bits, final int length )
+	{
+		this.palette = palette;
+		this.indices = indices;
+		this.log2Bits = log2Bits;
+		this.log2IndicesPerWord = log2Bits < 0 ? 0 : 6 - log2Bits;
+		this.indexMask = log2Bits < 0 ? 0 : ( 1 << ( 1 << log2Bits ) ) - 1;
+		this.length = length;
+	}
+
+	/**
+	 * @return a palette compressed copy of values, or values wrapped
+	 * as a {@link VolatileLongArray} if they contain too many distinct
+	 * labels for the compression to pay off
+	 */
+	public static VolatileLongAccess compress( final long[] values )
+	{
+		final LongIndexMap map = new LongIndexMap();
+		final int[] paletteIndices = new int[ values.length ];
+		for ( int i = 0; i < values.length; i++ )
+		{
+			final int index = map.indexOf( values[ i ] );
+			if ( index >= MAX_PALETTE_SIZE )
+				return new VolatileLongArray( values, true );
+			paletteIndices[ i ] = index;
+		}
+
+		final long[] palette = map.values();
+		if ( palette.length == 1 )
+			return new VolatilePaletteLongArray( palette, null, -1, values.length );
+
+		int log2Bits = 0;
+		while ( ( 1 << ( 1 << log2Bits ) ) < palette.length )
+			log2Bits++;
+
+		final int bits = 1 << log2Bits;
+		final int log2IndicesPerWord = 6 - log2Bits;
+		final long[] indices = new long[ ( ( values.length - 1 ) >>> log2IndicesPerWord ) + 1 ];
+		for ( int i = 0; i < values.length; i++ )
+		{
+			final int shift = ( i & ( ( 1 << log2IndicesPerWord ) - 1 ) ) * bits;
+			indices[ i >>> log2IndicesPerWord ] |= ( long ) paletteIndices[ i ] << shift;
+		}
+
+		return new VolatilePaletteLongArray( palette, indices, log2Bits, values.length );
+	}
+
+	@Override
+	public long getValue( final int index )
+	{
+		if ( log2Bits < 0 )
+			return palette[ 0 ];
+
+		final int shift = ( index & ( ( 1 << log2IndicesPerWord ) - 1 ) ) << log2Bits;
+		return palette[ ( int ) ( indices[ index >>> log2IndicesPerWord ] >>> shift ) & indexMask ];
+	}
+
+	@Override
+	public void setValue( final int index, final long value )
+	{
+		throw new UnsupportedOperationException( "Palette compressed label blocks are read-only." );
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return true;
+	}
+
+	public int getNumElements()
+	{
+		return length;
+	}
+
+	public int getPaletteSize()
+	{
+		return palette.length;
+	}
+
+	/**
+	 * @return the approximate number of bytes occupied by this block
+	 */
+	public long getSizeInBytes()
+	{
+		return 8L * palette.length + ( indices == null ? 0 : 8L * indices.length ) + 64;
+	}
+
+	/**
+	 * @return the decompressed values
+	 */
+	public long[] toArray()
+	{
+		final long[] values = new long[ length ];
+		if ( log2Bits < 0 )
+			Arrays.fill( values, palette[ 0 ] );
+		else
+			for ( int i = 0; i < length; i++ )
+				values[ i ] = getValue( i );
+		return values;
+	}
+
+	/**
+	 * Assigns consecutive indices to distinct long values, in order of
+	 * their first occurrence.
+	 */
+	private static class LongIndexMap
+	{
+		private long[] keys = new long[ 16 ];
+		private int[] indices = new int[ 16 ];
+		private boolean[] used = new boolean[ 16 ];
+		private long[] values = new long[ 16 ];
+		private int size;
+
+		// the previous value, as neighbouring voxels mostly share their label
+		private long lastValue;
+		private int lastIndex = -1;
+
+		int indexOf( final long value )
+		{
+			if ( lastIndex >= 0 && value == lastValue )
+				return lastIndex;
+
+			final int mask = keys.length - 1;
+			int slot = hash( value ) & mask;
+			while ( used[ slot ] )
+			{
+				if ( keys[ slot ] == value )
+					return remember( value, indices[ slot ] );
+				slot = ( slot + 1 ) & mask;
+			}
+
+			used[ slot ] = true;
+			keys[ slot ] = value;
+			indices[ slot ] = size;
+			if ( size == values.length )
+				values = Arrays.copyOf( values, 2 * size );
+			values[ size ] = value;
+			size++;
+
+			if ( 2 * size > keys.length )
+				rehash();
+
+			return remember( value, size - 1 );
+		}
+
+		long[] values()
+		{
+			return Arrays.copyOf( values, size );
+		}
+
+		private int remember( final long value, final int index )
+		{
+			lastValue = value;
+			lastIndex = index;
+			return index;
+		}
+
+		private void rehash()
+		{
+			final long[] oldKeys = keys;
+			final int[] oldIndices = indices;
+			final boolean[] oldUsed = used;
+
+			keys = new long[ 2 * oldKeys.length ];
+			indices = new int[ 2 * oldKeys.length ];
+			used = new boolean[ 2 * oldKeys.length ];
+
+			final int mask = keys.length - 1;
+			for ( int i = 0; i < oldKeys.length; i++ )
+			{
+				if ( !oldUsed[ i ] )
+					continue;
+				int slot = hash( oldKeys[ i ] ) & mask;
+				while ( used[ slot ] )
+					slot = ( slot + 1 ) & mask;
+				used[ slot ] = true;
+				keys[ slot ] = oldKeys[ i ];
+				indices[ slot ] = oldIndices[ i ];
+			}
+		}
+
+		private static int hash( final long value )
+		{
+			final long h = value * 0x9E3779B97F4A7C15L;
+			return ( int ) ( h ^ ( h >>> 32 ) );
+		}
+	}
+}
@@ -53,11 +53,23 @@ import static mpicbg.spim.data.XmlKeys.IMGLOADER_FORMAT_ATTRIBUTE_NAME;
 @ImgLoaderIo( format = "bdv.hdf5.ulong", type = Hdf5UnsignedLongImageLoader.class )
 public class XmlIoHdf5UnsignedLongImageLoader implements XmlIoBasicImgLoader< Hdf5UnsignedLongImageLoader >
 {
+	public static final String NUM_FETCHER_THREADS_ATTRIBUTE_NAME = "numFetcherThreads";
+
+	public static final String MAX_CACHE_SIZE_ATTRIBUTE_NAME = "maxCacheSizeInBytes";
+
+	public static final String COMPRESS_BLOCKS_ATTRIBUTE_NAME = "compressBlocks";
+
 	@Override
 	public Element toXml( final Hdf5UnsignedLongImageLoader imgLoader, final File basePath )
 	{
 		final Element elem = new Element( "ImageLoader" );
 		elem.setAttribute( IMGLOADER_FORMAT_ATTRIBUTE_NAME, "bdv.hdf5.ulong" );
+		if ( imgLoader.getNumFetcherThreads() != Hdf5UnsignedLongImageLoader.DEFAULT_NUM_FETCHER_THREADS )
+			elem.setAttribute( NUM_FETCHER_THREADS_ATTRIBUTE_NAME, Integer.toString( imgLoader.getNumFetcherThreads() ) );
+		if ( imgLoader.getMaxCacheSizeInBytes() > 0 )
+			elem.setAttribute( MAX_CACHE_SIZE_ATTRIBUTE_NAME, Long.toString( imgLoader.getMaxCacheSizeInBytes() ) );
+		if ( imgLoader.isCompressBlocks() )
+			elem.setAttribute( COMPRESS_BLOCKS_ATTRIBUTE_NAME, "true" );
 		elem.addContent( XmlHelpers.pathElement( "hdf5", imgLoader.getHdf5File(), basePath ) );
 		for ( final Partition partition : imgLoader.getPartitions() )
 			elem.addContent( partitionToXml( partition, basePath ) );
@@ -71,7 +83,22 @@ public class XmlIoHdf5UnsignedLongImageLoader implements XmlIoBasicImgLoader< Hd
 		final ArrayList< Partition > partitions = new ArrayList<>();
 		for ( final Element p : elem.getChildren( "partition" ) )
 			partitions.add( partitionFromXml( p, basePath ) );
-		return new Hdf5UnsignedLongImageLoader( new File( path ), partitions, sequenceDescription );
+		final String numFetcherThreads = elem.getAttributeValue( NUM_FETCHER_THREADS_ATTRIBUTE_NAME );
+		final Hdf5UnsignedLongImageLoader imgLoader = new Hdf5UnsignedLongImageLoader(
+				new File( path ),
+				null,
+				partitions,
+				sequenceDescription,
+				numFetcherThreads == null ? Hdf5UnsignedLongImageLoader.DEFAULT_NUM_FETCHER_THREADS : Integer.parseInt( numFetcherThreads ),
+				false );
+
+		final String maxCacheSizeInBytes = elem.getAttributeValue( MAX_CACHE_SIZE_ATTRIBUTE_NAME );
+		if ( maxCacheSizeInBytes != null )
+			imgLoader.setMaxCacheSizeInBytes( Long.parseLong( maxCacheSizeInBytes ) );
+
+		imgLoader.setCompressBlocks( Boolean.parseBoolean( elem.getAttributeValue( COMPRESS_BLOCKS_ATTRIBUTE_NAME ) ) );
+
+		return imgLoader;
 	}
 
 	private Element partitionToXml( final Partition partition, final File basePath )
@@ -29,23 +29,33 @@
 package de.embl.cba.bdv.utils.render;
 
 import bdv.tools.transformation.TransformedSource;
-import bdv.util.BdvHandle;
-import bdv.util.volatiles.VolatileViews;
 import bdv.viewer.Source;
-import bdv.viewer.render.AccumulateProjector;
 import bdv.viewer.render.AccumulateProjectorFactory;
 import bdv.viewer.render.VolatileProjector;
 import de.embl.cba.bdv.utils.sources.Metadata;
 import de.embl.cba.bdv.utils.sources.Sources;
-import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.IntArray;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.util.StopWatch;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 
-public class AccumulateEMAndFMProjectorARGB extends AccumulateProjector< ARGBType, ARGBType >
+/**
+ * Accumulates the sources such that EM sources are averaged
+ * and all other (FM) sources are added on top.
+ *
+ * The modality of each source is resolved once, when the projector is created.
+ * Accumulation runs line-wise on the int ARGB values; if the screen images
+ * are backed by int arrays (as BDV's are) these are accessed directly.
+ */
+public class AccumulateEMAndFMProjectorARGB implements VolatileProjector
 {
 	public static AccumulateProjectorFactory< ARGBType > factory = new AccumulateProjectorFactory< ARGBType >()
 	{
@@ -67,57 +77,225 @@ public class AccumulateEMAndFMProjectorARGB extends AccumulateProjector< ARGBTyp
 					executorService );
 		}
 	};
-	
-	private final ArrayList< Source< ? > > sourceList;
+
+	private final List< VolatileProjector > sourceProjectors;
+	private final List< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages;
+	private final RandomAccessibleInterval< ARGBType > target;
+	private final int numThreads;
+	private final ExecutorService executorService;
+
+	/**
+	 * For each source, whether it is averaged (EM) or added (FM).
+	 */
+	private final boolean[] isAveraged;
+
+	/**
+	 * Backing arrays of the source screen images and the target,
+	 * or null if any of them is not a plain int array image of the target size.
+	 */
+	private final int[][] sourceData;
+	private final int[] targetData;
+
+	private final int width;
+	private final int height;
+
+	private volatile boolean interrupted = false;
+	private volatile boolean valid = false;
+	private long lastFrameRenderNanoTime;
 
 	public AccumulateEMAndFMProjectorARGB(
-			final ArrayList< VolatileProjector > sourceProjectors,
-			final ArrayList< Source< ? > > sources,
-			final ArrayList< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
+			final List< VolatileProjector > sourceProjectors,
+			final List< ? extends Source< ? > > sources,
+			final List< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
 			final RandomAccessibleInterval< ARGBType > target,
 			final int numThreads,
 			final ExecutorService executorService )
 	{
-		super( sourceProjectors, sourceScreenImages, target, numThreads, executorService );
-		this.sourceList = sources;
+		this.sourceProjectors = sourceProjectors;
+		this.sourceScreenImages = sourceScreenImages;
+		this.target = target;
+		this.numThreads = numThreads;
+		this.executorService = executorService;
+		this.width = ( int ) target.dimension( 0 );
+		this.height = ( int ) target.dimension( 1 );
+		this.isAveraged = resolveModalities( sources );
+
+		final int[][] data = new int[ sourceScreenImages.size() ][];
+		boolean allArrays = true;
+		for ( int i = 0; i < data.length; i++ )
+		{
+			data[ i ] = getIntArray( sourceScreenImages.get( i ) );
+			allArrays &= data[ i ] != null;
+		}
+		targetData = getIntArray( target );
+		sourceData = allArrays && targetData != null ? data : null;
+	}
+
+	public static boolean[] resolveModalities( List< ? extends Source< ? > > sources )
+	{
+		final boolean[] isAveraged = new boolean[ sources.size() ];
+		for ( int i = 0; i < isAveraged.length; i++ )
+		{
+			Source< ? > source = sources.get( i );
+			if ( source instanceof TransformedSource )
+				source = ( ( TransformedSource< ? > ) source ).getWrappedSource();
+
+			final Metadata metadata = Sources.sourceToMetadata.get( source );
+			isAveraged[ i ] = metadata != null && Metadata.Modality.EM.equals( metadata.modality );
+		}
+		return isAveraged;
+	}
+
+	private int[] getIntArray( RandomAccessible< ? > image )
+	{
+		if ( ! ( image instanceof ArrayImg ) ) return null;
+
+		final ArrayImg< ?, ? > arrayImg = ( ArrayImg< ?, ? > ) image;
+		if ( arrayImg.numDimensions() < 2
+				|| arrayImg.dimension( 0 ) != width
+				|| arrayImg.dimension( 1 ) != height
+				|| target.min( 0 ) != 0 || target.min( 1 ) != 0 )
+			return null;
+
+		final Object access = arrayImg.update( null );
+		return access instanceof IntArray ? ( ( IntArray ) access ).getCurrentStorageArray() : null;
 	}
 
 	@Override
-	protected void accumulate(
-			final Cursor< ? extends ARGBType >[] accesses,
-			final ARGBType target )
+	public boolean map( final boolean clearUntouchedTargetPixels )
 	{
-		int aAvg = 0, rAvg = 0, gAvg = 0, bAvg = 0, numNonZeroAvg = 0;
-		int aAccu = 0, rAccu = 0, gAccu = 0, bAccu = 0;
+		interrupted = false;
 
-		int sourceIndex = 0;
+		final StopWatch stopWatch = StopWatch.createAndStart();
 
-		final double[] position = new double[ 3 ];
-		for ( final Cursor< ? extends ARGBType > access : accesses )
+		valid = true;
+		for ( final VolatileProjector projector : sourceProjectors )
 		{
-			final int value = access.get().get();
-			access.localize( position );
-			final int a = ARGBType.alpha( value );
-			final int r = ARGBType.red( value );
-			final int g = ARGBType.green( value );
-			final int b = ARGBType.blue( value );
+			if ( ! projector.isValid() )
+				if ( ! projector.map( clearUntouchedTargetPixels ) )
+					return false;
+			valid &= projector.isValid();
+		}
 
-			if ( a == 0 ) continue; // TODO: think about this!
+		final int numTasks = numThreads <= 1 ? 1 : Math.min( numThreads * 10, height );
+		final int linesPerTask = ( height + numTasks - 1 ) / Math.max( numTasks, 1 );
 
-			Source< ? > source = sourceList.get( sourceIndex++ );
-			if ( source instanceof TransformedSource  )
-				source = ((TransformedSource)source).getWrappedSource();
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>( numTasks );
+		for ( int startLine = 0; startLine < height; startLine += linesPerTask )
+		{
+			final int start = startLine;
+			final int end = Math.min( height, startLine + linesPerTask );
+			tasks.add( () ->
+			{
+				if ( sourceData != null )
+					accumulateArrays( start, end );
+				else
+					accumulateRandomAccesses( start, end );
+				return null;
+			} );
+		}
 
-			final Metadata metadata = Sources.sourceToMetadata.get( source );
+		try
+		{
+			if ( tasks.size() == 1 || executorService == null )
+				for ( final Callable< Void > task : tasks )
+					task.call();
+			else
+				executorService.invokeAll( tasks );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			interrupted = true;
+		}
+		catch ( final Exception e )
+		{
+			throw new RuntimeException( e );
+		}
+
+		lastFrameRenderNanoTime = stopWatch.nanoTime();
 
-			if ( metadata == null || ! metadata.modality.equals( Metadata.Modality.EM ) )
+		return ! interrupted;
+	}
+
+	private void accumulateArrays( int startLine, int endLine )
+	{
+		final int[] line = new int[ sourceData.length ];
+		for ( int y = startLine; y < endLine; y++ )
+		{
+			if ( interrupted ) return;
+
+			final int offset = y * width;
+			for ( int x = 0; x < width; x++ )
 			{
-				aAccu += a;
-				rAccu += r;
-				gAccu += g;
-				bAccu += b;
+				final int index = offset + x;
+				for ( int s = 0; s < line.length; s++ )
+					line[ s ] = sourceData[ s ][ index ];
+				targetData[ index ] = accumulate( line, isAveraged );
 			}
-			else
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private void accumulateRandomAccesses( int startLine, int endLine )
+	{
+		final int numSources = sourceScreenImages.size();
+
+		final RandomAccess< ? extends ARGBType >[] sourceAccesses = new RandomAccess[ numSources ];
+		for ( int s = 0; s < numSources; s++ )
+			sourceAccesses[ s ] = sourceScreenImages.get( s ).randomAccess();
+		final RandomAccess< ARGBType > targetAccess = target.randomAccess();
+
+		final long minX = target.min( 0 );
+		final long minY = target.min( 1 );
+
+		final int[] values = new int[ numSources ];
+		for ( int y = startLine; y < endLine; y++ )
+		{
+			if ( interrupted ) return;
+
+			for ( int s = 0; s < numSources; s++ )
+				sourceAccesses[ s ].setPosition( new long[]{ minX, minY + y } );
+			targetAccess.setPosition( new long[]{ minX, minY + y } );
+
+			for ( int x = 0; x < width; x++ )
+			{
+				for ( int s = 0; s < numSources; s++ )
+				{
+					values[ s ] = sourceAccesses[ s ].get().get();
+					sourceAccesses[ s ].fwd( 0 );
+				}
+				targetAccess.get().set( accumulate( values, isAveraged ) );
+				targetAccess.fwd( 0 );
+			}
+		}
+	}
+
+	/**
+	 * Adds all non-averaged values and the average of the averaged values.
+	 * Fully transparent values are ignored.
+	 *
+	 * @param values ARGB values of all sources at one pixel
+	 * @param isAveraged
+	 * @return accumulated ARGB value, with each channel clamped to 255
+	 */
+	public static int accumulate( final int[] values, final boolean[] isAveraged )
+	{
+		int aAvg = 0, rAvg = 0, gAvg = 0, bAvg = 0, numNonZeroAvg = 0;
+		int aAccu = 0, rAccu = 0, gAccu = 0, bAccu = 0;
+
+		for ( int s = 0; s < values.length; s++ )
+		{
+			final int value = values[ s ];
+			final int a = value >>> 24;
+
+			if ( a == 0 ) continue;
+
+			final int r = ( value >> 16 ) & 0xff;
+			final int g = ( value >> 8 ) & 0xff;
+			final int b = value & 0xff;
+
+			if ( isAveraged[ s ] )
 			{
 				aAvg += a;
 				rAvg += r;
@@ -125,21 +303,23 @@ public class AccumulateEMAndFMProjectorARGB extends AccumulateProjector< ARGBTyp
 				bAvg += b;
 				numNonZeroAvg++;
 			}
+			else
+			{
+				aAccu += a;
+				rAccu += r;
+				gAccu += g;
+				bAccu += b;
+			}
 		}
 
 		if ( numNonZeroAvg > 0 )
 		{
-			aAvg /= numNonZeroAvg;
-			rAvg /= numNonZeroAvg;
-			gAvg /= numNonZeroAvg;
-			bAvg /= numNonZeroAvg;
+			aAccu += aAvg / numNonZeroAvg;
+			rAccu += rAvg / numNonZeroAvg;
+			gAccu += gAvg / numNonZeroAvg;
+			bAccu += bAvg / numNonZeroAvg;
 		}
 
-		aAccu += aAvg;
-		rAccu += rAvg;
-		gAccu += gAvg;
-		bAccu += bAvg;
-
 		if ( aAccu > 255 )
 			aAccu = 255;
 		if ( rAccu > 255 )
@@ -149,7 +329,26 @@ public class AccumulateEMAndFMProjectorARGB extends AccumulateProjector< ARGBTyp
 		if ( bAccu > 255 )
 			bAccu = 255;
 
-		target.set( ARGBType.rgba( rAccu, gAccu, bAccu, aAccu ) );
+		return ( aAccu << 24 ) | ( rAccu << 16 ) | ( gAccu << 8 ) | bAccu;
 	}
 
+	@Override
+	public void cancel()
+	{
+		interrupted = true;
+		for ( final VolatileProjector projector : sourceProjectors )
+			projector.cancel();
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
 }
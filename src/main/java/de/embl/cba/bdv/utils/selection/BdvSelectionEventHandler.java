@@ -183,20 +183,7 @@ public class BdvSelectionEventHandler
 
 	public void selectNone()
 	{
-//		final Map< Integer, Collection< Double > > selections = selectableConverter.getSelections();
-//
-//		for ( final BdvLabelSourceSelectionListener s : bdvLabelSourceSelectionListeners )
-//		{
-//			for ( int timePoint : selections.keySet() )
-//			{
-//				for ( Double selection : selections.get( timePoint ) )
-//				{
-//					s.selectionChanged( selection, timePoint, false );
-//				}
-//			}
-//		}
-
-		//selectableConverter.clearSelections( );
+		selectableConverter.setSelected( TimePointAndLabelSet.EMPTY );
 
 		BdvUtils.repaint( bdv );
 	}
@@ -237,10 +224,10 @@ public class BdvSelectionEventHandler
 
 	private void removeSelectionAndNotifyListeners( double selected, int currentTimepoint )
 	{
-//		selectableConverter.selectionChanged( selected, currentTimepoint, false );
-//
-//		for ( final BdvLabelSourceSelectionListener s : bdvLabelSourceSelectionListeners )
-//			s.selectionChanged( selected, currentTimepoint, false );
+		selectionChanged( selected, currentTimepoint, false );
+
+		for ( final BdvLabelSourceSelectionListener s : bdvLabelSourceSelectionListeners )
+			s.selectionChanged( selected, currentTimepoint, false );
 	}
 
 	private void addSelectionAndNotifyListeners( double selected, int currentTimepoint )
@@ -258,21 +245,22 @@ public class BdvSelectionEventHandler
 
 	private boolean isNewSelection( double selected, int timepoint )
 	{
-//		if ( selectableConverter.getSelections() == null ) return true;
-//
-//		if ( selectableConverter.getSelections().get( timepoint ) == null ) return true;
-//
-//		if ( selectableConverter.getSelections().get( timepoint ).contains( selected ) ) return false;
-
-		return true;
+		return ! selectableConverter.getSelected().contains( timepoint, selected );
 	}
 
-	public void selectionChanged( double label, int timepoint, boolean selected )
+	/**
+	 * Updates the selection of the converter; the new selection
+	 * is swapped in atomically, such that rendering threads see either
+	 * the old or the new selection.
+	 */
+	public synchronized void selectionChanged( double label, int timepoint, boolean selected )
 	{
-		if ( isNewSelection( label, timepoint  ) )
-		{
-//			selectableConverter.selectionChanged( label, timepoint, true );
-		}
+		final TimePointAndLabelSet current = selectableConverter.getSelected();
+
+		if ( selected )
+			selectableConverter.setSelected( current.with( timepoint, label ) );
+		else
+			selectableConverter.setSelected( current.without( timepoint, label ) );
 	}
 
 	public void addSelectionEventListener( BdvLabelSourceSelectionListener s )
@@ -0,0 +1,158 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.bdv.utils.selection;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable set of (time point, label) pairs, backed by primitive arrays
+ * with open addressing, such that a look-up per rendered pixel is cheap.
+ *
+ * Changes create a new set, which can then be swapped in atomically,
+ * e.g. by assigning it to a volatile field.
+ */
+public final class TimePointAndLabelSet
+{
+	public static final TimePointAndLabelSet EMPTY = new TimePointAndLabelSet( 0 );
+
+	// no key is -0.0, see key( label )
+	private static final long FREE = Long.MIN_VALUE;
+
+	private final long[] labelKeys;
+	private final int[] timePoints;
+	private final int mask;
+	private int size;
+
+	private TimePointAndLabelSet( int expectedSize )
+	{
+		int capacity = 2;
+		while ( capacity < 2 * expectedSize )
+			capacity <<= 1;
+
+		labelKeys = new long[ capacity ];
+		timePoints = new int[ capacity ];
+		mask = capacity - 1;
+		Arrays.fill( labelKeys, FREE );
+	}
+
+	public static TimePointAndLabelSet of( Collection< ? extends Segment > segments )
+	{
+		final TimePointAndLabelSet set = new TimePointAndLabelSet( segments.size() );
+		for ( Segment segment : segments )
+			set.add( segment.timePoint(), segment.label() );
+		return set;
+	}
+
+	public boolean contains( int timePoint, double label )
+	{
+		final long key = key( label );
+		int slot = slot( timePoint, key );
+		long current;
+		while ( ( current = labelKeys[ slot ] ) != FREE )
+		{
+			if ( current == key && timePoints[ slot ] == timePoint )
+				return true;
+			slot = ( slot + 1 ) & mask;
+		}
+		return false;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return a copy of this set that also contains the given pair
+	 */
+	public TimePointAndLabelSet with( int timePoint, double label )
+	{
+		if ( contains( timePoint, label ) ) return this;
+
+		final TimePointAndLabelSet set = new TimePointAndLabelSet( size + 1 );
+		addAllTo( set );
+		set.add( timePoint, label );
+		return set;
+	}
+
+	/**
+	 * @return a copy of this set without the given pair
+	 */
+	public TimePointAndLabelSet without( int timePoint, double label )
+	{
+		if ( ! contains( timePoint, label ) ) return this;
+
+		final TimePointAndLabelSet set = new TimePointAndLabelSet( size - 1 );
+		final long key = key( label );
+		for ( int slot = 0; slot < labelKeys.length; slot++ )
+			if ( labelKeys[ slot ] != FREE && ! ( labelKeys[ slot ] == key && timePoints[ slot ] == timePoint ) )
+				set.addKey( timePoints[ slot ], labelKeys[ slot ] );
+		return set;
+	}
+
+	private void addAllTo( TimePointAndLabelSet set )
+	{
+		for ( int slot = 0; slot < labelKeys.length; slot++ )
+			if ( labelKeys[ slot ] != FREE )
+				set.addKey( timePoints[ slot ], labelKeys[ slot ] );
+	}
+
+	private void add( int timePoint, double label )
+	{
+		addKey( timePoint, key( label ) );
+	}
+
+	private void addKey( int timePoint, long key )
+	{
+		int slot = slot( timePoint, key );
+		long current;
+		while ( ( current = labelKeys[ slot ] ) != FREE )
+		{
+			if ( current == key && timePoints[ slot ] == timePoint )
+				return;
+			slot = ( slot + 1 ) & mask;
+		}
+		labelKeys[ slot ] = key;
+		timePoints[ slot ] = timePoint;
+		size++;
+	}
+
+	private static long key( double label )
+	{
+		// adding 0.0 turns -0.0 into 0.0
+		return Double.doubleToLongBits( label + 0.0 );
+	}
+
+	private int slot( int timePoint, long key )
+	{
+		long h = ( key + 31L * timePoint ) * 0x9E3779B97F4A7C15L;
+		return ( int ) ( h ^ ( h >>> 32 ) ) & mask;
+	}
+}
@@ -32,6 +32,7 @@ import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
 import de.embl.cba.bdv.utils.Logger;
 import de.embl.cba.bdv.utils.wrap.Wraps;
+import de.embl.cba.lazyalgorithm.CachedDownsampling;
 import ij.IJ;
 import ij.ImagePlus;
 import mpicbg.spim.data.sequence.VoxelDimensions;
@@ -89,8 +90,12 @@ public class ImagePlusFileSource < R extends RealType< R > & NativeType< R > >
 			metadata.contrastLimits = new double[]{0.0,65535.0};
 		}
 
+		final CachedDownsampling.Method downsamplingMethod =
+				metadata.modality == Metadata.Modality.Segmentation || metadata.type == Metadata.Type.Segmentation ?
+						CachedDownsampling.Method.Mode : CachedDownsampling.Method.Average;
+
 		raiSource4D = ( ModifiableRandomAccessibleIntervalSource4D< R > )
-				Wraps.imagePlusAsSource4DChannelList( imagePlus ).get( 0 );
+				Wraps.imagePlusAsSource4DChannelList( imagePlus, downsamplingMethod ).get( 0 );
 	}
 
 	private void openImagePlus()
@@ -34,69 +34,253 @@ import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
 import de.embl.cba.bdv.utils.BdvUtils;
+import de.embl.cba.bdv.utils.Logger;
 import mpicbg.spim.data.SpimData;
 import mpicbg.spim.data.generic.sequence.BasicMultiResolutionImgLoader;
 import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.Cursor;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.NumericType;
+import net.imglib2.view.Views;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * A {@link Source} that opens its SpimData only when needed.
+ *
+ * The SpimData is opened exactly once: either in the background, by
+ * {@link #prefetch()} or the first {@link #isPresent(int)}, or in the
+ * calling thread, by the first method that cannot answer without it
+ * (e.g. {@link #getType()}), which then waits for a background opening
+ * that is already running. Until it is open, the source is not present,
+ * such that the viewer does not block while rendering; use
+ * {@link #addOpenListener(Runnable)} to repaint once it is open.
+ *
+ * All other methods of {@link Source}, i.e. {@link #getType()},
+ * {@link #getSourceTransform(int, int, AffineTransform3D)},
+ * {@link #getSource(int, int)} etc., block until the SpimData is open.
+ * Call {@link #prefetch()} early to avoid blocking the EDT with them.
+ *
+ * If opening fails, the error is logged and the next call opens again.
+ */
 public class LazySpimSource< T extends NumericType< T > > implements Source< T >
 {
+	private static ExecutorService sharedExecutor;
+
 	private final String path;
 	private final String name;
-	private Source< T > source;
-	private Source< T > volatileSource;
-	private SpimData spimData;
-	private List< ConverterSetup > converterSetups;
-	private List< SourceAndConverter< ? > > sources;
+	private final AtomicReference< CompletableFuture< Opened< T > > > opening;
+	private volatile Opened< T > opened;
+	private final List< Runnable > openListeners;
+
+	private static class Opened< T >
+	{
+		final SpimData spimData;
+		final List< ConverterSetup > converterSetups;
+		final Source< T > source;
+		final Source< T > volatileSource;
+
+		Opened( SpimData spimData, List< ConverterSetup > converterSetups, Source< T > source, Source< T > volatileSource )
+		{
+			this.spimData = spimData;
+			this.converterSetups = converterSetups;
+			this.source = source;
+			this.volatileSource = volatileSource;
+		}
+	}
 
 	public LazySpimSource( String name, String path )
 	{
 		this.name = name;
 		this.path = path;
+		this.opening = new AtomicReference<>();
+		this.openListeners = new CopyOnWriteArrayList<>();
 	}
 
-	private Source< T > wrappedVolatileSource()
+	/**
+	 * Adds a listener that is run once the SpimData is open,
+	 * e.g. to repaint the viewer, which skips the source until then.
+	 * The listener runs in the thread that opened the SpimData,
+	 * or right away if it is open already.
+	 *
+	 * @param listener
+	 */
+	public void addOpenListener( Runnable listener )
 	{
-		if ( spimData == null ) initSpimData();
+		openListeners.add( listener );
+		if ( opened != null )
+			listener.run();
+	}
 
-		if ( volatileSource == null )
-			volatileSource = ( Source< T > ) sources.get( 0 ).asVolatile().getSpimSource();
+	public void removeOpenListener( Runnable listener )
+	{
+		openListeners.remove( listener );
+	}
 
-		if ( source == null )
-			source = ( Source< T > ) sources.get( 0 ).getSpimSource();
+	/**
+	 * Opens the SpimData in the background, if not done yet, and
+	 * loads the coarsest resolution level of timepoint 0 into the cache.
+	 *
+	 * @return completes when the coarsest level is loaded
+	 */
+	public CompletableFuture< Void > prefetch()
+	{
+		return prefetch( 0 );
+	}
 
-		return volatileSource;
+	/**
+	 * Opens the SpimData in the background, if not done yet, and
+	 * loads the coarsest resolution level of timepoint t into the cache.
+	 *
+	 * @return completes when the coarsest level is loaded
+	 */
+	public CompletableFuture< Void > prefetch( int t )
+	{
+		return open( getSharedExecutor() ).thenAcceptAsync( opened -> loadCoarsestLevel( opened.source, t ), getSharedExecutor() );
 	}
 
-	private Source< T > wrappedSource()
+	public boolean isOpen()
+	{
+		return opened != null;
+	}
+
+	/**
+	 * Opens the SpimData in the calling thread, if not done yet,
+	 * or waits for a background opening that is already running.
+	 */
+	public void waitUntilOpen()
+	{
+		opened();
+	}
+
+	private static < T > void loadCoarsestLevel( Source< T > source, int t )
+	{
+		if ( ! source.isPresent( t ) ) return;
+
+		final RandomAccessibleInterval< T > rai = source.getSource( t, source.getNumMipmapLevels() - 1 );
+		final Cursor< T > cursor = Views.iterable( rai ).cursor();
+		while ( cursor.hasNext() )
+			cursor.next();
+	}
+
+	private static synchronized ExecutorService getSharedExecutor()
+	{
+		if ( sharedExecutor == null )
+			sharedExecutor = Executors.newFixedThreadPool(
+					Math.min( 4, Runtime.getRuntime().availableProcessors() ),
+					runnable -> {
+						final Thread thread = new Thread( runnable, "LazySpimSource opening" );
+						thread.setDaemon( true );
+						return thread;
+					} );
+		return sharedExecutor;
+	}
+
+	/**
+	 * Starts opening the SpimData with the executor,
+	 * unless another thread has started already.
+	 * If opening fails, it is reset, such that it can be started again.
+	 */
+	private CompletableFuture< Opened< T > > open( Executor executor )
 	{
-		if ( spimData == null ) initSpimData();
+		final CompletableFuture< Opened< T > > current = opening.get();
+		if ( current != null ) return current;
+
+		final CompletableFuture< Opened< T > > future = new CompletableFuture<>();
+		if ( ! opening.compareAndSet( null, future ) )
+			return opening.get();
+
+		executor.execute( () -> {
+			final Opened< T > current;
+			try
+			{
+				current = openSpimData();
+			}
+			catch ( Throwable e )
+			{
+				Logger.log( "Could not open " + path + ": " + e );
+				opening.compareAndSet( future, null );
+				future.completeExceptionally( e );
+				return;
+			}
 
-		if ( source == null )
-			source = ( Source< T > ) sources.get( 0 ).getSpimSource();
+			opened = current;
+			try
+			{
+				for ( Runnable listener : openListeners )
+					listener.run();
+			}
+			finally
+			{
+				future.complete( current );
+			}
+		} );
 
-		return source;
+		return future;
 	}
 
-	private void initSpimData()
+	private Opened< T > opened()
 	{
-		spimData = BdvUtils.openSpimData( path );
-		converterSetups = new ArrayList<>();
-		sources = new ArrayList<>();
+		final Opened< T > current = opened;
+		if ( current != null ) return current;
+
+		try
+		{
+			return open( Runnable::run ).get();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( "Interrupted while opening " + path, e );
+		}
+		catch ( ExecutionException e )
+		{
+			throw new RuntimeException( "Could not open " + path, e.getCause() );
+		}
+	}
+
+	private Opened< T > openSpimData()
+	{
+		final SpimData spimData = BdvUtils.openSpimData( path );
+		if ( spimData == null )
+			throw new RuntimeException( "Could not read " + path );
+
+		final List< ConverterSetup > converterSetups = new ArrayList<>();
+		final List< SourceAndConverter< ? > > sources = new ArrayList<>();
 		BigDataViewer.initSetups( spimData, converterSetups, sources );
+
+		final Source< T > source = ( Source< T > ) sources.get( 0 ).getSpimSource();
+		final SourceAndConverter< ? > volatileSourceAndConverter = sources.get( 0 ).asVolatile();
+		final Source< T > volatileSource = volatileSourceAndConverter != null
+				? ( Source< T > ) volatileSourceAndConverter.getSpimSource()
+				: source;
+
+		return new Opened<>( spimData, converterSetups, source, volatileSource );
 	}
 
-	public RandomAccessibleInterval< T > getNonVolatileSource( int t, int level )
+	private Source< T > wrappedVolatileSource()
 	{
-		if ( spimData == null ) initSpimData();
+		return opened().volatileSource;
+	}
 
-		final BasicMultiResolutionImgLoader imgLoader = ( BasicMultiResolutionImgLoader ) spimData.getSequenceDescription().getImgLoader();
+	private Source< T > wrappedSource()
+	{
+		return opened().source;
+	}
+
+	public RandomAccessibleInterval< T > getNonVolatileSource( int t, int level )
+	{
+		final BasicMultiResolutionImgLoader imgLoader = ( BasicMultiResolutionImgLoader ) opened().spimData.getSequenceDescription().getImgLoader();
 
 		return ( RandomAccessibleInterval ) imgLoader.getSetupImgLoader( 0 ).getImage( t, level );
 	}
@@ -109,7 +293,14 @@ public class LazySpimSource< T extends NumericType< T > > implements Source< T >
 	@Override
 	public boolean isPresent( int t )
 	{
-		return wrappedSource().isPresent( t );
+		final Opened< T > current = opened;
+		if ( current == null )
+		{
+			open( getSharedExecutor() );
+			return false;
+		}
+
+		return current.source.isPresent( t );
 	}
 
 	@Override
@@ -29,30 +29,82 @@
 package de.embl.cba.bdv.utils.sources;
 
 import bdv.util.AbstractSource;
+import bdv.util.MipmapTransforms;
 import bdv.viewer.Interpolation;
+import de.embl.cba.bdv.utils.Logger;
+import de.embl.cba.lazyalgorithm.CachedDownsampling;
 import de.embl.cba.lazyalgorithm.RandomAccessibleIntervalFilter;
+import net.imglib2.Cursor;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.DiskCachedCellImgOptions.CacheType;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.cache.img.SingleCellArrayImg;
 import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.ConstantUtils;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ModifiableRandomAccessibleIntervalSource4D < T extends NumericType< T > > extends AbstractSource< T >
 {
+	/**
+	 * Resolution levels are added until the largest xy dimension
+	 * is not larger than this.
+	 */
+	public static final int MIN_MIPMAP_SIZE = 512;
+
+	/**
+	 * Number of time points whose cached filter output and resolution
+	 * pyramid are kept; the least recently used time points are evicted,
+	 * such that the memory does not grow while scrolling through time.
+	 */
+	public static final int MAX_NUM_CACHED_TIME_POINTS = 2;
+
 	private final RandomAccessibleInterval< T > source;
 
 	protected int currentTimePointIndex;
 
-	private RandomAccessibleInterval< T > currentSource;
+	private RandomAccessibleInterval< T >[] currentSources;
 
-	private RandomAccessibleInterval< T > currentRawSource;
+	private RandomAccessibleInterval< T >[] currentRawSources;
 
-	private final RealRandomAccessible< T >[] currentInterpolatedSources;
+	private RealRandomAccessible< T >[][] currentInterpolatedSources;
 
 	private final AffineTransform3D sourceTransform;
-	private RandomAccessibleIntervalFilter< T > filter;
+	private volatile RandomAccessibleIntervalFilter< T > filter;
+	private volatile boolean isFilterCached;
+
+	private final CachedDownsampling.Method downsamplingMethod;
+
+	/**
+	 * Downsampling factors of each resolution level, relative to level 0.
+	 */
+	private final int[][] mipmapFactors;
+	private final AffineTransform3D[] mipmapTransforms;
+
+	private int[] cellDimensions = new int[]{ 64, 64, 64 };
+	private long maxNumCachedCells = 1000;
+
+	/**
+	 * Cached (filtered) output of each resolution level of the recently used time points.
+	 * Cleared whenever the filter changes.
+	 */
+	private final Map< Integer, RandomAccessibleInterval< T >[] > timePointToCachedSources = createTimePointCache();
+
+	/**
+	 * Lazily downsampled raw data of the recently used time points.
+	 */
+	private final Map< Integer, RandomAccessibleInterval< T >[] > timePointToRawPyramid = createTimePointCache();
 
 	public ModifiableRandomAccessibleIntervalSource4D(
 			final RandomAccessibleInterval< T > img,
@@ -67,48 +119,270 @@ public class ModifiableRandomAccessibleIntervalSource4D < T extends NumericType<
 			final T type,
 			final AffineTransform3D sourceTransform,
 			final String name )
+	{
+		this( img, type, sourceTransform, name, CachedDownsampling.Method.Average );
+	}
+
+	/**
+	 * @param img
+	 * 			XYZT image
+	 * @param type
+	 * @param sourceTransform
+	 * @param name
+	 * @param downsamplingMethod
+	 * 			how to compute the lower resolution levels;
+	 * 			Average for intensity images, Mode for label images.
+	 * 			Only {@link RealType} and {@link NativeType} images get more than one level.
+	 */
+	public ModifiableRandomAccessibleIntervalSource4D(
+			final RandomAccessibleInterval< T > img,
+			final T type,
+			final AffineTransform3D sourceTransform,
+			final String name,
+			final CachedDownsampling.Method downsamplingMethod )
 	{
 		super( type, name );
 		this.source = img;
 		this.sourceTransform = sourceTransform;
-		currentInterpolatedSources = new RealRandomAccessible[ Interpolation.values().length ];
+		this.downsamplingMethod = downsamplingMethod;
+		mipmapFactors = computeMipmapFactors();
+		mipmapTransforms = computeMipmapTransforms();
 		loadTimepoint( 0 );
 	}
 
+	/**
+	 * Halves xy per level; z is only halved if this keeps the voxels
+	 * closer to isotropic.
+	 */
+	private int[][] computeMipmapFactors()
+	{
+		final ArrayList< int[] > factors = new ArrayList<>();
+		factors.add( new int[]{ 1, 1, 1 } );
+
+		if ( getType() instanceof RealType && getType() instanceof NativeType )
+		{
+			final double[] voxelSizes = new double[ 3 ];
+			for ( int d = 0; d < 3; d++ )
+				for ( int r = 0; r < 3; r++ )
+					voxelSizes[ d ] += sourceTransform.get( r, d ) * sourceTransform.get( r, d );
+			for ( int d = 0; d < 3; d++ )
+				voxelSizes[ d ] = Math.sqrt( voxelSizes[ d ] );
+
+			final long maxSizeXY = Math.max( source.dimension( 0 ), source.dimension( 1 ) );
+
+			int[] previous = factors.get( 0 );
+			while ( maxSizeXY / previous[ 0 ] > MIN_MIPMAP_SIZE )
+			{
+				final int[] next = previous.clone();
+				next[ 0 ] *= 2;
+				next[ 1 ] *= 2;
+
+				if ( source.dimension( 2 ) / previous[ 2 ] > 1
+						&& voxelSizes[ 2 ] * previous[ 2 ] * 2 <= voxelSizes[ 0 ] * next[ 0 ] )
+					next[ 2 ] *= 2;
+
+				factors.add( next );
+				previous = next;
+			}
+		}
+
+		return factors.toArray( new int[ 0 ][] );
+	}
+
+	private AffineTransform3D[] computeMipmapTransforms()
+	{
+		final AffineTransform3D[] transforms = new AffineTransform3D[ mipmapFactors.length ];
+		for ( int level = 0; level < mipmapFactors.length; level++ )
+		{
+			final double[] scales = new double[ 3 ];
+			for ( int d = 0; d < 3; d++ )
+				scales[ d ] = mipmapFactors[ level ][ d ];
+
+			transforms[ level ] = sourceTransform.copy();
+			transforms[ level ].concatenate( MipmapTransforms.getMipmapTransformDefault( scales ) );
+		}
+		return transforms;
+	}
+
+	@SuppressWarnings( "unchecked" )
 	private void loadTimepoint( final int timepointIndex )
 	{
 		currentTimePointIndex = timepointIndex;
+
+		final int numLevels = mipmapFactors.length;
+		final RandomAccessibleInterval< T >[] sources = new RandomAccessibleInterval[ numLevels ];
+		final RealRandomAccessible< T >[][] interpolatedSources = new RealRandomAccessible[ numLevels ][ Interpolation.values().length ];
+
 		if ( isPresent( timepointIndex ) )
 		{
 			final T zero = getType().createVariable();
 			zero.setZero();
-			currentRawSource = Views.hyperSlice( source, 3, timepointIndex );
+			currentRawSources = getRawPyramid( timepointIndex );
 
-			applyFilter();
+			for ( int level = 0; level < numLevels; level++ )
+			{
+				sources[ level ] = applyFilter( level );
 
-			for ( final Interpolation method : Interpolation.values() )
-				currentInterpolatedSources[ method.ordinal() ] = Views.interpolate( Views.extendValue( currentSource, zero ), interpolators.get( method ) );
+				for ( final Interpolation method : Interpolation.values() )
+					interpolatedSources[ level ][ method.ordinal() ] = Views.interpolate( Views.extendValue( sources[ level ], zero ), interpolators.get( method ) );
+			}
 		}
-		else
+
+		currentSources = sources;
+		currentInterpolatedSources = interpolatedSources;
+	}
+
+	private RandomAccessibleInterval< T >[] getRawPyramid( int t )
+	{
+		return timePointToRawPyramid.computeIfAbsent( t, this::createRawPyramid );
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private RandomAccessibleInterval< T >[] createRawPyramid( int t )
+	{
+		final RandomAccessibleInterval< T >[] pyramid = new RandomAccessibleInterval[ mipmapFactors.length ];
+		pyramid[ 0 ] = Views.hyperSlice( source, 3, t );
+
+		for ( int level = 1; level < pyramid.length; level++ )
 		{
-			currentSource = null;
-			Arrays.fill( currentInterpolatedSources, null );
+			final int[] relativeFactors = new int[ 3 ];
+			for ( int d = 0; d < 3; d++ )
+				relativeFactors[ d ] = mipmapFactors[ level ][ d ] / mipmapFactors[ level - 1 ][ d ];
+
+			pyramid[ level ] = CachedDownsampling.downsample(
+					( RandomAccessibleInterval ) pyramid[ level - 1 ],
+					relativeFactors,
+					downsamplingMethod,
+					cellDimensions );
 		}
+
+		return pyramid;
 	}
 
-	private void applyFilter()
+	private RandomAccessibleInterval< T > applyFilter( int level )
 	{
 		if ( filter == null  )
-			currentSource = currentRawSource;
+			return currentRawSources[ level ];
+		else if ( isFilterCached )
+			return getCachedSource( currentTimePointIndex, level );
 		else
-			currentSource = filter.filter( currentRawSource );
+			return filter.filter( currentRawSources[ level ] );
 	}
 
 	// set null for not applying a filter
 	public void setFilter( RandomAccessibleIntervalFilter filter )
 	{
+		setFilter( filter, false );
+	}
+
+	/**
+	 * Sets a filter, which is either evaluated as a lazy view on every access,
+	 * or, if cached is true, materialized block-wise into a bounded cell cache.
+	 *
+	 * Caching requires a {@link NativeType}; for other types the filter
+	 * is evaluated lazily.
+	 *
+	 * @param filter
+	 * 			set null for not applying a filter
+	 * @param cached
+	 */
+	public synchronized void setFilter( RandomAccessibleIntervalFilter filter, boolean cached )
+	{
+		if ( cached && ! ( getType() instanceof NativeType ) )
+		{
+			Logger.warn( "Cannot cache filter output of type: " + getType().getClass().getSimpleName() );
+			cached = false;
+		}
+
 		this.filter = filter;
-		applyFilter();
+		this.isFilterCached = cached;
+		timePointToCachedSources.clear();
+		loadTimepoint( currentTimePointIndex );
+	}
+
+	public boolean isFilterCached()
+	{
+		return isFilterCached;
+	}
+
+	/**
+	 * Only affects caches that are created after this call.
+	 */
+	public void setCacheCellDimensions( int[] cellDimensions )
+	{
+		this.cellDimensions = cellDimensions;
+	}
+
+	/**
+	 * The cached filter output of each resolution level of each of the
+	 * {@link #MAX_NUM_CACHED_TIME_POINTS} cached time points keeps at most this many cells.
+	 * Only affects caches that are created after this call.
+	 */
+	public void setMaxNumCachedCells( long maxNumCachedCells )
+	{
+		this.maxNumCachedCells = maxNumCachedCells;
+	}
+
+	/**
+	 * Returns the (filtered) data of a time point and resolution level,
+	 * materialized into a cell cache with volatile accesses, such that it can be
+	 * wrapped by {@link VolatileModifiableRandomAccessibleIntervalSource4D}.
+	 * Cells are computed on first access; the cache keeps a bounded number of cells.
+	 *
+	 * Only valid in cached mode, see {@link #setFilter(RandomAccessibleIntervalFilter, boolean)}.
+	 */
+	@SuppressWarnings( "unchecked" )
+	RandomAccessibleInterval< T > getCachedSource( int t, int level )
+	{
+		final RandomAccessibleInterval< T >[] cachedSources =
+				timePointToCachedSources.computeIfAbsent( t, k -> new RandomAccessibleInterval[ getNumMipmapLevels() ] );
+
+		synchronized ( cachedSources )
+		{
+			if ( cachedSources[ level ] == null )
+				cachedSources[ level ] = createCachedSource( t, level );
+			return cachedSources[ level ];
+		}
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private RandomAccessibleInterval< T > createCachedSource( int t, int level )
+	{
+		final RandomAccessibleInterval< T > raw = getRawPyramid( t )[ level ];
+		final RandomAccessibleIntervalFilter< T > filter = this.filter;
+		final RandomAccessibleInterval< T > filtered = Views.zeroMin( filter == null ? raw : filter.filter( raw ) );
+
+		final CellLoader loader = cell -> copy( filtered, ( SingleCellArrayImg ) cell );
+
+		final RandomAccessibleInterval img = new ReadOnlyCachedCellImgFactory(
+				ReadOnlyCachedCellImgOptions.options()
+						.cellDimensions( cellDimensions )
+						.cacheType( CacheType.BOUNDED )
+						.volatileAccesses( true )
+						.maxCacheSize( maxNumCachedCells ) )
+				.create( Intervals.dimensionsAsLongArray( raw ), ( NativeType ) getType(), loader );
+
+		return Views.translate( img, Intervals.minAsLongArray( raw ) );
+	}
+
+	static < V > Map< Integer, V > createTimePointCache()
+	{
+		return Collections.synchronizedMap( new LinkedHashMap< Integer, V >( 16, 0.75f, true )
+		{
+			@Override
+			protected boolean removeEldestEntry( Map.Entry< Integer, V > eldest )
+			{
+				return size() > MAX_NUM_CACHED_TIME_POINTS;
+			}
+		} );
+	}
+
+	private static < T extends NumericType< T > > void copy( RandomAccessibleInterval< T > input, SingleCellArrayImg< T, ? > cell )
+	{
+		final Cursor< T > in = Views.flatIterable( Views.interval( input, cell ) ).cursor();
+		final Cursor< T > out = Views.flatIterable( cell ).cursor();
+		while ( out.hasNext() )
+			out.next().set( in.next() );
 	}
 
 	@Override
@@ -122,14 +396,23 @@ public class ModifiableRandomAccessibleIntervalSource4D < T extends NumericType<
 	{
 		if ( t != currentTimePointIndex )
 			loadTimepoint( t );
-		return currentSource;
+		return currentSources[ level ];
 	}
 
+	/**
+	 * @return the unfiltered data of the time point; for absent time points,
+	 * 			zeros of the size of the first time point
+	 */
 	public RandomAccessibleInterval< T > getRawSource( final int t, final int level )
 	{
-		if ( t != currentTimePointIndex )
-			loadTimepoint( t );
-		return currentRawSource;
+		if ( ! isPresent( t ) )
+		{
+			final T zero = getType().createVariable();
+			zero.setZero();
+			return ConstantUtils.constantRandomAccessibleInterval( zero, getRawPyramid( ( int ) source.min( 3 ) )[ level ] );
+		}
+
+		return getRawPyramid( t )[ level ];
 	}
 
 	@Override
@@ -137,12 +420,18 @@ public class ModifiableRandomAccessibleIntervalSource4D < T extends NumericType<
 	{
 		if ( t != currentTimePointIndex )
 			loadTimepoint( t );
-		return currentInterpolatedSources[ method.ordinal() ];
+		return currentInterpolatedSources[ level ][ method.ordinal() ];
 	}
 
 	@Override
 	public synchronized void getSourceTransform( final int t, final int level, final AffineTransform3D transform )
 	{
-		transform.set( sourceTransform );
+		transform.set( mipmapTransforms[ level ] );
+	}
+
+	@Override
+	public int getNumMipmapLevels()
+	{
+		return mipmapFactors.length;
 	}
 }
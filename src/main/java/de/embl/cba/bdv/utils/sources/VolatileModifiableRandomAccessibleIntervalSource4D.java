@@ -0,0 +1,164 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.bdv.utils.sources;
+
+import bdv.util.AbstractSource;
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileTypeMatcher;
+import bdv.util.volatiles.VolatileViews;
+import bdv.viewer.Interpolation;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converters;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.view.Views;
+
+import java.util.Map;
+
+/**
+ * Volatile view on a {@link ModifiableRandomAccessibleIntervalSource4D}.
+ *
+ * If the filter of the source is cached, see
+ * {@link ModifiableRandomAccessibleIntervalSource4D#setFilter(de.embl.cba.lazyalgorithm.RandomAccessibleIntervalFilter, boolean)},
+ * cells that are not yet computed are returned as invalid and enqueued
+ * into the fetcher threads of the given {@link SharedQueue},
+ * such that BDV renders progressively instead of blocking the painter threads.
+ * Otherwise, the (lazily filtered) data of the source is returned as valid.
+ *
+ * @param <T>
+ * @param <V>
+ */
+public class VolatileModifiableRandomAccessibleIntervalSource4D
+		< T extends NumericType< T > & NativeType< T >, V extends Volatile< T > & NumericType< V > >
+		extends AbstractSource< V >
+{
+	private final ModifiableRandomAccessibleIntervalSource4D< T > source;
+	private final SharedQueue queue;
+
+	/**
+	 * Volatile wrappers per time point and resolution level, together with the cached source they wrap.
+	 * Re-wrapping on every access would discard the already valid volatile cells.
+	 */
+	private final Map< Integer, WrappedSource< T, V >[] > timePointToWrappedSources =
+			ModifiableRandomAccessibleIntervalSource4D.createTimePointCache();
+
+	@SuppressWarnings( "unchecked" )
+	public VolatileModifiableRandomAccessibleIntervalSource4D(
+			final ModifiableRandomAccessibleIntervalSource4D< T > source,
+			final SharedQueue queue )
+	{
+		super( ( V ) VolatileTypeMatcher.getVolatileTypeForType( source.getType() ), source.getName() );
+		this.source = source;
+		this.queue = queue;
+	}
+
+	public ModifiableRandomAccessibleIntervalSource4D< T > getWrappedSource()
+	{
+		return source;
+	}
+
+	@Override
+	public boolean isPresent( final int t )
+	{
+		return source.isPresent( t );
+	}
+
+	@Override
+	public RandomAccessibleInterval< V > getSource( final int t, final int level )
+	{
+		if ( source.isFilterCached() )
+			return getVolatileCachedSource( t, level );
+		else
+			return Converters.convert( source.getSource( t, level ), ( input, output ) -> {
+				output.get().set( input );
+				output.setValid( true );
+			}, getType().createVariable() );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private RandomAccessibleInterval< V > getVolatileCachedSource( final int t, final int level )
+	{
+		final RandomAccessibleInterval< T > cachedSource = source.getCachedSource( t, level );
+
+		final WrappedSource< T, V >[] wrappedSources =
+				timePointToWrappedSources.computeIfAbsent( t, k -> new WrappedSource[ getNumMipmapLevels() ] );
+
+		synchronized ( wrappedSources )
+		{
+			if ( wrappedSources[ level ] == null || wrappedSources[ level ].cachedSource != cachedSource )
+			{
+				// first access or the filter changed since the last access
+				wrappedSources[ level ] = new WrappedSource<>(
+						cachedSource,
+						( RandomAccessibleInterval< V > ) VolatileViews.wrapAsVolatile( cachedSource, queue ) );
+			}
+
+			return wrappedSources[ level ].volatileSource;
+		}
+	}
+
+	@Override
+	public RealRandomAccessible< V > getInterpolatedSource( final int t, final int level, final Interpolation method )
+	{
+		final V zero = getType().createVariable();
+		zero.setZero();
+		zero.setValid( true );
+
+		return Views.interpolate(
+				Views.extendValue( getSource( t, level ), zero ),
+				interpolators.get( method ) );
+	}
+
+	@Override
+	public void getSourceTransform( final int t, final int level, final AffineTransform3D transform )
+	{
+		source.getSourceTransform( t, level, transform );
+	}
+
+	@Override
+	public int getNumMipmapLevels()
+	{
+		return source.getNumMipmapLevels();
+	}
+
+	private static class WrappedSource< T, V >
+	{
+		final RandomAccessibleInterval< T > cachedSource;
+		final RandomAccessibleInterval< V > volatileSource;
+
+		WrappedSource( RandomAccessibleInterval< T > cachedSource, RandomAccessibleInterval< V > volatileSource )
+		{
+			this.cachedSource = cachedSource;
+			this.volatileSource = volatileSource;
+		}
+	}
+}
@@ -31,6 +31,7 @@ package de.embl.cba.bdv.utils.wrap;
 import bdv.tools.transformation.TransformedSource;
 import bdv.util.RandomAccessibleIntervalSource4D;
 import de.embl.cba.bdv.utils.sources.ModifiableRandomAccessibleIntervalSource4D;
+import de.embl.cba.lazyalgorithm.CachedDownsampling;
 import ij.IJ;
 import ij.ImagePlus;
 import net.imglib2.RandomAccessibleInterval;
@@ -45,9 +46,32 @@ import java.util.ArrayList;
 
 public class Wraps
 {
+	/**
+	 * Lower resolution levels are computed by averaging, which is only
+	 * suitable for intensity images; label images must use
+	 * {@link #imagePlusAsSource4DChannelList(ImagePlus, CachedDownsampling.Method)}
+	 * with {@link CachedDownsampling.Method#Mode}.
+	 *
+	 * @param imagePlus
+	 * @return
+	 */
 	public static < R extends RealType< R > & NativeType< R > >
 	ArrayList< ModifiableRandomAccessibleIntervalSource4D< R > >
 	imagePlusAsSource4DChannelList( ImagePlus imagePlus )
+	{
+		return imagePlusAsSource4DChannelList( imagePlus, CachedDownsampling.Method.Average );
+	}
+
+	/**
+	 * @param imagePlus
+	 * @param downsamplingMethod
+	 * 			for computing the lower resolution levels;
+	 * 			use Mode for label images
+	 * @return
+	 */
+	public static < R extends RealType< R > & NativeType< R > >
+	ArrayList< ModifiableRandomAccessibleIntervalSource4D< R > >
+	imagePlusAsSource4DChannelList( ImagePlus imagePlus, CachedDownsampling.Method downsamplingMethod )
 	{
 		RandomAccessibleInterval< R > wrap = wrapXYZCT( imagePlus );
 
@@ -63,7 +87,8 @@ public class Wraps
 							channel,
 							Util.getTypeFromInterval( channel ),
 							getScalingTransform( imagePlus ),
-							imagePlus.getTitle() + "-C" + c );
+							imagePlus.getTitle() + "-C" + c,
+							downsamplingMethod );
 
 			sources.add( source4D );
 		}
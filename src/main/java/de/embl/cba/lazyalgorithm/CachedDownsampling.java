@@ -0,0 +1,194 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.lazyalgorithm;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Lazily computed, cached downsampling of images,
+ * e.g. for creating resolution pyramids.
+ *
+ * Each output pixel is computed from a block of factors[ 0 ] x factors[ 1 ] x ...
+ * input pixels, either by averaging (intensity images) or
+ * by taking the most frequent value (label images).
+ */
+public class CachedDownsampling
+{
+	public enum Method
+	{
+		Average,
+		Mode
+	}
+
+	/**
+	 * @param input
+	 * @param factors
+	 * 			downsampling factor per dimension
+	 * @param method
+	 * @param cellDimensions
+	 * 			dimensions of the cached blocks of the output
+	 * @return zero-min downsampled image with dimensions ceil( input / factors )
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public static < R extends RealType< R > & NativeType< R > >
+	RandomAccessibleInterval< R > downsample(
+			final RandomAccessibleInterval< R > input,
+			final int[] factors,
+			final Method method,
+			final int[] cellDimensions )
+	{
+		final int n = input.numDimensions();
+		final long[] dimensions = new long[ n ];
+		for ( int d = 0; d < n; d++ )
+			dimensions[ d ] = ( input.dimension( d ) + factors[ d ] - 1 ) / factors[ d ];
+
+		final RandomAccessible< R > extended = Views.extendBorder( Views.zeroMin( input ) );
+
+		final CellLoader< R > loader = cell -> downsample( extended, ( SingleCellArrayImg ) cell, factors, method );
+
+		return new ReadOnlyCachedCellImgFactory(
+				ReadOnlyCachedCellImgOptions.options().cellDimensions( cellDimensions ) )
+				.create( dimensions, Util.getTypeFromInterval( input ), loader );
+	}
+
+	private static < R extends RealType< R > > void downsample(
+			final RandomAccessible< R > extended,
+			final SingleCellArrayImg< R, ? > cell,
+			final int[] factors,
+			final Method method )
+	{
+		final int n = cell.numDimensions();
+
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		final int[] dimensions = new int[ n ];
+		for ( int d = 0; d < n; d++ )
+		{
+			min[ d ] = cell.min( d ) * factors[ d ];
+			max[ d ] = ( cell.max( d ) + 1 ) * factors[ d ] - 1;
+			dimensions[ d ] = ( int ) ( max[ d ] - min[ d ] + 1 );
+		}
+
+		final double[] values = read( extended, new FinalInterval( min, max ) );
+
+		final int[] strides = new int[ n ];
+		strides[ 0 ] = 1;
+		for ( int d = 1; d < n; d++ )
+			strides[ d ] = strides[ d - 1 ] * dimensions[ d - 1 ];
+
+		// offsets of the input pixels of one output pixel, relative to the first one
+		int blockSize = 1;
+		for ( int d = 0; d < n; d++ )
+			blockSize *= factors[ d ];
+		final int[] offsets = new int[ blockSize ];
+		final int[] position = new int[ n ];
+		for ( int i = 0; i < blockSize; i++ )
+		{
+			for ( int d = 0; d < n; d++ )
+				offsets[ i ] += position[ d ] * strides[ d ];
+
+			for ( int d = 0; d < n; d++ )
+			{
+				if ( ++position[ d ] < factors[ d ] ) break;
+				position[ d ] = 0;
+			}
+		}
+
+		final double[] block = new double[ blockSize ];
+		final long[] cellPosition = new long[ n ];
+		final Cursor< R > cursor = Views.flatIterable( cell ).localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			final R output = cursor.next();
+			cursor.localize( cellPosition );
+
+			int index = 0;
+			for ( int d = 0; d < n; d++ )
+				index += ( cellPosition[ d ] - cell.min( d ) ) * factors[ d ] * strides[ d ];
+
+			for ( int i = 0; i < blockSize; i++ )
+				block[ i ] = values[ index + offsets[ i ] ];
+
+			output.setReal( method == Method.Mode ? mode( block ) : average( block ) );
+		}
+	}
+
+	private static double average( double[] block )
+	{
+		double sum = 0;
+		for ( double value : block )
+			sum += value;
+		return sum / block.length;
+	}
+
+	/**
+	 * Most frequent value; ties are resolved in favour of the first occurrence.
+	 * Blocks are small (e.g. 2 x 2 x 2), thus the quadratic search is fine.
+	 */
+	private static double mode( double[] block )
+	{
+		double mode = block[ 0 ];
+		int maxCount = 0;
+		for ( int i = 0; i < block.length; i++ )
+		{
+			int count = 0;
+			for ( int j = i; j < block.length; j++ )
+				if ( block[ j ] == block[ i ] ) count++;
+
+			if ( count > maxCount )
+			{
+				maxCount = count;
+				mode = block[ i ];
+			}
+		}
+		return mode;
+	}
+
+	private static < R extends RealType< R > > double[] read( RandomAccessible< R > extended, FinalInterval interval )
+	{
+		final double[] values = new double[ ( int ) Intervals.numElements( interval ) ];
+		final Cursor< R > cursor = Views.flatIterable( Views.interval( extended, interval ) ).cursor();
+		int i = 0;
+		while ( cursor.hasNext() )
+			values[ i++ ] = cursor.next().getRealDouble();
+		return values;
+	}
+}
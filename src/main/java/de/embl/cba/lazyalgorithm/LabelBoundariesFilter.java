@@ -0,0 +1,228 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.lazyalgorithm;
+
+import de.embl.cba.lazyalgorithm.view.NeighborhoodViews;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+import java.util.Arrays;
+
+/**
+ * Shows only the boundaries of labels.
+ * That is, a non-zero pixel keeps its value if some pixel within
+ * the given thickness has a different value; all other pixels are set to zero.
+ *
+ * For a thickness of one the face neighbours (4 in 2D, 6 in 3D) are compared,
+ * for larger thicknesses separable min and max filters over a box are used.
+ *
+ * The result is computed lazily, block-wise, into a cached cell image,
+ * such that repaints reuse already computed blocks.
+ * Blocks read the input into primitive arrays, no objects are
+ * allocated per pixel.
+ *
+ * {@link Volatile} types are not supported, because the blocks would be
+ * computed from, and cached with, data that is not loaded yet.
+ *
+ * @param <R>
+ */
+public class LabelBoundariesFilter< R extends RealType< R > > implements RandomAccessibleIntervalFilter< R >
+{
+	private final int thickness;
+	private final int blockSize;
+
+	public LabelBoundariesFilter( int thickness )
+	{
+		this( thickness, 64 );
+	}
+
+	public LabelBoundariesFilter( int thickness, int blockSize )
+	{
+		this.thickness = Math.max( 1, thickness );
+		this.blockSize = blockSize;
+	}
+
+	@Override
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public RandomAccessibleInterval< R > filter( RandomAccessibleInterval< R > input )
+	{
+		final R type = Util.getTypeFromInterval( input );
+
+		if ( type instanceof Volatile )
+			throw new IllegalArgumentException( "Label boundaries of volatile types are not supported: " + type.getClass().getSimpleName() );
+
+		if ( ! ( type instanceof NativeType ) )
+			return NeighborhoodViews.nonZeroBoundariesView( input, thickness );
+
+		final int n = input.numDimensions();
+		final long[] dimensions = Intervals.dimensionsAsLongArray( input );
+		final int[] cellDimensions = new int[ n ];
+		Arrays.fill( cellDimensions, n == 2 ? 4 * blockSize : blockSize );
+
+		final RandomAccessible< R > extended = Views.extendBorder( Views.zeroMin( input ) );
+
+		final CellLoader loader = cell -> computeBoundaries( extended, ( SingleCellArrayImg ) cell );
+
+		final RandomAccessibleInterval img = new ReadOnlyCachedCellImgFactory(
+				ReadOnlyCachedCellImgOptions.options().cellDimensions( cellDimensions ) )
+				.create( dimensions, ( NativeType ) type, loader );
+
+		return Views.translate( img, Intervals.minAsLongArray( input ) );
+	}
+
+	private void computeBoundaries( RandomAccessible< R > extended, SingleCellArrayImg< R, ? > cell )
+	{
+		final int n = cell.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		final int[] dimensions = new int[ n ];
+		for ( int d = 0; d < n; d++ )
+		{
+			min[ d ] = cell.min( d ) - thickness;
+			max[ d ] = cell.max( d ) + thickness;
+			dimensions[ d ] = ( int ) ( max[ d ] - min[ d ] + 1 );
+		}
+
+		final double[] labels = read( extended, new FinalInterval( min, max ) );
+
+		final int[] strides = strides( dimensions );
+
+		final Cursor< R > cursor = Views.flatIterable( cell ).localizingCursor();
+
+		if ( thickness == 1 )
+		{
+			final long[] position = new long[ n ];
+			while ( cursor.hasNext() )
+			{
+				final R output = cursor.next();
+				cursor.localize( position );
+
+				int index = 0;
+				for ( int d = 0; d < n; d++ )
+					index += ( position[ d ] - min[ d ] ) * strides[ d ];
+
+				final double label = labels[ index ];
+				boolean isBoundary = false;
+				if ( label != 0 )
+				{
+					for ( int d = 0; d < n && ! isBoundary; d++ )
+						isBoundary = labels[ index - strides[ d ] ] != label || labels[ index + strides[ d ] ] != label;
+				}
+
+				output.setReal( isBoundary ? label : 0 );
+			}
+		}
+		else
+		{
+			final double[] mins = labels.clone();
+			final double[] maxs = labels.clone();
+			for ( int d = 0; d < n; d++ )
+			{
+				minMaxAlongDimension( mins, dimensions, strides, d, true );
+				minMaxAlongDimension( maxs, dimensions, strides, d, false );
+			}
+
+			final long[] position = new long[ n ];
+			while ( cursor.hasNext() )
+			{
+				final R output = cursor.next();
+				cursor.localize( position );
+
+				int index = 0;
+				for ( int d = 0; d < n; d++ )
+					index += ( position[ d ] - min[ d ] ) * strides[ d ];
+
+				final double label = labels[ index ];
+				final boolean isBoundary = label != 0 && ( mins[ index ] != label || maxs[ index ] != label );
+				output.setReal( isBoundary ? label : 0 );
+			}
+		}
+	}
+
+	/**
+	 * Replaces each value by the min (or max) within +- thickness along dimension d.
+	 * Values closer than thickness to the border of the array are not valid afterwards,
+	 * but those are not part of the output block.
+	 */
+	private void minMaxAlongDimension( double[] values, int[] dimensions, int[] strides, int d, boolean isMin )
+	{
+		final int length = dimensions[ d ];
+		final int stride = strides[ d ];
+		final double[] line = new double[ length ];
+
+		final int numLines = values.length / length;
+		for ( int lineIndex = 0; lineIndex < numLines; lineIndex++ )
+		{
+			// offset of the first element of the line
+			final int offset = ( lineIndex / stride ) * stride * length + lineIndex % stride;
+
+			for ( int i = 0; i < length; i++ )
+				line[ i ] = values[ offset + i * stride ];
+
+			for ( int i = thickness; i < length - thickness; i++ )
+			{
+				double extremum = line[ i - thickness ];
+				for ( int j = i - thickness + 1; j <= i + thickness; j++ )
+					extremum = isMin ? Math.min( extremum, line[ j ] ) : Math.max( extremum, line[ j ] );
+				values[ offset + i * stride ] = extremum;
+			}
+		}
+	}
+
+	private double[] read( RandomAccessible< R > extended, FinalInterval interval )
+	{
+		final double[] values = new double[ ( int ) Intervals.numElements( interval ) ];
+		final Cursor< R > cursor = Views.flatIterable( Views.interval( extended, interval ) ).cursor();
+		int i = 0;
+		while ( cursor.hasNext() )
+			values[ i++ ] = cursor.next().getRealDouble();
+		return values;
+	}
+
+	private static int[] strides( int[] dimensions )
+	{
+		final int[] strides = new int[ dimensions.length ];
+		strides[ 0 ] = 1;
+		for ( int d = 1; d < dimensions.length; d++ )
+			strides[ d ] = strides[ d - 1 ] * dimensions[ d - 1 ];
+		return strides;
+	}
+}
@@ -30,6 +30,7 @@ package de.embl.cba.tables;
 
 import de.embl.cba.bdv.utils.sources.Metadata;
 import de.embl.cba.bdv.utils.wrap.Wraps;
+import de.embl.cba.lazyalgorithm.CachedDownsampling;
 import de.embl.cba.tables.image.DefaultImageSourcesModel;
 import de.embl.cba.tables.imagesegment.SegmentProperty;
 import de.embl.cba.tables.imagesegment.SegmentPropertyColumnsSelectionDialog;
@@ -118,7 +119,8 @@ public class ExploreIntensityImageAndLabelImageAndTable
 		}
 
 		imageSourcesModel.addSourceAndMetadata(
-				Wraps.imagePlusAsSource4DChannelList( labelImage ).get( 0 ),
+				Wraps.imagePlusAsSource4DChannelList(
+						labelImage, CachedDownsampling.Method.Mode ).get( 0 ),
 				labelImageId,
 				Metadata.Modality.Segmentation,
 				numSpatialDimensions,
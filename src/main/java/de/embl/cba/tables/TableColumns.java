@@ -28,12 +28,18 @@
  */
 package de.embl.cba.tables;
 
+import de.embl.cba.tables.column.BinaryColumnsCache;
+import de.embl.cba.tables.column.ColumnsMerger;
+import de.embl.cba.tables.column.DoubleColumn;
+import de.embl.cba.tables.column.TableParser;
+import de.embl.cba.tables.column.TypedColumns;
 import de.embl.cba.tables.tablerow.TableRow;
 import ij.measure.ResultsTable;
 
 import javax.activation.UnsupportedDataTypeException;
 import javax.swing.*;
 import javax.swing.table.TableModel;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -106,11 +112,50 @@ public class TableColumns
 		return stringColumnsFromTableFile( path, null );
 	}
 
+	/**
+	 * Parses the table in parallel directly into typed columns,
+	 * see {@link TableParser} and {@link TypedColumns}.
+	 * Delimiters that the parser does not support, e.g. multi-character
+	 * delimiters, are handled by splitting each row.
+	 * Local table files are cached in a {@link BinaryColumnsCache} sidecar file,
+	 * if the cache is enabled.
+	 *
+	 * @param path
+	 * @param delim delimiter; null for auto-detection
+	 * @return column name to column values
+	 */
 	public static Map< String, List< String > > stringColumnsFromTableFile( final String path, String delim )
 	{
-		final List< String > tableRowsIncludingHeader = Tables.readRows( path );
+		return stringColumnsFromTableFile( path, delim, BinaryColumnsCache.isEnabled() );
+	}
+
+	/**
+	 * @param path
+	 * @param delim delimiter; null for auto-detection
+	 * @param useCache whether to read from, or create, a {@link BinaryColumnsCache} sidecar file;
+	 *                 only applies to files on the local file system
+	 * @return column name to column values
+	 */
+	public static Map< String, List< String > > stringColumnsFromTableFile( final String path, String delim, boolean useCache )
+	{
+		if ( ! useCache || FileAndUrlUtils.getType( path ) != FileAndUrlUtils.ResourceType.FILE )
+			return parseTableFile( path, delim );
+
+		final File tableFile = new File( path );
+		Map< String, List< String > > columns = BinaryColumnsCache.read( tableFile, delim );
+		if ( columns != null ) return columns;
+
+		columns = parseTableFile( path, delim );
+		BinaryColumnsCache.write( tableFile, delim, columns );
+		return columns;
+	}
+
+	private static Map< String, List< String > > parseTableFile( String path, String delim )
+	{
+		if ( TableParser.supportsDelimiter( delim ) )
+			return new TableParser().parse( path, delim );
 
-		delim = Tables.autoDelim( delim, tableRowsIncludingHeader );
+		final List< String > tableRowsIncludingHeader = Tables.readRows( path );
 
 		List< String > columnNames = Tables.getColumnNames( tableRowsIncludingHeader, delim );
 
@@ -126,8 +171,6 @@ public class TableColumns
 
 		final int numRows = tableRowsIncludingHeader.size() - 1;
 
-		final long start = System.currentTimeMillis();
-
 		for ( int row = 1; row <= numRows; ++row )
 		{
 			final String[] split = tableRowsIncludingHeader.get( row ).split( delim );
@@ -137,9 +180,7 @@ public class TableColumns
 			}
 		}
 
-		// System.out.println( ( System.currentTimeMillis() - start ) / 1000.0 ) ;
-
-		return columnNameToStrings;
+		return TypedColumns.asTypedColumns( columnNameToStrings );
 	}
 
 	public static Map< String, List< String > >
@@ -149,61 +190,37 @@ public class TableColumns
 			String mergeByColumnName,
 			ArrayList< Double > mergeByColumnValues )
 	{
-		final List< String > rowsInTableIncludingHeader = Tables.readRows( path );
-
-		delim = Tables.autoDelim( delim, rowsInTableIncludingHeader );
-
-		List< String > columnNames = Tables.getColumnNames( rowsInTableIncludingHeader, delim );
-
-		final Map< String, List< String > > columnNameToStrings = new LinkedHashMap<>();
-
-		int mergeByColumnIndex = -1;
-
-		final int numRowsTargetTable = mergeByColumnValues.size();
-		final int numColumns = columnNames.size();
-
-		for ( int columnIndex = 0; columnIndex < numColumns; columnIndex++ )
-		{
-			final String[] split = rowsInTableIncludingHeader.get( 1 ).split( delim );
-			final String firstCell = split[ columnIndex ];
-
-			String defaultValue = "None"; // for text
-			if ( Tables.isNumeric( firstCell ) )
-				defaultValue = "NaN"; // for numbers
-
-			final ArrayList< String > values = new ArrayList< >( Collections.nCopies( numRowsTargetTable, defaultValue ));
-
-			final String columnName = columnNames.get( columnIndex );
-			columnNameToStrings.put( columnName, values );
-			if ( columnName.equals( mergeByColumnName ) )
-				mergeByColumnIndex = columnIndex;
-		}
-
-		if ( mergeByColumnIndex == -1 )
-			throw new UnsupportedOperationException( "Column by which to merge not found: " + mergeByColumnName );
-
-//		final long start = System.currentTimeMillis();
-		final int numRowsSourceTable = rowsInTableIncludingHeader.size() - 1;
-
-		// TODO: code looks inefficient...
-		for ( int rowIndex = 0; rowIndex < numRowsSourceTable; ++rowIndex )
-		{
-			final String[] split = rowsInTableIncludingHeader.get( rowIndex + 1 ).split( delim );
-			final String cell = split[ mergeByColumnIndex ];
-
-			final Double orderValue = Utils.parseDouble( cell );
-			final int targetRowIndex = mergeByColumnValues.indexOf( orderValue );
-
-			for ( int columnIndex = 0; columnIndex < numColumns; columnIndex++ )
-			{
-				final String columName = columnNames.get( columnIndex );
-				columnNameToStrings.get( columName ).set( targetRowIndex, split[ columnIndex ].replace( "\"", "" ) );
-			}
-		}
+		final double[] values = new double[ mergeByColumnValues.size() ];
+		for ( int row = 0; row < values.length; row++ )
+			values[ row ] = mergeByColumnValues.get( row );
+
+		return orderedStringColumnsFromTableFile(
+				path,
+				delim,
+				Collections.singletonList( mergeByColumnName ),
+				Collections.singletonList( new DoubleColumn( values ) ) );
+	}
 
-//		System.out.println( ( System.currentTimeMillis() - start ) / 1000.0 ) ;
+	/**
+	 * Opens a table and orders its rows such that they match the given key columns,
+	 * e.g. label id, time point and label image of the currently shown table.
+	 *
+	 * @param path
+	 * @param delim
+	 * @param mergeByColumnNames names of the key columns in the table to be opened
+	 * @param mergeByColumns values of the key columns in the table into which to merge
+	 * @return the ordered columns; rows without match contain "NaN" or "None"
+	 */
+	public static Map< String, List< String > >
+	orderedStringColumnsFromTableFile(
+			final String path,
+			String delim,
+			List< String > mergeByColumnNames,
+			List< List< String > > mergeByColumns )
+	{
+		final Map< String, List< String > > columns = stringColumnsFromTableFile( path, delim );
 
-		return columnNameToStrings;
+		return new ColumnsMerger( mergeByColumns ).merge( columns, mergeByColumnNames );
 	}
 
 	public static Map< String, List< ? > >
@@ -341,7 +358,7 @@ public class TableColumns
 		final int numRows = tableRows.size();
 		final ArrayList< Double > orderColumn = new ArrayList<>();
 		for ( int rowIndex = 0; rowIndex < numRows; ++rowIndex )
-			orderColumn.add( Utils.parseDouble( tableRows.get( rowIndex ).getCell( columnName ) ) );
+			orderColumn.add( tableRows.get( rowIndex ).getCellAsDouble( columnName ) );
 		return orderColumn;
 	}
 
@@ -364,18 +381,19 @@ public class TableColumns
 
 	public static Map< String, List< String > > openAndOrderNewColumns( List< ? extends TableRow > tableRows, String mergeByColumnName, String newTablePath )
 	{
-		// TODO: this assumes that the ordering column is numeric; is this needed?
-		final ArrayList< Double > orderColumn = getNumericColumnAsDoubleList(
-				tableRows,
-				mergeByColumnName );
+		return openAndOrderNewColumns( tableRows, Collections.singletonList( mergeByColumnName ), newTablePath );
+	}
 
-		final Map< String, List< String > > columNameToValues =
-				orderedStringColumnsFromTableFile(
+	public static Map< String, List< String > > openAndOrderNewColumns( List< ? extends TableRow > tableRows, List< String > mergeByColumnNames, String newTablePath )
+	{
+		final List< List< String > > mergeByColumns = new ArrayList<>();
+		for ( String columnName : mergeByColumnNames )
+			mergeByColumns.add( Tables.getColumnEntries( tableRows, columnName ) );
+
+		return orderedStringColumnsFromTableFile(
 						newTablePath,
 						null,
-						mergeByColumnName,
-						orderColumn );
-
-		return columNameToValues;
+						mergeByColumnNames,
+						mergeByColumns );
 	}
 }
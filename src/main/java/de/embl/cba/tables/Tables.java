@@ -28,11 +28,14 @@
  */
 package de.embl.cba.tables;
 
-import de.embl.cba.tables.imagesegment.ColumnBasedTableRowImageSegment;
+import de.embl.cba.tables.column.ColumnStatistics;
+import de.embl.cba.tables.column.TypedColumns;
 import de.embl.cba.tables.table.ColumnClassAwareTableModel;
+import de.embl.cba.tables.table.TableRowsTableModel;
 import de.embl.cba.tables.tablerow.ColumnBasedTableRow;
 import de.embl.cba.tables.tablerow.DefaultColumnBasedTableRow;
 import de.embl.cba.tables.tablerow.TableRow;
+import de.embl.cba.tables.tablerow.TableRows;
 import org.scijava.table.GenericTable;
 
 import javax.activation.UnsupportedDataTypeException;
@@ -110,16 +113,14 @@ public class Tables
 
 	public static JTable loadTable( final String path )
 	{
-		List< String > rows = readRows( path );
-
-		return createJTableFromStringList( rows, null );
+		return loadTable( path, null );
 	}
 
 	public static JTable loadTable( final String path, String delim )
 	{
-		List< String > rows = readRows( path );
+		final Map< String, List< String > > columns = TableColumns.stringColumnsFromTableFile( path, delim );
 
-		return createJTableFromStringList( rows, delim );
+		return new JTable( new TableRowsTableModel<>( columnBasedTableRowsFromColumns( columns ) ) );
 	}
 
 	public static List< String > readRows( String path )
@@ -228,53 +229,28 @@ public class Tables
 	{
 		delim = autoDelim( delim, strings );
 
-		StringTokenizer st = new StringTokenizer( strings.get( 0 ), delim );
-
-		List< String > colNames = new ArrayList<>();
-
-		while ( st.hasMoreTokens() )
-			colNames.add( st.nextToken() );
-
-		/**
-		 * Init model and columns
-		 */
-
-		ColumnClassAwareTableModel model = new ColumnClassAwareTableModel();
+		List< String > colNames = getColumnNames( strings, delim );
 
-		for ( String colName : colNames )
-			model.addColumn( colName );
+		final int numCols = colNames.size();
+		final int numRows = strings.size() - 1;
 
-		int numCols = colNames.size();
-
-		/**
-		 * Add tablerow entries
-		 */
+		final List< List< String > > columns = new ArrayList<>();
+		for ( int iCol = 0; iCol < numCols; iCol++ )
+			columns.add( new ArrayList<>( numRows ) );
 
 		for ( int iString = 1; iString < strings.size(); ++iString )
 		{
-			model.addRow( new Object[ numCols ] );
-
-			st = new StringTokenizer( strings.get( iString ), delim );
+			final StringTokenizer st = new StringTokenizer( strings.get( iString ), delim );
 
 			for ( int iCol = 0; iCol < numCols; iCol++ )
-			{
-				String stringValue = st.nextToken();
-
-				try
-				{
-					final Double numericValue = Utils.parseDouble( stringValue );
-					model.setValueAt( numericValue, iString - 1, iCol );
-				} catch ( Exception e )
-				{
-					model.setValueAt( stringValue, iString - 1, iCol );
-				}
-			}
-
+				columns.get( iCol ).add( st.nextToken() );
 		}
 
-		model.refreshColumnClassesFromObjectColumns();
+		final Map< String, List< String > > columnNameToColumn = new LinkedHashMap<>();
+		for ( int iCol = 0; iCol < numCols; iCol++ )
+			columnNameToColumn.put( colNames.get( iCol ), TypedColumns.asTypedColumn( columns.get( iCol ) ) );
 
-		return new JTable( model );
+		return new JTable( new TableRowsTableModel<>( columnBasedTableRowsFromColumns( columnNameToColumn ) ) );
 	}
 
 	public static boolean isNumeric( String string )
@@ -494,10 +470,10 @@ public class Tables
 	getColumnEntries( List< ? extends TableRow > tableRows,
 					  String columnName )
 	{
-		if ( tableRows instanceof ColumnBasedTableRowImageSegment )
+		if ( tableRows.size() > 0 && tableRows.get( 0 ) instanceof ColumnBasedTableRow )
 		{
 			final Map< String, List< String > > columns
-					= ( ( ColumnBasedTableRowImageSegment ) tableRows ).getColumns();
+					= ( ( ColumnBasedTableRow ) tableRows.get( 0 ) ).getColumns();
 			return columns.get( columnName );
 		}
 		else
@@ -557,40 +533,32 @@ public class Tables
 
 	public static double columnMin( JTable jTable, int col )
 	{
-		double min = Double.MAX_VALUE;
-
-		final int rowCount = jTable.getRowCount();
-
-		for ( int row = 0; row < rowCount; row++ )
-		{
-			final Double valueAt = ( Double ) jTable.getValueAt( row, col );
-
-			if ( valueAt < min )
-			{
-				min = valueAt;
-			}
-		}
-
-		return min;
+		return columnStatistics( jTable, jTable.getColumnName( col ) ).getMin();
 	}
 
 	public static double columnMax( JTable jTable, int col )
 	{
-		double max =  - Double.MAX_VALUE;
-
-		final int rowCount = jTable.getRowCount();
+		return columnStatistics( jTable, jTable.getColumnName( col ) ).getMax();
+	}
 
-		for ( int row = 0; row < rowCount; row++ )
-		{
-			final Double valueAt = ( Double ) jTable.getValueAt( row, col );
+	/**
+	 * Statistics of a numeric column.
+	 *
+	 * For tables backed by a {@link TableRowsTableModel} the statistics are
+	 * cached per column, otherwise they are computed on each call.
+	 *
+	 * @param table
+	 * @param column
+	 * @return statistics
+	 */
+	public static ColumnStatistics columnStatistics( JTable table, String column )
+	{
+		if ( table.getModel() instanceof TableRowsTableModel )
+			return TableRows.columnStatistics( ( ( TableRowsTableModel< ? > ) table.getModel() ).getTableRows(), column );
 
-			if ( valueAt > max )
-			{
-				max = valueAt;
-			}
-		}
+		final int columnIndex = table.getColumnModel().getColumnIndex( column );
 
-		return max;
+		return ColumnStatistics.compute( row -> asDouble( table.getValueAt( row, columnIndex ) ), table.getRowCount() );
 	}
 
 	public static HashMap< String, ArrayList< Integer > > uniqueColumnEntries( JTable jTable, int col )
@@ -622,6 +590,12 @@ public class Tables
 
 	public static void addColumn( TableModel model, String column, Object defaultValue )
 	{
+		if ( model instanceof TableRowsTableModel )
+		{
+			( ( TableRowsTableModel< ? > ) model ).addColumn( column, defaultValue );
+			return;
+		}
+
 		if ( model instanceof ColumnClassAwareTableModel )
 		{
 			( (ColumnClassAwareTableModel) model ).addColumnClass( defaultValue );
@@ -642,6 +616,12 @@ public class Tables
 
 	public static void addColumn( TableModel model, String column, Object[] values )
 	{
+		if ( model instanceof TableRowsTableModel )
+		{
+			( ( TableRowsTableModel< ? > ) model ).addColumn( column, values );
+			return;
+		}
+
 		if ( model instanceof ColumnClassAwareTableModel )
 			( (ColumnClassAwareTableModel) model ).addColumnClass( values[ 0 ] );
 
@@ -686,35 +666,17 @@ public class Tables
 
 	public static double[] minMax( String column, JTable table )
 	{
-		final int columnIndex = table.getColumnModel().getColumnIndex( column );
-
-		double min = Double.MAX_VALUE;
-		double max = -Double.MAX_VALUE;
-
-		final int rowCount = table.getRowCount();
-		for ( int row = 0; row < rowCount; row++ )
-		{
-			final double value = ( Double ) table.getValueAt( row, columnIndex );
-			if ( value < min ) min = value;
-			if ( value > max ) max = value;
-		}
-
-		return new double[]{ min, max };
+		return columnStatistics( table, column ).getMinMax();
 	}
 
 	public static double[] meanSigma( String column, JTable table )
 	{
-		final int columnIndex = table.getColumnModel().getColumnIndex( column );
-		return meanSigma( columnIndex, table );
+		return columnStatistics( table, column ).getMeanSigma();
 	}
 
 	public static double[] meanSigma( int columnIndex, JTable table )
 	{
-
-		double mean = computeMean( columnIndex, table );
-		double sigma = computeSigma( columnIndex, table, mean );
-
-		return new double[]{ mean, sigma };
+		return columnStatistics( table, table.getColumnName( columnIndex ) ).getMeanSigma();
 	}
 
 	public static double computeSigma( int columnIndex, JTable table, double mean )
@@ -736,16 +698,7 @@ public class Tables
 
 	public static double computeMean( int columnIndex, JTable table )
 	{
-		final int rowCount = table.getRowCount();
-
-		double mean = 0.0;
-		for ( int row = 0; row < rowCount; row++ )
-		{
-			final double value = ( Double ) table.getValueAt( row, columnIndex );
-			mean += value;
-		}
-		mean /= rowCount;
-		return mean;
+		return columnStatistics( table, table.getColumnName( columnIndex ) ).getMean();
 	}
 
 	public static boolean isNumeric( JTable table, String columnName )
@@ -35,6 +35,7 @@ import de.embl.cba.bdv.utils.lut.GlasbeyARGBLut;
 import de.embl.cba.bdv.utils.lut.ViridisARGBLut;
 import de.embl.cba.tables.tablerow.TableRows;
 import de.embl.cba.tables.Tables;
+import de.embl.cba.tables.table.TableRowsTableModel;
 import de.embl.cba.tables.tablerow.TableRow;
 import ij.gui.GenericDialog;
 import net.imglib2.type.numeric.ARGBType;
@@ -42,7 +43,6 @@ import net.imglib2.type.numeric.ARGBType;
 import javax.swing.*;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import static de.embl.cba.tables.color.CategoryTableRowColumnColoringModel.TRANSPARENT;
 
@@ -55,8 +55,8 @@ public class ColumnColoringModelCreator< T extends TableRow >
 	private String selectedColoringMode;
 	private boolean isZeroTransparent = false;
 
-	private Map< String, double[] > columnNameToMinMax;
 	private HashMap< String, double[] > columnNameToRangeSettings;
+	private NumericTableRowColumnColoringModel< T > recentNumericColoringModel;
 
 	public static final String[] COLORING_MODES = new String[]
 	{
@@ -82,7 +82,6 @@ public class ColumnColoringModelCreator< T extends TableRow >
 
 	private void init()
 	{
-		this.columnNameToMinMax = new HashMap<>();
 		this.columnNameToRangeSettings = new HashMap<>();
 	}
 
@@ -274,6 +273,13 @@ public class ColumnColoringModelCreator< T extends TableRow >
 			argbLut.setName( argbLut.getName() + ColoringLuts.ZERO_TRANSPARENT );
 		}
 
+		if ( recentNumericColoringModel != null )
+			recentNumericColoringModel.close();
+		recentNumericColoringModel = coloringModel;
+
+		if ( table != null && table.getModel() instanceof TableRowsTableModel )
+			coloringModel.setTableModel( ( TableRowsTableModel< ? > ) table.getModel() );
+
 		if ( min != null )
 			coloringModel.setMin( min );
 
@@ -302,23 +308,11 @@ public class ColumnColoringModelCreator< T extends TableRow >
 
 	private double[] getValueRange( JTable table, String column )
 	{
-		if ( ! columnNameToMinMax.containsKey( column ) )
-		{
-			final double[] minMaxValues = Tables.minMax( column, table );
-			columnNameToMinMax.put( column, minMaxValues );
-		}
-
-		return columnNameToMinMax.get( column );
+		return Tables.minMax( column, table );
 	}
 
 	private double[] getValueRange( List< ? extends TableRow > tableRows, String column )
 	{
-		if ( ! columnNameToMinMax.containsKey( column ) )
-		{
-			final double[] minMaxValues = TableRows.minMax( tableRows, column );
-			columnNameToMinMax.put( column, minMaxValues );
-		}
-
-		return columnNameToMinMax.get( column );
+		return TableRows.minMax( tableRows, column );
 	}
 }
@@ -29,17 +29,27 @@
 package de.embl.cba.tables.color;
 
 import de.embl.cba.bdv.utils.lut.ARGBLut;
-import de.embl.cba.tables.Utils;
 import de.embl.cba.tables.color.AbstractColoringModel;
 import de.embl.cba.tables.color.ColumnColoringModel;
 import de.embl.cba.tables.color.NumericColoringModel;
+import de.embl.cba.tables.table.TableRowsTableModel;
 import de.embl.cba.tables.tablerow.TableRow;
 import net.imglib2.type.numeric.ARGBType;
 
+import javax.swing.*;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableModel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
 // TODO: extract abstract class NumericFeatureColoringModel
 public class NumericTableRowColumnColoringModel< T extends TableRow >
 		extends AbstractColoringModel< T > implements NumericColoringModel< T >, ColumnColoringModel, ARBGLutSupplier
 {
+	public static final int LUT_SIZE = 4096;
+
 	private final String columnName;
 	private final ARGBLut lut;
 	private double[] lutMinMax;
@@ -47,6 +57,18 @@ public class NumericTableRowColumnColoringModel< T extends TableRow >
 	// TODO: also capture this with  inputToFixedColor logic
 	private final boolean isZeroTransparent;
 
+	// lut sampled at LUT_SIZE equidistant normalised values
+	private final int[] quantizedLut;
+	private volatile double lutScale;
+	private volatile double lutShift;
+
+	// values of the column, indexed by rowIndex()
+	private volatile List< ? extends TableRow > tableRows;
+	private volatile double[] values;
+	private TableRowsTableModel< ? > tableModel;
+	private TableModelListener tableModelListener;
+	private final AtomicBoolean isNotificationPending = new AtomicBoolean( false );
+
 	public NumericTableRowColumnColoringModel(
 			String columnName,
 			ARGBLut lut,
@@ -59,14 +81,104 @@ public class NumericTableRowColumnColoringModel< T extends TableRow >
 		this.lutMinMax = lutMinMax;
 		this.lutRange = lutRange;
 		this.isZeroTransparent = isZeroTransparent;
+
+		this.quantizedLut = new int[ LUT_SIZE ];
+		for ( int i = 0; i < LUT_SIZE; i++ )
+			quantizedLut[ i ] = lut.getARGB( i / ( LUT_SIZE - 1.0 ) );
+
+		updateLutScaling();
+	}
+
+	/**
+	 * Caches the values of the column, such that {@link #convert} does not
+	 * need to access and parse the cells. The cache is kept up to date
+	 * by one listener on the table model, which is notified of all cell
+	 * changes; bursts of changes result in one coloring notification.
+	 *
+	 * @param tableModel
+	 * 			model of all rows of the table, such that {@code tableRows.get( i ).rowIndex() == i}
+	 */
+	public synchronized void setTableModel( TableRowsTableModel< ? > tableModel )
+	{
+		close();
+
+		final List< ? extends TableRow > tableRows = tableModel.getTableRows();
+		final double[] values = new double[ tableRows.size() ];
+		IntStream.range( 0, values.length ).parallel().forEach( row ->
+				values[ row ] = getCellAsDouble( tableRows.get( row ) ) );
+
+		tableModelListener = event -> {
+			if ( ! isColumnAffected( event, tableModel ) ) return;
+
+			final int lastRow = Math.min( event.getLastRow(), values.length - 1 );
+			for ( int row = Math.max( 0, event.getFirstRow() ); row <= lastRow; row++ )
+				values[ row ] = getCellAsDouble( tableRows.get( row ) );
+
+			if ( isNotificationPending.compareAndSet( false, true ) )
+				SwingUtilities.invokeLater( () -> {
+					isNotificationPending.set( false );
+					notifyColoringListeners();
+				} );
+		};
+		tableModel.addTableModelListener( tableModelListener );
+
+		this.values = values;
+		this.tableRows = tableRows;
+		this.tableModel = tableModel;
+	}
+
+	/**
+	 * Stops listening to cell changes and drops the cached values.
+	 */
+	public synchronized void close()
+	{
+		if ( tableModel != null )
+			tableModel.removeTableModelListener( tableModelListener );
+
+		tableModel = null;
+		tableModelListener = null;
+		tableRows = null;
+		values = null;
+	}
+
+	private boolean isColumnAffected( TableModelEvent event, TableModel tableModel )
+	{
+		if ( event.getFirstRow() == TableModelEvent.HEADER_ROW ) return false;
+		if ( event.getColumn() == TableModelEvent.ALL_COLUMNS ) return true;
+		return columnName.equals( tableModel.getColumnName( event.getColumn() ) );
+	}
+
+	private double getCellAsDouble( TableRow tableRow )
+	{
+		try
+		{
+			return tableRow.getCellAsDouble( columnName );
+		}
+		catch ( NumberFormatException e )
+		{
+			return Double.NaN;
+		}
 	}
 
 	@Override
 	public void convert( T tableRow, ARGBType output )
 	{
-		final String cell = tableRow.getCell( columnName );
-		final Double value = Utils.parseDouble( cell );
-		setColorLinearly( value, output );
+		setColorLinearly( getValue( tableRow ), output );
+	}
+
+	private double getValue( T tableRow )
+	{
+		final double[] values = this.values;
+		final List< ? extends TableRow > tableRows = this.tableRows;
+
+		if ( values != null && tableRows != null )
+		{
+			final int row = tableRow.rowIndex();
+			if ( row >= 0 && row < values.length && tableRows.get( row ) == tableRow )
+				return values[ row ];
+		}
+
+		return tableRow.getCellAsDouble( columnName );
 	}
 
 	@Override
@@ -87,6 +199,7 @@ public class NumericTableRowColumnColoringModel< T extends TableRow >
 	public void setMin( double min )
 	{
 		this.lutMinMax[ 0 ] = min;
+		updateLutScaling();
 		notifyColoringListeners();
 	}
 
@@ -94,10 +207,11 @@ public class NumericTableRowColumnColoringModel< T extends TableRow >
 	public void setMax( double max )
 	{
 		this.lutMinMax[ 1 ] = max;
+		updateLutScaling();
 		notifyColoringListeners();
 	}
 
-	private void setColorLinearly( Double value, ARGBType output )
+	private void setColorLinearly( double value, ARGBType output )
 	{
 		if ( isZeroTransparent )
 		{
@@ -108,15 +222,33 @@ public class NumericTableRowColumnColoringModel< T extends TableRow >
 			}
 		}
 
-		if ( value.isNaN() )
+		if ( Double.isNaN( value ) )
 		{
 			output.set( ARGBType.rgba( 0, 0, 0, 0 ) );
 			return;
 		}
 
-		double normalisedValue = computeLinearNormalisedValue( value );
-		final int colorIndex = lut.getARGB( normalisedValue );
-		output.set( colorIndex );
+		final double index = value * lutScale + lutShift;
+		output.set( quantizedLut[ ( int ) Math.max( 0.0, Math.min( LUT_SIZE - 1.0, index + 0.5 ) ) ] );
+	}
+
+	/**
+	 * Precomputes scale and shift, such that a value maps to the
+	 * index value * lutScale + lutShift of the quantized lut.
+	 */
+	private void updateLutScaling()
+	{
+		if ( lutMinMax[ 1 ] == lutMinMax[ 0 ] )
+		{
+			// all values map to the same color
+			lutScale = 0;
+			lutShift = computeLinearNormalisedValue( lutMinMax[ 0 ] ) * ( LUT_SIZE - 1 );
+		}
+		else
+		{
+			lutScale = ( LUT_SIZE - 1 ) / ( lutMinMax[ 1 ] - lutMinMax[ 0 ] );
+			lutShift = - lutMinMax[ 0 ] * lutScale;
+		}
 	}
 
 	private double computeLinearNormalisedValue( double value )
@@ -0,0 +1,203 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.color;
+
+import de.embl.cba.tables.imagesegment.ImageSegment;
+import de.embl.cba.tables.imagesegment.SegmentIndex;
+import de.embl.cba.tables.select.Listeners;
+import de.embl.cba.tables.select.SelectionListener;
+import de.embl.cba.tables.select.SelectionModel;
+import net.imglib2.type.numeric.ARGBType;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed colors of all segments of a {@link SegmentIndex}.
+ *
+ * For each {@link SegmentIndex.FrameIndex} there is an {@code int[]} holding
+ * the ARGB color of the segment in the corresponding slot, such that label
+ * converters can look up a color without going through the {@link ColoringModel}.
+ *
+ * The colors are rebuilt in the background, in parallel across segments,
+ * whenever the coloring or the selection changes.
+ * Listeners are notified once the new colors are available.
+ *
+ * @param <T>
+ */
+public class SegmentColorTable< T extends ImageSegment >
+{
+	private final SegmentIndex< T > segmentIndex;
+	private final ColoringModel< T > coloringModel;
+	private final SelectionModel< T > selectionModel;
+
+	private final ColoringListener coloringListener;
+	private final SelectionListener< T > selectionListener;
+	private final Listeners.SynchronizedList< ColoringListener > listeners;
+
+	private final ExecutorService executorService;
+	private final AtomicBoolean isRebuildPending;
+
+	private volatile int[][] colors;
+
+	/**
+	 * @param segmentIndex
+	 * @param coloringModel
+	 * @param selectionModel
+	 * 			may be null, if the coloring model does not depend on a selection
+	 */
+	public SegmentColorTable(
+			SegmentIndex< T > segmentIndex,
+			ColoringModel< T > coloringModel,
+			SelectionModel< T > selectionModel )
+	{
+		this.segmentIndex = segmentIndex;
+		this.coloringModel = coloringModel;
+		this.selectionModel = selectionModel;
+		this.listeners = new Listeners.SynchronizedList<>();
+		this.isRebuildPending = new AtomicBoolean( false );
+		this.executorService = Executors.newSingleThreadExecutor( runnable -> {
+			final Thread thread = new Thread( runnable, "Segment color table" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+
+		coloringListener = this::rebuild;
+		coloringModel.listeners().add( coloringListener );
+
+		selectionListener = new SelectionListener< T >()
+		{
+			@Override
+			public void selectionChanged()
+			{
+				rebuild();
+			}
+
+			@Override
+			public void focusEvent( T selection )
+			{
+			}
+		};
+
+		if ( selectionModel != null )
+			selectionModel.listeners().add( selectionListener );
+
+		rebuild();
+	}
+
+	/**
+	 * Listeners are notified when the colors have been rebuilt.
+	 *
+	 * @return the list of listeners
+	 */
+	public Listeners< ColoringListener > listeners()
+	{
+		return listeners;
+	}
+
+	/**
+	 * The colors, indexed by {@link SegmentIndex.FrameIndex#id()}
+	 * and {@link SegmentIndex.FrameIndex#getSlot(double)}.
+	 *
+	 * @return the colors, or null if they have not been computed yet
+	 */
+	public int[][] getColors()
+	{
+		return colors;
+	}
+
+	/**
+	 * Schedules a rebuild of the colors.
+	 * Requests that arrive while a rebuild is pending are coalesced.
+	 */
+	public void rebuild()
+	{
+		if ( executorService.isShutdown() ) return;
+		if ( ! isRebuildPending.compareAndSet( false, true ) ) return;
+
+		executorService.submit( () -> {
+			isRebuildPending.set( false );
+			colors = computeColors();
+			for ( ColoringListener listener : listeners.listCopy() )
+				listener.coloringChanged();
+		} );
+	}
+
+	/**
+	 * Stops listening to the coloring and selection models.
+	 */
+	public void close()
+	{
+		coloringModel.listeners().remove( coloringListener );
+		if ( selectionModel != null )
+			selectionModel.listeners().remove( selectionListener );
+		executorService.shutdownNow();
+	}
+
+	private int[][] computeColors()
+	{
+		final List< SegmentIndex.FrameIndex< T > > frameIndices = segmentIndex.getFrameIndices();
+		final int[][] colors = new int[ frameIndices.size() ][];
+
+		for ( SegmentIndex.FrameIndex< T > frameIndex : frameIndices )
+		{
+			final int[] frameColors = new int[ frameIndex.capacity() ];
+
+			IntStream.range( 0, frameColors.length ).parallel().forEach( slot ->
+			{
+				final T segment = frameIndex.getSegmentAt( slot );
+				if ( segment == null ) return;
+
+				final ARGBType argbType = new ARGBType();
+				coloringModel.convert( segment, argbType );
+				frameColors[ slot ] = premultiplyAlpha( argbType.get() );
+			} );
+
+			colors[ frameIndex.id() ] = frameColors;
+		}
+
+		return colors;
+	}
+
+	private static int premultiplyAlpha( int argb )
+	{
+		final int alpha = ARGBType.alpha( argb );
+		if ( alpha == 255 ) return argb;
+
+		final double factor = alpha / 255.0;
+		return ARGBType.rgba(
+				ARGBType.red( argb ) * factor,
+				ARGBType.green( argb ) * factor,
+				ARGBType.blue( argb ) * factor,
+				alpha * factor );
+	}
+}
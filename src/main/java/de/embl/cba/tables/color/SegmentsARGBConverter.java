@@ -30,6 +30,7 @@ package de.embl.cba.tables.color;
 
 import de.embl.cba.tables.imagesegment.ImageSegment;
 import de.embl.cba.tables.imagesegment.LabelFrameAndImage;
+import de.embl.cba.tables.imagesegment.SegmentIndex;
 import net.imglib2.Volatile;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.RealType;
@@ -39,23 +40,50 @@ import java.util.Map;
 
 public class SegmentsARGBConverter< T extends ImageSegment > implements LabelsARGBConverter
 {
-	private final Map< LabelFrameAndImage, T > labelFrameAndImageToSegment;
+	private final SegmentIndex< T > segmentIndex;
 	private final String imageId;
 	private final ColoringModel< T > coloringModel;
+	private final SegmentColorTable< T > colorTable;
 	private ARGBType singleColor;
 
-	private int frame;
+	private volatile SegmentIndex.FrameIndex< T > frameIndex;
 
 	public SegmentsARGBConverter(
 			Map< LabelFrameAndImage, T > labelFrameAndImageToSegment,
 			String imageId,
 			ColoringModel coloringModel )
 	{
-		this.labelFrameAndImageToSegment = labelFrameAndImageToSegment;
+		this( new SegmentIndex<>( labelFrameAndImageToSegment.values() ), imageId, coloringModel );
+	}
+
+	public SegmentsARGBConverter(
+			SegmentIndex< T > segmentIndex,
+			String imageId,
+			ColoringModel coloringModel )
+	{
+		this( segmentIndex, imageId, coloringModel, null );
+	}
+
+	/**
+	 * @param segmentIndex
+	 * @param imageId
+	 * @param coloringModel
+	 * @param colorTable
+	 * 			precomputed colors of the segments in the segmentIndex;
+	 * 			the coloringModel is only used until the colors are available.
+	 */
+	public SegmentsARGBConverter(
+			SegmentIndex< T > segmentIndex,
+			String imageId,
+			ColoringModel coloringModel,
+			SegmentColorTable< T > colorTable )
+	{
+		this.segmentIndex = segmentIndex;
 		this.imageId = imageId;
 		this.coloringModel = coloringModel;
+		this.colorTable = colorTable;
 		this.singleColor = null;
-		this.frame = 0;
+		this.frameIndex = segmentIndex.getFrameIndex( imageId, 0 );
 	}
 
 	@Override
@@ -85,10 +113,26 @@ public class SegmentsARGBConverter< T extends ImageSegment > implements LabelsAR
 			return;
 		}
 
-		final LabelFrameAndImage labelFrameAndImage =
-				new LabelFrameAndImage( label.getRealDouble(), frame, imageId  );
+		final SegmentIndex.FrameIndex< T > frameIndex = this.frameIndex;
+
+		if ( frameIndex == null )
+		{
+			color.set( 0 );
+			color.setValid( true );
+			return;
+		}
+
+		final int slot = frameIndex.getSlot( label.getRealDouble() );
+
+		final int[][] colors = colorTable == null ? null : colorTable.getColors();
+		if ( colors != null )
+		{
+			color.set( slot < 0 ? 0 : colors[ frameIndex.id() ][ slot ] );
+			color.setValid( true );
+			return;
+		}
 
-		final T imageSegment = labelFrameAndImageToSegment.get( labelFrameAndImage );
+		final T imageSegment = slot < 0 ? null : frameIndex.getSegmentAt( slot );
 
 		if ( imageSegment == null )
 		{
@@ -110,7 +154,7 @@ public class SegmentsARGBConverter< T extends ImageSegment > implements LabelsAR
 	@Override
 	public void timePointChanged( int timePointIndex )
 	{
-		this.frame = timePointIndex;
+		this.frameIndex = segmentIndex.getFrameIndex( imageId, timePointIndex );
 	}
 
 	@Override
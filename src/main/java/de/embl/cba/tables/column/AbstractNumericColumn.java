@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import de.embl.cba.tables.Utils;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Keeps the original text of those cells whose text differs from the
+ * default rendering of their value, e.g. "1e-5", "" or a non-numeric
+ * value entered via a table, such that editing and exporting a table
+ * does not rewrite the data.
+ *
+ * The texts are only allocated once the first such cell occurs.
+ * Cells with a text are numerically evaluated by parsing the text.
+ */
+abstract class AbstractNumericColumn extends AbstractList< String > implements NumericColumn, RandomAccess
+{
+	private String[] texts;
+
+	AbstractNumericColumn( String[] texts )
+	{
+		this.texts = texts;
+	}
+
+	/**
+	 * @return the cell texts that differ from the rendering of the values
+	 * 			(null where they do not differ), or null if there are none
+	 */
+	public String[] getTexts()
+	{
+		return texts;
+	}
+
+	@Override
+	public String getText( int row )
+	{
+		return texts == null ? null : texts[ row ];
+	}
+
+	@Override
+	public double getDouble( int row )
+	{
+		final String text = getText( row );
+		return text == null ? value( row ) : Utils.parseDouble( text );
+	}
+
+	@Override
+	public String get( int row )
+	{
+		final String text = getText( row );
+		return text == null ? format( row ) : text;
+	}
+
+	/**
+	 * @param row
+	 * @param text
+	 * 			null if the cell is rendered from its value
+	 */
+	void setText( int row, String text )
+	{
+		if ( text != null && texts == null )
+			texts = new String[ size() ];
+
+		if ( texts != null )
+			texts[ row ] = text;
+	}
+
+	abstract double value( int row );
+
+	abstract String format( int row );
+}
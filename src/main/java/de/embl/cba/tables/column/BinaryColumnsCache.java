@@ -0,0 +1,504 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import de.embl.cba.tables.Logger;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary columnar sidecar file for a table file, e.g. "table.tsv.columns" next to "table.tsv".
+ *
+ * The cache is optional and disabled by default, see {@link #setEnabled(boolean)}.
+ *
+ * The header holds the size and modification time of the table file and the
+ * delimiter it was parsed with, such that the sidecar is ignored (and rewritten)
+ * once the table changes or is parsed with another delimiter.
+ * Reading memory-maps the sidecar and bulk copies the typed columns,
+ * which is much faster than parsing the text.
+ * Cell texts that numeric columns keep, e.g. "1e-5" or "", are stored
+ * along with the values, such that the cached columns equal the parsed ones.
+ */
+public class BinaryColumnsCache
+{
+	public static final String SUFFIX = ".columns";
+
+	/**
+	 * System property for enabling the cache, e.g. "-Dde.embl.cba.tables.binaryColumnsCache=true".
+	 */
+	public static final String ENABLED_PROPERTY = "de.embl.cba.tables.binaryColumnsCache";
+
+	private static volatile boolean enabled = Boolean.getBoolean( ENABLED_PROPERTY );
+
+	private static final long MAGIC = 0x534c4f4349424d45L;
+	private static final int VERSION = 3;
+
+	private static final byte INT = 0;
+	private static final byte LONG = 1;
+	private static final byte DOUBLE = 2;
+	private static final byte CATEGORICAL = 3;
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private static final long MAP_WINDOW = 256L * 1024 * 1024;
+
+	/**
+	 * @return whether {@link de.embl.cba.tables.TableColumns#stringColumnsFromTableFile(String, String)}
+	 * 			uses the cache for local table files; false unless enabled via {@link #ENABLED_PROPERTY}
+	 * 			or {@link #setEnabled(boolean)}
+	 */
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public static void setEnabled( boolean enabled )
+	{
+		BinaryColumnsCache.enabled = enabled;
+	}
+
+	public static File sidecarFile( File tableFile )
+	{
+		return new File( tableFile.getPath() + SUFFIX );
+	}
+
+	/**
+	 * @param tableFile
+	 * @param delim
+	 * 			the delimiter the table is parsed with; null for auto-detection
+	 * @return the cached columns, or null if there is no valid sidecar file
+	 * 			for the table file parsed with this delimiter
+	 */
+	public static Map< String, List< String > > read( File tableFile, String delim )
+	{
+		final File sidecarFile = sidecarFile( tableFile );
+		if ( ! sidecarFile.exists() ) return null;
+
+		try ( FileChannel channel = FileChannel.open( sidecarFile.toPath(), StandardOpenOption.READ ) )
+		{
+			final MappedReader reader = new MappedReader( channel );
+
+			if ( reader.getLong() != MAGIC || reader.getInt() != VERSION ) return null;
+			if ( reader.getLong() != tableFile.length() ) return null;
+			if ( reader.getLong() != tableFile.lastModified() ) return null;
+			if ( ! reader.getString().equals( delimiterKey( delim ) ) ) return null;
+
+			final int numColumns = reader.getInt();
+			final int numRows = reader.getInt();
+
+			final Map< String, List< String > > columns = new LinkedHashMap<>();
+			for ( int columnIndex = 0; columnIndex < numColumns; columnIndex++ )
+			{
+				final String columnName = reader.getString();
+				columns.put( columnName, readColumn( reader, numRows ) );
+			}
+
+			return columns;
+		}
+		catch ( IOException e )
+		{
+			Logger.info( "Could not read " + sidecarFile + ": " + e.getMessage() );
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the sidecar file via a temporary file, such that concurrent readers
+	 * never see a partially written file.
+	 *
+	 * @param tableFile
+	 * @param delim
+	 * 			the delimiter the columns were parsed with; null for auto-detection
+	 * @param columns
+	 */
+	public static void write( File tableFile, String delim, Map< String, List< String > > columns )
+	{
+		final File sidecarFile = sidecarFile( tableFile );
+		final File tmpFile = new File( sidecarFile.getPath() + ".tmp" );
+
+		final int numRows = columns.isEmpty() ? 0 : columns.values().iterator().next().size();
+
+		try ( FileChannel channel = FileChannel.open( tmpFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+		{
+			final BufferedWriter writer = new BufferedWriter( channel );
+			writer.putLong( MAGIC );
+			writer.putInt( VERSION );
+			writer.putLong( tableFile.length() );
+			writer.putLong( tableFile.lastModified() );
+			writer.putString( delimiterKey( delim ) );
+			writer.putInt( columns.size() );
+			writer.putInt( numRows );
+
+			for ( Map.Entry< String, List< String > > entry : columns.entrySet() )
+			{
+				writer.putString( entry.getKey() );
+				writeColumn( writer, entry.getValue() );
+			}
+			writer.flush();
+		}
+		catch ( IOException e )
+		{
+			Logger.info( "Could not write " + sidecarFile + ": " + e.getMessage() );
+			tmpFile.delete();
+			return;
+		}
+
+		try
+		{
+			Files.move( tmpFile.toPath(), sidecarFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		}
+		catch ( IOException e )
+		{
+			Logger.info( "Could not write " + sidecarFile + ": " + e.getMessage() );
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * @return the delimiter as stored in the header; empty for auto-detection
+	 */
+	private static String delimiterKey( String delim )
+	{
+		return delim == null ? "" : delim;
+	}
+
+	private static void writeColumn( BufferedWriter writer, List< String > column ) throws IOException
+	{
+		if ( column instanceof IntColumn )
+		{
+			writer.put( INT );
+			writer.putInts( ( ( IntColumn ) column ).getValues() );
+			writeTexts( writer, ( ( IntColumn ) column ).getTexts() );
+		}
+		else if ( column instanceof LongColumn )
+		{
+			writer.put( LONG );
+			writer.putLongs( ( ( LongColumn ) column ).getValues() );
+			writeTexts( writer, ( ( LongColumn ) column ).getTexts() );
+		}
+		else if ( column instanceof DoubleColumn )
+		{
+			writer.put( DOUBLE );
+			writer.putDoubles( ( ( DoubleColumn ) column ).getValues() );
+			writeTexts( writer, ( ( DoubleColumn ) column ).getTexts() );
+		}
+		else
+		{
+			final CategoricalColumn categoricalColumn = column instanceof CategoricalColumn ?
+					( CategoricalColumn ) column : new CategoricalColumn( column );
+
+			writer.put( CATEGORICAL );
+			final int numCategories = categoricalColumn.numCategories();
+			writer.putInt( numCategories );
+			for ( int code = 0; code < numCategories; code++ )
+				writer.putString( categoricalColumn.getCategory( code ) );
+
+			final int[] codes = new int[ categoricalColumn.size() ];
+			for ( int row = 0; row < codes.length; row++ )
+				codes[ row ] = categoricalColumn.getCode( row );
+			writer.putInts( codes );
+		}
+	}
+
+	/**
+	 * Writes the number of texts, followed by the row and text of each.
+	 */
+	private static void writeTexts( BufferedWriter writer, String[] texts ) throws IOException
+	{
+		if ( texts == null )
+		{
+			writer.putInt( 0 );
+			return;
+		}
+
+		int numTexts = 0;
+		for ( String text : texts )
+			if ( text != null ) numTexts++;
+
+		writer.putInt( numTexts );
+		for ( int row = 0; row < texts.length; row++ )
+		{
+			if ( texts[ row ] == null ) continue;
+			writer.putInt( row );
+			writer.putString( texts[ row ] );
+		}
+	}
+
+	private static String[] readTexts( MappedReader reader, int numRows ) throws IOException
+	{
+		final int numTexts = reader.getInt();
+		if ( numTexts == 0 ) return null;
+
+		final String[] texts = new String[ numRows ];
+		for ( int i = 0; i < numTexts; i++ )
+		{
+			final int row = reader.getInt();
+			if ( row < 0 || row >= numRows )
+				throw new IOException( "Invalid row of cell text: " + row );
+			texts[ row ] = reader.getString();
+		}
+		return texts;
+	}
+
+	private static List< String > readColumn( MappedReader reader, int numRows ) throws IOException
+	{
+		final byte type = reader.get();
+		switch ( type )
+		{
+			case INT:
+				final int[] ints = new int[ numRows ];
+				reader.getInts( ints );
+				return new IntColumn( ints, readTexts( reader, numRows ) );
+			case LONG:
+				final long[] longs = new long[ numRows ];
+				reader.getLongs( longs );
+				return new LongColumn( longs, readTexts( reader, numRows ) );
+			case DOUBLE:
+				final double[] doubles = new double[ numRows ];
+				reader.getDoubles( doubles );
+				return new DoubleColumn( doubles, readTexts( reader, numRows ) );
+			case CATEGORICAL:
+				final int numCategories = reader.getInt();
+				final String[] categories = new String[ numCategories ];
+				for ( int code = 0; code < numCategories; code++ )
+					categories[ code ] = reader.getString();
+				final int[] codes = new int[ numRows ];
+				reader.getInts( codes );
+				return new CategoricalColumn( categories, codes );
+			default:
+				throw new IOException( "Unknown column type: " + type );
+		}
+	}
+
+	private static class BufferedWriter
+	{
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+
+		BufferedWriter( FileChannel channel )
+		{
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect( BUFFER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+		}
+
+		void put( byte value ) throws IOException
+		{
+			ensure( 1 );
+			buffer.put( value );
+		}
+
+		void putInt( int value ) throws IOException
+		{
+			ensure( 4 );
+			buffer.putInt( value );
+		}
+
+		void putLong( long value ) throws IOException
+		{
+			ensure( 8 );
+			buffer.putLong( value );
+		}
+
+		void putString( String value ) throws IOException
+		{
+			final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+			putInt( bytes.length );
+			int offset = 0;
+			while ( offset < bytes.length )
+			{
+				ensure( 1 );
+				final int length = Math.min( buffer.remaining(), bytes.length - offset );
+				buffer.put( bytes, offset, length );
+				offset += length;
+			}
+		}
+
+		void putInts( int[] values ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < values.length )
+			{
+				ensure( 4 );
+				final int length = Math.min( buffer.remaining() / 4, values.length - offset );
+				buffer.asIntBuffer().put( values, offset, length );
+				buffer.position( buffer.position() + 4 * length );
+				offset += length;
+			}
+		}
+
+		void putLongs( long[] values ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < values.length )
+			{
+				ensure( 8 );
+				final int length = Math.min( buffer.remaining() / 8, values.length - offset );
+				buffer.asLongBuffer().put( values, offset, length );
+				buffer.position( buffer.position() + 8 * length );
+				offset += length;
+			}
+		}
+
+		void putDoubles( double[] values ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < values.length )
+			{
+				ensure( 8 );
+				final int length = Math.min( buffer.remaining() / 8, values.length - offset );
+				buffer.asDoubleBuffer().put( values, offset, length );
+				buffer.position( buffer.position() + 8 * length );
+				offset += length;
+			}
+		}
+
+		private void ensure( int numBytes ) throws IOException
+		{
+			if ( buffer.remaining() < numBytes ) flush();
+		}
+
+		void flush() throws IOException
+		{
+			buffer.flip();
+			while ( buffer.hasRemaining() )
+				channel.write( buffer );
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Maps the file in windows, such that also files larger than 2 GB can be read.
+	 */
+	private static class MappedReader
+	{
+		private final FileChannel channel;
+		private final long size;
+		private MappedByteBuffer buffer;
+		private long bufferStart;
+
+		MappedReader( FileChannel channel ) throws IOException
+		{
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		byte get() throws IOException
+		{
+			ensure( 1 );
+			return buffer.get();
+		}
+
+		int getInt() throws IOException
+		{
+			ensure( 4 );
+			return buffer.getInt();
+		}
+
+		long getLong() throws IOException
+		{
+			ensure( 8 );
+			return buffer.getLong();
+		}
+
+		String getString() throws IOException
+		{
+			final int length = getInt();
+			ensure( length );
+			final byte[] bytes = new byte[ length ];
+			buffer.get( bytes );
+			return new String( bytes, StandardCharsets.UTF_8 );
+		}
+
+		void getInts( int[] values ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < values.length )
+			{
+				ensure( 4 );
+				final int length = Math.min( buffer.remaining() / 4, values.length - offset );
+				buffer.asIntBuffer().get( values, offset, length );
+				buffer.position( buffer.position() + 4 * length );
+				offset += length;
+			}
+		}
+
+		void getLongs( long[] values ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < values.length )
+			{
+				ensure( 8 );
+				final int length = Math.min( buffer.remaining() / 8, values.length - offset );
+				buffer.asLongBuffer().get( values, offset, length );
+				buffer.position( buffer.position() + 8 * length );
+				offset += length;
+			}
+		}
+
+		void getDoubles( double[] values ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < values.length )
+			{
+				ensure( 8 );
+				final int length = Math.min( buffer.remaining() / 8, values.length - offset );
+				buffer.asDoubleBuffer().get( values, offset, length );
+				buffer.position( buffer.position() + 8 * length );
+				offset += length;
+			}
+		}
+
+		private void ensure( long numBytes ) throws IOException
+		{
+			if ( buffer != null && buffer.remaining() >= numBytes ) return;
+
+			final long position = buffer == null ? 0 : bufferStart + buffer.position();
+			final long length = Math.min( size - position, Math.max( numBytes, MAP_WINDOW ) );
+			if ( length < numBytes )
+				throw new EOFException();
+
+			buffer = channel.map( FileChannel.MapMode.READ_ONLY, position, length );
+			buffer.order( ByteOrder.LITTLE_ENDIAN );
+			bufferStart = position;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Dictionary encoded string column.
+ *
+ * Each distinct string is stored once, the rows only hold an int code.
+ * New categories can be added via {@link #set(int, String)}, e.g. for annotations.
+ */
+public class CategoricalColumn extends AbstractList< String > implements RandomAccess
+{
+	private final int[] codes;
+	private final Map< String, Integer > categoryToCode;
+	private volatile String[] categories;
+	private int numCategories;
+
+	public CategoricalColumn( List< String > strings )
+	{
+		final int numRows = strings.size();
+		this.codes = new int[ numRows ];
+		this.categoryToCode = new HashMap<>();
+		this.categories = new String[ 16 ];
+
+		for ( int row = 0; row < numRows; row++ )
+			codes[ row ] = code( strings.get( row ) );
+	}
+
+	public CategoricalColumn( String[] categories, int[] codes )
+	{
+		this.codes = codes;
+		this.categoryToCode = new HashMap<>();
+		this.categories = Arrays.copyOf( categories, Math.max( 16, categories.length ) );
+		this.numCategories = categories.length;
+
+		for ( int code = 0; code < categories.length; code++ )
+			categoryToCode.put( categories[ code ], code );
+	}
+
+	public int getCode( int row )
+	{
+		return codes[ row ];
+	}
+
+	public String getCategory( int code )
+	{
+		return categories[ code ];
+	}
+
+	public synchronized int numCategories()
+	{
+		return numCategories;
+	}
+
+	@Override
+	public String get( int row )
+	{
+		return categories[ codes[ row ] ];
+	}
+
+	@Override
+	public String set( int row, String value )
+	{
+		final String previous = get( row );
+		codes[ row ] = code( value );
+		return previous;
+	}
+
+	@Override
+	public int size()
+	{
+		return codes.length;
+	}
+
+	private synchronized int code( String category )
+	{
+		final Integer code = categoryToCode.get( category );
+		if ( code != null ) return code;
+
+		if ( numCategories == categories.length )
+		{
+			final String[] grown = new String[ 2 * categories.length ];
+			System.arraycopy( categories, 0, grown, 0, numCategories );
+			grown[ numCategories ] = category;
+			categories = grown;
+		}
+		else
+		{
+			categories[ numCategories ] = category;
+		}
+
+		categoryToCode.put( category, numCategories );
+		return numCategories++;
+	}
+}
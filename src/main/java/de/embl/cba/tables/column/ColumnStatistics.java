@@ -0,0 +1,288 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Summary statistics of one numeric column.
+ *
+ * NaN values are counted, but otherwise ignored.
+ * Instances are immutable and do not reference the column they were
+ * computed from; quantiles are computed lazily on first request, from
+ * the values passed to {@link #getQuantile}.
+ */
+public class ColumnStatistics
+{
+	public static final int CHUNK_SIZE = 64 * 1024;
+
+	private final int numRows;
+	private final int count;
+	private final int numNaN;
+	private final double min;
+	private final double max;
+	private final double mean;
+	private final double m2;
+
+	private volatile double[] sortedValues;
+
+	private ColumnStatistics( int numRows, Accumulator accumulator )
+	{
+		this.numRows = numRows;
+		this.count = accumulator.count;
+		this.numNaN = accumulator.numNaN;
+		this.min = accumulator.min;
+		this.max = accumulator.max;
+		this.mean = accumulator.mean;
+		this.m2 = accumulator.m2;
+	}
+
+	/**
+	 * Computes the statistics in one pass, processing chunks of
+	 * {@link #CHUNK_SIZE} rows in parallel.
+	 *
+	 * @param values
+	 * 			function returning the value of a row
+	 * @param numRows
+	 * @return statistics
+	 */
+	public static ColumnStatistics compute( IntToDoubleFunction values, int numRows )
+	{
+		final int numChunks = ( numRows + CHUNK_SIZE - 1 ) / CHUNK_SIZE;
+
+		final Accumulator accumulator = IntStream.range( 0, numChunks ).parallel()
+				.mapToObj( chunk -> {
+					final Accumulator partial = new Accumulator();
+					final int end = Math.min( numRows, ( chunk + 1 ) * CHUNK_SIZE );
+					for ( int row = chunk * CHUNK_SIZE; row < end; row++ )
+						partial.add( values.applyAsDouble( row ) );
+					return partial;
+				} )
+				.reduce( new Accumulator(), Accumulator::merge );
+
+		return new ColumnStatistics( numRows, accumulator );
+	}
+
+	/**
+	 * Returns the statistics after one value of the column has changed,
+	 * without rescanning the column.
+	 *
+	 * @param oldValue
+	 * @param newValue
+	 * @return updated statistics, or null if the column must be rescanned,
+	 * 			which is the case if the old value was the min or max.
+	 */
+	ColumnStatistics update( double oldValue, double newValue )
+	{
+		if ( ! Double.isNaN( oldValue ) && count > 1 && ( oldValue <= min || oldValue >= max ) )
+			return null;
+
+		final Accumulator accumulator = new Accumulator();
+		accumulator.count = count;
+		accumulator.numNaN = numNaN;
+		accumulator.min = min;
+		accumulator.max = max;
+		accumulator.mean = mean;
+		accumulator.m2 = m2;
+
+		accumulator.remove( oldValue );
+		accumulator.add( newValue );
+
+		return new ColumnStatistics( numRows, accumulator );
+	}
+
+	public int getNumRows()
+	{
+		return numRows;
+	}
+
+	/**
+	 * @return number of non NaN values
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	public int getNumNaN()
+	{
+		return numNaN;
+	}
+
+	public double getMin()
+	{
+		return min;
+	}
+
+	public double getMax()
+	{
+		return max;
+	}
+
+	public double[] getMinMax()
+	{
+		return new double[]{ min, max };
+	}
+
+	public double getMean()
+	{
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	/**
+	 * @return population standard deviation
+	 */
+	public double getSigma()
+	{
+		return count == 0 ? Double.NaN : Math.sqrt( m2 / count );
+	}
+
+	public double[] getMeanSigma()
+	{
+		return new double[]{ getMean(), getSigma() };
+	}
+
+	/**
+	 * @param p
+	 * 			between 0 and 1
+	 * @param values
+	 * 			function returning the value of a row of the column
+	 * 			these statistics were computed from
+	 * @return the p-quantile (nearest rank) of the non NaN values
+	 */
+	public double getQuantile( double p, IntToDoubleFunction values )
+	{
+		if ( p < 0 || p > 1 )
+			throw new IllegalArgumentException( "Quantile must be between 0 and 1: " + p );
+
+		final double[] sorted = getSortedValues( values );
+
+		if ( sorted.length == 0 ) return Double.NaN;
+
+		final int index = ( int ) Math.ceil( p * sorted.length ) - 1;
+		return sorted[ Math.max( 0, index ) ];
+	}
+
+	private double[] getSortedValues( IntToDoubleFunction values )
+	{
+		double[] sorted = sortedValues;
+		if ( sorted == null )
+		{
+			synchronized ( this )
+			{
+				sorted = sortedValues;
+				if ( sorted == null )
+				{
+					sorted = IntStream.range( 0, numRows ).parallel()
+							.mapToDouble( values )
+							.filter( value -> ! Double.isNaN( value ) )
+							.toArray();
+					Arrays.parallelSort( sorted );
+					sortedValues = sorted;
+				}
+			}
+		}
+		return sorted;
+	}
+
+	/**
+	 * Running statistics (Welford), mergeable across chunks (Chan et al.).
+	 */
+	private static class Accumulator
+	{
+		int count = 0;
+		int numNaN = 0;
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		double mean = 0;
+		double m2 = 0;
+
+		void add( double value )
+		{
+			if ( Double.isNaN( value ) )
+			{
+				numNaN++;
+				return;
+			}
+
+			if ( value < min ) min = value;
+			if ( value > max ) max = value;
+
+			count++;
+			final double delta = value - mean;
+			mean += delta / count;
+			m2 += delta * ( value - mean );
+		}
+
+		void remove( double value )
+		{
+			if ( Double.isNaN( value ) )
+			{
+				numNaN--;
+				return;
+			}
+
+			if ( count == 1 )
+			{
+				count = 0;
+				mean = 0;
+				m2 = 0;
+				min = Double.MAX_VALUE;
+				max = -Double.MAX_VALUE;
+				return;
+			}
+
+			final double delta = value - mean;
+			mean -= delta / ( count - 1 );
+			m2 -= delta * ( value - mean );
+			if ( m2 < 0 ) m2 = 0;
+			count--;
+		}
+
+		Accumulator merge( Accumulator other )
+		{
+			final Accumulator merged = new Accumulator();
+			merged.numNaN = numNaN + other.numNaN;
+			merged.count = count + other.count;
+			merged.min = Math.min( min, other.min );
+			merged.max = Math.max( max, other.max );
+
+			if ( merged.count > 0 )
+			{
+				final double delta = other.mean - mean;
+				merged.mean = mean + delta * other.count / merged.count;
+				merged.m2 = m2 + other.m2 + delta * delta * ( ( double ) count * other.count ) / merged.count;
+			}
+
+			return merged;
+		}
+	}
+}
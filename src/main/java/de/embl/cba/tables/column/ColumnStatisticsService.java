@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches {@link ColumnStatistics} per column.
+ *
+ * Columns are identified by identity (not by {@code equals}, which would
+ * scan the whole column) and are only weakly referenced; the cached
+ * statistics do not reference the column.
+ * Each column has its own lock, so concurrent edits of different
+ * columns do not contend.
+ * Cells must be changed via {@link #setCell} for the cache to stay valid.
+ */
+public abstract class ColumnStatisticsService
+{
+	private static final Map< ColumnKey, Entry > cache = new ConcurrentHashMap<>();
+	private static final ReferenceQueue< List< String > > queue = new ReferenceQueue<>();
+
+	/**
+	 * @param column
+	 * @return cached statistics, computed on first request
+	 * @throws NumberFormatException if the column is not numeric
+	 */
+	public static ColumnStatistics getStatistics( List< String > column )
+	{
+		final Entry entry = getEntry( column );
+
+		synchronized ( entry )
+		{
+			if ( entry.statistics == null )
+				entry.statistics = ColumnStatistics.compute(
+						row -> TypedColumns.getDouble( column, row ), column.size() );
+
+			return entry.statistics;
+		}
+	}
+
+	/**
+	 * @param column
+	 * @param p
+	 * 			between 0 and 1
+	 * @return the p-quantile (nearest rank) of the non NaN values
+	 * @throws NumberFormatException if the column is not numeric
+	 */
+	public static double getQuantile( List< String > column, double p )
+	{
+		return getStatistics( column ).getQuantile(
+				p, row -> TypedColumns.getDouble( column, row ) );
+	}
+
+	/**
+	 * Sets a cell and updates the cached statistics of its column,
+	 * if there are any, without rescanning the column.
+	 *
+	 * @param column
+	 * @param row
+	 * @param value
+	 */
+	public static void setCell( List< String > column, int row, String value )
+	{
+		final Entry entry = getEntry( column );
+
+		synchronized ( entry )
+		{
+			final ColumnStatistics statistics = entry.statistics;
+
+			if ( statistics == null )
+			{
+				column.set( row, value );
+				return;
+			}
+
+			double oldValue;
+			try
+			{
+				oldValue = TypedColumns.getDouble( column, row );
+			}
+			catch ( NumberFormatException e )
+			{
+				oldValue = Double.NaN;
+			}
+
+			column.set( row, value );
+
+			try
+			{
+				entry.statistics = statistics.update( oldValue, TypedColumns.getDouble( column, row ) );
+			}
+			catch ( NumberFormatException e )
+			{
+				entry.statistics = null;
+				return;
+			}
+
+			if ( column.size() != statistics.getNumRows() )
+				entry.statistics = null;
+		}
+	}
+
+	public static void invalidate( List< String > column )
+	{
+		final Entry entry = cache.get( new ColumnKey( column, null ) );
+		if ( entry == null ) return;
+
+		synchronized ( entry )
+		{
+			entry.statistics = null;
+		}
+	}
+
+	private static Entry getEntry( List< String > column )
+	{
+		expungeStaleEntries();
+
+		final Entry entry = cache.get( new ColumnKey( column, null ) );
+		if ( entry != null ) return entry;
+
+		return cache.computeIfAbsent( new ColumnKey( column, queue ), key -> new Entry() );
+	}
+
+	private static void expungeStaleEntries()
+	{
+		Object reference;
+		while ( ( reference = queue.poll() ) != null )
+			cache.remove( reference );
+	}
+
+	/**
+	 * Per column state, also used as the lock of the column.
+	 */
+	private static class Entry
+	{
+		/**
+		 * null if not yet computed or if the column must be rescanned.
+		 */
+		ColumnStatistics statistics;
+	}
+
+	private static class ColumnKey extends WeakReference< List< String > >
+	{
+		private final int hash;
+
+		ColumnKey( List< String > column, ReferenceQueue< List< String > > queue )
+		{
+			super( column, queue );
+			this.hash = System.identityHashCode( column );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals( Object obj )
+		{
+			if ( this == obj ) return true;
+			if ( ! ( obj instanceof ColumnKey ) ) return false;
+			final List< String > column = get();
+			return column != null && column == ( ( ColumnKey ) obj ).get();
+		}
+	}
+}
@@ -0,0 +1,319 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import de.embl.cba.tables.Tables;
+import de.embl.cba.tables.Utils;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Merges the columns of a source table into a target table,
+ * matching the rows by the values in one or several key columns
+ * (e.g. label id, time point and label image).
+ *
+ * The target rows are hash indexed, thus the merge scales linearly
+ * with the number of rows.
+ */
+public class ColumnsMerger
+{
+	public static final String MISSING_TEXT = "None";
+
+	// signalling NaN bit patterns, which never result from Double.doubleToLongBits
+	private static final long STRING_KEY_TAG = 0x7ff4000000000000L;
+	private static final long NO_KEY = -1L;
+	private static final int NO_ROW = -1;
+
+	private final List< List< String > > targetKeyColumns;
+	private final int numTargetRows;
+	private final Map< String, Long > stringToKey;
+	private final List< TLongIntHashMap > valueToCodes;
+	private final long[] radices;
+	private final TLongIntHashMap keyToTargetRow;
+
+	/**
+	 * @param targetKeyColumns
+	 * 			the key columns of the table into which the new columns will be merged
+	 */
+	public ColumnsMerger( List< List< String > > targetKeyColumns )
+	{
+		this.targetKeyColumns = targetKeyColumns;
+		this.numTargetRows = targetKeyColumns.get( 0 ).size();
+		this.stringToKey = new HashMap<>();
+		this.valueToCodes = new ArrayList<>();
+		this.radices = new long[ targetKeyColumns.size() ];
+		this.keyToTargetRow = new TLongIntHashMap( 2 * numTargetRows, 0.5F, NO_KEY, NO_ROW );
+
+		index();
+	}
+
+	/**
+	 * @param sourceColumns
+	 * 			all columns of the table that should be merged, including the key columns
+	 * @param sourceKeyColumnNames
+	 * 			the key column names in the source table, in the order of the target key columns
+	 * @return the source columns, ordered as the target table;
+	 * 			cells of target rows without matching source row are "NaN" or "None"
+	 */
+	public Map< String, List< String > > merge(
+			Map< String, List< String > > sourceColumns,
+			List< String > sourceKeyColumnNames )
+	{
+		if ( sourceKeyColumnNames.size() != targetKeyColumns.size() )
+			throw new IllegalArgumentException( "Number of key columns differs: "
+					+ sourceKeyColumnNames.size() + " vs. " + targetKeyColumns.size() );
+
+		final List< List< String > > sourceKeyColumns = new ArrayList<>();
+		for ( String columnName : sourceKeyColumnNames )
+		{
+			if ( ! sourceColumns.containsKey( columnName ) )
+				throw new UnsupportedOperationException( "Column by which to merge not found: " + columnName );
+			sourceKeyColumns.add( sourceColumns.get( columnName ) );
+		}
+
+		final int[] targetRowToSourceRow = targetRowToSourceRow( sourceKeyColumns );
+
+		final Map< String, List< String > > mergedColumns = new LinkedHashMap<>();
+		for ( String columnName : sourceColumns.keySet() )
+			mergedColumns.put( columnName, null );
+
+		new ArrayList<>( sourceColumns.keySet() ).parallelStream().forEach( columnName ->
+		{
+			final List< String > mergedColumn = gather( sourceColumns.get( columnName ), targetRowToSourceRow );
+			synchronized ( mergedColumns )
+			{
+				mergedColumns.put( columnName, mergedColumn );
+			}
+		} );
+
+		return mergedColumns;
+	}
+
+	private void index()
+	{
+		final int numKeyColumns = targetKeyColumns.size();
+
+		if ( numKeyColumns == 1 )
+		{
+			for ( int row = 0; row < numTargetRows; row++ )
+				keyToTargetRow.putIfAbsent( cellKey( targetKeyColumns.get( 0 ), row, true ), row );
+			return;
+		}
+
+		// Composite keys: the values of each key column are mapped to
+		// dense codes, which are combined into one long key.
+		long radix = 1;
+		for ( int k = 0; k < numKeyColumns; k++ )
+		{
+			final List< String > column = targetKeyColumns.get( k );
+			final TLongIntHashMap valueToCode = new TLongIntHashMap( 16, 0.5F, NO_KEY, NO_ROW );
+			for ( int row = 0; row < numTargetRows; row++ )
+				valueToCode.putIfAbsent( cellKey( column, row, true ), valueToCode.size() );
+
+			valueToCodes.add( valueToCode );
+			radices[ k ] = radix;
+			try
+			{
+				radix = Math.multiplyExact( radix, valueToCode.size() );
+			}
+			catch ( ArithmeticException e )
+			{
+				throw new UnsupportedOperationException( "Too many distinct values in the key columns." );
+			}
+		}
+
+		for ( int row = 0; row < numTargetRows; row++ )
+			keyToTargetRow.putIfAbsent( compositeKey( targetKeyColumns, row, true ), row );
+	}
+
+	private int[] targetRowToSourceRow( List< List< String > > sourceKeyColumns )
+	{
+		final int numSourceRows = sourceKeyColumns.get( 0 ).size();
+
+		final int[] sourceRowToTargetRow = new int[ numSourceRows ];
+		IntStream.range( 0, numSourceRows ).parallel().forEach( row ->
+		{
+			final long key = sourceKeyColumns.size() == 1 ?
+					cellKey( sourceKeyColumns.get( 0 ), row, false ) :
+					compositeKey( sourceKeyColumns, row, false );
+			sourceRowToTargetRow[ row ] = key == NO_KEY ? NO_ROW : keyToTargetRow.get( key );
+		} );
+
+		final int[] targetRowToSourceRow = new int[ numTargetRows ];
+		Arrays.fill( targetRowToSourceRow, NO_ROW );
+		for ( int row = 0; row < numSourceRows; row++ )
+			if ( sourceRowToTargetRow[ row ] != NO_ROW )
+				targetRowToSourceRow[ sourceRowToTargetRow[ row ] ] = row;
+
+		return targetRowToSourceRow;
+	}
+
+	private long compositeKey( List< List< String > > keyColumns, int row, boolean isTarget )
+	{
+		long key = 0;
+		for ( int k = 0; k < keyColumns.size(); k++ )
+		{
+			final int code = valueToCodes.get( k ).get( cellKey( keyColumns.get( k ), row, isTarget ) );
+			if ( code == NO_ROW ) return NO_KEY;
+			key += code * radices[ k ];
+		}
+		return key;
+	}
+
+	/**
+	 * Numeric cells are keyed by their value, such that e.g. "12" and "12.0" match.
+	 * Only the target table may add new strings, which keeps the source lookups read-only.
+	 */
+	private long cellKey( List< String > column, int row, boolean isTarget )
+	{
+		if ( column instanceof NumericColumn && ( ( NumericColumn ) column ).getText( row ) == null )
+			return numericKey( ( ( NumericColumn ) column ).getDouble( row ) );
+
+		final String cell = column.get( row );
+		try
+		{
+			return numericKey( Utils.parseDouble( cell ) );
+		}
+		catch ( NumberFormatException e )
+		{
+			if ( isTarget )
+				return stringToKey.computeIfAbsent( cell, s -> STRING_KEY_TAG | stringToKey.size() );
+
+			final Long key = stringToKey.get( cell );
+			return key == null ? NO_KEY : key;
+		}
+	}
+
+	private static long numericKey( double value )
+	{
+		return Double.doubleToLongBits( value == 0.0 ? 0.0 : value );
+	}
+
+	private List< String > gather( List< String > sourceColumn, int[] targetRowToSourceRow )
+	{
+		final boolean isComplete = Arrays.stream( targetRowToSourceRow ).noneMatch( row -> row == NO_ROW );
+
+		if ( isComplete && sourceColumn instanceof IntColumn )
+		{
+			final IntColumn intColumn = ( IntColumn ) sourceColumn;
+			final int[] values = new int[ numTargetRows ];
+			for ( int row = 0; row < numTargetRows; row++ )
+				values[ row ] = intColumn.getValues()[ targetRowToSourceRow[ row ] ];
+			return new IntColumn( values, gatherTexts( intColumn, targetRowToSourceRow ) );
+		}
+		else if ( isComplete && sourceColumn instanceof LongColumn )
+		{
+			final LongColumn longColumn = ( LongColumn ) sourceColumn;
+			final long[] values = new long[ numTargetRows ];
+			for ( int row = 0; row < numTargetRows; row++ )
+				values[ row ] = longColumn.getValues()[ targetRowToSourceRow[ row ] ];
+			return new LongColumn( values, gatherTexts( longColumn, targetRowToSourceRow ) );
+		}
+		else if ( sourceColumn instanceof NumericColumn )
+		{
+			final NumericColumn numericColumn = ( NumericColumn ) sourceColumn;
+			final double[] values = new double[ numTargetRows ];
+			String[] texts = null;
+			for ( int row = 0; row < numTargetRows; row++ )
+			{
+				final int sourceRow = targetRowToSourceRow[ row ];
+				if ( sourceRow == NO_ROW )
+				{
+					values[ row ] = Double.NaN;
+					continue;
+				}
+
+				String text = numericColumn.getText( sourceRow );
+				if ( text == null )
+				{
+					values[ row ] = numericColumn.getDouble( sourceRow );
+					text = DoubleColumn.text( sourceColumn.get( sourceRow ), values[ row ] );
+				}
+				else
+				{
+					values[ row ] = parseDoubleOrNaN( text );
+				}
+
+				if ( text == null ) continue;
+				if ( texts == null ) texts = new String[ numTargetRows ];
+				texts[ row ] = text;
+			}
+			return new DoubleColumn( values, texts );
+		}
+		else
+		{
+			String missing = MISSING_TEXT;
+			if ( ! ( sourceColumn instanceof CategoricalColumn )
+					&& sourceColumn.size() > 0
+					&& Tables.isNumeric( sourceColumn.get( 0 ) ) )
+				missing = "NaN";
+
+			final String[] strings = new String[ numTargetRows ];
+			for ( int row = 0; row < numTargetRows; row++ )
+			{
+				final int sourceRow = targetRowToSourceRow[ row ];
+				strings[ row ] = sourceRow == NO_ROW ? missing : sourceColumn.get( sourceRow );
+			}
+
+			if ( sourceColumn instanceof CategoricalColumn )
+				return new CategoricalColumn( Arrays.asList( strings ) );
+			else
+				return new ArrayList<>( Arrays.asList( strings ) );
+		}
+	}
+
+	private static String[] gatherTexts( AbstractNumericColumn sourceColumn, int[] targetRowToSourceRow )
+	{
+		if ( sourceColumn.getTexts() == null ) return null;
+
+		final String[] texts = new String[ targetRowToSourceRow.length ];
+		for ( int row = 0; row < texts.length; row++ )
+			texts[ row ] = sourceColumn.getText( targetRowToSourceRow[ row ] );
+		return texts;
+	}
+
+	private static double parseDoubleOrNaN( String text )
+	{
+		try
+		{
+			return Utils.parseDouble( text );
+		}
+		catch ( NumberFormatException e )
+		{
+			return Double.NaN;
+		}
+	}
+}
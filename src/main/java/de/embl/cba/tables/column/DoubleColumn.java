@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import de.embl.cba.tables.Utils;
+
+public class DoubleColumn extends AbstractNumericColumn
+{
+	private final double[] values;
+
+	public DoubleColumn( double[] values )
+	{
+		this( values, null );
+	}
+
+	/**
+	 * @param values
+	 * @param texts
+	 * 			original cell texts, see {@link #text(String, double)}; may be null
+	 */
+	public DoubleColumn( double[] values, String[] texts )
+	{
+		super( texts );
+		this.values = values;
+	}
+
+	/**
+	 * @param cell
+	 * @param value
+	 * 			the parsed cell
+	 * @return the cell, if it is not rendered as such from its value, otherwise null
+	 */
+	public static String text( String cell, double value )
+	{
+		return Double.toString( value ).equals( cell ) ? null : cell;
+	}
+
+	/**
+	 * @return the values; cells with a non-numeric text are NaN
+	 */
+	public double[] getValues()
+	{
+		return values;
+	}
+
+	@Override
+	public void setDouble( int row, double value )
+	{
+		values[ row ] = value;
+		setText( row, null );
+	}
+
+	@Override
+	public String set( int row, String value )
+	{
+		final String previous = get( row );
+
+		try
+		{
+			values[ row ] = Utils.parseDouble( value );
+			setText( row, text( value, values[ row ] ) );
+		}
+		catch ( NumberFormatException e )
+		{
+			// keep non-numeric values, e.g. entered via a table
+			values[ row ] = Double.NaN;
+			setText( row, value );
+		}
+
+		return previous;
+	}
+
+	@Override
+	public int size()
+	{
+		return values.length;
+	}
+
+	@Override
+	double value( int row )
+	{
+		return values[ row ];
+	}
+
+	@Override
+	String format( int row )
+	{
+		return Double.toString( values[ row ] );
+	}
+}
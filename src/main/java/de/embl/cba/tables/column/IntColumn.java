@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import de.embl.cba.tables.Utils;
+
+public class IntColumn extends AbstractNumericColumn
+{
+	private final int[] values;
+
+	public IntColumn( int[] values )
+	{
+		this( values, null );
+	}
+
+	/**
+	 * @param values
+	 * @param texts
+	 * 			original cell texts of the cells that are not canonical
+	 * 			integers, e.g. "12.0" or "+12"; may be null
+	 */
+	public IntColumn( int[] values, String[] texts )
+	{
+		super( texts );
+		this.values = values;
+	}
+
+	/**
+	 * @return the values; cells with a text that is not an integer are 0
+	 */
+	public int[] getValues()
+	{
+		return values;
+	}
+
+	public int getInt( int row )
+	{
+		final String text = getText( row );
+		if ( text == null ) return values[ row ];
+
+		final double value = Utils.parseDouble( text );
+		if ( value != ( int ) value )
+			throw new NumberFormatException( "Not an integer value: " + text );
+
+		return ( int ) value;
+	}
+
+	@Override
+	public void setDouble( int row, double value )
+	{
+		if ( value != ( int ) value )
+			throw new NumberFormatException( "Not an integer value: " + value );
+
+		values[ row ] = ( int ) value;
+		setText( row, null );
+	}
+
+	@Override
+	public String set( int row, String value )
+	{
+		final String previous = get( row );
+
+		if ( value != null && TypedColumns.isInteger( value ) )
+		{
+			final long number = Long.parseLong( value );
+			if ( number == ( int ) number )
+			{
+				values[ row ] = ( int ) number;
+				setText( row, null );
+				return previous;
+			}
+		}
+
+		// keep the text, e.g. "12.0" or non-numeric values entered via a table
+		values[ row ] = 0;
+		setText( row, value );
+		return previous;
+	}
+
+	@Override
+	public int size()
+	{
+		return values.length;
+	}
+
+	@Override
+	double value( int row )
+	{
+		return values[ row ];
+	}
+
+	@Override
+	String format( int row )
+	{
+		return Integer.toString( values[ row ] );
+	}
+}
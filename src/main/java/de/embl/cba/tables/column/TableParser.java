@@ -0,0 +1,623 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import de.embl.cba.tables.FileAndUrlUtils;
+import de.embl.cba.tables.Tables;
+import de.embl.cba.tables.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streaming table parser.
+ *
+ * The input is read in large chunks of complete rows, which are tokenized
+ * in parallel. Delimiters and quotes are handled in a single pass over the bytes,
+ * and the cells are directly converted into typed columns (see {@link TypedColumns}),
+ * i.e. there is no intermediate list of rows.
+ *
+ * As before, quotes are removed from the cell contents.
+ * Delimiters and line breaks within quotes are part of the cell.
+ */
+public class TableParser
+{
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	private final int numThreads;
+	private final int chunkSize;
+
+	public TableParser()
+	{
+		this( Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE );
+	}
+
+	public TableParser( int numThreads, int chunkSize )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param delim
+	 * @return whether the delimiter can be handled by this parser,
+	 * 			which is the case for null (auto-detection) and single ASCII characters
+	 */
+	public static boolean supportsDelimiter( String delim )
+	{
+		return delim == null || ( delim.length() == 1 && delim.charAt( 0 ) < 128 );
+	}
+
+	/**
+	 * @param path
+	 * 			any location that can be opened by {@link FileAndUrlUtils#getInputStream(String)}
+	 * @param delim
+	 * 			single character delimiter, see {@link #supportsDelimiter(String)};
+	 * 			null for auto-detection
+	 * @return typed columns
+	 */
+	public Map< String, List< String > > parse( String path, String delim )
+	{
+		try ( InputStream stream = FileAndUrlUtils.getInputStream( path ) )
+		{
+			return parse( stream, delim );
+		}
+		catch ( IOException e )
+		{
+			throw new RuntimeException( "Could not read table: " + path, e );
+		}
+	}
+
+	public Map< String, List< String > > parse( InputStream stream, String delim ) throws IOException
+	{
+		final ChunkReader reader = new ChunkReader( stream, chunkSize );
+
+		final byte[] firstChunk = reader.nextChunk();
+		if ( firstChunk == null )
+			throw new RuntimeException( "Could not read rows from table." );
+
+		final int headerEnd = rowEnd( firstChunk, 0, firstChunk.length );
+		final String header = stripLineBreak( new String( firstChunk, 0, headerEnd, StandardCharsets.UTF_8 ) );
+		delim = Tables.autoDelim( delim, Collections.singletonList( header ) );
+		if ( ! supportsDelimiter( delim ) )
+			throw new UnsupportedOperationException( "Only single character delimiters are supported: " + delim );
+		final byte delimiter = ( byte ) delim.charAt( 0 );
+
+		final List< String > columnNames = parseHeader( firstChunk, headerEnd, delimiter );
+		final int numColumns = columnNames.size();
+
+		final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
+		final Semaphore chunksInFlight = new Semaphore( numThreads + 1 );
+		final List< Future< ParsedChunk > > futures = new ArrayList<>();
+
+		try
+		{
+			byte[] chunk = firstChunk;
+			int from = headerEnd;
+			while ( chunk != null )
+			{
+				chunksInFlight.acquire();
+				final ChunkParser parser = new ChunkParser( chunk, from, numColumns, delimiter );
+				futures.add( executorService.submit( () -> {
+					try
+					{
+						return parser.call();
+					}
+					finally
+					{
+						chunksInFlight.release();
+					}
+				} ) );
+
+				chunk = reader.nextChunk();
+				from = 0;
+			}
+
+			final List< ParsedChunk > chunks = new ArrayList<>();
+			for ( Future< ParsedChunk > future : futures )
+				chunks.add( future.get() );
+
+			final Map< String, List< String > > columns = new LinkedHashMap<>();
+			for ( int columnIndex = 0; columnIndex < numColumns; columnIndex++ )
+				columns.put( columnNames.get( columnIndex ), mergeColumn( chunks, columnIndex ) );
+
+			return columns;
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( ExecutionException e )
+		{
+			throw new RuntimeException( "Could not parse table.", e.getCause() );
+		}
+		finally
+		{
+			executorService.shutdownNow();
+		}
+	}
+
+	private static List< String > parseHeader( byte[] bytes, int headerEnd, byte delimiter )
+	{
+		final List< String > columnNames = new ArrayList<>();
+		int fieldStart = 0;
+		boolean inQuotes = false;
+		final int end = lineContentEnd( bytes, 0, headerEnd );
+		for ( int i = 0; i < end; i++ )
+		{
+			if ( bytes[ i ] == '"' )
+				inQuotes = ! inQuotes;
+			else if ( ! inQuotes && bytes[ i ] == delimiter )
+			{
+				columnNames.add( fieldString( bytes, fieldStart, i ) );
+				fieldStart = i + 1;
+			}
+		}
+		columnNames.add( fieldString( bytes, fieldStart, end ) );
+		return columnNames;
+	}
+
+	/**
+	 * The chunks infer their column types independently, but keep the
+	 * original text of all cells that are not rendered as such from their
+	 * value (see {@link DoubleColumn#text(String, double)}). Thus the type
+	 * is decided across all chunks here and the cells are converted once,
+	 * without depending on where the chunk boundaries fall.
+	 */
+	private static List< String > mergeColumn( List< ParsedChunk > chunks, int columnIndex )
+	{
+		int numRows = 0;
+		boolean isString = false;
+		boolean isDouble = false;
+		for ( ParsedChunk chunk : chunks )
+		{
+			numRows += chunk.numRows;
+			final Object values = chunk.columns[ columnIndex ];
+			if ( values instanceof String[] ) isString = true;
+			else if ( values instanceof DoubleColumn ) isDouble = true;
+		}
+
+		if ( numRows == 0 ) return new ArrayList<>();
+
+		if ( isString )
+		{
+			final String[] strings = new String[ numRows ];
+			int offset = 0;
+			for ( ParsedChunk chunk : chunks )
+			{
+				final Object values = chunk.columns[ columnIndex ];
+				for ( int row = 0; row < chunk.numRows; row++ )
+					strings[ offset + row ] = cellAsString( values, row );
+				offset += chunk.numRows;
+			}
+			return new CategoricalColumn( Arrays.asList( strings ) );
+		}
+		else if ( isDouble )
+		{
+			final double[] doubles = new double[ numRows ];
+			String[] texts = null;
+			int offset = 0;
+			for ( ParsedChunk chunk : chunks )
+			{
+				final Object values = chunk.columns[ columnIndex ];
+				for ( int row = 0; row < chunk.numRows; row++ )
+				{
+					final String text;
+					if ( values instanceof DoubleColumn )
+					{
+						doubles[ offset + row ] = ( ( DoubleColumn ) values ).getValues()[ row ];
+						text = ( ( DoubleColumn ) values ).getText( row );
+					}
+					else
+					{
+						final long value = ( ( long[] ) values )[ row ];
+						doubles[ offset + row ] = value;
+						text = DoubleColumn.text( Long.toString( value ), value );
+					}
+
+					if ( text == null ) continue;
+					if ( texts == null ) texts = new String[ numRows ];
+					texts[ offset + row ] = text;
+				}
+				offset += chunk.numRows;
+			}
+			return new DoubleColumn( doubles, texts );
+		}
+		else
+		{
+			final long[] longs = new long[ numRows ];
+			int offset = 0;
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for ( ParsedChunk chunk : chunks )
+			{
+				final long[] values = ( long[] ) chunk.columns[ columnIndex ];
+				for ( int row = 0; row < chunk.numRows; row++ )
+				{
+					min = Math.min( min, values[ row ] );
+					max = Math.max( max, values[ row ] );
+				}
+				System.arraycopy( values, 0, longs, offset, chunk.numRows );
+				offset += chunk.numRows;
+			}
+
+			if ( min >= Integer.MIN_VALUE && max <= Integer.MAX_VALUE )
+			{
+				final int[] ints = new int[ numRows ];
+				for ( int row = 0; row < numRows; row++ )
+					ints[ row ] = ( int ) longs[ row ];
+				return new IntColumn( ints );
+			}
+
+			return new LongColumn( longs );
+		}
+	}
+
+	/**
+	 * @return the original text of the cell
+	 */
+	private static String cellAsString( Object values, int row )
+	{
+		if ( values instanceof String[] )
+			return ( ( String[] ) values )[ row ];
+		else if ( values instanceof DoubleColumn )
+			return ( ( DoubleColumn ) values ).get( row );
+		else
+			return Long.toString( ( ( long[] ) values )[ row ] );
+	}
+
+	/**
+	 * @return the index after the first line break that is not within quotes
+	 */
+	private static int rowEnd( byte[] bytes, int from, int to )
+	{
+		boolean inQuotes = false;
+		for ( int i = from; i < to; i++ )
+		{
+			if ( bytes[ i ] == '"' )
+				inQuotes = ! inQuotes;
+			else if ( bytes[ i ] == '\n' && ! inQuotes )
+				return i + 1;
+		}
+		return to;
+	}
+
+	private static int lineContentEnd( byte[] bytes, int from, int rowEnd )
+	{
+		int end = rowEnd;
+		if ( end > from && bytes[ end - 1 ] == '\n' ) end--;
+		if ( end > from && bytes[ end - 1 ] == '\r' ) end--;
+		return end;
+	}
+
+	private static String stripLineBreak( String line )
+	{
+		return line.replace( "\n", "" ).replace( "\r", "" );
+	}
+
+	private static String fieldString( byte[] bytes, int start, int end )
+	{
+		for ( int i = start; i < end; i++ )
+		{
+			if ( bytes[ i ] == '"' )
+				return new String( bytes, start, end - start, StandardCharsets.UTF_8 ).replace( "\"", "" );
+		}
+
+		return new String( bytes, start, end - start, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Reads the stream in chunks that only contain complete rows.
+	 */
+	private static class ChunkReader
+	{
+		private final InputStream stream;
+		private byte[] buffer;
+		private int numBytes;
+		private boolean isEndOfStream;
+
+		ChunkReader( InputStream stream, int chunkSize )
+		{
+			this.stream = stream;
+			this.buffer = new byte[ chunkSize ];
+		}
+
+		byte[] nextChunk() throws IOException
+		{
+			while ( true )
+			{
+				while ( ! isEndOfStream && numBytes < buffer.length )
+				{
+					final int read = stream.read( buffer, numBytes, buffer.length - numBytes );
+					if ( read < 0 ) isEndOfStream = true;
+					else numBytes += read;
+				}
+
+				if ( numBytes == 0 ) return null;
+
+				int end = isEndOfStream ? numBytes : lastRowEnd();
+
+				if ( end == 0 )
+				{
+					// a single row that is larger than the buffer
+					buffer = Arrays.copyOf( buffer, 2 * buffer.length );
+					continue;
+				}
+
+				final byte[] chunk = Arrays.copyOf( buffer, end );
+				System.arraycopy( buffer, end, buffer, 0, numBytes - end );
+				numBytes -= end;
+				return chunk;
+			}
+		}
+
+		private int lastRowEnd()
+		{
+			// chunks always start at a row, thus the quote state is known
+			int lastRowEnd = 0;
+			boolean inQuotes = false;
+			for ( int i = 0; i < numBytes; i++ )
+			{
+				if ( buffer[ i ] == '"' )
+					inQuotes = ! inQuotes;
+				else if ( buffer[ i ] == '\n' && ! inQuotes )
+					lastRowEnd = i + 1;
+			}
+			return lastRowEnd;
+		}
+	}
+
+	private static class ParsedChunk
+	{
+		final int numRows;
+		final Object[] columns; // long[], DoubleColumn or String[]
+
+		ParsedChunk( int numRows, Object[] columns )
+		{
+			this.numRows = numRows;
+			this.columns = columns;
+		}
+	}
+
+	private static class ChunkParser implements Callable< ParsedChunk >
+	{
+		private final byte[] bytes;
+		private final int from;
+		private final int numColumns;
+		private final byte delimiter;
+
+		private int[] starts;
+		private int[] ends;
+		private int numRows;
+
+		ChunkParser( byte[] bytes, int from, int numColumns, byte delimiter )
+		{
+			this.bytes = bytes;
+			this.from = from;
+			this.numColumns = numColumns;
+			this.delimiter = delimiter;
+		}
+
+		@Override
+		public ParsedChunk call()
+		{
+			tokenize();
+
+			final Object[] columns = new Object[ numColumns ];
+			for ( int columnIndex = 0; columnIndex < numColumns; columnIndex++ )
+				columns[ columnIndex ] = parseColumn( columnIndex );
+
+			return new ParsedChunk( numRows, columns );
+		}
+
+		/**
+		 * Records the start and end of each cell; missing cells are empty.
+		 */
+		private void tokenize()
+		{
+			final int capacity = Math.max( numColumns, bytes.length / 8 );
+			starts = new int[ capacity ];
+			ends = new int[ capacity ];
+
+			int column = 0;
+			int fieldStart = from;
+			boolean inQuotes = false;
+
+			for ( int i = from; i < bytes.length; i++ )
+			{
+				final byte b = bytes[ i ];
+				if ( b == '"' )
+				{
+					inQuotes = ! inQuotes;
+				}
+				else if ( inQuotes )
+				{
+					continue;
+				}
+				else if ( b == delimiter )
+				{
+					addField( column++, fieldStart, i );
+					fieldStart = i + 1;
+				}
+				else if ( b == '\n' )
+				{
+					final int end = lineContentEnd( bytes, fieldStart, i );
+					if ( column == 0 && end == fieldStart )
+					{
+						fieldStart = i + 1; // empty line
+						continue;
+					}
+					addField( column, fieldStart, end );
+					finishRow( column + 1, i );
+					column = 0;
+					fieldStart = i + 1;
+				}
+			}
+
+			if ( column > 0 || fieldStart < bytes.length )
+			{
+				final int end = lineContentEnd( bytes, fieldStart, bytes.length );
+				if ( column > 0 || end > fieldStart )
+				{
+					addField( column, fieldStart, end );
+					finishRow( column + 1, bytes.length );
+				}
+			}
+		}
+
+		private void addField( int column, int start, int end )
+		{
+			if ( column >= numColumns ) return;
+
+			final int index = numRows * numColumns + column;
+			if ( index >= starts.length )
+			{
+				starts = Arrays.copyOf( starts, 2 * starts.length );
+				ends = Arrays.copyOf( ends, 2 * ends.length );
+			}
+			starts[ index ] = start;
+			ends[ index ] = end;
+		}
+
+		private void finishRow( int numFields, int position )
+		{
+			for ( int column = numFields; column < numColumns; column++ )
+				addField( column, position, position );
+			numRows++;
+		}
+
+		private Object parseColumn( int columnIndex )
+		{
+			final long[] longs = parseLongs( columnIndex );
+			if ( longs != null ) return longs;
+
+			final DoubleColumn doubles = parseDoubles( columnIndex );
+			if ( doubles != null ) return doubles;
+
+			return parseStrings( columnIndex );
+		}
+
+		private long[] parseLongs( int columnIndex )
+		{
+			final long[] longs = new long[ numRows ];
+			for ( int row = 0; row < numRows; row++ )
+			{
+				final int index = row * numColumns + columnIndex;
+				final int start = starts[ index ];
+				final int end = ends[ index ];
+
+				if ( ! isUnquotedInteger( start, end ) )
+				{
+					final String cell = fieldString( bytes, start, end );
+					if ( ! TypedColumns.isInteger( cell ) ) return null;
+					longs[ row ] = Long.parseLong( cell );
+					continue;
+				}
+
+				final boolean isNegative = bytes[ start ] == '-';
+				long value = 0;
+				for ( int i = isNegative ? start + 1 : start; i < end; i++ )
+					value = 10 * value + ( bytes[ i ] - '0' );
+				longs[ row ] = isNegative ? -value : value;
+			}
+			return longs;
+		}
+
+		/**
+		 * Same rules as {@link TypedColumns#isInteger(String)}.
+		 */
+		private boolean isUnquotedInteger( int start, int end )
+		{
+			final int digitsStart = end > start && bytes[ start ] == '-' ? start + 1 : start;
+			final int numDigits = end - digitsStart;
+			if ( numDigits == 0 || numDigits > 18 ) return false;
+			if ( bytes[ digitsStart ] == '0' && ( numDigits > 1 || digitsStart > start ) ) return false;
+
+			for ( int i = digitsStart; i < end; i++ )
+				if ( bytes[ i ] < '0' || bytes[ i ] > '9' ) return false;
+
+			return true;
+		}
+
+		private DoubleColumn parseDoubles( int columnIndex )
+		{
+			final double[] doubles = new double[ numRows ];
+			String[] texts = null;
+			try
+			{
+				for ( int row = 0; row < numRows; row++ )
+				{
+					final int index = row * numColumns + columnIndex;
+					final String cell = fieldString( bytes, starts[ index ], ends[ index ] );
+					doubles[ row ] = Utils.parseDouble( cell );
+
+					final String text = DoubleColumn.text( cell, doubles[ row ] );
+					if ( text == null ) continue;
+					if ( texts == null ) texts = new String[ numRows ];
+					texts[ row ] = text;
+				}
+				return new DoubleColumn( doubles, texts );
+			}
+			catch ( NumberFormatException e )
+			{
+				return null;
+			}
+		}
+
+		private String[] parseStrings( int columnIndex )
+		{
+			// share identical strings already within the chunk
+			final Map< String, String > unique = new HashMap<>();
+			final String[] strings = new String[ numRows ];
+			for ( int row = 0; row < numRows; row++ )
+			{
+				final int index = row * numColumns + columnIndex;
+				final String cell = fieldString( bytes, starts[ index ], ends[ index ] );
+				final String previous = unique.putIfAbsent( cell, cell );
+				strings[ row ] = previous != null ? previous : cell;
+			}
+			return strings;
+		}
+	}
+}
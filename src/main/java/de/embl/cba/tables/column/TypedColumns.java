@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.column;
+
+import de.embl.cba.tables.Utils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public abstract class TypedColumns
+{
+	/**
+	 * Converts string columns into columns backed by primitive arrays
+	 * (numeric data) or dictionary encoded strings (categorical data).
+	 *
+	 * The returned columns are still {@code List< String >},
+	 * thus they can be used as a drop-in replacement.
+	 *
+	 * @param columns
+	 * @return typed columns, in the same order
+	 */
+	public static Map< String, List< String > > asTypedColumns( Map< String, List< String > > columns )
+	{
+		final Map< String, List< String > > typedColumns = new LinkedHashMap<>();
+
+		for ( Map.Entry< String, List< String > > entry : columns.entrySet() )
+			typedColumns.put( entry.getKey(), asTypedColumn( entry.getValue() ) );
+
+		return typedColumns;
+	}
+
+	public static List< String > asTypedColumn( List< String > strings )
+	{
+		if ( strings instanceof NumericColumn || strings instanceof CategoricalColumn )
+			return strings;
+
+		final int numRows = strings.size();
+
+		if ( numRows == 0 ) return strings;
+
+		if ( isIntegerColumn( strings ) )
+		{
+			final long[] longs = new long[ numRows ];
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for ( int row = 0; row < numRows; row++ )
+			{
+				longs[ row ] = Long.parseLong( strings.get( row ) );
+				min = Math.min( min, longs[ row ] );
+				max = Math.max( max, longs[ row ] );
+			}
+
+			if ( min >= Integer.MIN_VALUE && max <= Integer.MAX_VALUE )
+			{
+				final int[] ints = new int[ numRows ];
+				for ( int row = 0; row < numRows; row++ )
+					ints[ row ] = ( int ) longs[ row ];
+				return new IntColumn( ints );
+			}
+
+			return new LongColumn( longs );
+		}
+
+		final double[] doubles = new double[ numRows ];
+		String[] texts = null;
+		try
+		{
+			for ( int row = 0; row < numRows; row++ )
+			{
+				final String cell = strings.get( row );
+				doubles[ row ] = Utils.parseDouble( cell );
+
+				final String text = DoubleColumn.text( cell, doubles[ row ] );
+				if ( text == null ) continue;
+				if ( texts == null ) texts = new String[ numRows ];
+				texts[ row ] = text;
+			}
+
+			return new DoubleColumn( doubles, texts );
+		}
+		catch ( Exception e )
+		{
+			return new CategoricalColumn( strings );
+		}
+	}
+
+	/**
+	 * Fetches a numeric value without string parsing,
+	 * if the column supports it.
+	 *
+	 * @param column
+	 * @param row
+	 * @return the numeric value of the cell
+	 */
+	public static double getDouble( List< String > column, int row )
+	{
+		if ( column instanceof NumericColumn )
+			return ( ( NumericColumn ) column ).getDouble( row );
+		else
+			return Utils.parseDouble( column.get( row ) );
+	}
+
+	private static boolean isIntegerColumn( List< String > strings )
+	{
+		final int numRows = strings.size();
+		for ( int row = 0; row < numRows; row++ )
+			if ( ! isInteger( strings.get( row ) ) )
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Only accepts strings whose string representation is preserved
+	 * by the integer columns, e.g. "12" but not "+12" or "012".
+	 */
+	static boolean isInteger( String cell )
+	{
+		final int length = cell.length();
+		if ( length == 0 ) return false;
+
+		int start = cell.charAt( 0 ) == '-' ? 1 : 0;
+		final int numDigits = length - start;
+		if ( numDigits == 0 || numDigits > 18 ) return false;
+		if ( numDigits > 1 && cell.charAt( start ) == '0' ) return false;
+		if ( start == 1 && numDigits == 1 && cell.charAt( 1 ) == '0' ) return false;
+
+		for ( int i = start; i < length; i++ )
+		{
+			final char c = cell.charAt( i );
+			if ( c < '0' || c > '9' ) return false;
+		}
+
+		return true;
+	}
+}
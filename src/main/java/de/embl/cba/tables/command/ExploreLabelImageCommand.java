@@ -31,6 +31,7 @@ package de.embl.cba.tables.command;
 import de.embl.cba.bdv.utils.lut.GlasbeyARGBLut;
 import de.embl.cba.bdv.utils.sources.Metadata;
 import de.embl.cba.bdv.utils.wrap.Wraps;
+import de.embl.cba.lazyalgorithm.CachedDownsampling;
 import de.embl.cba.tables.Calibrations;
 import de.embl.cba.tables.Logger;
 import de.embl.cba.tables.color.LazyCategoryColoringModel;
@@ -109,7 +110,8 @@ public class ExploreLabelImageCommand < R extends RealType< R > > implements Com
 		Logger.info( "Adding to image sources: " + labelImageId );
 
 		imageSourcesModel.addSourceAndMetadata(
-				Wraps.imagePlusAsSource4DChannelList( labelImage ).get( 0 ),
+				Wraps.imagePlusAsSource4DChannelList(
+						labelImage, CachedDownsampling.Method.Mode ).get( 0 ),
 				labelImageId,
 				Metadata.Modality.Segmentation,
 				getNumSpatialDimensions( labelImage.getNSlices() ),
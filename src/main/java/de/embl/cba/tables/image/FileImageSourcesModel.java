@@ -78,6 +78,8 @@ public class FileImageSourcesModel implements ImageSourcesModel
 		if ( imagePath.endsWith( ".xml" ) )
 		{
 			final LazySpimSource lazySpimSource = new LazySpimSource( imageId, imagePath );
+			// open in the background now, such that showing the source does not wait for it
+			lazySpimSource.prefetch();
 			nameToSourceAndMetadata.put(
 					imageId,
 					new SourceAndMetadata( lazySpimSource, metadata ) );
@@ -28,7 +28,8 @@
  */
 package de.embl.cba.tables.imagesegment;
 
-import de.embl.cba.tables.Utils;
+import de.embl.cba.tables.column.ColumnStatisticsService;
+import de.embl.cba.tables.column.TypedColumns;
 import de.embl.cba.tables.imagesegment.SegmentProperty;
 import de.embl.cba.tables.tablerow.AbstractTableRow;
 import de.embl.cba.tables.tablerow.ColumnBasedTableRow;
@@ -41,7 +42,9 @@ import java.util.Set;
 
 /**
  * All values are dynamically fetched from the columns.
- * This might be slow, but allows changes in columns to be reflected.
+ * This allows changes in columns to be reflected.
+ * For typed columns (see {@link TypedColumns}) numeric values
+ * are read without string parsing.
  * // TODO: make interface for ColumnBasedTableRow
  */
 public class ColumnBasedTableRowImageSegment extends AbstractTableRow implements TableRowImageSegment, ColumnBasedTableRow
@@ -78,22 +81,18 @@ public class ColumnBasedTableRowImageSegment extends AbstractTableRow implements
 		position = new double[ 3 ];
 
 		if ( segmentPropertyToColumn.containsKey( SegmentProperty.X ) )
-			position[ 0 ] = Utils.parseDouble(
-								segmentPropertyToColumn
-								.get( SegmentProperty.X )
-								.get( row ) );
+			position[ 0 ] = getDouble( SegmentProperty.X );
 
 		if ( segmentPropertyToColumn.containsKey( SegmentProperty.Y ) )
-			position[ 1 ] = Utils.parseDouble(
-								segmentPropertyToColumn
-								.get( SegmentProperty.Y )
-								.get( row ) );
+			position[ 1 ] = getDouble( SegmentProperty.Y );
 
 		if ( segmentPropertyToColumn.containsKey( SegmentProperty.Z ) )
-			position[ 2 ] = Utils.parseDouble(
-								segmentPropertyToColumn
-								.get( SegmentProperty.Z )
-								.get( row ) );
+			position[ 2 ] = getDouble( SegmentProperty.Z );
+	}
+
+	private double getDouble( SegmentProperty segmentProperty )
+	{
+		return TypedColumns.getDouble( segmentPropertyToColumn.get( segmentProperty ), row );
 	}
 
 	@Override
@@ -107,9 +106,7 @@ public class ColumnBasedTableRowImageSegment extends AbstractTableRow implements
 	@Override
 	public double labelId()
 	{
-		return Utils.parseDouble( segmentPropertyToColumn
-				.get( SegmentProperty.ObjectLabel )
-				.get( row ) );
+		return getDouble( SegmentProperty.ObjectLabel );
 	}
 
 	@Override
@@ -121,8 +118,7 @@ public class ColumnBasedTableRowImageSegment extends AbstractTableRow implements
 		}
 		else
 		{
-			int timePoint = Utils.parseDouble( segmentPropertyToColumn.get( SegmentProperty.T )
-					.get( row ) ).intValue();
+			int timePoint = ( int ) getDouble( SegmentProperty.T );
 
 			if ( isOneBasedTimePoint ) timePoint -= 1;
 
@@ -177,22 +173,13 @@ public class ColumnBasedTableRowImageSegment extends AbstractTableRow implements
 		final double[] max = new double[ numDimensions() ];
 
 		if ( segmentPropertyToColumn.containsKey( SegmentProperty.BoundingBoxXMax ) )
-			max[ 0 ] = Utils.parseDouble(
-					segmentPropertyToColumn
-							.get( SegmentProperty.BoundingBoxXMax )
-							.get( row ) );
+			max[ 0 ] = getDouble( SegmentProperty.BoundingBoxXMax );
 
 		if ( segmentPropertyToColumn.containsKey( SegmentProperty.BoundingBoxYMax ) )
-			max[ 1 ] = Utils.parseDouble(
-					segmentPropertyToColumn
-							.get( SegmentProperty.BoundingBoxYMax )
-							.get( row ) );
+			max[ 1 ] = getDouble( SegmentProperty.BoundingBoxYMax );
 
 		if ( segmentPropertyToColumn.containsKey( SegmentProperty.BoundingBoxZMax ) )
-			max[ 2 ] = Utils.parseDouble(
-					segmentPropertyToColumn
-							.get( SegmentProperty.BoundingBoxZMax )
-							.get( row ) );
+			max[ 2 ] = getDouble( SegmentProperty.BoundingBoxZMax );
 		return max;
 	}
 
@@ -201,22 +188,13 @@ public class ColumnBasedTableRowImageSegment extends AbstractTableRow implements
 		final double[] min = new double[ numDimensions() ];
 
 		if ( segmentPropertyToColumn.containsKey( SegmentProperty.BoundingBoxXMin ) )
-			min[ 0 ] = Utils.parseDouble(
-							segmentPropertyToColumn
-								.get( SegmentProperty.BoundingBoxXMin )
-								.get( row ) );
+			min[ 0 ] = getDouble( SegmentProperty.BoundingBoxXMin );
 
 		if ( segmentPropertyToColumn.containsKey( SegmentProperty.BoundingBoxYMin ) )
-			min[ 1 ] = Utils.parseDouble(
-					segmentPropertyToColumn
-							.get( SegmentProperty.BoundingBoxYMin )
-							.get( row ) );
+			min[ 1 ] = getDouble( SegmentProperty.BoundingBoxYMin );
 
 		if ( segmentPropertyToColumn.containsKey( SegmentProperty.BoundingBoxZMin ) )
-			min[ 2 ] = Utils.parseDouble(
-					segmentPropertyToColumn
-							.get( SegmentProperty.BoundingBoxZMin )
-							.get( row ) );
+			min[ 2 ] = getDouble( SegmentProperty.BoundingBoxZMin );
 		return min;
 	}
 
@@ -226,10 +204,16 @@ public class ColumnBasedTableRowImageSegment extends AbstractTableRow implements
 		return columns.get( columnName ).get( row );
 	}
 
+	@Override
+	public double getCellAsDouble( String columnName )
+	{
+		return TypedColumns.getDouble( columns.get( columnName ), row );
+	}
+
 	@Override
 	public void setCell( String columnName, String value )
 	{
-		columns.get( columnName ).set( row, value );
+		ColumnStatisticsService.setCell( columns.get( columnName ), row, value );
 		this.notifyCellChangedListeners( columnName, value );
 	}
 
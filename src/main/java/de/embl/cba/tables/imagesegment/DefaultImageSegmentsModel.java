@@ -32,13 +32,11 @@ import de.embl.cba.tables.imagesegment.ImageSegment;
 import de.embl.cba.tables.imagesegment.ImageSegmentsModel;
 import de.embl.cba.tables.imagesegment.LabelFrameAndImage;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class DefaultImageSegmentsModel< T extends ImageSegment > implements ImageSegmentsModel< T >
 {
-	private Map< LabelFrameAndImage, T > idToSegment;
+	private SegmentIndex< T > segmentIndex;
 	private String modelName;
 
 	public DefaultImageSegmentsModel( List< T > imageSegments, String modelName )
@@ -49,18 +47,18 @@ public class DefaultImageSegmentsModel< T extends ImageSegment > implements Imag
 
 	public void createSegmentMap( List< T > imageSegments )
 	{
-		idToSegment = new HashMap<>();
-		for ( T imageSegment : imageSegments )
-		{
-			final LabelFrameAndImage key = new LabelFrameAndImage( imageSegment );
-			idToSegment.put( key, imageSegment );
-		}
+		segmentIndex = new SegmentIndex<>( imageSegments );
+	}
+
+	public SegmentIndex< T > getSegmentIndex()
+	{
+		return segmentIndex;
 	}
 
 	@Override
 	public T getImageSegment( LabelFrameAndImage labelFrameAndImage )
 	{
-		return idToSegment.get( labelFrameAndImage );
+		return segmentIndex.getSegment( labelFrameAndImage );
 	}
 
 	@Override
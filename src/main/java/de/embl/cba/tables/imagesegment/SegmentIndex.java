@@ -0,0 +1,208 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.imagesegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Look-up of image segments by image, frame and label.
+ *
+ * For each (imageId, frame) the labels are stored in a primitive
+ * open addressing hash map, such that looking up the segment of a label,
+ * e.g. for every rendered pixel, does not allocate any objects.
+ *
+ * The index is immutable; it must be rebuilt if segments are added.
+ *
+ * @param <T>
+ */
+public class SegmentIndex< T extends ImageSegment >
+{
+	private final Map< String, Map< Integer, FrameIndex< T > > > imageToFrameToIndex;
+	private final List< FrameIndex< T > > frameIndices;
+
+	public SegmentIndex( Collection< T > segments )
+	{
+		final Map< String, Map< Integer, Integer > > imageToFrameToCount = new HashMap<>();
+		for ( T segment : segments )
+			imageToFrameToCount
+					.computeIfAbsent( segment.imageId(), k -> new HashMap<>() )
+					.merge( segment.timePoint(), 1, Integer::sum );
+
+		imageToFrameToIndex = new HashMap<>();
+		frameIndices = new ArrayList<>();
+		for ( Map.Entry< String, Map< Integer, Integer > > image : imageToFrameToCount.entrySet() )
+		{
+			final Map< Integer, FrameIndex< T > > frameToIndex = new HashMap<>();
+			for ( Map.Entry< Integer, Integer > frame : image.getValue().entrySet() )
+			{
+				final FrameIndex< T > frameIndex = new FrameIndex<>( frameIndices.size(), frame.getValue() );
+				frameIndices.add( frameIndex );
+				frameToIndex.put( frame.getKey(), frameIndex );
+			}
+			imageToFrameToIndex.put( image.getKey(), frameToIndex );
+		}
+
+		for ( T segment : segments )
+			imageToFrameToIndex.get( segment.imageId() ).get( segment.timePoint() ).put( segment.labelId(), segment );
+	}
+
+	/**
+	 * @param imageId
+	 * @param frame
+	 * @return the labels of one image and frame, or null if there are none
+	 */
+	public FrameIndex< T > getFrameIndex( String imageId, int frame )
+	{
+		final Map< Integer, FrameIndex< T > > frameToIndex = imageToFrameToIndex.get( imageId );
+		if ( frameToIndex == null ) return null;
+		return frameToIndex.get( frame );
+	}
+
+	/**
+	 * @return all frame indices; the position in the list is {@link FrameIndex#id()}
+	 */
+	public List< FrameIndex< T > > getFrameIndices()
+	{
+		return Collections.unmodifiableList( frameIndices );
+	}
+
+	public T getSegment( String imageId, int frame, double label )
+	{
+		final FrameIndex< T > frameIndex = getFrameIndex( imageId, frame );
+		if ( frameIndex == null ) return null;
+		return frameIndex.get( label );
+	}
+
+	public T getSegment( LabelFrameAndImage labelFrameAndImage )
+	{
+		return getSegment( labelFrameAndImage.getImage(), labelFrameAndImage.getFrame(), labelFrameAndImage.getLabel() );
+	}
+
+	/**
+	 * Maps the labels of one image and frame to segments,
+	 * using linear probing on the bits of the label.
+	 */
+	public static class FrameIndex< T extends ImageSegment >
+	{
+		// the bits of -0.0, which is never used as key
+		private static final long FREE = Long.MIN_VALUE;
+
+		private final int id;
+		private final long[] keys;
+		private final Object[] segments;
+		private final int mask;
+
+		FrameIndex( int id, int numSegments )
+		{
+			this.id = id;
+
+			int capacity = 2;
+			while ( capacity < 2L * numSegments ) capacity <<= 1;
+
+			keys = new long[ capacity ];
+			segments = new Object[ capacity ];
+			mask = capacity - 1;
+			Arrays.fill( keys, FREE );
+		}
+
+		void put( double label, T segment )
+		{
+			final long key = key( label );
+			int slot = slot( key );
+			while ( keys[ slot ] != FREE && keys[ slot ] != key )
+				slot = ( slot + 1 ) & mask;
+
+			keys[ slot ] = key;
+			segments[ slot ] = segment;
+		}
+
+		public T get( double label )
+		{
+			final int slot = getSlot( label );
+			return slot < 0 ? null : getSegmentAt( slot );
+		}
+
+		/**
+		 * @param label
+		 * @return the slot of the label, which is in [ 0, capacity() ), or -1 if
+		 * 			there is no segment with this label
+		 */
+		public int getSlot( double label )
+		{
+			final long key = key( label );
+			int slot = slot( key );
+			long current;
+			while ( ( current = keys[ slot ] ) != FREE )
+			{
+				if ( current == key )
+					return slot;
+				slot = ( slot + 1 ) & mask;
+			}
+			return -1;
+		}
+
+		/**
+		 * @param slot
+		 * @return the segment in this slot, or null if the slot is free
+		 */
+		@SuppressWarnings( "unchecked" )
+		public T getSegmentAt( int slot )
+		{
+			return ( T ) segments[ slot ];
+		}
+
+		public int capacity()
+		{
+			return keys.length;
+		}
+
+		public int id()
+		{
+			return id;
+		}
+
+		private static long key( double label )
+		{
+			// adding 0.0 turns -0.0 into 0.0
+			return Double.doubleToLongBits( label + 0.0 );
+		}
+
+		private int slot( long key )
+		{
+			long h = key * 0x9E3779B97F4A7C15L;
+			return ( int ) ( h ^ ( h >>> 32 ) ) & mask;
+		}
+	}
+}
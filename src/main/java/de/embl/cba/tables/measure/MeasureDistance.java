@@ -30,6 +30,7 @@ package de.embl.cba.tables.measure;
 
 import de.embl.cba.tables.tablerow.TableRows;
 import de.embl.cba.tables.Tables;
+import de.embl.cba.tables.table.TableRowsTableModel;
 import de.embl.cba.tables.tablerow.TableRow;
 import ij.IJ;
 import ij.gui.GenericDialog;
@@ -94,8 +95,10 @@ public class MeasureDistance< T extends TableRow >
 		if ( selectedMetric.equals( L2_NORM ) )
 			distances = distances( referenceVector );
 
+		// a TableRowsTableModel also adds the column to the table rows
 		Tables.addColumn( table, newColumnName, distances );
-		TableRows.addColumn( tableRows, newColumnName, distances );
+		if ( ! ( table.getModel() instanceof TableRowsTableModel ) )
+			TableRows.addColumn( tableRows, newColumnName, distances );
 	}
 
 	private boolean initChoicesFromDialog()
@@ -30,6 +30,7 @@ package de.embl.cba.tables.morpholibj;
 
 import de.embl.cba.bdv.utils.sources.Metadata;
 import de.embl.cba.bdv.utils.wrap.Wraps;
+import de.embl.cba.lazyalgorithm.CachedDownsampling;
 import de.embl.cba.tables.Logger;
 import de.embl.cba.tables.TableColumns;
 import de.embl.cba.tables.image.DefaultImageSourcesModel;
@@ -185,7 +186,8 @@ public class ExploreMorphoLibJLabelImage
 		Logger.info( "Adding to image sources: " + labelImageId );
 
 		imageSourcesModel.addSourceAndMetadata(
-				Wraps.imagePlusAsSource4DChannelList( labelImage ).get( 0 ),
+				Wraps.imagePlusAsSource4DChannelList(
+						labelImage, CachedDownsampling.Method.Mode ).get( 0 ),
 				labelImageId,
 				Metadata.Modality.Segmentation,
 				numSpatialDimensions,
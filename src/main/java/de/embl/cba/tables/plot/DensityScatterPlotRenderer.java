@@ -0,0 +1,367 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.plot;
+
+import bdv.util.RandomAccessibleIntervalMipmapSource;
+import bdv.viewer.Source;
+import de.embl.cba.bdv.utils.lut.ARGBLut;
+import de.embl.cba.tables.Outlier;
+import de.embl.cba.tables.tablerow.TableRow;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.view.Views;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Renders a scatter plot as a 2D histogram, for tables with too many rows
+ * to be shown as individual dots.
+ *
+ * The bin counts are shown log scaled through a lookup table,
+ * as a multi-resolution source in which each level sums 2x2 bins
+ * of the previous level. All levels are colored by the number of rows
+ * per area of a bin of the finest level, relative to the maximum of the
+ * finest level, such that the colors do not change when zooming.
+ *
+ * Without any valid data point, the plot is empty.
+ *
+ * For selection, the rows of each bin are stored in a compressed
+ * bin to row index, such that the rows within a shape can be found
+ * without scanning the whole table.
+ *
+ * @param <T>
+ */
+public class DensityScatterPlotRenderer< T extends TableRow >
+{
+	public static final int DEFAULT_NUM_BINS = 1024;
+
+	private static final int NO_BIN = -1;
+
+	private final List< T > tableRows;
+	private final ARGBLut lut;
+	private final int background;
+	private final double[] x;
+	private final double[] y;
+	private final double[] min;
+	private final double[] max;
+	private final double binSize;
+	private final int[] numBins;
+
+	// rows of bin b are rowsByBin[ binStarts[ b ] ] ... rowsByBin[ binStarts[ b + 1 ] - 1 ]
+	private final int[] binStarts;
+	private final int[] rowsByBin;
+
+	private final List< int[] > counts;
+	private final List< long[] > dimensions;
+
+	public DensityScatterPlotRenderer(
+			List< T > tableRows,
+			String[] columns,
+			double[] scaleFactors,
+			ARGBLut lut,
+			int background )
+	{
+		this( tableRows, columns, scaleFactors, DEFAULT_NUM_BINS, lut, background );
+	}
+
+	/**
+	 * @param tableRows
+	 * @param columns
+	 * 			the x and y column
+	 * @param scaleFactors
+	 * 			the x and y scale factors
+	 * @param maxNumBins
+	 * 			number of bins along the longer axis
+	 * @param lut
+	 * 			for coloring the log scaled bin counts
+	 * @param background
+	 * 			ARGB color of empty bins
+	 */
+	public DensityScatterPlotRenderer(
+			List< T > tableRows,
+			String[] columns,
+			double[] scaleFactors,
+			int maxNumBins,
+			ARGBLut lut,
+			int background )
+	{
+		this.tableRows = tableRows;
+		this.lut = lut;
+		this.background = background;
+
+		final int numRows = tableRows.size();
+		x = new double[ numRows ];
+		y = new double[ numRows ];
+
+		IntStream.range( 0, numRows ).parallel().forEach( row ->
+		{
+			final T tableRow = tableRows.get( row );
+			if ( tableRow instanceof Outlier && ( ( Outlier ) tableRow ).isOutlier() )
+			{
+				x[ row ] = Double.NaN;
+				y[ row ] = Double.NaN;
+				return;
+			}
+			x[ row ] = tableRow.getCellAsDouble( columns[ 0 ] ) * scaleFactors[ 0 ];
+			y[ row ] = tableRow.getCellAsDouble( columns[ 1 ] ) * scaleFactors[ 1 ];
+		} );
+
+		min = new double[]{ finiteMin( x ), finiteMin( y ) };
+		max = new double[]{ finiteMax( x ), finiteMax( y ) };
+
+		if ( min[ 0 ] > max[ 0 ] || min[ 1 ] > max[ 1 ] )
+		{
+			// no valid data point: an empty plot of unit size
+			Arrays.fill( min, 0.0 );
+			Arrays.fill( max, 1.0 );
+		}
+
+		final double extent = Math.max( max[ 0 ] - min[ 0 ], max[ 1 ] - min[ 1 ] );
+		binSize = extent > 0 ? extent / maxNumBins : 1.0;
+		numBins = new int[ 2 ];
+		for ( int d = 0; d < 2; d++ )
+			numBins[ d ] = Math.min( maxNumBins, ( int ) ( ( max[ d ] - min[ d ] ) / binSize ) + 1 );
+
+		final int[] binOfRow = new int[ numRows ];
+		IntStream.range( 0, numRows ).parallel().forEach( row -> binOfRow[ row ] = bin( x[ row ], y[ row ] ) );
+
+		final int numBinsTotal = numBins[ 0 ] * numBins[ 1 ];
+		final int[] binCounts = new int[ numBinsTotal ];
+		for ( int bin : binOfRow )
+			if ( bin != NO_BIN ) binCounts[ bin ]++;
+
+		binStarts = new int[ numBinsTotal + 1 ];
+		for ( int bin = 0; bin < numBinsTotal; bin++ )
+			binStarts[ bin + 1 ] = binStarts[ bin ] + binCounts[ bin ];
+
+		rowsByBin = new int[ binStarts[ numBinsTotal ] ];
+		final int[] next = Arrays.copyOf( binStarts, numBinsTotal );
+		for ( int row = 0; row < numRows; row++ )
+			if ( binOfRow[ row ] != NO_BIN )
+				rowsByBin[ next[ binOfRow[ row ] ]++ ] = row;
+
+		counts = new ArrayList<>();
+		dimensions = new ArrayList<>();
+		counts.add( binCounts );
+		dimensions.add( new long[]{ numBins[ 0 ], numBins[ 1 ] } );
+		while ( dimensions.get( dimensions.size() - 1 )[ 0 ] > 1 || dimensions.get( dimensions.size() - 1 )[ 1 ] > 1 )
+			addDownsampledLevel();
+	}
+
+	/**
+	 * @param name
+	 * @return a multi-resolution source showing the bin counts
+	 */
+	@SuppressWarnings( "unchecked" )
+	public Source< ARGBType > getSource( String name )
+	{
+		final int numLevels = counts.size();
+		final RandomAccessibleInterval< ARGBType >[] images = new RandomAccessibleInterval[ numLevels ];
+		final double[][] mipmapScales = new double[ numLevels ][];
+		final int maxCount = Arrays.stream( counts.get( 0 ) ).parallel().max().orElse( 0 );
+
+		for ( int level = 0; level < numLevels; level++ )
+		{
+			images[ level ] = Views.addDimension( ArrayImgs.argbs( colors( counts.get( level ), level, maxCount ), dimensions.get( level ) ), 0, 0 );
+			final double scale = 1 << level;
+			mipmapScales[ level ] = new double[]{ scale, scale, 1 };
+		}
+
+		// bin centers of level 0 are at min + ( i + 0.5 ) * binSize
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		sourceTransform.set(
+				binSize, 0, 0, min[ 0 ] + 0.5 * binSize,
+				0, binSize, 0, min[ 1 ] + 0.5 * binSize,
+				0, 0, 1, 0 );
+
+		return new RandomAccessibleIntervalMipmapSource<>(
+				images,
+				new ARGBType(),
+				mipmapScales,
+				new FinalVoxelDimensions( "", 1, 1, 1 ),
+				sourceTransform,
+				name );
+	}
+
+	/**
+	 * @param shape
+	 * 			in data coordinates (i.e., including the scale factors)
+	 * @return the indices of the rows with a position within the shape
+	 */
+	public int[] getRowIndices( Shape shape )
+	{
+		final Rectangle2D bounds = shape.getBounds2D();
+		final int xMin = Math.max( 0, binIndex( bounds.getMinX(), 0 ) );
+		final int xMax = Math.min( numBins[ 0 ] - 1, binIndex( bounds.getMaxX(), 0 ) );
+		final int yMin = Math.max( 0, binIndex( bounds.getMinY(), 1 ) );
+		final int yMax = Math.min( numBins[ 1 ] - 1, binIndex( bounds.getMaxY(), 1 ) );
+
+		return IntStream.rangeClosed( yMin, yMax ).parallel().flatMap( binY ->
+		{
+			final IntStream.Builder rows = IntStream.builder();
+			for ( int binX = xMin; binX <= xMax; binX++ )
+			{
+				final int bin = binX + binY * numBins[ 0 ];
+				if ( binStarts[ bin ] == binStarts[ bin + 1 ] ) continue;
+
+				final Rectangle2D.Double binBounds = new Rectangle2D.Double(
+						min[ 0 ] + binX * binSize, min[ 1 ] + binY * binSize, binSize, binSize );
+
+				if ( shape.contains( binBounds ) )
+				{
+					for ( int i = binStarts[ bin ]; i < binStarts[ bin + 1 ]; i++ )
+						rows.add( rowsByBin[ i ] );
+				}
+				else if ( shape.intersects( binBounds ) )
+				{
+					for ( int i = binStarts[ bin ]; i < binStarts[ bin + 1 ]; i++ )
+						if ( shape.contains( x[ rowsByBin[ i ] ], y[ rowsByBin[ i ] ] ) )
+							rows.add( rowsByBin[ i ] );
+				}
+			}
+			return rows.build();
+		} ).toArray();
+	}
+
+	/**
+	 * @param shape
+	 * 			in data coordinates (i.e., including the scale factors)
+	 * @return the rows with a position within the shape
+	 */
+	public List< T > getTableRows( Shape shape )
+	{
+		final int[] rowIndices = getRowIndices( shape );
+		final List< T > rows = new ArrayList<>( rowIndices.length );
+		for ( int rowIndex : rowIndices )
+			rows.add( tableRows.get( rowIndex ) );
+		return rows;
+	}
+
+	/**
+	 * @param tableRow
+	 * @return the position of the row in data coordinates,
+	 * 			or null if the row is not part of the plot
+	 */
+	public double[] getPosition( T tableRow )
+	{
+		final int row = tableRow.rowIndex();
+		if ( row < 0 || row >= tableRows.size() || tableRows.get( row ) != tableRow ) return null;
+		if ( Double.isNaN( x[ row ] ) || Double.isNaN( y[ row ] ) ) return null;
+		return new double[]{ x[ row ], y[ row ], 0 };
+	}
+
+	public double getBinSize()
+	{
+		return binSize;
+	}
+
+	public double[] getMin()
+	{
+		return min.clone();
+	}
+
+	public double[] getMax()
+	{
+		return max.clone();
+	}
+
+	private int bin( double xValue, double yValue )
+	{
+		if ( ! Double.isFinite( xValue ) || ! Double.isFinite( yValue ) ) return NO_BIN;
+		final int binX = Math.min( numBins[ 0 ] - 1, binIndex( xValue, 0 ) );
+		final int binY = Math.min( numBins[ 1 ] - 1, binIndex( yValue, 1 ) );
+		return binX + binY * numBins[ 0 ];
+	}
+
+	private int binIndex( double value, int d )
+	{
+		return ( int ) Math.floor( ( value - min[ d ] ) / binSize );
+	}
+
+	private void addDownsampledLevel()
+	{
+		final int[] counts = this.counts.get( this.counts.size() - 1 );
+		final long[] dimensions = this.dimensions.get( this.dimensions.size() - 1 );
+		final int width = ( int ) dimensions[ 0 ];
+		final int height = ( int ) dimensions[ 1 ];
+		final int downsampledWidth = ( width + 1 ) / 2;
+		final int downsampledHeight = ( height + 1 ) / 2;
+
+		final int[] downsampled = new int[ downsampledWidth * downsampledHeight ];
+		IntStream.range( 0, downsampledHeight ).parallel().forEach( j ->
+		{
+			for ( int i = 0; i < downsampledWidth; i++ )
+			{
+				int sum = 0;
+				for ( int dj = 0; dj < 2 && 2 * j + dj < height; dj++ )
+					for ( int di = 0; di < 2 && 2 * i + di < width; di++ )
+						sum += counts[ ( 2 * i + di ) + ( 2 * j + dj ) * width ];
+				downsampled[ i + j * downsampledWidth ] = sum;
+			}
+		} );
+
+		this.counts.add( downsampled );
+		this.dimensions.add( new long[]{ downsampledWidth, downsampledHeight } );
+	}
+
+	/**
+	 * @param maxCount
+	 * 			the maximal count of the finest level, which has the maximal
+	 * 			count per area of all levels, as the others sum its counts
+	 */
+	private int[] colors( int[] counts, int level, int maxCount )
+	{
+		final double binArea = Math.pow( 4, level );
+		final double logMaxCount = Math.log1p( maxCount );
+
+		final int[] colors = new int[ counts.length ];
+		IntStream.range( 0, counts.length ).parallel().forEach( i ->
+				colors[ i ] = counts[ i ] == 0 ? background : lut.getARGB( Math.log1p( counts[ i ] / binArea ) / logMaxCount ) );
+
+		return colors;
+	}
+
+	private static double finiteMin( double[] values )
+	{
+		return Arrays.stream( values ).parallel().filter( Double::isFinite ).min().orElse( Double.MAX_VALUE );
+	}
+
+	private static double finiteMax( double[] values )
+	{
+		return Arrays.stream( values ).parallel().filter( Double::isFinite ).max().orElse( -Double.MAX_VALUE );
+	}
+}
@@ -30,19 +30,28 @@ package de.embl.cba.tables.plot;
 
 import ij.gui.GenericDialog;
 
+import java.util.Arrays;
+
 public class ScatterPlotDialog
 {
 	private final String[] columnNames;
 	private final String[] selectedColumnNames;
 	private final double[] scaleFactors;
 	private double dotSizeScaleFactor;
+	private TableRowsScatterPlot.RenderingMode renderingMode;
 
 	public ScatterPlotDialog( String[] columnNames, String[] selectedColumnNames, double[] scaleFactors, double dotSizeScaleFactor )
+	{
+		this( columnNames, selectedColumnNames, scaleFactors, dotSizeScaleFactor, TableRowsScatterPlot.RenderingMode.Dots );
+	}
+
+	public ScatterPlotDialog( String[] columnNames, String[] selectedColumnNames, double[] scaleFactors, double dotSizeScaleFactor, TableRowsScatterPlot.RenderingMode renderingMode )
 	{
 		this.columnNames = columnNames;
 		this.selectedColumnNames = selectedColumnNames;
 		this.scaleFactors = scaleFactors;
 		this.dotSizeScaleFactor = dotSizeScaleFactor;
+		this.renderingMode = renderingMode;
 	}
 
 	public boolean show()
@@ -60,6 +69,7 @@ public class ScatterPlotDialog
 		}
 
 		gd.addNumericField( "Dot Size Scale Factor", dotSizeScaleFactor );
+		gd.addChoice( "Rendering Mode", Arrays.stream( TableRowsScatterPlot.RenderingMode.values() ).map( Enum::name ).toArray( String[]::new ), renderingMode.name() );
 		//gd.addChoice( "Add lines", lineChoices, GridLinesOverlay.NONE );
 		gd.showDialog();
 
@@ -71,6 +81,7 @@ public class ScatterPlotDialog
 			scaleFactors[ d ] = gd.getNextNumber();
 		}
 		dotSizeScaleFactor = gd.getNextNumber();
+		renderingMode = TableRowsScatterPlot.RenderingMode.valueOf( gd.getNextChoice() );
 
 		return true;
 	}
@@ -89,4 +100,9 @@ public class ScatterPlotDialog
 	{
 		return dotSizeScaleFactor;
 	}
+
+	public TableRowsScatterPlot.RenderingMode getRenderingMode()
+	{
+		return renderingMode;
+	}
 }
@@ -0,0 +1,70 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.plot;
+
+import bdv.util.BdvOverlay;
+import net.imglib2.realtransform.AffineTransform2D;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+
+/**
+ * Shows the shape that is being drawn for selecting points in a scatter plot.
+ */
+public class SelectionShapeOverlay extends BdvOverlay
+{
+	private volatile Shape shape;
+
+	/**
+	 * @param shape
+	 * 			in global coordinates; null for showing nothing
+	 */
+	public void setShape( Shape shape )
+	{
+		this.shape = shape;
+	}
+
+	@Override
+	protected void draw( final Graphics2D g )
+	{
+		final Shape shape = this.shape;
+		if ( shape == null ) return;
+
+		final AffineTransform2D globalToViewer = new AffineTransform2D();
+		getCurrentTransform2D( globalToViewer );
+
+		final AffineTransform transform = new AffineTransform(
+				globalToViewer.get( 0, 0 ), globalToViewer.get( 1, 0 ),
+				globalToViewer.get( 0, 1 ), globalToViewer.get( 1, 1 ),
+				globalToViewer.get( 0, 2 ), globalToViewer.get( 1, 2 ) );
+
+		g.setColor( Color.WHITE );
+		g.draw( transform.createTransformedShape( shape ) );
+	}
+}
@@ -148,6 +148,16 @@ public class TableRowKDTreeSupplier < T extends TableRow > implements Supplier<
 		return max;
 	}
 
+	public List< RealPoint > getDataPoints()
+	{
+		return Collections.unmodifiableList( dataPoints );
+	}
+
+	public List< T > getDataPointTableRows()
+	{
+		return Collections.unmodifiableList( dataPointTableRows );
+	}
+
 	public Map< T, RealPoint > getTableRowToRealPoint()
 	{
 		return tableRowToRealPoint;
@@ -32,31 +32,41 @@ import bdv.util.BdvFunctions;
 import bdv.util.BdvHandle;
 import bdv.util.BdvOptions;
 import bdv.util.Prefs;
+import bdv.viewer.Source;
 import de.embl.cba.bdv.utils.BdvUtils;
+import de.embl.cba.bdv.utils.lut.ViridisARGBLut;
 import de.embl.cba.bdv.utils.popup.BdvPopupMenus;
 import de.embl.cba.tables.color.SelectionColoringModel;
 import de.embl.cba.tables.select.SelectionListener;
 import de.embl.cba.tables.select.SelectionModel;
 import de.embl.cba.tables.tablerow.TableRow;
 import ij.IJ;
-import net.imglib2.FinalInterval;
 import net.imglib2.KDTree;
 import net.imglib2.RealPoint;
 import net.imglib2.neighborsearch.NearestNeighborSearchOnKDTree;
-import net.imglib2.position.FunctionRealRandomAccessible;
 import net.imglib2.type.numeric.ARGBType;
 import org.scijava.ui.behaviour.ClickBehaviour;
+import org.scijava.ui.behaviour.DragBehaviour;
 import org.scijava.ui.behaviour.io.InputTriggerConfig;
 import org.scijava.ui.behaviour.util.Behaviours;
 
 import javax.swing.*;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiConsumer;
-import java.util.function.Supplier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TableRowsScatterPlot< T extends TableRow >
 {
+	public enum RenderingMode
+	{
+		Dots,
+		Density
+	}
+
 	private final List< T > tableRows;
 	private final SelectionColoringModel< T > selectionColoringModel;
 	private final SelectionModel< T > selectionModel;
@@ -67,7 +77,18 @@ public class TableRowsScatterPlot< T extends TableRow >
 	private double dotSizeScaleFactor;
 	private BdvHandle bdvHandle;
 	private Map< T, RealPoint > tableRowToRealPoint;
+	private volatile TiledScatterPlotRenderer< T > renderer;
+	private DensityScatterPlotRenderer< T > densityRenderer;
+	private RenderingMode renderingMode = RenderingMode.Dots;
+	private RealPoint dragStart;
 	private T recentFocus;
+	private boolean isListening;
+	private final AtomicBoolean isRendererUpdatePending = new AtomicBoolean();
+	private final ExecutorService rendererUpdateService = Executors.newSingleThreadExecutor( runnable -> {
+		final Thread thread = new Thread( runnable, "Scatter plot update" );
+		thread.setDaemon( true );
+		return thread;
+	} );
 
 	public TableRowsScatterPlot(
 			List< T > tableRows,
@@ -87,6 +108,22 @@ public class TableRowsScatterPlot< T extends TableRow >
 		//this.lineOverlay = lineOverlay;
 	}
 
+	/**
+	 * In {@link RenderingMode#Density} mode the rows are shown as a
+	 * 2D histogram, which is recommended for tables with millions of rows.
+	 *
+	 * @param renderingMode
+	 */
+	public void setRenderingMode( RenderingMode renderingMode )
+	{
+		this.renderingMode = renderingMode;
+	}
+
+	public RenderingMode getRenderingMode()
+	{
+		return renderingMode;
+	}
+
 	public void show()
 	{
 		show( null );
@@ -109,6 +146,14 @@ public class TableRowsScatterPlot< T extends TableRow >
 
 	private void createAndShowScatterPlot( int x, int y )
 	{
+		if ( renderingMode == RenderingMode.Density )
+		{
+			createAndShowDensityPlot( x, y );
+			return;
+		}
+
+		densityRenderer = null;
+
 		TableRowKDTreeSupplier< T > kdTreeSupplier = new TableRowKDTreeSupplier<>( tableRows, selectedColumns, scaleFactors );
 
 		KDTree< T > kdTree = kdTreeSupplier.get();
@@ -116,29 +161,21 @@ public class TableRowsScatterPlot< T extends TableRow >
 		double[] max = kdTreeSupplier.getMax();
 		tableRowToRealPoint = kdTreeSupplier.getTableRowToRealPoint();
 
-		double aspectRatio = ( max[ 1 ] - min[ 1 ] ) / ( max[ 0 ] - min[ 0 ] );
-		if ( aspectRatio > 10 || aspectRatio < 0.1 )
-		{
-			IJ.showMessage( "The aspect ratio, (yMax-yMin)/(xMax-xMin), of your data is " + aspectRatio + "." +
-					"\nIn order to see anything you may have to scale either the x or y values" +
-					"\nsuch that this ratio becomes closer to one." +
-					"\nYou can do so by right-clicking into the scatter plot" +
-					"\nand selecting \"Reconfigure...\"");
-		}
-
-		Supplier< BiConsumer< RealPoint, ARGBType > > biConsumerSupplier = new RealPointARGBTypeBiConsumerSupplier<>( kdTree, selectionColoringModel,  dotSizeScaleFactor *( min[ 0 ] - max[ 0 ] ) / 100.0, ARGBType.rgba( 100,100,100,255 ) );
+		checkAspectRatio( min, max );
 
-		FunctionRealRandomAccessible< ARGBType > randomAccessible = new FunctionRealRandomAccessible( 2, biConsumerSupplier, ARGBType::new );
+		renderer = new TiledScatterPlotRenderer<>(
+				kdTreeSupplier.getDataPointTableRows(),
+				kdTreeSupplier.getDataPoints(),
+				min, max,
+				selectionColoringModel,
+				dotSizeScaleFactor * ( min[ 0 ] - max[ 0 ] ) / 100.0,
+				ARGBType.rgba( 100,100,100,255 ) );
 
-		bdvHandle = show( randomAccessible, FinalInterval.createMinMax( (long) min[ 0 ], (long) min[ 1 ], 0, (long) Math.ceil( max[ 0 ] ), (long) Math.ceil( max[ 1 ] ), 0 ), selectedColumns );
-
-		selectionColoringModel.listeners().add( () -> {
-			bdvHandle.getViewerPanel().requestRepaint();
-		} );
+		bdvHandle = show( renderer.getSource( getPlotName( selectedColumns ) ), selectedColumns );
 
 		installBdvBehaviours( new NearestNeighborSearchOnKDTree< T >( kdTree ) );
 
-		registerAsSelectionListener();
+		registerAsListener();
 
 //		viewerTransform = viewerTransform( bdvHandle, dataInterval, viewerAspectRatio );
 //
@@ -157,14 +194,78 @@ public class TableRowsScatterPlot< T extends TableRow >
 		//addSelectedPointsOverlay();
 	}
 
-	private void registerAsSelectionListener()
+	private void createAndShowDensityPlot( int x, int y )
 	{
+		renderer = null;
+		tableRowToRealPoint = null;
+
+		densityRenderer = new DensityScatterPlotRenderer<>(
+				tableRows,
+				selectedColumns,
+				scaleFactors,
+				new ViridisARGBLut(),
+				ARGBType.rgba( 100,100,100,255 ) );
+
+		checkAspectRatio( densityRenderer.getMin(), densityRenderer.getMax() );
+
+		bdvHandle = show( densityRenderer.getSource( getPlotName( selectedColumns ) ), selectedColumns );
+
+		installDensityPlotBehaviours();
+
+		registerAsListener();
+
+		setWindowPosition( x, y );
+	}
+
+	private static void checkAspectRatio( double[] min, double[] max )
+	{
+		double aspectRatio = ( max[ 1 ] - min[ 1 ] ) / ( max[ 0 ] - min[ 0 ] );
+		if ( aspectRatio > 10 || aspectRatio < 0.1 )
+		{
+			IJ.showMessage( "The aspect ratio, (yMax-yMin)/(xMax-xMin), of your data is " + aspectRatio + "." +
+					"\nIn order to see anything you may have to scale either the x or y values" +
+					"\nsuch that this ratio becomes closer to one." +
+					"\nYou can do so by right-clicking into the scatter plot" +
+					"\nand selecting \"Reconfigure...\"");
+		}
+	}
+
+	/**
+	 * Registers the listeners only once, as the plot is shown again when it is reconfigured,
+	 * such that each change updates the current renderer once.
+	 */
+	/**
+	 * Recomputes the colors of the points in the background, as the
+	 * listeners are notified on the thread that changes the selection,
+	 * e.g. the EDT. Changes that arrive while an update is pending
+	 * are covered by that update.
+	 */
+	private void requestRendererUpdate()
+	{
+		if ( ! isRendererUpdatePending.compareAndSet( false, true ) ) return;
+
+		rendererUpdateService.execute( () -> {
+			// changes from now on need another update
+			isRendererUpdatePending.set( false );
+			final TiledScatterPlotRenderer< T > renderer = this.renderer;
+			if ( renderer != null ) renderer.update();
+			bdvHandle.getViewerPanel().requestRepaint();
+		} );
+	}
+
+	private void registerAsListener()
+	{
+		if ( isListening ) return;
+		isListening = true;
+
+		selectionColoringModel.listeners().add( this::requestRendererUpdate );
+
 		selectionColoringModel.getSelectionModel().listeners().add( new SelectionListener< T >()
 		{
 			@Override
 			public void selectionChanged()
 			{
-				bdvHandle.getViewerPanel().requestRepaint();
+				requestRendererUpdate();
 			}
 
 			@Override
@@ -177,9 +278,9 @@ public class TableRowsScatterPlot< T extends TableRow >
 				else
 				{
 					recentFocus = selection;
-					double[] location = new double[ 3 ];
-					tableRowToRealPoint.get( selection ).localize( location );
-					BdvUtils.moveToPosition( bdvHandle, location, 0, 500 );
+					final double[] location = getPosition( selection );
+					if ( location != null )
+						BdvUtils.moveToPosition( bdvHandle, location, 0, 500 );
 				}
 			}
 		} );
@@ -217,15 +318,145 @@ public class TableRowsScatterPlot< T extends TableRow >
 
 		behaviours.behaviour( ( ClickBehaviour ) ( x, y ) -> focusAndSelectClosestPoint( search, false ), "Select closest point", "ctrl button1" ) ;
 
+		addReconfigureAction();
+	}
+
+	private void installDensityPlotBehaviours()
+	{
+		Behaviours behaviours = new Behaviours( new InputTriggerConfig() );
+		behaviours.install( bdvHandle.getTriggerbindings(), "scatterplot" + selectedColumns[ 0 ] + selectedColumns[ 1 ] );
+
+		BdvPopupMenus.addAction( bdvHandle,"Focus point in bin [Left-Click ]",
+				( x, y ) -> focusAndSelectBin( x, y, true )
+		);
+
+		behaviours.behaviour( ( ClickBehaviour ) ( x, y ) -> focusAndSelectBin( x, y, true ), "Focus point in bin", "button1" ) ;
+
+		BdvPopupMenus.addAction( bdvHandle,"Select points in bin [ Ctrl Left-Click ]",
+				( x, y ) -> focusAndSelectBin( x, y, false )
+		);
+
+		behaviours.behaviour( ( ClickBehaviour ) ( x, y ) -> focusAndSelectBin( x, y, false ), "Select points in bin", "ctrl button1" ) ;
+
+		final SelectionShapeOverlay selectionShapeOverlay = new SelectionShapeOverlay();
+		BdvFunctions.showOverlay( selectionShapeOverlay, "selection", BdvOptions.options().addTo( bdvHandle ).is2D() );
+
+		behaviours.behaviour( new DragBehaviour()
+		{
+			@Override
+			public void init( int x, int y )
+			{
+				dragStart = globalCoordinates( x, y );
+			}
+
+			@Override
+			public void drag( int x, int y )
+			{
+				selectionShapeOverlay.setShape( rectangle( dragStart, globalCoordinates( x, y ) ) );
+				bdvHandle.getViewerPanel().getDisplay().repaint();
+			}
+
+			@Override
+			public void end( int x, int y )
+			{
+				selectionShapeOverlay.setShape( null );
+				bdvHandle.getViewerPanel().getDisplay().repaint();
+				selectionModel.setSelected( densityRenderer.getTableRows( rectangle( dragStart, globalCoordinates( x, y ) ) ), true );
+			}
+		}, "Select points in rectangle", "ctrl shift button1" );
+
+		behaviours.behaviour( new DragBehaviour()
+		{
+			private Path2D.Double lasso;
+
+			@Override
+			public void init( int x, int y )
+			{
+				final RealPoint start = globalCoordinates( x, y );
+				lasso = new Path2D.Double();
+				lasso.moveTo( start.getDoublePosition( 0 ), start.getDoublePosition( 1 ) );
+			}
+
+			@Override
+			public void drag( int x, int y )
+			{
+				final RealPoint point = globalCoordinates( x, y );
+				lasso.lineTo( point.getDoublePosition( 0 ), point.getDoublePosition( 1 ) );
+				selectionShapeOverlay.setShape( new Path2D.Double( lasso ) );
+				bdvHandle.getViewerPanel().getDisplay().repaint();
+			}
+
+			@Override
+			public void end( int x, int y )
+			{
+				selectionShapeOverlay.setShape( null );
+				bdvHandle.getViewerPanel().getDisplay().repaint();
+				lasso.closePath();
+				selectionModel.setSelected( densityRenderer.getTableRows( lasso ), true );
+			}
+		}, "Select points in lasso", "ctrl alt button1" );
+
+		addReconfigureAction();
+	}
+
+	private static Rectangle2D rectangle( RealPoint corner, RealPoint oppositeCorner )
+	{
+		final double xMin = Math.min( corner.getDoublePosition( 0 ), oppositeCorner.getDoublePosition( 0 ) );
+		final double yMin = Math.min( corner.getDoublePosition( 1 ), oppositeCorner.getDoublePosition( 1 ) );
+		final double xMax = Math.max( corner.getDoublePosition( 0 ), oppositeCorner.getDoublePosition( 0 ) );
+		final double yMax = Math.max( corner.getDoublePosition( 1 ), oppositeCorner.getDoublePosition( 1 ) );
+		return new Rectangle2D.Double( xMin, yMin, xMax - xMin, yMax - yMin );
+	}
+
+	private RealPoint globalCoordinates( int x, int y )
+	{
+		final RealPoint realPoint = new RealPoint( 3 );
+		bdvHandle.getViewerPanel().displayToGlobalCoordinates( x, y, realPoint );
+		return realPoint;
+	}
+
+	private synchronized void focusAndSelectBin( int x, int y, boolean focusOnly )
+	{
+		final RealPoint point = globalCoordinates( x, y );
+		final double binSize = densityRenderer.getBinSize();
+		final double xMin = densityRenderer.getMin()[ 0 ] + Math.floor( ( point.getDoublePosition( 0 ) - densityRenderer.getMin()[ 0 ] ) / binSize ) * binSize;
+		final double yMin = densityRenderer.getMin()[ 1 ] + Math.floor( ( point.getDoublePosition( 1 ) - densityRenderer.getMin()[ 1 ] ) / binSize ) * binSize;
+
+		final List< T > rows = densityRenderer.getTableRows( new Rectangle2D.Double( xMin, yMin, binSize, binSize ) );
+		if ( rows.isEmpty() ) return;
+
+		if ( ! focusOnly )
+			selectionModel.setSelected( rows, true );
+
+		recentFocus = rows.get( 0 );
+		selectionModel.focus( rows.get( 0 ) );
+	}
+
+	private double[] getPosition( T tableRow )
+	{
+		if ( densityRenderer != null )
+			return densityRenderer.getPosition( tableRow );
+
+		final RealPoint realPoint = tableRowToRealPoint.get( tableRow );
+		if ( realPoint == null ) return null;
+
+		double[] location = new double[ 3 ];
+		realPoint.localize( location );
+		return location;
+	}
+
+	private void addReconfigureAction()
+	{
 		BdvPopupMenus.addAction( bdvHandle,"Reconfigure...",
 				( x, y ) -> {
 
-					ScatterPlotDialog dialog = new ScatterPlotDialog( tableRows.get( 0 ).getColumnNames().stream().toArray( String[]::new ), selectedColumns, scaleFactors, dotSizeScaleFactor );
+					ScatterPlotDialog dialog = new ScatterPlotDialog( tableRows.get( 0 ).getColumnNames().stream().toArray( String[]::new ), selectedColumns, scaleFactors, dotSizeScaleFactor, renderingMode );
 					if ( dialog.show() )
 					{
 						selectedColumns = dialog.getSelectedColumns();
 						scaleFactors = dialog.getScaleFactors();
 						dotSizeScaleFactor = dialog.getDotSizeScaleFactor();
+						renderingMode = dialog.getRenderingMode();
 
 						final int xLoc = SwingUtilities.getWindowAncestor( bdvHandle.getViewerPanel() ).getLocationOnScreen().x;
 						final int yLoc = SwingUtilities.getWindowAncestor( bdvHandle.getViewerPanel() ).getLocationOnScreen().y;
@@ -270,14 +501,12 @@ public class TableRowsScatterPlot< T extends TableRow >
 		return search.getSampler().get();
 	}
 
-	private static BdvHandle show( FunctionRealRandomAccessible< ARGBType > randomAccessible, FinalInterval interval, String[] selectedColumns )
+	private static BdvHandle show( Source< ARGBType > source, String[] selectedColumns )
 	{
 		Prefs.showMultibox( false );
 
 		return BdvFunctions.show(
-				randomAccessible,
-				interval,
-				getPlotName( selectedColumns ),
+				source,
 				BdvOptions.options().is2D().frameTitle( getPlotName( selectedColumns ) ) ).getBdvHandle();
 	}
 
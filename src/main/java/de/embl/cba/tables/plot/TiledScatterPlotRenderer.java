@@ -0,0 +1,446 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.plot;
+
+import bdv.util.RandomAccessibleIntervalMipmapSource;
+import bdv.viewer.Source;
+import de.embl.cba.tables.color.ColoringModel;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.view.Views;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Renders a scatter plot by splatting the points into tiled ARGB images.
+ *
+ * There is one image per level of detail, each level having twice the
+ * pixel size of the previous one, such that BDV can pick the level
+ * matching the current zoom. Tiles are rasterized on first access and
+ * the most recently used {@link #MAX_NUM_CACHED_TILES} tiles of all
+ * levels are kept.
+ *
+ * Calling {@link #update()} recomputes the colors of all points and
+ * discards only the tiles containing points whose color changed.
+ *
+ * @param <T>
+ */
+public class TiledScatterPlotRenderer< T >
+{
+	public static final int TILE_SIZE = 256;
+	public static final int MAX_IMAGE_SIZE = 8192;
+
+	/**
+	 * 256 tiles of 256 x 256 ARGB pixels take 64 MB.
+	 */
+	public static final int MAX_NUM_CACHED_TILES = 256;
+
+	private final List< T > tableRows;
+	private final ColoringModel< T > coloringModel;
+	private final int background;
+	private final double dotRadius;
+	private final double[] min;
+	private final double[] xy;
+	private final int numPoints;
+	private final List< Level > levels;
+
+	/**
+	 * The points sorted by the tile of the finest level that contains them:
+	 * the points of tile i are binnedPoints[ binStarts[ i ] ] to binnedPoints[ binStarts[ i + 1 ] - 1 ].
+	 * All levels use these bins, as each tile of a coarser level covers whole tiles of the finest one.
+	 */
+	private final int[] binnedPoints;
+	private final int[] binStarts;
+	private final int numBinsX;
+	private final int numBinsY;
+
+	/**
+	 * Keys are the level in the upper and the tile index in the lower 32 bits.
+	 */
+	private final Map< Long, Cell< IntArray > > tiles;
+
+	private volatile int[] colors;
+
+	/**
+	 * @param tableRows
+	 * 			the rows corresponding to the points
+	 * @param points
+	 * 			the 2D positions of the rows, in data units
+	 * @param min
+	 * 			minimum of the points
+	 * @param max
+	 * 			maximum of the points
+	 * @param coloringModel
+	 * @param dotRadius
+	 * 			radius of the dots, in data units; the sign is ignored
+	 * @param background
+	 * 			ARGB background color
+	 */
+	public TiledScatterPlotRenderer(
+			List< T > tableRows,
+			List< ? extends RealLocalizable > points,
+			double[] min,
+			double[] max,
+			ColoringModel< T > coloringModel,
+			double dotRadius,
+			int background )
+	{
+		this.tableRows = tableRows;
+		this.coloringModel = coloringModel;
+		this.background = background;
+		this.min = min.clone();
+		this.numPoints = points.size();
+
+		this.xy = new double[ 2 * numPoints ];
+		for ( int i = 0; i < numPoints; i++ )
+		{
+			xy[ 2 * i ] = points.get( i ).getDoublePosition( 0 );
+			xy[ 2 * i + 1 ] = points.get( i ).getDoublePosition( 1 );
+		}
+
+		final double extent = Math.max( max[ 0 ] - min[ 0 ], max[ 1 ] - min[ 1 ] );
+		this.dotRadius = Math.abs( dotRadius ) > 0 ? Math.abs( dotRadius ) : Math.max( extent, 1.0 ) / 200.0;
+
+		double pixelSize = Math.max( this.dotRadius / 2.0, extent / MAX_IMAGE_SIZE );
+		final long[] dimensions = new long[ 2 ];
+		for ( int d = 0; d < 2; d++ )
+			dimensions[ d ] = ( long ) Math.ceil( ( max[ d ] - min[ d ] ) / pixelSize ) + 1;
+
+		this.colors = computeColors();
+		this.tiles = createTileCache();
+
+		this.levels = new ArrayList<>();
+		int scale = 1;
+		while ( true )
+		{
+			final long[] levelDimensions = new long[]{
+					( dimensions[ 0 ] + scale - 1 ) / scale,
+					( dimensions[ 1 ] + scale - 1 ) / scale };
+
+			levels.add( new Level( levels.size(), scale, pixelSize * scale, levelDimensions ) );
+
+			if ( levelDimensions[ 0 ] <= TILE_SIZE && levelDimensions[ 1 ] <= TILE_SIZE ) break;
+			scale *= 2;
+		}
+
+		numBinsX = levels.get( 0 ).numTilesX;
+		numBinsY = levels.get( 0 ).numTilesY;
+		binStarts = new int[ numBinsX * numBinsY + 1 ];
+		binnedPoints = binPoints( levels.get( 0 ) );
+	}
+
+	/**
+	 * @param name
+	 * @return a multi-resolution source showing the rendered points
+	 */
+	@SuppressWarnings( "unchecked" )
+	public Source< ARGBType > getSource( String name )
+	{
+		final RandomAccessibleInterval< ARGBType >[] images = new RandomAccessibleInterval[ levels.size() ];
+		final double[][] mipmapScales = new double[ levels.size() ][];
+
+		for ( int level = 0; level < levels.size(); level++ )
+		{
+			images[ level ] = Views.addDimension( levels.get( level ).img, 0, 0 );
+			final double scale = levels.get( level ).scale;
+			mipmapScales[ level ] = new double[]{ scale, scale, 1 };
+		}
+
+		// pixel centers of level 0 are at min + ( i + 0.5 ) * pixelSize
+		final double pixelSize = levels.get( 0 ).pixelSize;
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		sourceTransform.set(
+				pixelSize, 0, 0, min[ 0 ] + 0.5 * pixelSize,
+				0, pixelSize, 0, min[ 1 ] + 0.5 * pixelSize,
+				0, 0, 1, 0 );
+
+		return new RandomAccessibleIntervalMipmapSource<>(
+				images,
+				new ARGBType(),
+				mipmapScales,
+				new FinalVoxelDimensions( "", 1, 1, 1 ),
+				sourceTransform,
+				name );
+	}
+
+	/**
+	 * Recomputes the colors of all points and discards the tiles
+	 * that contain points whose color has changed.
+	 */
+	public synchronized void update()
+	{
+		final int[] newColors = computeColors();
+		final int[] oldColors = colors;
+
+		final int[] changedPoints = IntStream.range( 0, numPoints ).parallel().filter( i -> newColors[ i ] != oldColors[ i ] ).toArray();
+		if ( changedPoints.length == 0 ) return;
+
+		synchronized ( tiles )
+		{
+			colors = newColors;
+
+			if ( changedPoints.length > numPoints / 4 )
+			{
+				// e.g. a new coloring; cheaper than finding the tiles of all these points
+				tiles.clear();
+				return;
+			}
+
+			for ( Level level : levels )
+				for ( int point : changedPoints )
+					level.forEachTileOfPoint( point, tile -> tiles.remove( key( level.index, tile ) ) );
+		}
+	}
+
+	public double getDotRadius()
+	{
+		return dotRadius;
+	}
+
+	/**
+	 * @return the number of tiles that are currently cached, for all levels
+	 */
+	public int getNumCachedTiles()
+	{
+		synchronized ( tiles )
+		{
+			return tiles.size();
+		}
+	}
+
+	private int[] computeColors()
+	{
+		final int[] colors = new int[ numPoints ];
+
+		IntStream.range( 0, numPoints ).parallel().forEach( i ->
+		{
+			final ARGBType argbType = new ARGBType();
+			coloringModel.convert( tableRows.get( i ), argbType );
+
+			// The coloring model uses the alpha value to adjust the brightness.
+			// Since the default renderer in BDV ignores this we multiply the rgb values accordingly
+			final int argb = argbType.get();
+			final int alpha = ARGBType.alpha( argb );
+			if ( alpha < 255 )
+				argbType.mul( alpha / 255.0 );
+
+			colors[ i ] = argbType.get();
+		} );
+
+		return colors;
+	}
+
+	/**
+	 * Sorts the points by their tile in the finest level, filling binStarts.
+	 */
+	private int[] binPoints( Level finest )
+	{
+		final int[] bins = new int[ numPoints ];
+		for ( int point = 0; point < numPoints; point++ )
+		{
+			final int binX = Math.min( numBinsX - 1, Math.max( 0, finest.pixelX( point ) / TILE_SIZE ) );
+			final int binY = Math.min( numBinsY - 1, Math.max( 0, finest.pixelY( point ) / TILE_SIZE ) );
+			bins[ point ] = binX + binY * numBinsX;
+			binStarts[ bins[ point ] + 1 ]++;
+		}
+
+		for ( int bin = 0; bin < numBinsX * numBinsY; bin++ )
+			binStarts[ bin + 1 ] += binStarts[ bin ];
+
+		final int[] next = Arrays.copyOf( binStarts, numBinsX * numBinsY );
+		final int[] binnedPoints = new int[ numPoints ];
+		for ( int point = 0; point < numPoints; point++ )
+			binnedPoints[ next[ bins[ point ] ]++ ] = point;
+
+		return binnedPoints;
+	}
+
+	private static long key( int level, int tile )
+	{
+		return ( ( long ) level << 32 ) | tile;
+	}
+
+	private static Map< Long, Cell< IntArray > > createTileCache()
+	{
+		return new LinkedHashMap< Long, Cell< IntArray > >( 16, 0.75f, true )
+		{
+			@Override
+			protected boolean removeEldestEntry( Map.Entry< Long, Cell< IntArray > > eldest )
+			{
+				return size() > MAX_NUM_CACHED_TILES;
+			}
+		};
+	}
+
+	private class Level
+	{
+		final int index;
+		final int scale;
+		final double pixelSize;
+		final long[] dimensions;
+		final double radius;
+		final int reach;
+		final int numTilesX;
+		final int numTilesY;
+		final LazyCellImg< ARGBType, IntArray > img;
+
+		Level( int index, int scale, double pixelSize, long[] dimensions )
+		{
+			this.index = index;
+			this.scale = scale;
+			this.pixelSize = pixelSize;
+			this.dimensions = dimensions;
+			this.radius = dotRadius / pixelSize;
+			this.reach = ( int ) Math.ceil( radius );
+
+			final CellGrid grid = new CellGrid( dimensions, new int[]{ TILE_SIZE, TILE_SIZE } );
+			numTilesX = ( int ) grid.getGridDimensions()[ 0 ];
+			numTilesY = ( int ) grid.getGridDimensions()[ 1 ];
+			img = new LazyCellImg<>( grid, new ARGBType(), this::getTile );
+		}
+
+		void forEachTileOfPoint( int point, TileConsumer consumer )
+		{
+			final int x = pixelX( point );
+			final int y = pixelY( point );
+			final int tileXMin = Math.max( 0, ( x - reach ) / TILE_SIZE );
+			final int tileXMax = Math.min( numTilesX - 1, ( x + reach ) / TILE_SIZE );
+			final int tileYMin = Math.max( 0, ( y - reach ) / TILE_SIZE );
+			final int tileYMax = Math.min( numTilesY - 1, ( y + reach ) / TILE_SIZE );
+
+			for ( int tileY = tileYMin; tileY <= tileYMax; tileY++ )
+				for ( int tileX = tileXMin; tileX <= tileXMax; tileX++ )
+					consumer.accept( tileX + tileY * numTilesX );
+		}
+
+		int pixelX( int point )
+		{
+			return ( int ) ( ( xy[ 2 * point ] - min[ 0 ] ) / pixelSize );
+		}
+
+		int pixelY( int point )
+		{
+			return ( int ) ( ( xy[ 2 * point + 1 ] - min[ 1 ] ) / pixelSize );
+		}
+
+		private Cell< IntArray > getTile( long index )
+		{
+			final long key = key( this.index, ( int ) index );
+
+			final int[] colors;
+			synchronized ( tiles )
+			{
+				final Cell< IntArray > cell = tiles.get( key );
+				if ( cell != null ) return cell;
+				colors = TiledScatterPlotRenderer.this.colors;
+			}
+
+			final Cell< IntArray > cell = rasterize( ( int ) index, colors );
+
+			synchronized ( tiles )
+			{
+				// do not keep tiles that were rendered with outdated colors
+				if ( colors == TiledScatterPlotRenderer.this.colors )
+					tiles.put( key, cell );
+			}
+
+			return cell;
+		}
+
+		private Cell< IntArray > rasterize( int tile, int[] colors )
+		{
+			final long xMin = ( long ) ( tile % numTilesX ) * TILE_SIZE;
+			final long yMin = ( long ) ( tile / numTilesX ) * TILE_SIZE;
+			final int width = ( int ) Math.min( TILE_SIZE, dimensions[ 0 ] - xMin );
+			final int height = ( int ) Math.min( TILE_SIZE, dimensions[ 1 ] - yMin );
+
+			final int[] pixels = new int[ width * height ];
+			Arrays.fill( pixels, background );
+
+			final double radiusSquared = Math.max( radius * radius, 0.5 );
+
+			// the bins of the points whose dots may reach into this tile
+			final int binXMin = ( int ) ( Math.max( 0, ( xMin - reach ) * scale ) / TILE_SIZE );
+			final int binXMax = ( int ) Math.min( numBinsX - 1, ( ( xMin + width + reach ) * scale - 1 ) / TILE_SIZE );
+			final int binYMin = ( int ) ( Math.max( 0, ( yMin - reach ) * scale ) / TILE_SIZE );
+			final int binYMax = ( int ) Math.min( numBinsY - 1, ( ( yMin + height + reach ) * scale - 1 ) / TILE_SIZE );
+
+			for ( int binY = binYMin; binY <= binYMax; binY++ )
+			{
+				for ( int binX = binXMin; binX <= binXMax; binX++ )
+				{
+					final int bin = binX + binY * numBinsX;
+					for ( int k = binStarts[ bin ]; k < binStarts[ bin + 1 ]; k++ )
+					{
+						final int point = binnedPoints[ k ];
+						final double cx = ( xy[ 2 * point ] - min[ 0 ] ) / pixelSize;
+						final double cy = ( xy[ 2 * point + 1 ] - min[ 1 ] ) / pixelSize;
+						final int x = ( int ) cx;
+						final int y = ( int ) cy;
+
+						final int xStart = ( int ) Math.max( 0, x - reach - xMin );
+						final int xEnd = ( int ) Math.min( width - 1, x + reach - xMin );
+						final int yStart = ( int ) Math.max( 0, y - reach - yMin );
+						final int yEnd = ( int ) Math.min( height - 1, y + reach - yMin );
+
+						for ( int j = yStart; j <= yEnd; j++ )
+						{
+							final double dy = yMin + j + 0.5 - cy;
+							for ( int i = xStart; i <= xEnd; i++ )
+							{
+								final double dx = xMin + i + 0.5 - cx;
+								if ( dx * dx + dy * dy <= radiusSquared )
+									pixels[ j * width + i ] = colors[ point ];
+							}
+						}
+					}
+				}
+			}
+
+			return new Cell<>( new int[]{ width, height }, new long[]{ xMin, yMin }, new IntArray( pixels ) );
+		}
+	}
+
+	private interface TileConsumer
+	{
+		void accept( int tile );
+	}
+}
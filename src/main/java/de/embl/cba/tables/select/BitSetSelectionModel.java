@@ -0,0 +1,287 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.select;
+
+import de.embl.cba.tables.tablerow.TableRow;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Selection model for table rows, storing the selection as a bitset
+ * over {@link TableRow#rowIndex()}, which must equal the index of the
+ * row in the list of table rows.
+ *
+ * The bits are held in an {@link AtomicLongArray}, such that
+ * {@link #isSelected} (called for every rendered pixel) does not lock,
+ * while modifications only change the affected words.
+ *
+ * Unlike {@link DefaultSelectionModel}, which starts a new thread per
+ * listener and event, the listeners are notified synchronously, on the
+ * thread that changes the selection.
+ * Collection and row range (de)selection notify once.
+ * Other bursts are not coalesced by a dispatcher thread, but only
+ * while the listeners are paused, see {@link #pauseListeners()}.
+ *
+ * @param <T>
+ */
+public class BitSetSelectionModel< T extends TableRow > implements SelectionModel< T >
+{
+	private final List< T > tableRows;
+	private final Listeners.SynchronizedList< SelectionListener > listeners;
+	private final AtomicLongArray words;
+
+	private volatile int numSelected;
+	private volatile T focusObject;
+	private boolean isPaused;
+	private boolean isChangedWhilePaused;
+
+	/**
+	 * @param tableRows
+	 * @throws IllegalArgumentException if the row index of a table row
+	 * 			does not equal its index in the list
+	 */
+	public BitSetSelectionModel( List< T > tableRows )
+	{
+		for ( int index = 0; index < tableRows.size(); index++ )
+			if ( tableRows.get( index ).rowIndex() != index )
+				throw new IllegalArgumentException( "Row index " + tableRows.get( index ).rowIndex()
+						+ " of table row " + index + " does not match its index in the list." );
+
+		this.tableRows = tableRows;
+		this.listeners = new Listeners.SynchronizedList<>();
+		this.words = new AtomicLongArray( ( tableRows.size() + 63 ) >>> 6 );
+	}
+
+	@Override
+	public boolean isSelected( T object )
+	{
+		if ( object == null ) return false;
+		return isSelected( object.rowIndex() );
+	}
+
+	@Override
+	public void setSelected( T object, boolean select )
+	{
+		if ( object == null ) return;
+
+		synchronized ( this )
+		{
+			if ( ! set( object.rowIndex(), select ) ) return;
+		}
+
+		notifySelectionListeners();
+	}
+
+	@Override
+	public void toggle( T object )
+	{
+		if ( object == null ) return;
+
+		synchronized ( this )
+		{
+			final int rowIndex = object.rowIndex();
+			set( rowIndex, ! isSelected( rowIndex ) );
+		}
+
+		notifySelectionListeners();
+	}
+
+	@Override
+	public void focus( T object )
+	{
+		focusObject = object;
+
+		for ( SelectionListener listener : listeners.listCopy() )
+			listener.focusEvent( object );
+	}
+
+	@Override
+	public boolean isFocused( T object )
+	{
+		final T focusObject = this.focusObject;
+		return focusObject != null && focusObject.equals( object );
+	}
+
+	@Override
+	public boolean setSelected( Collection< T > objects, boolean select )
+	{
+		boolean isChanged = false;
+
+		synchronized ( this )
+		{
+			for ( T object : objects )
+				if ( object != null )
+					isChanged |= set( object.rowIndex(), select );
+		}
+
+		if ( isChanged ) notifySelectionListeners();
+
+		return isChanged;
+	}
+
+	/**
+	 * Selects or deselects the rows in [ fromRowIndex, toRowIndex ).
+	 */
+	public void setSelected( int fromRowIndex, int toRowIndex, boolean select )
+	{
+		boolean isChanged = false;
+
+		synchronized ( this )
+		{
+			for ( int rowIndex = fromRowIndex; rowIndex < toRowIndex; rowIndex++ )
+				isChanged |= set( rowIndex, select );
+		}
+
+		if ( isChanged ) notifySelectionListeners();
+	}
+
+	@Override
+	public boolean clearSelection()
+	{
+		synchronized ( this )
+		{
+			if ( numSelected == 0 ) return false;
+
+			for ( int word = 0; word < words.length(); word++ )
+				words.set( word, 0L );
+			numSelected = 0;
+		}
+
+		notifySelectionListeners();
+		return true;
+	}
+
+	@Override
+	public Set< T > getSelected()
+	{
+		final BitSet selected = getSelectedRowIndices();
+
+		final Set< T > objects = new HashSet<>( selected.cardinality() );
+		for ( int row = selected.nextSetBit( 0 ); row >= 0; row = selected.nextSetBit( row + 1 ) )
+			objects.add( tableRows.get( row ) );
+
+		return objects;
+	}
+
+	/**
+	 * @return a snapshot of the selected row indices
+	 */
+	public BitSet getSelectedRowIndices()
+	{
+		final long[] snapshot = new long[ words.length() ];
+		for ( int word = 0; word < snapshot.length; word++ )
+			snapshot[ word ] = words.get( word );
+
+		return BitSet.valueOf( snapshot );
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return numSelected == 0;
+	}
+
+	@Override
+	public Listeners< SelectionListener > listeners()
+	{
+		return listeners;
+	}
+
+	/**
+	 * Notifies the listeners once, if the selection changed while they were paused.
+	 */
+	@Override
+	public void resumeListeners()
+	{
+		synchronized ( this )
+		{
+			isPaused = false;
+			if ( ! isChangedWhilePaused ) return;
+			isChangedWhilePaused = false;
+		}
+
+		notifySelectionListeners();
+	}
+
+	/**
+	 * Coalesces all changes until {@link #resumeListeners()} into a single
+	 * selectionChanged, e.g. when selecting the rows of a filter one by one.
+	 *
+	 * There is no dispatcher thread that coalesces bursts by itself:
+	 * changes made without pausing, e.g. quick successive clicks,
+	 * notify once each.
+	 */
+	@Override
+	public synchronized void pauseListeners()
+	{
+		isPaused = true;
+	}
+
+	private boolean isSelected( int rowIndex )
+	{
+		return ( words.get( rowIndex >>> 6 ) & ( 1L << rowIndex ) ) != 0;
+	}
+
+	/**
+	 * Must be called while holding the lock of this model.
+	 *
+	 * @return whether the selection changed
+	 */
+	private boolean set( int rowIndex, boolean select )
+	{
+		final int word = rowIndex >>> 6;
+		final long bits = words.get( word );
+		final long changed = select ? bits | ( 1L << rowIndex ) : bits & ~( 1L << rowIndex );
+		if ( changed == bits ) return false;
+
+		words.set( word, changed );
+		numSelected += select ? 1 : -1;
+		return true;
+	}
+
+	private void notifySelectionListeners()
+	{
+		synchronized ( this )
+		{
+			if ( isPaused )
+			{
+				isChangedWhilePaused = true;
+				return;
+			}
+		}
+
+		for ( SelectionListener listener : listeners.listCopy() )
+			listener.selectionChanged();
+	}
+}
@@ -75,7 +75,6 @@ public class DefaultSelectionModel< T > implements SelectionModel< T >
 			selected.remove( object );
 			if ( notify )
 				notifySelectionListeners();
-			notifySelectionListeners();
 		}
 	}
 
@@ -0,0 +1,243 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package de.embl.cba.tables.table;
+
+import de.embl.cba.tables.Utils;
+import de.embl.cba.tables.column.CategoricalColumn;
+import de.embl.cba.tables.column.NumericColumn;
+import de.embl.cba.tables.tablerow.ColumnBasedTableRow;
+import de.embl.cba.tables.tablerow.TableRow;
+import de.embl.cba.tables.tablerow.TableRows;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-through table model, serving the cells directly from the table rows.
+ *
+ * For column based table rows the values are read from the underlying
+ * column lists, which are looked up by name on each access, such that
+ * columns that are replaced in the table rows are picked up;
+ * numeric columns are presented as Double.
+ * This requires that the rows share their columns and that the
+ * {@link TableRow#rowIndex()} of each row equals its index in the list,
+ * otherwise, e.g. for a filtered or reordered list, the cells are read
+ * via {@link TableRow#getCell(String)}.
+ * The column classes are determined once per column.
+ * Edits are written back via {@link TableRow#setCell(String, String)},
+ * which notifies the {@link de.embl.cba.tables.tablerow.TableRowListener}s.
+ */
+public class TableRowsTableModel< T extends TableRow > extends AbstractTableModel
+{
+	private final List< T > tableRows;
+	private List< String > columnNames;
+	private List< Class< ? > > columnClasses;
+	private boolean isReadingColumns;
+
+	public TableRowsTableModel( List< T > tableRows )
+	{
+		this.tableRows = tableRows;
+		initColumns();
+	}
+
+	public List< T > getTableRows()
+	{
+		return tableRows;
+	}
+
+	/**
+	 * Must be called after columns have been added to the table rows.
+	 */
+	public void columnsChanged()
+	{
+		initColumns();
+		fireTableStructureChanged();
+	}
+
+	public void addColumn( String columnName, Object[] values )
+	{
+		TableRows.addColumn( tableRows, columnName, values );
+		columnsChanged();
+	}
+
+	public void addColumn( String columnName, Object defaultValue )
+	{
+		final Object[] values = new Object[ tableRows.size() ];
+		Arrays.fill( values, defaultValue );
+		addColumn( columnName, values );
+	}
+
+	@Override
+	public int getRowCount()
+	{
+		return tableRows.size();
+	}
+
+	@Override
+	public int getColumnCount()
+	{
+		return columnNames.size();
+	}
+
+	@Override
+	public String getColumnName( int columnIndex )
+	{
+		return columnNames.get( columnIndex );
+	}
+
+	@Override
+	public Class< ? > getColumnClass( int columnIndex )
+	{
+		return columnClasses.get( columnIndex );
+	}
+
+	@Override
+	public boolean isCellEditable( int rowIndex, int columnIndex )
+	{
+		return true;
+	}
+
+	@Override
+	public Object getValueAt( int rowIndex, int columnIndex )
+	{
+		final List< String > column = getColumn( columnIndex );
+
+		if ( column != null )
+		{
+			if ( column instanceof NumericColumn && ( ( NumericColumn ) column ).getText( rowIndex ) == null )
+				return ( ( NumericColumn ) column ).getDouble( rowIndex );
+			else if ( columnClasses.get( columnIndex ) == Double.class )
+				return parseDouble( column.get( rowIndex ) );
+			else
+				return column.get( rowIndex );
+		}
+		else
+		{
+			final String cell = tableRows.get( rowIndex ).getCell( columnNames.get( columnIndex ) );
+
+			if ( columnClasses.get( columnIndex ) == Double.class )
+				return parseDouble( cell );
+			else
+				return cell;
+		}
+	}
+
+	@Override
+	public void setValueAt( Object value, int rowIndex, int columnIndex )
+	{
+		tableRows.get( rowIndex ).setCell( columnNames.get( columnIndex ), value.toString() );
+		fireTableCellUpdated( rowIndex, columnIndex );
+	}
+
+	private void initColumns()
+	{
+		columnNames = new ArrayList<>();
+		columnClasses = new ArrayList<>();
+
+		if ( tableRows.isEmpty() ) return;
+
+		final T firstRow = tableRows.get( 0 );
+		columnNames.addAll( firstRow.getColumnNames() );
+		isReadingColumns = isListOfAllColumnRows( tableRows );
+
+		for ( int columnIndex = 0; columnIndex < columnNames.size(); columnIndex++ )
+			columnClasses.add( inferColumnClass( columnIndex, firstRow ) );
+	}
+
+	/**
+	 * @return the column list of column based table rows, otherwise null
+	 */
+	private List< String > getColumn( int columnIndex )
+	{
+		if ( ! isReadingColumns ) return null;
+
+		final List< String > column = ( ( ColumnBasedTableRow ) tableRows.get( 0 ) ).getColumns().get( columnNames.get( columnIndex ) );
+		if ( column == null || column.size() != tableRows.size() ) return null;
+
+		return column;
+	}
+
+	/**
+	 * @return whether row i of the list is row i of the columns it shares
+	 * 			with all other rows, such that the columns can be read directly
+	 */
+	private static boolean isListOfAllColumnRows( List< ? extends TableRow > tableRows )
+	{
+		if ( ! ( tableRows.get( 0 ) instanceof ColumnBasedTableRow ) ) return false;
+
+		final Map< String, List< String > > columns = ( ( ColumnBasedTableRow ) tableRows.get( 0 ) ).getColumns();
+		for ( int index = 0; index < tableRows.size(); index++ )
+		{
+			final TableRow tableRow = tableRows.get( index );
+			if ( tableRow.rowIndex() != index
+					|| ! ( tableRow instanceof ColumnBasedTableRow )
+					|| ( ( ColumnBasedTableRow ) tableRow ).getColumns() != columns )
+				return false;
+		}
+
+		return true;
+	}
+
+	private Class< ? > inferColumnClass( int columnIndex, T firstRow )
+	{
+		final List< String > column = getColumn( columnIndex );
+		if ( column != null )
+		{
+			if ( column instanceof NumericColumn )
+				return Double.class;
+			else if ( column instanceof CategoricalColumn )
+				return String.class;
+		}
+
+		try
+		{
+			Utils.parseDouble( firstRow.getCell( columnNames.get( columnIndex ) ) );
+			return Double.class;
+		}
+		catch ( Exception e )
+		{
+			return String.class;
+		}
+	}
+
+	private static Double parseDouble( String cell )
+	{
+		try
+		{
+			return Utils.parseDouble( cell );
+		}
+		catch ( NumberFormatException e )
+		{
+			return Double.NaN;
+		}
+	}
+}
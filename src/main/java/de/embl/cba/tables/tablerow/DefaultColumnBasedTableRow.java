@@ -28,6 +28,8 @@
  */
 package de.embl.cba.tables.tablerow;
 
+import de.embl.cba.tables.column.ColumnStatisticsService;
+import de.embl.cba.tables.column.TypedColumns;
 import de.embl.cba.tables.select.Listeners;
 import de.embl.cba.tables.tablerow.ColumnBasedTableRow;
 
@@ -64,10 +66,19 @@ public class DefaultColumnBasedTableRow implements ColumnBasedTableRow
 		return columns.get( columnName ).get( row );
 	}
 
+	@Override
+	public double getCellAsDouble( String columnName )
+	{
+		return TypedColumns.getDouble( columns.get( columnName ), row );
+	}
+
 	@Override
 	public void setCell( String columnName, String value )
 	{
-		columns.get( columnName ).set( row, value );
+		ColumnStatisticsService.setCell( columns.get( columnName ), row, value );
+
+		for ( TableRowListener listener : listeners.listCopy() )
+			listener.cellChanged( columnName, value );
 	}
 
 	@Override
@@ -1,52 +1,46 @@
 package de.embl.cba.tables.tablerow;
 
-import de.embl.cba.tables.TableColumns;
-import de.embl.cba.tables.Tables;
-import de.embl.cba.tables.table.ColumnClassAwareTableModel;
+import de.embl.cba.tables.table.TableRowsTableModel;
 
-import javax.activation.UnsupportedDataTypeException;
 import javax.swing.*;
+import java.util.AbstractList;
 import java.util.List;
-import java.util.Set;
 
 public class JTableFromTableRowsModelCreator
 {
-	private final TableRowsModel< ? extends TableRow > tableRowsModel;
+	private final List< ? extends TableRow > tableRows;
 
 	public JTableFromTableRowsModelCreator( List< ? extends TableRow > tableRows )
 	{
-		this.tableRowsModel = new DefaultTableRowsModel<>( tableRows );
+		this.tableRows = tableRows;
 	}
 
 	public JTableFromTableRowsModelCreator( TableRowsModel< ? > tableRowsModel )
 	{
-		this.tableRowsModel = tableRowsModel;
-	}
-
-	public JTable createJTable( )
-	{
-		ColumnClassAwareTableModel model = new ColumnClassAwareTableModel();
-
-		final Set< String > columnNames = tableRowsModel.getRow( 0 ).getColumnNames();
-
-		for ( String columnName : columnNames )
+		this.tableRows = new AbstractList< TableRow >()
 		{
-			List< String > strings = tableRowsModel.getColumn( columnName );
-
-			Object[] objects = null;
-			try
+			@Override
+			public TableRow get( int index )
 			{
-				objects = TableColumns.asTypedArray( strings );
+				return tableRowsModel.getRow( index );
 			}
-			catch ( UnsupportedDataTypeException e )
+
+			@Override
+			public int size()
 			{
-				e.printStackTrace();
+				return tableRowsModel.size();
 			}
-			model.addColumn( columnName, objects  );
-		}
-
-		model.refreshColumnClassesFromObjectColumns();
+		};
+	}
 
-		return new JTable( model );
+	/**
+	 * The table model reads the cells directly from the table rows,
+	 * i.e. no copy of the data is made.
+	 *
+	 * @return JTable
+	 */
+	public JTable createJTable( )
+	{
+		return new JTable( new TableRowsTableModel<>( tableRows ) );
 	}
 }
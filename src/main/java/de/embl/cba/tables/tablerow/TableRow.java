@@ -28,6 +28,7 @@
  */
 package de.embl.cba.tables.tablerow;
 
+import de.embl.cba.tables.Utils;
 import de.embl.cba.tables.select.Listeners;
 
 import java.util.Set;
@@ -38,6 +39,18 @@ public interface TableRow
 
 	String getCell( String columnName );
 
+	/**
+	 * Numeric value of a cell.
+	 * Implementations backed by typed columns should avoid the string parsing.
+	 *
+	 * @param columnName
+	 * @return the numeric cell value
+	 */
+	default double getCellAsDouble( String columnName )
+	{
+		return Utils.parseDouble( getCell( columnName ) );
+	}
+
 	void setCell( String columnName, String value );
 
 	Set< String > getColumnNames();
@@ -29,9 +29,11 @@
 package de.embl.cba.tables.tablerow;
 
 import de.embl.cba.tables.Logger;
+import de.embl.cba.tables.Tables;
 import de.embl.cba.tables.Utils;
-import de.embl.cba.tables.imagesegment.ColumnBasedTableRowImageSegment;
-import de.embl.cba.tables.tablerow.TableRow;
+import de.embl.cba.tables.column.ColumnStatistics;
+import de.embl.cba.tables.column.ColumnStatisticsService;
+import de.embl.cba.tables.table.TableRowsTableModel;
 import ij.measure.ResultsTable;
 
 import javax.swing.*;
@@ -43,10 +45,10 @@ public abstract class TableRows
 	public static < T extends TableRow >
 	void addColumn( List< T > tableRows, String columnName, Object[] values )
 	{
-		if ( tableRows.get( 0 ) instanceof ColumnBasedTableRowImageSegment )
+		if ( tableRows.get( 0 ) instanceof ColumnBasedTableRow )
 		{
 			final Map< String, List< String > > columns
-					= ( ( ColumnBasedTableRowImageSegment ) tableRows.get( 0 ) ).getColumns();
+					= ( ( ColumnBasedTableRow ) tableRows.get( 0 ) ).getColumns();
 
 			final ArrayList< String > strings = new ArrayList<>();
 			for ( int i = 0; i < values.length; i++ )
@@ -103,6 +105,23 @@ public abstract class TableRows
 	{
 		// TODO: this should happen inside TableView
 		final TableModel model = table.getModel();
+
+		if ( model instanceof TableRowsTableModel )
+		{
+			// the model reads from the table row, thus only the row needs to be changed
+			final int columnIndex = ( ( TableRowsTableModel< ? > ) model ).findColumn( column );
+			if ( Number.class.isAssignableFrom( model.getColumnClass( columnIndex ) )
+					&& ! Tables.isNumeric( attribute ) )
+			{
+				Logger.error( "Entered value must be numeric for column: " + column );
+				return;
+			}
+
+			row.setCell( column, attribute );
+			( ( TableRowsTableModel< ? > ) model ).fireTableCellUpdated( row.rowIndex(), columnIndex );
+			return;
+		}
+
 		final int columnIndex = table.getColumnModel().getColumnIndex( column );
 
 		final Object valueToBeReplaced = model.getValueAt(
@@ -160,6 +179,15 @@ public abstract class TableRows
 			JTable table )
 	{
 		final TableModel model = table.getModel();
+
+		if ( model instanceof TableRowsTableModel )
+		{
+			// the value is already in the table row, just refresh the view
+			final TableRowsTableModel< ? > tableRowsTableModel = ( TableRowsTableModel< ? > ) model;
+			tableRowsTableModel.fireTableCellUpdated( rowIndex, tableRowsTableModel.findColumn( column ) );
+			return;
+		}
+
 		final int columnIndex = table.getColumnModel().getColumnIndex( column );
 
 		final Object valueToBeReplaced = model.getValueAt( rowIndex, columnIndex );
@@ -191,17 +219,29 @@ public abstract class TableRows
 
 	public static double[] minMax( List< ? extends TableRow > tableRows, String column  )
 	{
-		double min = Double.MAX_VALUE;
-		double max = -Double.MAX_VALUE;
+		return columnStatistics( tableRows, column ).getMinMax();
+	}
 
-		final int rowCount = tableRows.size();
-		for ( int row = 0; row < rowCount; row++ )
+	/**
+	 * Statistics of a numeric column.
+	 *
+	 * For column based table rows the statistics are cached and kept up to
+	 * date on {@link TableRow#setCell}; otherwise they are computed on each call.
+	 *
+	 * @param tableRows
+	 * @param column
+	 * @return statistics
+	 */
+	public static ColumnStatistics columnStatistics( List< ? extends TableRow > tableRows, String column )
+	{
+		if ( tableRows.size() > 0 && tableRows.get( 0 ) instanceof ColumnBasedTableRow )
 		{
-			final double value = Double.parseDouble(  tableRows.get( row ).getCell( column ) );
-			if ( value < min ) min = value;
-			if ( value > max ) max = value;
+			final List< String > values = ( ( ColumnBasedTableRow ) tableRows.get( 0 ) ).getColumns().get( column );
+
+			if ( values != null && values.size() == tableRows.size() )
+				return ColumnStatisticsService.getStatistics( values );
 		}
 
-		return new double[]{ min, max };
+		return ColumnStatistics.compute( row -> tableRows.get( row ).getCellAsDouble( column ), tableRows.size() );
 	}
 }
@@ -30,6 +30,8 @@ package de.embl.cba.tables.view;
 
 import bdv.tools.brightness.ConverterSetup;
 import bdv.util.*;
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileTypeMatcher;
 import bdv.viewer.Source;
 import bdv.viewer.state.SourceState;
 import bdv.viewer.state.ViewerState;
@@ -37,24 +39,24 @@ import de.embl.cba.bdv.utils.BdvUtils;
 import de.embl.cba.bdv.utils.popup.BdvPopupMenus;
 import de.embl.cba.bdv.utils.sources.ARGBConvertedRealSource;
 import de.embl.cba.bdv.utils.sources.ImagePlusFileSource;
+import de.embl.cba.bdv.utils.sources.LazySpimSource;
 import de.embl.cba.bdv.utils.sources.Metadata;
 import de.embl.cba.bdv.utils.sources.ModifiableRandomAccessibleIntervalSource4D;
-import de.embl.cba.lazyalgorithm.RandomAccessibleIntervalNeighborhoodFilter;
-import de.embl.cba.lazyalgorithm.converter.NeighborhoodNonZeroBoundariesConverter;
+import de.embl.cba.bdv.utils.sources.VolatileModifiableRandomAccessibleIntervalSource4D;
+import de.embl.cba.lazyalgorithm.LabelBoundariesFilter;
 import de.embl.cba.tables.Logger;
 import de.embl.cba.tables.color.*;
 import de.embl.cba.tables.image.ImageSourcesModel;
 import de.embl.cba.tables.image.SourceAndMetadata;
 import de.embl.cba.tables.imagesegment.ImageSegment;
-import de.embl.cba.tables.imagesegment.LabelFrameAndImage;
-import de.embl.cba.tables.imagesegment.SegmentUtils;
+import de.embl.cba.tables.imagesegment.SegmentIndex;
 import de.embl.cba.tables.select.SelectionListener;
 import de.embl.cba.tables.select.SelectionModel;
 import de.embl.cba.tables.view.dialogs.BdvViewSourcesBrowsingAndActionsDialog;
 import ij.gui.GenericDialog;
 import net.imglib2.RealPoint;
-import net.imglib2.algorithm.neighborhood.HyperSphereShape;
 import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.RealType;
 import org.scijava.ui.behaviour.ClickBehaviour;
@@ -96,7 +98,8 @@ public class SegmentsBdvView < T extends ImageSegment >
 	// private double voxelSpacing3DView;
 	private Set< SourceAndMetadata< ? extends RealType< ? > > > currentSources;
 	private boolean grayValueOverlayWasFirstSource;
-	private HashMap< LabelFrameAndImage, T > labelFrameAndImageToSegment;
+	private SegmentIndex< T > segmentIndex;
+	private SegmentColorTable< T > segmentColorTable;
 	private List< T > segments;
 	private int segmentFocusAnimationDurationMillis;
 	private List< String > labelSourceIds;
@@ -106,6 +109,7 @@ public class SegmentsBdvView < T extends ImageSegment >
 	private int labelMaskBoundaryThickness;
 	private Set< String > popupActionNames;
 	private int numRenderingThreads = 1; // TODO: add to constructor
+	private SharedQueue labelMaskBoundariesQueue;
 
 	public SegmentsBdvView(
 			final List< T > segments,
@@ -166,7 +170,13 @@ public class SegmentsBdvView < T extends ImageSegment >
 		if ( segments != null )
 		{
 			this.segments = segments;
-			this.labelFrameAndImageToSegment = SegmentUtils.createSegmentMap( this.segments );
+			this.segmentIndex = new SegmentIndex<>( this.segments );
+
+			if ( segmentColorTable != null ) segmentColorTable.close();
+			segmentColorTable = new SegmentColorTable<>( segmentIndex, selectionColoringModel, selectionModel );
+			segmentColorTable.listeners().add( () -> {
+				if ( bdv != null ) BdvUtils.repaint( bdv );
+			} );
 		}
 	}
 
@@ -401,6 +411,13 @@ public class SegmentsBdvView < T extends ImageSegment >
 
 		bdv = bdvStackSource.getBdvHandle();
 
+		if ( sourceAndMetadata.source() instanceof LazySpimSource )
+		{
+			final BdvHandle bdvHandle = bdv;
+			( ( LazySpimSource ) sourceAndMetadata.source() ).addOpenListener(
+					() -> bdvHandle.getViewerPanel().requestRepaint() );
+		}
+
 		bdvOptions = bdvOptions.addTo( bdv );
 
 		metadata.bdvStackSource = bdvStackSource;
@@ -432,6 +449,10 @@ public class SegmentsBdvView < T extends ImageSegment >
 
 	private int getNumTimePoints( Source< ? > source )
 	{
+		// a lazy source is not present before it is open
+		if ( source instanceof LazySpimSource )
+			( ( LazySpimSource ) source ).waitUntilOpen();
+
 		int numTimePoints = 0;
 		while ( source.isPresent( numTimePoints++ ) ){}
 		return numTimePoints - 1;
@@ -488,16 +509,46 @@ public class SegmentsBdvView < T extends ImageSegment >
 
 		this.labelsSourceConverter = labelsARGBConverter;
 
-		final ARGBConvertedRealSource convertedRealSource = new ARGBConvertedRealSource( sourceAndMetadata.source(), labelsARGBConverter );
+		final ARGBConvertedRealSource convertedRealSource = new ARGBConvertedRealSource( asVolatileSource( sourceAndMetadata.source() ), labelsARGBConverter );
 
 		return convertedRealSource;
 	}
 
+	/**
+	 * Label masks backed by a {@link ModifiableRandomAccessibleIntervalSource4D}
+	 * are shown via a volatile view, such that the cached label mask boundaries
+	 * are computed by background fetcher threads and rendered progressively,
+	 * instead of blocking the painter threads.
+	 *
+	 * @param source
+	 * @return
+	 */
+	private Source asVolatileSource( Source< ? > source )
+	{
+		final ModifiableRandomAccessibleIntervalSource4D modifiableSource;
+
+		if ( source instanceof ModifiableRandomAccessibleIntervalSource4D )
+			modifiableSource = ( ModifiableRandomAccessibleIntervalSource4D ) source;
+		else if ( source instanceof ImagePlusFileSource )
+			modifiableSource = ( ( ImagePlusFileSource ) source ).getWrappedSource();
+		else
+			return source;
+
+		if ( ! ( modifiableSource.getType() instanceof NativeType )
+				|| VolatileTypeMatcher.getVolatileTypeForType( modifiableSource.getType() ) == null )
+			return source;
+
+		if ( labelMaskBoundariesQueue == null )
+			labelMaskBoundariesQueue = new SharedQueue( Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 ) );
+
+		return new VolatileModifiableRandomAccessibleIntervalSource4D( modifiableSource, labelMaskBoundariesQueue );
+	}
+
 	private LabelsARGBConverter createLabelsARGBConverter( SourceAndMetadata labelsSource )
 	{
 		LabelsARGBConverter labelsARGBConverter;
 
-		if ( labelFrameAndImageToSegment == null )
+		if ( segmentIndex == null )
 		{
 			labelsARGBConverter = new LazyLabelsARGBConverter();
 		}
@@ -505,9 +556,10 @@ public class SegmentsBdvView < T extends ImageSegment >
 		{
 			labelsARGBConverter =
 					new SegmentsARGBConverter(
-							labelFrameAndImageToSegment,
+							segmentIndex,
 							labelsSource.metadata().imageId,
-							selectionColoringModel );
+							selectionColoringModel,
+							segmentColorTable );
 
 		}
 
@@ -697,14 +749,12 @@ public class SegmentsBdvView < T extends ImageSegment >
 			labelMaskBoundaryThickness = (int) gd.getNextNumber();
 		}
 
-		final RandomAccessibleIntervalNeighborhoodFilter filter = new RandomAccessibleIntervalNeighborhoodFilter(
-				new NeighborhoodNonZeroBoundariesConverter( ),
-				new HyperSphereShape( labelMaskBoundaryThickness ) );
+		final LabelBoundariesFilter filter = new LabelBoundariesFilter( labelMaskBoundaryThickness );
 
 		if ( isLabelMaskShownAsBoundaries )
 			modifiableSource.setFilter( null );
 		else
-			modifiableSource.setFilter( filter );
+			modifiableSource.setFilter( filter, true );
 
 		isLabelMaskShownAsBoundaries = ! isLabelMaskShownAsBoundaries;
 
@@ -715,10 +765,8 @@ public class SegmentsBdvView < T extends ImageSegment >
 	{
 		final ModifiableRandomAccessibleIntervalSource4D modifiableSource = getModifiableSource( labelsSource.source() );
 		if ( modifiableSource == null ) return;
-		final RandomAccessibleIntervalNeighborhoodFilter filter = new RandomAccessibleIntervalNeighborhoodFilter(
-				new NeighborhoodNonZeroBoundariesConverter( ),
-				new HyperSphereShape( labelMaskBoundaryThickness ) );
-		modifiableSource.setFilter( filter );
+		final LabelBoundariesFilter filter = new LabelBoundariesFilter( labelMaskBoundaryThickness );
+		modifiableSource.setFilter( filter, true );
 	}
 
 	public ModifiableRandomAccessibleIntervalSource4D getModifiableSource( Source< ? > source )
@@ -820,10 +868,7 @@ public class SegmentsBdvView < T extends ImageSegment >
 
 		final String labelImageId = labelsSource.metadata().imageId;
 
-		final LabelFrameAndImage labelFrameAndImage =
-				new LabelFrameAndImage( labelId, getCurrentTimePoint(),labelImageId );
-
-		final T segment = labelFrameAndImageToSegment.get( labelFrameAndImage );
+		final T segment = segmentIndex.getSegment( labelImageId, getCurrentTimePoint(), labelId );
 
 		selectionModel.toggle( segment );
 
@@ -849,10 +894,7 @@ public class SegmentsBdvView < T extends ImageSegment >
 
 		for ( Double labelId : labelIds )
 		{
-			final LabelFrameAndImage labelFrameAndImage =
-					new LabelFrameAndImage( labelId, getCurrentTimePoint(), labelImageId );
-
-			segments.add( labelFrameAndImageToSegment.get( labelFrameAndImage ) );
+			segments.add( segmentIndex.getSegment( labelImageId, getCurrentTimePoint(), labelId ) );
 		}
 		return segments;
 	}
@@ -933,5 +975,7 @@ public class SegmentsBdvView < T extends ImageSegment >
 		{
 			BdvPopupMenus.removeAction( bdv, popupActionName );
 		}
+
+		if ( segmentColorTable != null ) segmentColorTable.close();
 	}
 }
@@ -42,7 +42,6 @@ import de.embl.cba.tables.select.SelectionModel;
 import de.embl.cba.tables.tablerow.JTableFromTableRowsModelCreator;
 import de.embl.cba.tables.tablerow.TableRow;
 import de.embl.cba.tables.tablerow.TableRowListener;
-import de.embl.cba.tables.tablerow.TableRows;
 import ij.IJ;
 import ij.gui.GenericDialog;
 import net.imglib2.type.numeric.ARGBType;
@@ -438,6 +437,7 @@ public class TableRowsTableView < T extends TableRow > extends JPanel
 					if ( dialog.show() )
 					{
 						TableRowsScatterPlot< T > scatterPlot = new TableRowsScatterPlot<>( tableRows, selectionColoringModel, dialog.getSelectedColumns(), dialog.getScaleFactors(), dialog.getDotSizeScaleFactor() );
+						scatterPlot.setRenderingMode( dialog.getRenderingMode() );
 						scatterPlot.show( null );
 					}
 				});
@@ -698,14 +698,13 @@ public class TableRowsTableView < T extends TableRow > extends JPanel
 	{
 		if ( getColumnNames().contains( column ) )
 			throw new RuntimeException( column + " exists already, please choose another name." );
+		// the table model adds the column to the table rows
 		Tables.addColumn( table.getModel(), column, defaultValue );
-		TableRows.addColumn( tableRows, column, defaultValue );
 	}
 
 	public void addColumn( String column, Object[] values )
 	{
 		Tables.addColumn( table.getModel(), column, values );
-		TableRows.addColumn( tableRows, column, values );
 	}
 
 	public void addColumns( Map< String, List< String > > columns )
@@ -801,7 +800,7 @@ public class TableRowsTableView < T extends TableRow > extends JPanel
 				if ( selectionModel.isEmpty() )
 				{
 					setRecentlySelectedRowInView( -1 );
-					table.getSelectionModel().clearSelection();
+					SwingUtilities.invokeLater( () -> table.getSelectionModel().clearSelection() );
 				}
 				SwingUtilities.invokeLater( () -> repaintTable() );
 			}
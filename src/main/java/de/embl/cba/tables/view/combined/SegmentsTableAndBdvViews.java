@@ -34,7 +34,7 @@ import de.embl.cba.tables.color.LazyCategoryColoringModel;
 import de.embl.cba.tables.color.SelectionColoringModel;
 import de.embl.cba.tables.image.ImageSourcesModel;
 import de.embl.cba.tables.plot.TableRowsScatterPlot;
-import de.embl.cba.tables.select.DefaultSelectionModel;
+import de.embl.cba.tables.select.BitSetSelectionModel;
 import de.embl.cba.tables.select.SelectionModel;
 import de.embl.cba.tables.tablerow.TableRowImageSegment;
 import de.embl.cba.tables.view.SegmentsBdvView;
@@ -75,7 +75,7 @@ public class SegmentsTableAndBdvViews
 
 	private void show( BdvHandle bdv )
 	{
-		selectionModel = new DefaultSelectionModel<>();
+		selectionModel = new BitSetSelectionModel<>( tableRowImageSegments );
 		coloringModel = new LazyCategoryColoringModel<>( new GlasbeyARGBLut( 255 ) );
 		selectionColoringModel = new SelectionColoringModel<>( coloringModel, selectionModel );
 
@@ -34,7 +34,7 @@ import de.embl.cba.tables.color.LazyCategoryColoringModel;
 import de.embl.cba.tables.color.SelectionColoringModel;
 import de.embl.cba.tables.image.ImageSourcesModel;
 import de.embl.cba.tables.plot.TableRowsScatterPlot;
-import de.embl.cba.tables.select.DefaultSelectionModel;
+import de.embl.cba.tables.select.BitSetSelectionModel;
 import de.embl.cba.tables.select.SelectionModel;
 import de.embl.cba.tables.tablerow.TableRowImageSegment;
 import de.embl.cba.tables.view.Segments3dView;
@@ -78,7 +78,7 @@ public class SegmentsTableBdvAnd3dViews
 
 	private void show( BdvHandle bdv, Image3DUniverse universe )
 	{
-		selectionModel = new DefaultSelectionModel<>();
+		selectionModel = new BitSetSelectionModel<>( tableRowImageSegments );
 
 		final LazyCategoryColoringModel< TableRowImageSegment > coloringModel
 				= new LazyCategoryColoringModel<>( new GlasbeyARGBLut( 255 ) );
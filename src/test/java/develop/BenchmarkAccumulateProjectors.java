@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package develop;
+
+import bdv.util.RandomAccessibleIntervalSource;
+import bdv.viewer.Source;
+import bdv.viewer.render.AccumulateProjectorARGB;
+import bdv.viewer.render.VolatileProjector;
+import de.embl.cba.bdv.utils.render.AccumulateEMAndFMProjectorARGB;
+import de.embl.cba.bdv.utils.sources.Metadata;
+import de.embl.cba.bdv.utils.sources.Sources;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the rendering time of the EM and FM accumulation
+ * with BDV's default ARGB accumulation, on a full HD screen with
+ * two EM and two FM sources.
+ */
+public class BenchmarkAccumulateProjectors
+{
+	public static final int WIDTH = 1920;
+	public static final int HEIGHT = 1080;
+	public static final int NUM_SOURCES = 4;
+	public static final int NUM_WARMUP_ITERATIONS = 20;
+	public static final int NUM_ITERATIONS = 100;
+
+	public static void main( String[] args )
+	{
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
+
+		final ArrayList< VolatileProjector > sourceProjectors = new ArrayList<>();
+		final ArrayList< Source< ? > > sources = new ArrayList<>();
+		final ArrayList< ArrayImg< ARGBType, IntArray > > screenImages = new ArrayList<>();
+
+		final Random random = new Random( 42 );
+		for ( int i = 0; i < NUM_SOURCES; i++ )
+		{
+			final Source< UnsignedByteType > source = new RandomAccessibleIntervalSource<>(
+					ArrayImgs.unsignedBytes( 1, 1, 1 ), new UnsignedByteType(), "source" + i );
+			final Metadata metadata = new Metadata( source.getName() );
+			metadata.modality = i % 2 == 0 ? Metadata.Modality.EM : Metadata.Modality.FM;
+			Sources.sourceToMetadata.put( source, metadata );
+			sources.add( source );
+
+			final ArrayImg< ARGBType, IntArray > screenImage = ArrayImgs.argbs( WIDTH, HEIGHT );
+			final int[] data = screenImage.update( null ).getCurrentStorageArray();
+			for ( int j = 0; j < data.length; j++ )
+				data[ j ] = random.nextInt();
+			screenImages.add( screenImage );
+
+			sourceProjectors.add( new ValidProjector() );
+		}
+
+		final ArrayImg< ARGBType, IntArray > target = ArrayImgs.argbs( WIDTH, HEIGHT );
+
+		final VolatileProjector defaultProjector = AccumulateProjectorARGB.factory.createAccumulateProjector(
+				sourceProjectors, sources, screenImages, target, numThreads, executorService );
+
+		final VolatileProjector emAndFMProjector = AccumulateEMAndFMProjectorARGB.factory.createAccumulateProjector(
+				sourceProjectors, sources, screenImages, target, numThreads, executorService );
+
+		benchmark( "BDV default", defaultProjector );
+		benchmark( "EM and FM", emAndFMProjector );
+
+		executorService.shutdown();
+	}
+
+	private static void benchmark( String name, VolatileProjector projector )
+	{
+		for ( int i = 0; i < NUM_WARMUP_ITERATIONS; i++ )
+			projector.map();
+
+		long totalNanos = 0;
+		for ( int i = 0; i < NUM_ITERATIONS; i++ )
+		{
+			final long start = System.nanoTime();
+			projector.map();
+			totalNanos += System.nanoTime() - start;
+		}
+
+		System.out.println( name + ": " + ( totalNanos / NUM_ITERATIONS / 1000 ) + " us per frame" );
+	}
+
+	/**
+	 * Stands in for the source projectors, whose screen images are already rendered.
+	 */
+	private static class ValidProjector implements VolatileProjector
+	{
+		@Override
+		public boolean map( boolean clearUntouchedTargetPixels )
+		{
+			return true;
+		}
+
+		@Override
+		public boolean map()
+		{
+			return true;
+		}
+
+		@Override
+		public boolean isValid()
+		{
+			return true;
+		}
+
+		@Override
+		public void cancel()
+		{
+		}
+
+		@Override
+		public long getLastFrameRenderNanoTime()
+		{
+			return 0;
+		}
+	}
+}
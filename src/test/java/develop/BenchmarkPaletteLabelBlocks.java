@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package develop;
+
+import de.embl.cba.bdv.utils.loaders.VolatilePaletteLongArray;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.view.Views;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares memory and rendering time of palette compressed label blocks
+ * with plain long arrays, by sampling oblique slices through a
+ * synthetic label volume, as BDV does with nearest neighbour interpolation.
+ */
+public class BenchmarkPaletteLabelBlocks
+{
+	public static final int SIZE = 256;
+	public static final int CELL_SIZE = 64;
+	public static final int NUM_LABELS = 2000;
+	public static final long RADIUS = 10;
+	public static final int SCREEN_SIZE = 1024;
+	public static final int NUM_WARMUP_ITERATIONS = 10;
+	public static final int NUM_ITERATIONS = 50;
+
+	@SuppressWarnings( "unchecked" )
+	public static void main( String[] args )
+	{
+		final CellGrid grid = new CellGrid( new long[]{ SIZE, SIZE, SIZE }, new int[]{ CELL_SIZE, CELL_SIZE, CELL_SIZE } );
+		final long[][] seeds = createSeeds( new Random( 42 ) );
+
+		final int numCells = ( int ) grid.getGridDimensions()[ 0 ] * ( int ) grid.getGridDimensions()[ 1 ] * ( int ) grid.getGridDimensions()[ 2 ];
+		final Cell< LongAccess >[] rawCells = new Cell[ numCells ];
+		final Cell< LongAccess >[] paletteCells = new Cell[ numCells ];
+
+		long rawBytes = 0;
+		long paletteBytes = 0;
+		for ( int i = 0; i < numCells; i++ )
+		{
+			final long[] cellMin = new long[ 3 ];
+			final int[] cellDims = new int[ 3 ];
+			grid.getCellDimensions( i, cellMin, cellDims );
+			final long[] labels = createLabels( seeds, cellMin, cellDims );
+
+			rawCells[ i ] = new Cell<>( cellDims, cellMin, new LongArray( labels ) );
+			rawBytes += 8L * labels.length;
+
+			final LongAccess compressed = ( LongAccess ) VolatilePaletteLongArray.compress( labels );
+			paletteCells[ i ] = new Cell<>( cellDims, cellMin, compressed );
+			paletteBytes += compressed instanceof VolatilePaletteLongArray
+					? ( ( VolatilePaletteLongArray ) compressed ).getSizeInBytes()
+					: 8L * labels.length;
+		}
+
+		System.out.println( String.format( "long arrays: %.1f MB, palette: %.1f MB (%.1fx)",
+				rawBytes / 1e6, paletteBytes / 1e6, ( double ) rawBytes / paletteBytes ) );
+
+		final LazyCellImg< UnsignedLongType, LongAccess > rawImg = new LazyCellImg<>( grid, new UnsignedLongType(), index -> rawCells[ ( int ) index ] );
+		final LazyCellImg< UnsignedLongType, LongAccess > paletteImg = new LazyCellImg<>( grid, new UnsignedLongType(), index -> paletteCells[ ( int ) index ] );
+
+		benchmark( "long arrays", Views.extendZero( rawImg ) );
+		benchmark( "palette", Views.extendZero( paletteImg ) );
+	}
+
+	private static void benchmark( final String name, final RandomAccessible< UnsignedLongType > img )
+	{
+		for ( int i = 0; i < NUM_WARMUP_ITERATIONS; i++ )
+			render( img, i );
+
+		long checksum = 0;
+		long totalNanos = 0;
+		for ( int i = 0; i < NUM_ITERATIONS; i++ )
+		{
+			final long start = System.nanoTime();
+			checksum += render( img, i );
+			totalNanos += System.nanoTime() - start;
+		}
+
+		final double millisPerFrame = totalNanos / 1e6 / NUM_ITERATIONS;
+		System.out.println( String.format( "%s: %.2f ms per frame, %.1f Mpixel/s (checksum %d)",
+				name, millisPerFrame, SCREEN_SIZE * SCREEN_SIZE / millisPerFrame / 1e3, checksum ) );
+	}
+
+	/**
+	 * Samples an oblique slice through the volume and returns the sum of
+	 * the colors, such that the work cannot be optimized away.
+	 */
+	private static long render( final RandomAccessible< UnsignedLongType > img, final int frame )
+	{
+		final AffineTransform3D screenToVolume = new AffineTransform3D();
+		screenToVolume.scale( ( double ) SIZE / SCREEN_SIZE );
+		screenToVolume.rotate( 0, 0.3 + 0.01 * frame );
+		screenToVolume.rotate( 1, 0.2 );
+		screenToVolume.translate( 0, 0, SIZE / 2 );
+
+		final RandomAccess< UnsignedLongType > access = img.randomAccess();
+		final double[] screen = new double[ 3 ];
+		final double[] volume = new double[ 3 ];
+		long sum = 0;
+		for ( int y = 0; y < SCREEN_SIZE; y++ )
+		{
+			screen[ 1 ] = y;
+			for ( int x = 0; x < SCREEN_SIZE; x++ )
+			{
+				screen[ 0 ] = x;
+				screenToVolume.apply( screen, volume );
+				for ( int d = 0; d < 3; d++ )
+					access.setPosition( Math.round( volume[ d ] ), d );
+				final long label = access.get().get();
+				sum += ( int ) ( label * 0x9E3779B97F4A7C15L ) & 0xFFFFFF;
+			}
+		}
+		return sum;
+	}
+
+	private static long[][] createSeeds( final Random random )
+	{
+		// x, y, z and label
+		final long[][] seeds = new long[ NUM_LABELS ][ 4 ];
+		for ( int s = 0; s < NUM_LABELS; s++ )
+		{
+			for ( int d = 0; d < 3; d++ )
+				seeds[ s ][ d ] = random.nextInt( SIZE );
+			seeds[ s ][ 3 ] = s + 1;
+		}
+		return seeds;
+	}
+
+	/**
+	 * Labels every voxel by its nearest seed, like a segmentation of
+	 * touching cells, with background further than RADIUS from any seed.
+	 */
+	private static long[] createLabels( final long[][] seeds, final long[] min, final int[] dims )
+	{
+		final ArrayList< long[] > nearbySeeds = new ArrayList<>();
+		for ( final long[] seed : seeds )
+		{
+			boolean isNearby = true;
+			for ( int d = 0; d < 3; d++ )
+				isNearby &= seed[ d ] >= min[ d ] - RADIUS && seed[ d ] < min[ d ] + dims[ d ] + RADIUS;
+			if ( isNearby )
+				nearbySeeds.add( seed );
+		}
+
+		final long[] labels = new long[ dims[ 0 ] * dims[ 1 ] * dims[ 2 ] ];
+		int i = 0;
+		for ( int z = 0; z < dims[ 2 ]; z++ )
+			for ( int y = 0; y < dims[ 1 ]; y++ )
+				for ( int x = 0; x < dims[ 0 ]; x++ )
+				{
+					long minDistance = RADIUS * RADIUS + 1;
+					long label = 0;
+					for ( final long[] seed : nearbySeeds )
+					{
+						final long dx = seed[ 0 ] - min[ 0 ] - x;
+						final long dy = seed[ 1 ] - min[ 1 ] - y;
+						final long dz = seed[ 2 ] - min[ 2 ] - z;
+						final long distance = dx * dx + dy * dy + dz * dz;
+						if ( distance < minDistance )
+						{
+							minDistance = distance;
+							label = seed[ 3 ];
+						}
+					}
+					labels[ i++ ] = label;
+				}
+		return labels;
+	}
+}
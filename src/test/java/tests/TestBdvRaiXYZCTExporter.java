@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.bdv.utils.io.BdvRaiXYZCTExporter;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.ConstantUtils;
+import net.imglib2.util.Intervals;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestBdvRaiXYZCTExporter
+{
+	@Test
+	public void lazyImageIsComputedOnce() throws IOException
+	{
+		final LongAdder numComputedVoxels = new LongAdder();
+		final RandomAccessibleInterval< UnsignedByteType > image = Converters.convert(
+				ConstantUtils.constantRandomAccessibleInterval( new UnsignedByteType( 7 ), new FinalInterval( 512, 512, 64, 1, 1 ) ),
+				( input, output ) -> {
+					numComputedVoxels.increment();
+					output.set( input );
+				},
+				new UnsignedByteType() );
+
+		final File directory = Files.createTempDirectory( "export" ).toFile();
+		directory.deleteOnExit();
+		final String pathWithoutExtension = new File( directory, "image" ).getPath();
+		new File( pathWithoutExtension + ".h5" ).deleteOnExit();
+		new File( pathWithoutExtension + ".xml" ).deleteOnExit();
+
+		final BdvRaiXYZCTExporter< UnsignedByteType > exporter = new BdvRaiXYZCTExporter<>();
+		exporter.setNumThreads( 2 );
+		exporter.setAlwaysLoopBack( true );
+		exporter.export( image, "image", pathWithoutExtension, new double[]{ 1, 1, 1 }, "pixel", new double[]{ 0, 0, 0 } );
+
+		assertTrue( new File( pathWithoutExtension + ".xml" ).exists() );
+		// the lower resolution levels are computed from the written full resolution level
+		assertEquals( Intervals.numElements( image ), numComputedVoxels.sum() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void rejectsZeroThreads()
+	{
+		new BdvRaiXYZCTExporter< UnsignedByteType >().setNumThreads( 0 );
+	}
+
+	public static void main( String[] args ) throws IOException
+	{
+		new TestBdvRaiXYZCTExporter().lazyImageIsComputedOnce();
+	}
+}
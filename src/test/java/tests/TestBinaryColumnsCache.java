@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.tables.column.BinaryColumnsCache;
+import de.embl.cba.tables.column.CategoricalColumn;
+import de.embl.cba.tables.column.DoubleColumn;
+import de.embl.cba.tables.column.LongColumn;
+import de.embl.cba.tables.column.TypedColumns;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestBinaryColumnsCache
+{
+	@Test
+	public void writeReadAndInvalidate() throws IOException
+	{
+		final File tableFile = File.createTempFile( "table", ".tsv" );
+		tableFile.deleteOnExit();
+		BinaryColumnsCache.sidecarFile( tableFile ).deleteOnExit();
+		Files.write( tableFile.toPath(), "label\tx\tname\n".getBytes() );
+
+		final Map< String, List< String > > columns = new LinkedHashMap<>();
+		columns.put( "label", TypedColumns.asTypedColumn( Arrays.asList( "1", "12345678901" ) ) );
+		columns.put( "x", TypedColumns.asTypedColumn( Arrays.asList( "0.5", "NaN" ) ) );
+		columns.put( "name", TypedColumns.asTypedColumn( Arrays.asList( "a", "\u00e4" ) ) );
+
+		BinaryColumnsCache.write( tableFile, "\t", columns );
+		final Map< String, List< String > > cached = BinaryColumnsCache.read( tableFile, "\t" );
+
+		assertNull( BinaryColumnsCache.read( tableFile, "," ) );
+		assertNull( BinaryColumnsCache.read( tableFile, null ) );
+		assertEquals( columns.keySet(), cached.keySet() );
+		assertTrue( cached.get( "label" ) instanceof LongColumn );
+		assertTrue( cached.get( "x" ) instanceof DoubleColumn );
+		assertTrue( cached.get( "name" ) instanceof CategoricalColumn );
+		for ( String columnName : columns.keySet() )
+			assertEquals( columns.get( columnName ), cached.get( columnName ) );
+
+		Files.write( tableFile.toPath(), "label\tx\tname\n1\t2\tb\n".getBytes() );
+		assertNull( BinaryColumnsCache.read( tableFile, "\t" ) );
+	}
+
+	@Test
+	public void keepCellTexts() throws IOException
+	{
+		final File tableFile = File.createTempFile( "table", ".tsv" );
+		tableFile.deleteOnExit();
+		BinaryColumnsCache.sidecarFile( tableFile ).deleteOnExit();
+		Files.write( tableFile.toPath(), "label\tx\n".getBytes() );
+
+		final List< String > label = TypedColumns.asTypedColumn( Arrays.asList( "1", "2", "3" ) );
+		label.set( 1, "2.0" );
+
+		final Map< String, List< String > > columns = new LinkedHashMap<>();
+		columns.put( "label", label );
+		columns.put( "x", TypedColumns.asTypedColumn( Arrays.asList( "1e-5", "", "0.5" ) ) );
+
+		BinaryColumnsCache.write( tableFile, "\t", columns );
+		final Map< String, List< String > > cached = BinaryColumnsCache.read( tableFile, "\t" );
+
+		assertEquals( Arrays.asList( "1", "2.0", "3" ), cached.get( "label" ) );
+		assertEquals( Arrays.asList( "1e-5", "", "0.5" ), cached.get( "x" ) );
+	}
+
+	public static void main( String[] args ) throws IOException
+	{
+		new TestBinaryColumnsCache().writeReadAndInvalidate();
+		new TestBinaryColumnsCache().keepCellTexts();
+	}
+}
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.tables.select.BitSetSelectionModel;
+import de.embl.cba.tables.select.SelectionListener;
+import de.embl.cba.tables.tablerow.DefaultColumnBasedTableRow;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestBitSetSelectionModel
+{
+	@Test
+	public void selection()
+	{
+		final Map< String, List< String > > columns = new HashMap<>();
+		columns.put( "label", Arrays.asList( "1", "2", "3", "4" ) );
+
+		final List< DefaultColumnBasedTableRow > tableRows = new ArrayList<>();
+		for ( int row = 0; row < 4; row++ )
+			tableRows.add( new DefaultColumnBasedTableRow( row, columns ) );
+
+		final BitSetSelectionModel< DefaultColumnBasedTableRow > selectionModel = new BitSetSelectionModel<>( tableRows );
+
+		final AtomicInteger numSelectionChanged = new AtomicInteger();
+		selectionModel.listeners().add( new SelectionListener()
+		{
+			@Override
+			public void selectionChanged()
+			{
+				numSelectionChanged.incrementAndGet();
+			}
+
+			@Override
+			public void focusEvent( Object selection )
+			{
+			}
+		} );
+
+		assertTrue( selectionModel.isEmpty() );
+
+		selectionModel.setSelected( Arrays.asList( tableRows.get( 1 ), tableRows.get( 3 ) ), true );
+		assertTrue( selectionModel.isSelected( tableRows.get( 1 ) ) );
+		assertFalse( selectionModel.isSelected( tableRows.get( 2 ) ) );
+		assertEquals( 2, selectionModel.getSelected().size() );
+		assertEquals( 1, numSelectionChanged.get() );
+
+		selectionModel.toggle( tableRows.get( 1 ) );
+		assertFalse( selectionModel.isSelected( tableRows.get( 1 ) ) );
+		assertEquals( 2, numSelectionChanged.get() );
+
+		selectionModel.pauseListeners();
+		selectionModel.setSelected( 0, 4, true );
+		assertEquals( 2, numSelectionChanged.get() );
+		selectionModel.resumeListeners();
+		assertEquals( 3, numSelectionChanged.get() );
+		assertEquals( 4, selectionModel.getSelectedRowIndices().cardinality() );
+
+		assertTrue( selectionModel.clearSelection() );
+		assertTrue( selectionModel.isEmpty() );
+		assertFalse( selectionModel.clearSelection() );
+		assertEquals( 4, numSelectionChanged.get() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void rowIndicesMustMatchListIndices()
+	{
+		final Map< String, List< String > > columns = new HashMap<>();
+		columns.put( "label", Arrays.asList( "1", "2" ) );
+
+		new BitSetSelectionModel<>( Arrays.asList(
+				new DefaultColumnBasedTableRow( 1, columns ),
+				new DefaultColumnBasedTableRow( 0, columns ) ) );
+	}
+
+	public static void main( String[] args )
+	{
+		new TestBitSetSelectionModel().selection();
+	}
+}
@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.bdv.utils.loaders.BoundedLruLoaderCache;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestBoundedLruLoaderCache
+{
+	@Test
+	public void evictsLeastRecentlyUsed() throws ExecutionException
+	{
+		final BoundedLruLoaderCache< Integer, long[] > cache = new BoundedLruLoaderCache<>( 3 * 8 * 100, ( key, value ) -> 8L * value.length );
+
+		for ( int i = 0; i < 3; i++ )
+			cache.get( i, key -> new long[ 100 ] );
+
+		// make 0 the most recently used, such that 1 is evicted next
+		cache.get( 0, key -> new long[ 100 ] );
+		cache.get( 3, key -> new long[ 100 ] );
+
+		assertNotNull( cache.getIfPresent( 0 ) );
+		assertNull( cache.getIfPresent( 1 ) );
+		assertNotNull( cache.getIfPresent( 2 ) );
+		assertNotNull( cache.getIfPresent( 3 ) );
+
+		final BoundedLruLoaderCache.Statistics statistics = cache.getStatistics();
+		assertEquals( 4, statistics.getMisses() );
+		assertEquals( 4, statistics.getHits() );
+		assertEquals( 1, statistics.getEvictions() );
+		assertEquals( 3 * 8 * 100, statistics.getBytesResident() );
+
+		cache.invalidateAll();
+		assertEquals( 0, cache.getStatistics().getBytesResident() );
+	}
+
+	@Test
+	public void touchRecordsAccessWithoutCountingHits() throws ExecutionException
+	{
+		final BoundedLruLoaderCache< Integer, long[] > cache = new BoundedLruLoaderCache<>( 2 * 8 * 100, ( key, value ) -> 8L * value.length );
+
+		cache.get( 0, key -> new long[ 100 ] );
+		cache.get( 1, key -> new long[ 100 ] );
+
+		// as done for accesses that are served by a cache in front of this one
+		assertTrue( cache.touch( 0 ) );
+		assertFalse( cache.touch( 2 ) );
+
+		cache.get( 2, key -> new long[ 100 ] );
+		assertEquals( 0, cache.getStatistics().getHits() );
+
+		assertNotNull( cache.getIfPresent( 0 ) );
+		assertNull( cache.getIfPresent( 1 ) );
+	}
+
+	@Test
+	public void recordAccessOfStampedValues() throws ExecutionException
+	{
+		final BoundedLruLoaderCache< Integer, StampedArray > cache = new BoundedLruLoaderCache<>( 2 * 8 * 100, ( key, value ) -> 8L * value.values.length );
+
+		final StampedArray first = cache.get( 0, key -> new StampedArray( 100 ) );
+		cache.get( 1, key -> new StampedArray( 100 ) );
+
+		// as done by a cache in front of this one, without looking up the key
+		cache.recordAccess( first );
+
+		cache.get( 2, key -> new StampedArray( 100 ) );
+		assertEquals( 0, cache.getStatistics().getHits() );
+
+		assertNotNull( cache.getIfPresent( 0 ) );
+		assertNull( cache.getIfPresent( 1 ) );
+		assertNotNull( cache.getIfPresent( 2 ) );
+	}
+
+	private static class StampedArray implements BoundedLruLoaderCache.AccessStamped
+	{
+		final long[] values;
+
+		volatile long accessStamp;
+
+		StampedArray( int size )
+		{
+			values = new long[ size ];
+		}
+
+		@Override
+		public long getAccessStamp()
+		{
+			return accessStamp;
+		}
+
+		@Override
+		public void setAccessStamp( long stamp )
+		{
+			accessStamp = stamp;
+		}
+	}
+
+	public static void main( String[] args ) throws ExecutionException
+	{
+		new TestBoundedLruLoaderCache().evictsLeastRecentlyUsed();
+		new TestBoundedLruLoaderCache().touchRecordsAccessWithoutCountingHits();
+		new TestBoundedLruLoaderCache().recordAccessOfStampedValues();
+	}
+}
@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.tables.column.ColumnStatistics;
+import de.embl.cba.tables.column.ColumnStatisticsService;
+import de.embl.cba.tables.column.TypedColumns;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestColumnStatistics
+{
+	@Test
+	public void columnStatistics()
+	{
+		final List< String > column = TypedColumns.asTypedColumn( Arrays.asList( "1", "NaN", "2", "3", "4" ) );
+
+		final ColumnStatistics statistics = ColumnStatisticsService.getStatistics( column );
+		assertSame( statistics, ColumnStatisticsService.getStatistics( column ) );
+		assertEquals( 1.0, statistics.getMin(), 0.0 );
+		assertEquals( 4.0, statistics.getMax(), 0.0 );
+		assertEquals( 2.5, statistics.getMean(), 1e-12 );
+		assertEquals( Math.sqrt( 1.25 ), statistics.getSigma(), 1e-12 );
+		assertEquals( 1, statistics.getNumNaN() );
+		assertEquals( 2.0, ColumnStatisticsService.getQuantile( column, 0.5 ), 0.0 );
+
+		// incremental update
+		ColumnStatisticsService.setCell( column, 1, "5" );
+		final ColumnStatistics updated = ColumnStatisticsService.getStatistics( column );
+		assertNotSame( statistics, updated );
+		assertEquals( 0, updated.getNumNaN() );
+		assertEquals( 5.0, updated.getMax(), 0.0 );
+		assertEquals( 3.0, updated.getMean(), 1e-12 );
+		assertEquals( Math.sqrt( 2.0 ), updated.getSigma(), 1e-12 );
+		assertEquals( 3.0, ColumnStatisticsService.getQuantile( column, 0.5 ), 0.0 );
+
+		// changing the min requires a rescan
+		ColumnStatisticsService.setCell( column, 0, "2" );
+		assertEquals( 2.0, ColumnStatisticsService.getStatistics( column ).getMin(), 0.0 );
+	}
+
+	@Test
+	public void cachedStatisticsDoNotReferenceTheColumn() throws InterruptedException
+	{
+		List< String > column = TypedColumns.asTypedColumn( Arrays.asList( "1", "2", "3" ) );
+		ColumnStatisticsService.getStatistics( column );
+
+		final WeakReference< List< String > > reference = new WeakReference<>( column );
+		column = null;
+
+		for ( int i = 0; i < 50 && reference.get() != null; i++ )
+		{
+			System.gc();
+			Thread.sleep( 10 );
+		}
+
+		assertNull( reference.get() );
+	}
+
+	public static void main( String[] args )
+	{
+		new TestColumnStatistics().columnStatistics();
+	}
+}
@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.tables.column.ColumnsMerger;
+import de.embl.cba.tables.column.TypedColumns;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestColumnsMerger
+{
+	@Test
+	public void mergeByCompositeKey()
+	{
+		final List< String > targetLabels = TypedColumns.asTypedColumn( Arrays.asList( "1", "2", "1", "3" ) );
+		final List< String > targetFrames = Arrays.asList( "0", "0", "1", "1" );
+
+		final Map< String, List< String > > source = new LinkedHashMap<>();
+		source.put( "label", TypedColumns.asTypedColumn( Arrays.asList( "1.0", "1", "2" ) ) );
+		source.put( "frame", TypedColumns.asTypedColumn( Arrays.asList( "1", "0", "0" ) ) );
+		source.put( "area", TypedColumns.asTypedColumn( Arrays.asList( "10", "11", "20" ) ) );
+		source.put( "class", TypedColumns.asTypedColumn( Arrays.asList( "a", "b", "c" ) ) );
+
+		final Map< String, List< String > > merged =
+				new ColumnsMerger( Arrays.asList( targetLabels, targetFrames ) )
+						.merge( source, Arrays.asList( "label", "frame" ) );
+
+		assertEquals( Arrays.asList( "11.0", "20.0", "10.0", "NaN" ), merged.get( "area" ) );
+		assertEquals( Arrays.asList( "b", "c", "a", ColumnsMerger.MISSING_TEXT ), merged.get( "class" ) );
+	}
+
+	public static void main( String[] args )
+	{
+		new TestColumnsMerger().mergeByCompositeKey();
+	}
+}
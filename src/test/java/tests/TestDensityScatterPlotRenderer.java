@@ -0,0 +1,136 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import bdv.viewer.Source;
+import de.embl.cba.bdv.utils.lut.ViridisARGBLut;
+import de.embl.cba.tables.Tables;
+import de.embl.cba.tables.plot.DensityScatterPlotRenderer;
+import de.embl.cba.tables.tablerow.ColumnBasedTableRow;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.ARGBType;
+import org.junit.Test;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestDensityScatterPlotRenderer
+{
+	private static final int BACKGROUND = ARGBType.rgba( 0, 0, 0, 255 );
+
+	@Test
+	public void tableWithoutValidPointsGivesEmptyPlot()
+	{
+		final DensityScatterPlotRenderer< ColumnBasedTableRow > renderer = createRenderer( new String[]{ "NaN", "NaN" }, new String[]{ "NaN", "NaN" } );
+
+		assertEquals( BACKGROUND, color( renderer.getSource( "plot" ), 0 ) );
+		assertEquals( 0, renderer.getRowIndices( new Rectangle2D.Double( -10, -10, 20, 20 ) ).length );
+	}
+
+	@Test
+	public void colorsDoNotChangeWithLevel()
+	{
+		final DensityScatterPlotRenderer< ColumnBasedTableRow > renderer = createGridRenderer();
+		final Source< ARGBType > source = renderer.getSource( "plot" );
+
+		// one row per bin of level 0, thus four rows per bin of level 1
+		assertEquals( color( source, 0 ), color( source, 1 ) );
+	}
+
+	@Test
+	public void lassoSelectsRowsWithinShape()
+	{
+		final DensityScatterPlotRenderer< ColumnBasedTableRow > renderer = createGridRenderer();
+
+		// triangle below the line y = x - 0.5
+		final Path2D.Double lasso = new Path2D.Double();
+		lasso.moveTo( -0.5, -1 );
+		lasso.lineTo( 8, -1 );
+		lasso.lineTo( 8, 7.5 );
+		lasso.closePath();
+
+		final List< ColumnBasedTableRow > rows = renderer.getTableRows( lasso );
+
+		assertEquals( 28, rows.size() );
+		for ( ColumnBasedTableRow row : rows )
+			assertTrue( row.getCellAsDouble( "y" ) < row.getCellAsDouble( "x" ) );
+	}
+
+	/**
+	 * Rows on an 8 x 8 grid, with one row per bin.
+	 */
+	private static DensityScatterPlotRenderer< ColumnBasedTableRow > createGridRenderer()
+	{
+		final String[] x = new String[ 64 ];
+		final String[] y = new String[ 64 ];
+		for ( int i = 0; i < 64; i++ )
+		{
+			x[ i ] = String.valueOf( i % 8 );
+			y[ i ] = String.valueOf( i / 8 );
+		}
+		return createRenderer( x, y );
+	}
+
+	private static DensityScatterPlotRenderer< ColumnBasedTableRow > createRenderer( String[] x, String[] y )
+	{
+		final Map< String, List< String > > columns = new HashMap<>();
+		columns.put( "x", new ArrayList<>( Arrays.asList( x ) ) );
+		columns.put( "y", new ArrayList<>( Arrays.asList( y ) ) );
+
+		return new DensityScatterPlotRenderer<>(
+				Tables.columnBasedTableRowsFromColumns( columns ),
+				new String[]{ "x", "y" },
+				new double[]{ 1, 1 },
+				8,
+				new ViridisARGBLut(),
+				BACKGROUND );
+	}
+
+	private static int color( Source< ARGBType > source, int level )
+	{
+		final RandomAccess< ARGBType > access = source.getSource( 0, level ).randomAccess();
+		access.setPosition( new long[]{ 0, 0, 0 } );
+		return access.get().get();
+	}
+
+	public static void main( String[] args )
+	{
+		new TestDensityScatterPlotRenderer().tableWithoutValidPointsGivesEmptyPlot();
+		new TestDensityScatterPlotRenderer().colorsDoNotChangeWithLevel();
+		new TestDensityScatterPlotRenderer().lassoSelectsRowsWithinShape();
+	}
+}
@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.lazyalgorithm.LabelBoundariesFilter;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.util.ConstantUtils;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLabelBoundariesFilter
+{
+	@Test
+	public void keepsOnlyBoundaries()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > labels = ArrayImgs.unsignedShorts( 10, 10 );
+		for ( UnsignedShortType pixel : Views.interval( labels, new FinalInterval( new long[]{ 2, 2 }, new long[]{ 7, 7 } ) ) )
+			pixel.set( 5 );
+
+		final RandomAccessibleInterval< UnsignedShortType > boundaries = new LabelBoundariesFilter< UnsignedShortType >( 1 ).filter( labels );
+
+		assertEquals( 5, value( boundaries, 2, 2 ) );
+		assertEquals( 5, value( boundaries, 7, 4 ) );
+		assertEquals( 0, value( boundaries, 4, 4 ) );
+		assertEquals( 0, value( boundaries, 0, 0 ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void rejectsVolatileTypes()
+	{
+		final RandomAccessibleInterval< VolatileUnsignedShortType > labels =
+				ConstantUtils.constantRandomAccessibleInterval( new VolatileUnsignedShortType( 5 ), new FinalInterval( 10, 10 ) );
+
+		new LabelBoundariesFilter< VolatileUnsignedShortType >( 1 ).filter( labels );
+	}
+
+	private static int value( RandomAccessibleInterval< UnsignedShortType > image, long x, long y )
+	{
+		final RandomAccess< UnsignedShortType > access = image.randomAccess();
+		access.setPosition( new long[]{ x, y } );
+		return access.get().get();
+	}
+
+	public static void main( String[] args )
+	{
+		new TestLabelBoundariesFilter().keepsOnlyBoundaries();
+	}
+}
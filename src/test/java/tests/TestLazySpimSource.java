@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.bdv.utils.sources.LazySpimSource;
+import net.imglib2.type.numeric.RealType;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestLazySpimSource
+{
+	@Test
+	public < R extends RealType< R > > void notifiesListenersWhenOpen() throws ExecutionException, InterruptedException
+	{
+		final LazySpimSource< R > source = new LazySpimSource<>( "source",
+				TestLazySpimSource.class.getResource( "../test-data/labels-ulong.xml" ).getFile() );
+
+		final AtomicInteger numNotifications = new AtomicInteger();
+		source.addOpenListener( numNotifications::incrementAndGet );
+
+		source.prefetch().get();
+
+		assertTrue( source.isOpen() );
+		assertTrue( source.isPresent( 0 ) );
+		assertEquals( 1, numNotifications.get() );
+	}
+
+	@Test
+	public < R extends RealType< R > > void failedOpeningIsRetried() throws IOException
+	{
+		final File xml = new File( TestLazySpimSource.class.getResource( "../test-data/labels-ulong.xml" ).getFile() );
+		final File copy = new File( xml.getParentFile(), "labels-ulong-lazy-" + System.nanoTime() + ".xml" );
+		copy.deleteOnExit();
+
+		final LazySpimSource< R > source = new LazySpimSource<>( "source", copy.getAbsolutePath() );
+
+		try
+		{
+			source.waitUntilOpen();
+			fail( "Opening a missing file should fail" );
+		}
+		catch ( RuntimeException e )
+		{
+			assertFalse( source.isOpen() );
+		}
+
+		Files.copy( xml.toPath(), copy.toPath() );
+
+		source.waitUntilOpen();
+		assertTrue( source.isOpen() );
+	}
+
+	public static void main( String[] args ) throws Exception
+	{
+		new TestLazySpimSource().notifiesListenersWhenOpen();
+		new TestLazySpimSource().failedOpeningIsRetried();
+	}
+}
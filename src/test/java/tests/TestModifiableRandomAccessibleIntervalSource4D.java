@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import bdv.util.volatiles.SharedQueue;
+import de.embl.cba.bdv.utils.sources.ModifiableRandomAccessibleIntervalSource4D;
+import de.embl.cba.bdv.utils.sources.VolatileModifiableRandomAccessibleIntervalSource4D;
+import de.embl.cba.lazyalgorithm.RandomAccessibleIntervalFilter;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.type.volatiles.VolatileFloatType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestModifiableRandomAccessibleIntervalSource4D
+{
+	@Test
+	public void cachedFilter()
+	{
+		final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( 100, 80, 10, 5 );
+		final Cursor< FloatType > cursor = img.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.get().setReal( cursor.getIntPosition( 0 ) + 100 * cursor.getIntPosition( 3 ) );
+		}
+
+		final ModifiableRandomAccessibleIntervalSource4D< FloatType > source =
+				new ModifiableRandomAccessibleIntervalSource4D<>( img, new FloatType(), "img" );
+
+		final RandomAccessibleIntervalFilter< FloatType > plusOne = input ->
+				Converters.convert( input, ( in, out ) -> out.setReal( in.getRealDouble() + 1 ), new FloatType() );
+
+		source.setFilter( plusOne, true );
+
+		// more time points than are cached, and back to the first one, which has been evicted
+		for ( int t : new int[]{ 0, 1, 2, 3, 4, 0 } )
+			assertEquals( 7 + 100 * t + 1, valueAt( source.getSource( t, 0 ), 7, 70, 9 ), 0.0 );
+
+		source.setFilter( null );
+		assertEquals( 7 + 100 * 3, valueAt( source.getSource( 3, 0 ), 7, 70, 9 ), 0.0 );
+	}
+
+	@Test
+	public void volatileCachedFilter() throws InterruptedException
+	{
+		final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( 100, 80, 10, 5 );
+		final Cursor< FloatType > cursor = img.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.get().setReal( cursor.getIntPosition( 0 ) + 100 * cursor.getIntPosition( 3 ) );
+		}
+
+		final ModifiableRandomAccessibleIntervalSource4D< FloatType > source =
+				new ModifiableRandomAccessibleIntervalSource4D<>( img, new FloatType(), "img" );
+
+		final VolatileModifiableRandomAccessibleIntervalSource4D< FloatType, VolatileFloatType > volatileSource =
+				new VolatileModifiableRandomAccessibleIntervalSource4D<>( source, new SharedQueue( 1 ) );
+
+		final RandomAccessibleIntervalFilter< FloatType > plusOne = input ->
+				Converters.convert( input, ( in, out ) -> out.setReal( in.getRealDouble() + 1 ), new FloatType() );
+
+		source.setFilter( plusOne, true );
+
+		// cells are computed in the background, until then they are invalid
+		VolatileFloatType value = volatileValueAt( volatileSource.getSource( 1, 0 ), 7, 70, 9 );
+		final long start = System.currentTimeMillis();
+		while ( ! value.isValid() && System.currentTimeMillis() - start < 10000 )
+		{
+			Thread.sleep( 10 );
+			value = volatileValueAt( volatileSource.getSource( 1, 0 ), 7, 70, 9 );
+		}
+
+		assertTrue( value.isValid() );
+		assertEquals( 7 + 100 + 1, value.getRealDouble(), 0.0 );
+
+		// lazy filters are valid right away
+		source.setFilter( null );
+		value = volatileValueAt( volatileSource.getSource( 1, 0 ), 7, 70, 9 );
+		assertTrue( value.isValid() );
+		assertEquals( 7 + 100, value.getRealDouble(), 0.0 );
+	}
+
+	@Test
+	public void rawSourceOfAbsentTimePointIsZero()
+	{
+		final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( 100, 80, 10, 5 );
+		img.forEach( pixel -> pixel.setReal( 1 ) );
+
+		final ModifiableRandomAccessibleIntervalSource4D< FloatType > source =
+				new ModifiableRandomAccessibleIntervalSource4D<>( img, new FloatType(), "img" );
+
+		final RandomAccessibleInterval< FloatType > raw = source.getRawSource( 5, 0 );
+		assertEquals( 100, raw.dimension( 0 ) );
+		assertEquals( 0, valueAt( raw, 7, 70, 9 ), 0.0 );
+	}
+
+	private static double valueAt( RandomAccessibleInterval< FloatType > rai, long... position )
+	{
+		final RandomAccess< FloatType > access = rai.randomAccess();
+		access.setPosition( position );
+		return access.get().getRealDouble();
+	}
+
+	private static VolatileFloatType volatileValueAt( RandomAccessibleInterval< VolatileFloatType > rai, long... position )
+	{
+		final RandomAccess< VolatileFloatType > access = rai.randomAccess();
+		access.setPosition( position );
+		return access.get().copy();
+	}
+
+	public static void main( String[] args ) throws InterruptedException
+	{
+		new TestModifiableRandomAccessibleIntervalSource4D().cachedFilter();
+		new TestModifiableRandomAccessibleIntervalSource4D().volatileCachedFilter();
+		new TestModifiableRandomAccessibleIntervalSource4D().rawSourceOfAbsentTimePointIsZero();
+	}
+}
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.bdv.utils.sources.LazySpimSource;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * N5 containers in the BigDataViewer layout ("setup{id}/timepoint{t}/s{level}")
+ * are opened by bigdataviewer-core's N5ImageLoader, which registers the
+ * "bdv.n5" format of the SpimData XML. They thus open through LazySpimSource,
+ * like any other SpimData XML, without a loader in this repository.
+ */
+public class TestN5LazySpimSource
+{
+	@Test
+	public < R extends RealType< R > > void opensN5Xml() throws IOException
+	{
+		final File directory = Files.createTempDirectory( "n5-lazy-spim-source" ).toFile();
+		directory.deleteOnExit();
+
+		writeN5( new File( directory, "labels.n5" ) );
+
+		final File xml = new File( directory, "labels.xml" );
+		Files.write( xml.toPath(), createXml( "labels.n5" ).getBytes( StandardCharsets.UTF_8 ) );
+
+		final LazySpimSource< R > source = new LazySpimSource<>( "labels", xml.getAbsolutePath() );
+
+		final RandomAccessibleInterval< R > rai = source.getNonVolatileSource( 0, 0 );
+		assertEquals( 4, rai.dimension( 0 ) );
+		assertEquals( 3, rai.dimension( 1 ) );
+		assertEquals( 2, rai.dimension( 2 ) );
+
+		final RandomAccess< R > access = rai.randomAccess();
+		access.setPosition( new long[]{ 1, 2, 1 } );
+		assertEquals( 1 + 10 * 2 + 100 * 1, access.get().getRealDouble(), 0.0 );
+	}
+
+	private static void writeN5( File n5Path ) throws IOException
+	{
+		final N5FSWriter n5 = new N5FSWriter( n5Path.getAbsolutePath() );
+
+		n5.createGroup( "setup0" );
+		n5.setAttribute( "setup0", "downsamplingFactors", new double[][]{ { 1, 1, 1 } } );
+		n5.setAttribute( "setup0", "dataType", DataType.UINT16 );
+
+		final long[] dimensions = { 4, 3, 2 };
+		final int[] blockSize = { 4, 3, 2 };
+		final DatasetAttributes attributes = new DatasetAttributes( dimensions, blockSize, DataType.UINT16, new RawCompression() );
+		n5.createDataset( "setup0/timepoint0/s0", attributes );
+
+		final short[] data = new short[ 4 * 3 * 2 ];
+		for ( int z = 0, i = 0; z < 2; z++ )
+			for ( int y = 0; y < 3; y++ )
+				for ( int x = 0; x < 4; x++, i++ )
+					data[ i ] = ( short ) ( x + 10 * y + 100 * z );
+
+		n5.writeBlock( "setup0/timepoint0/s0", attributes, new ShortArrayDataBlock( blockSize, new long[]{ 0, 0, 0 }, data ) );
+	}
+
+	private static String createXml( String n5Path )
+	{
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"<SpimData version=\"0.2\">\n" +
+				"  <BasePath type=\"relative\">.</BasePath>\n" +
+				"  <SequenceDescription>\n" +
+				"    <ImageLoader format=\"bdv.n5\" version=\"1.0\">\n" +
+				"      <n5 type=\"relative\">" + n5Path + "</n5>\n" +
+				"    </ImageLoader>\n" +
+				"    <ViewSetups>\n" +
+				"      <ViewSetup>\n" +
+				"        <id>0</id>\n" +
+				"        <name>labels</name>\n" +
+				"        <size>4 3 2</size>\n" +
+				"        <voxelSize>\n" +
+				"          <unit>pixel</unit>\n" +
+				"          <size>1.0 1.0 1.0</size>\n" +
+				"        </voxelSize>\n" +
+				"      </ViewSetup>\n" +
+				"    </ViewSetups>\n" +
+				"    <Timepoints type=\"range\">\n" +
+				"      <first>0</first>\n" +
+				"      <last>0</last>\n" +
+				"    </Timepoints>\n" +
+				"  </SequenceDescription>\n" +
+				"  <ViewRegistrations>\n" +
+				"    <ViewRegistration timepoint=\"0\" setup=\"0\">\n" +
+				"      <ViewTransform type=\"affine\">\n" +
+				"        <affine>1.0 0.0 0.0 0.0 0.0 1.0 0.0 0.0 0.0 0.0 1.0 0.0</affine>\n" +
+				"      </ViewTransform>\n" +
+				"    </ViewRegistration>\n" +
+				"  </ViewRegistrations>\n" +
+				"</SpimData>\n";
+	}
+
+	public static void main( String[] args ) throws IOException
+	{
+		new TestN5LazySpimSource().opensN5Xml();
+	}
+}
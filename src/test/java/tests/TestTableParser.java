@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.tables.column.CategoricalColumn;
+import de.embl.cba.tables.column.DoubleColumn;
+import de.embl.cba.tables.column.IntColumn;
+import de.embl.cba.tables.column.TableParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestTableParser
+{
+	@Test
+	public void parseInChunks() throws IOException
+	{
+		final StringBuilder table = new StringBuilder( "\"label\"\tvalue\tname\r\n" );
+		for ( int row = 0; row < 1000; row++ )
+			table.append( row ).append( '\t' ).append( row * 0.5 ).append( '\t' ).append( "\"a\tb\"" ).append( "\r\n" );
+		table.append( "1000\t\tc\n" );
+
+		// small chunks to test the splitting into chunks
+		final Map< String, List< String > > columns = new TableParser( 4, 64 ).parse(
+				new ByteArrayInputStream( table.toString().getBytes( StandardCharsets.UTF_8 ) ), null );
+
+		assertEquals( new ArrayList<>( columns.keySet() ).toString(), "[label, value, name]" );
+		assertTrue( columns.get( "label" ) instanceof IntColumn );
+		assertTrue( columns.get( "value" ) instanceof DoubleColumn );
+		assertTrue( columns.get( "name" ) instanceof CategoricalColumn );
+
+		assertEquals( 1001, columns.get( "label" ).size() );
+		assertEquals( "999", columns.get( "label" ).get( 999 ) );
+		assertEquals( "499.5", columns.get( "value" ).get( 999 ) );
+		assertEquals( "", columns.get( "value" ).get( 1000 ) );
+		assertEquals( "a\tb", columns.get( "name" ).get( 500 ) );
+		assertEquals( "c", columns.get( "name" ).get( 1000 ) );
+	}
+
+	@Test
+	public void cellsDoNotDependOnChunkBoundaries() throws IOException
+	{
+		final StringBuilder table = new StringBuilder( "a,b,c\n" );
+		for ( int row = 0; row < 200; row++ )
+			table.append( row ).append( ',' ).append( row ).append( ',' ).append( "1e-5" ).append( '\n' );
+		table.append( "x,2.50,\n" );
+
+		final byte[] bytes = table.toString().getBytes( StandardCharsets.UTF_8 );
+		final Map< String, List< String > > inOneChunk = new TableParser( 1, bytes.length ).parse(
+				new ByteArrayInputStream( bytes ), null );
+		final Map< String, List< String > > inChunks = new TableParser( 4, 64 ).parse(
+				new ByteArrayInputStream( bytes ), null );
+
+		for ( String column : inOneChunk.keySet() )
+			assertEquals( new ArrayList<>( inOneChunk.get( column ) ), new ArrayList<>( inChunks.get( column ) ) );
+
+		assertTrue( inChunks.get( "a" ) instanceof CategoricalColumn );
+		assertEquals( "17", inChunks.get( "a" ).get( 17 ) );
+		assertTrue( inChunks.get( "b" ) instanceof DoubleColumn );
+		assertEquals( "17", inChunks.get( "b" ).get( 17 ) );
+		assertEquals( "2.50", inChunks.get( "b" ).get( 200 ) );
+		assertEquals( "1e-5", inChunks.get( "c" ).get( 0 ) );
+		assertEquals( "", inChunks.get( "c" ).get( 200 ) );
+	}
+
+	public static void main( String[] args ) throws IOException
+	{
+		new TestTableParser().parseInChunks();
+		new TestTableParser().cellsDoNotDependOnChunkBoundaries();
+	}
+}
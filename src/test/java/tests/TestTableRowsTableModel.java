@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.tables.Tables;
+import de.embl.cba.tables.table.TableRowsTableModel;
+import de.embl.cba.tables.tablerow.ColumnBasedTableRow;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTableRowsTableModel
+{
+	@Test
+	public void readsColumnsOfAllRows()
+	{
+		final TableRowsTableModel< ColumnBasedTableRow > model = new TableRowsTableModel<>( createTableRows() );
+
+		assertEquals( 3.0, model.getValueAt( 2, 0 ) );
+		assertEquals( "c", model.getValueAt( 2, 1 ) );
+	}
+
+	@Test
+	public void readsCellsOfReorderedRows()
+	{
+		final List< ColumnBasedTableRow > tableRows = new ArrayList<>( createTableRows().subList( 1, 3 ) );
+		Collections.reverse( tableRows );
+
+		final TableRowsTableModel< ColumnBasedTableRow > model = new TableRowsTableModel<>( tableRows );
+
+		assertEquals( 3.0, model.getValueAt( 0, 0 ) );
+		assertEquals( "c", model.getValueAt( 0, 1 ) );
+		assertEquals( 2.0, model.getValueAt( 1, 0 ) );
+		assertEquals( "b", model.getValueAt( 1, 1 ) );
+	}
+
+	private static List< ColumnBasedTableRow > createTableRows()
+	{
+		final Map< String, List< String > > columns = new LinkedHashMap<>();
+		columns.put( "label", new ArrayList<>( Arrays.asList( "1", "2", "3" ) ) );
+		columns.put( "name", new ArrayList<>( Arrays.asList( "a", "b", "c" ) ) );
+		return Tables.columnBasedTableRowsFromColumns( columns );
+	}
+
+	public static void main( String[] args )
+	{
+		new TestTableRowsTableModel().readsColumnsOfAllRows();
+		new TestTableRowsTableModel().readsCellsOfReorderedRows();
+	}
+}
@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import bdv.viewer.Source;
+import de.embl.cba.tables.color.AbstractColoringModel;
+import de.embl.cba.tables.plot.TiledScatterPlotRenderer;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealPoint;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestTiledScatterPlotRenderer
+{
+	private static final int RED = ARGBType.rgba( 255, 0, 0, 255 );
+	private static final int GREEN = ARGBType.rgba( 0, 255, 0, 255 );
+
+	@Test
+	public void tileCacheIsBounded()
+	{
+		final TiledScatterPlotRenderer< Integer > renderer = createRenderer( new int[ 1000 ], 0.1 );
+		final RandomAccessibleInterval< ARGBType > image = renderer.getSource( "plot" ).getSource( 0, 0 );
+
+		final RandomAccess< ARGBType > access = image.randomAccess();
+		for ( long y = 0; y < image.dimension( 1 ); y += TiledScatterPlotRenderer.TILE_SIZE )
+			for ( long x = 0; x < image.dimension( 0 ); x += TiledScatterPlotRenderer.TILE_SIZE )
+			{
+				access.setPosition( new long[]{ x, y, 0 } );
+				access.get();
+			}
+
+		assertTrue( image.dimension( 0 ) * image.dimension( 1 ) > TiledScatterPlotRenderer.MAX_NUM_CACHED_TILES * TiledScatterPlotRenderer.TILE_SIZE * TiledScatterPlotRenderer.TILE_SIZE );
+		assertTrue( renderer.getNumCachedTiles() <= TiledScatterPlotRenderer.MAX_NUM_CACHED_TILES );
+	}
+
+	@Test
+	public void updateRedrawsChangedPoints()
+	{
+		final int[] colors = new int[ 1000 ];
+		Arrays.fill( colors, RED );
+		final TiledScatterPlotRenderer< Integer > renderer = createRenderer( colors, 1.0 );
+		final Source< ARGBType > source = renderer.getSource( "plot" );
+
+		assertEquals( RED, colorOfPoint( source, 500 ) );
+
+		colors[ 500 ] = GREEN;
+		renderer.update();
+
+		assertEquals( GREEN, colorOfPoint( source, 500 ) );
+		assertEquals( RED, colorOfPoint( source, 100 ) );
+	}
+
+	/**
+	 * Points on the diagonal, point i at ( i + 0.3, i + 0.3 ).
+	 */
+	private static TiledScatterPlotRenderer< Integer > createRenderer( int[] colors, double dotRadius )
+	{
+		final List< Integer > rows = new ArrayList<>();
+		final List< RealPoint > points = new ArrayList<>();
+		for ( int i = 0; i < colors.length; i++ )
+		{
+			rows.add( i );
+			points.add( new RealPoint( i + 0.3, i + 0.3 ) );
+		}
+
+		final AbstractColoringModel< Integer > coloringModel = new AbstractColoringModel< Integer >()
+		{
+			@Override
+			public void convert( Integer row, ARGBType output )
+			{
+				output.set( colors[ row ] );
+			}
+		};
+
+		return new TiledScatterPlotRenderer<>(
+				rows,
+				points,
+				new double[]{ 0, 0 },
+				new double[]{ colors.length, colors.length },
+				coloringModel,
+				dotRadius,
+				0 );
+	}
+
+	private static int colorOfPoint( Source< ARGBType > source, int point )
+	{
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		source.getSourceTransform( 0, 0, sourceTransform );
+
+		final double[] position = new double[]{ point + 0.3, point + 0.3, 0 };
+		sourceTransform.applyInverse( position, position );
+
+		final RandomAccess< ARGBType > access = source.getSource( 0, 0 ).randomAccess();
+		access.setPosition( new long[]{ Math.round( position[ 0 ] ), Math.round( position[ 1 ] ), 0 } );
+		return access.get().get();
+	}
+
+	public static void main( String[] args )
+	{
+		new TestTiledScatterPlotRenderer().tileCacheIsBounded();
+		new TestTiledScatterPlotRenderer().updateRedrawsChangedPoints();
+	}
+}
@@ -0,0 +1,254 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.bdv.utils.io.TiledTiffWriter;
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.ImageReader;
+import loci.formats.tiff.IFD;
+import loci.formats.tiff.TiffParser;
+import net.imglib2.FinalInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TestTiledTiffWriter
+{
+	private static final int SIZE = 32;
+	private static final int TILE_SIZE = 16;
+
+	@Test
+	public void closeKeepsFirstPages() throws IOException, FormatException
+	{
+		final File file = File.createTempFile( "tiled", ".tif" );
+		file.deleteOnExit();
+
+		final TiledTiffWriter writer = new TiledTiffWriter( file, SIZE, SIZE, TILE_SIZE, TILE_SIZE, pageTypes( new UnsignedShortType(), 3 ) );
+		for ( int page = 0; page < 2; page++ )
+			writeAllTiles( writer, page, page + 1 );
+
+		// the third page is incomplete, as after cancelling
+		writer.writeTile( 2, new FinalInterval( new long[]{ 0, 0 }, new long[]{ TILE_SIZE - 1, TILE_SIZE - 1 } ), tile( 3 ) );
+		writer.close( 2 );
+
+		final ImageReader reader = new ImageReader();
+		reader.setId( file.getAbsolutePath() );
+		assertEquals( 2, reader.getImageCount() );
+		for ( int page = 0; page < 2; page++ )
+		{
+			final ByteBuffer bytes = ByteBuffer.wrap( reader.openBytes( page ) ).order( reader.isLittleEndian() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN );
+			for ( int i = 0; i < SIZE * SIZE; i++ )
+				assertEquals( page + 1, bytes.getShort() );
+		}
+		reader.close();
+	}
+
+	@Test
+	public void pixelTypesRoundTrip() throws IOException, FormatException
+	{
+		assertRoundTrip( new UnsignedByteType( 200 ), FormatTools.UINT8, 200 );
+		assertRoundTrip( new ByteType( ( byte ) -100 ), FormatTools.INT8, -100 );
+		assertRoundTrip( new UnsignedShortType( 60000 ), FormatTools.UINT16, 60000 );
+		assertRoundTrip( new ShortType( ( short ) -30000 ), FormatTools.INT16, -30000 );
+		assertRoundTrip( new UnsignedIntType( 4_000_000_000L ), FormatTools.UINT32, 4_000_000_000L );
+		assertRoundTrip( new IntType( -2_000_000_000 ), FormatTools.INT32, -2_000_000_000 );
+		assertRoundTrip( new FloatType( 1.5f ), FormatTools.FLOAT, 1.5 );
+		assertRoundTrip( new DoubleType( -2.25 ), FormatTools.DOUBLE, -2.25 );
+	}
+
+	@Test
+	public void rgbRoundTrip() throws IOException, FormatException
+	{
+		final File file = writeSingleTile( new ARGBType( ARGBType.rgba( 10, 20, 30, 255 ) ) );
+
+		final ImageReader reader = new ImageReader();
+		reader.setId( file.getAbsolutePath() );
+		assertEquals( 3, reader.getRGBChannelCount() );
+		assertEquals( FormatTools.UINT8, reader.getPixelType() );
+
+		final byte[] bytes = reader.openBytes( 0 );
+		final int channelStep = reader.isInterleaved() ? 1 : SIZE * SIZE;
+		assertEquals( 10, bytes[ 0 ] );
+		assertEquals( 20, bytes[ channelStep ] );
+		assertEquals( 30, bytes[ 2 * channelStep ] );
+		reader.close();
+	}
+
+	/**
+	 * Bio-Formats has no 64-bit integer pixel type, thus only the TIFF tags are parsed
+	 * and the samples are read from the tile offsets.
+	 */
+	@Test
+	public void longTypesKeepAllBits() throws IOException, FormatException
+	{
+		assertLongRoundTrip( new LongType( -5_000_000_000L ), 2 );
+		assertLongRoundTrip( new UnsignedLongType( Long.MIN_VALUE + 5 ), 1 );
+	}
+
+	@Test
+	public void abortDeletesFile() throws IOException
+	{
+		final File file = File.createTempFile( "tiled", ".tif" );
+		file.deleteOnExit();
+
+		final TiledTiffWriter writer = new TiledTiffWriter( file, SIZE, SIZE, TILE_SIZE, TILE_SIZE, pageTypes( new UnsignedShortType(), 1 ) );
+		writer.writeTile( 0, new FinalInterval( new long[]{ 0, 0 }, new long[]{ TILE_SIZE - 1, TILE_SIZE - 1 } ), tile( 1 ) );
+		writer.abort();
+
+		assertFalse( file.exists() );
+	}
+
+	private static void assertRoundTrip( NativeType< ? > value, int pixelType, double expected ) throws IOException, FormatException
+	{
+		final File file = writeSingleTile( value );
+
+		final ImageReader reader = new ImageReader();
+		reader.setId( file.getAbsolutePath() );
+		assertEquals( value.getClass().getSimpleName(), pixelType, reader.getPixelType() );
+
+		final ByteBuffer bytes = ByteBuffer.wrap( reader.openBytes( 0 ) ).order( reader.isLittleEndian() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN );
+		for ( int i = 0; i < SIZE * SIZE; i++ )
+			assertEquals( value.getClass().getSimpleName(), expected, sample( bytes, pixelType ), 0.0 );
+		reader.close();
+	}
+
+	private static double sample( ByteBuffer bytes, int pixelType )
+	{
+		switch ( pixelType )
+		{
+			case FormatTools.UINT8: return bytes.get() & 0xff;
+			case FormatTools.INT8: return bytes.get();
+			case FormatTools.UINT16: return bytes.getShort() & 0xffff;
+			case FormatTools.INT16: return bytes.getShort();
+			case FormatTools.UINT32: return bytes.getInt() & 0xffffffffL;
+			case FormatTools.INT32: return bytes.getInt();
+			case FormatTools.FLOAT: return bytes.getFloat();
+			default: return bytes.getDouble();
+		}
+	}
+
+	private static void assertLongRoundTrip( NativeType< ? > value, int sampleFormat ) throws IOException, FormatException
+	{
+		final File file = writeSingleTile( value );
+
+		try ( RandomAccessInputStream stream = new RandomAccessInputStream( file.getAbsolutePath() ) )
+		{
+			final IFD ifd = new TiffParser( stream ).getFirstIFD();
+			assertEquals( 64, ifd.getBitsPerSample()[ 0 ] );
+			assertEquals( sampleFormat, ifd.getIFDIntValue( IFD.SAMPLE_FORMAT ) );
+
+			stream.order( true );
+			stream.seek( ifd.getStripOffsets()[ 0 ] );
+			final long expected = value instanceof LongType ? ( ( LongType ) value ).get() : ( ( UnsignedLongType ) value ).get();
+			for ( int i = 0; i < SIZE * SIZE; i++ )
+				assertEquals( expected, stream.readLong() );
+		}
+	}
+
+	/**
+	 * Writes one page of the value's type, with all pixels set to the value.
+	 */
+	private static < T extends NativeType< T > > File writeSingleTile( NativeType< ? > value ) throws IOException
+	{
+		final File file = File.createTempFile( "tiled-" + value.getClass().getSimpleName(), ".tif" );
+		file.deleteOnExit();
+
+		@SuppressWarnings( "unchecked" )
+		final T type = ( T ) value;
+		final Img< T > tile = new ArrayImgFactory<>( type ).create( SIZE, SIZE );
+		tile.forEach( pixel -> pixel.set( type ) );
+
+		try ( TiledTiffWriter writer = new TiledTiffWriter( file, SIZE, SIZE, SIZE, SIZE, Collections.singletonList( type ) ) )
+		{
+			writer.writeTile( 0, tile, tile );
+		}
+
+		return file;
+	}
+
+	private static void writeAllTiles( TiledTiffWriter writer, int page, int value ) throws IOException
+	{
+		for ( int y = 0; y < SIZE; y += TILE_SIZE )
+			for ( int x = 0; x < SIZE; x += TILE_SIZE )
+				writer.writeTile( page, new FinalInterval( new long[]{ x, y }, new long[]{ x + TILE_SIZE - 1, y + TILE_SIZE - 1 } ), tile( value ) );
+	}
+
+	private static ArrayImg< UnsignedShortType, ShortArray > tile( int value )
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > tile = ArrayImgs.unsignedShorts( TILE_SIZE, TILE_SIZE );
+		tile.forEach( pixel -> pixel.set( value ) );
+		return tile;
+	}
+
+	private static List< Type< ? > > pageTypes( Type< ? > type, int numPages )
+	{
+		final ArrayList< Type< ? > > types = new ArrayList<>();
+		for ( int i = 0; i < numPages; i++ )
+			types.add( type );
+		return types;
+	}
+
+	public static void main( String[] args ) throws IOException, FormatException
+	{
+		new TestTiledTiffWriter().closeKeepsFirstPages();
+		new TestTiledTiffWriter().pixelTypesRoundTrip();
+		new TestTiledTiffWriter().rgbRoundTrip();
+		new TestTiledTiffWriter().longTypesKeepAllBits();
+		new TestTiledTiffWriter().abortDeletesFile();
+	}
+}
@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.bdv.utils.selection.TimePointAndLabelSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestTimePointAndLabelSet
+{
+	@Test
+	public void withAndWithout()
+	{
+		TimePointAndLabelSet set = TimePointAndLabelSet.EMPTY;
+		for ( int label = 1; label <= 1000; label++ )
+			set = set.with( label % 3, label );
+
+		assertEquals( 1000, set.size() );
+		assertTrue( set.contains( 1, 1.0 ) );
+		assertFalse( set.contains( 0, 1.0 ) );
+		assertFalse( set.contains( 1, 0.0 ) );
+		assertSame( set, set.with( 1, 1.0 ) );
+
+		final TimePointAndLabelSet removed = set.without( 1, 1.0 );
+		assertEquals( 999, removed.size() );
+		assertFalse( removed.contains( 1, 1.0 ) );
+		assertTrue( set.contains( 1, 1.0 ) );
+		for ( int label = 2; label <= 1000; label++ )
+			assertTrue( removed.contains( label % 3, label ) );
+	}
+
+	public static void main( String[] args )
+	{
+		new TestTimePointAndLabelSet().withAndWithout();
+	}
+}
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.tables.column.CategoricalColumn;
+import de.embl.cba.tables.column.DoubleColumn;
+import de.embl.cba.tables.column.IntColumn;
+import de.embl.cba.tables.column.LongColumn;
+import de.embl.cba.tables.column.TypedColumns;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestTypedColumns
+{
+	@Test
+	public void typedColumns()
+	{
+		final List< String > ints = TypedColumns.asTypedColumn( Arrays.asList( "1", "2", "-3" ) );
+		assertTrue( ints instanceof IntColumn );
+		assertEquals( "-3", ints.get( 2 ) );
+
+		final List< String > longs = TypedColumns.asTypedColumn( Arrays.asList( "1", "9876543210" ) );
+		assertTrue( longs instanceof LongColumn );
+		assertEquals( 9876543210.0, TypedColumns.getDouble( longs, 1 ), 0.0 );
+
+		final List< String > doubles = TypedColumns.asTypedColumn( Arrays.asList( "1.5", "NaN", "2" ) );
+		assertTrue( doubles instanceof DoubleColumn );
+		assertTrue( Double.isNaN( TypedColumns.getDouble( doubles, 1 ) ) );
+		doubles.set( 1, "3.5" );
+		assertEquals( 3.5, TypedColumns.getDouble( doubles, 1 ), 0.0 );
+
+		// the cell texts are kept
+		final List< String > texts = TypedColumns.asTypedColumn( Arrays.asList( "2", "1e-5", "", "nan", "0.5" ) );
+		assertTrue( texts instanceof DoubleColumn );
+		assertEquals( "[2, 1e-5, , nan, 0.5]", texts.toString() );
+		assertEquals( 1e-5, TypedColumns.getDouble( texts, 1 ), 0.0 );
+		assertTrue( Double.isNaN( TypedColumns.getDouble( texts, 2 ) ) );
+		texts.set( 4, "3" );
+		assertEquals( "3", texts.get( 4 ) );
+		texts.set( 4, "3.0" );
+		assertEquals( "3.0", texts.get( 4 ) );
+
+		// non-numeric values can be entered, e.g. via a table
+		texts.set( 0, "n/a" );
+		assertEquals( "n/a", texts.get( 0 ) );
+		try
+		{
+			TypedColumns.getDouble( texts, 0 );
+			fail();
+		}
+		catch ( NumberFormatException e )
+		{
+			// as for string columns
+		}
+
+		ints.set( 0, "12.0" );
+		assertEquals( "12.0", ints.get( 0 ) );
+		assertEquals( 12, ( ( IntColumn ) ints ).getInt( 0 ) );
+		ints.set( 1, "x" );
+		assertEquals( "x", ints.get( 1 ) );
+		ints.set( 1, "7" );
+		assertEquals( 7, ( ( IntColumn ) ints ).getInt( 1 ) );
+		assertEquals( "7", ints.get( 1 ) );
+
+		final List< String > strings = TypedColumns.asTypedColumn( Arrays.asList( "a", "b", "a", "1" ) );
+		assertTrue( strings instanceof CategoricalColumn );
+		assertEquals( 3, ( ( CategoricalColumn ) strings ).numCategories() );
+		strings.set( 3, "c" );
+		assertEquals( "c", strings.get( 3 ) );
+		assertEquals( "a", strings.get( 2 ) );
+	}
+
+	public static void main( String[] args )
+	{
+		new TestTypedColumns().typedColumns();
+	}
+}
@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * Various Java code for ImageJ
+ * %%
+ * Copyright (C) 2018 - 2021 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests;
+
+import de.embl.cba.bdv.utils.loaders.VolatilePaletteLongArray;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileLongAccess;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestVolatilePaletteLongArray
+{
+	@Test
+	public void compressAndDecode()
+	{
+		final Random random = new Random( 42 );
+		for ( int numLabels : new int[]{ 1, 2, 3, 17, 300 } )
+		{
+			final long[] labels = new long[ 64 * 64 * 64 ];
+			for ( int i = 0; i < labels.length; i++ )
+				labels[ i ] = random.nextInt( numLabels ) * 0x100000001L;
+
+			final VolatileLongAccess access = VolatilePaletteLongArray.compress( labels );
+			assertTrue( access instanceof VolatilePaletteLongArray );
+			assertTrue( ( ( VolatilePaletteLongArray ) access ).getSizeInBytes() < 8L * labels.length );
+			for ( int i = 0; i < labels.length; i++ )
+				assertEquals( labels[ i ], access.getValue( i ) );
+		}
+	}
+
+	public static void main( String[] args )
+	{
+		new TestVolatilePaletteLongArray().compressAndDecode();
+	}
+}